@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.benchmarks;
+
+import java.io.IOException;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.http.HttpResponse;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Injector;
+
+/**
+ * Loads the JSON fixtures of the mock tests, which the build copies under the name of their api, and scales them to
+ * the payload sizes of the benchmarks.
+ */
+final class Fixtures {
+
+   private Fixtures() {
+   }
+
+   /**
+    * Builds the injector of an api without contacting any endpoint, so the parsers are bound exactly as they are at
+    * runtime.
+    */
+   static Injector injector(String api) {
+      return ContextBuilder.newBuilder(api).credentials("identity", "credential").buildInjector();
+   }
+
+   /**
+    * Loads a fixture and repeats the elements of one of its arrays until it holds {@code size} of them.
+    *
+    * @param path the names leading to the array, none if the fixture itself is the array
+    */
+   static byte[] scale(String fixture, int size, String... path) {
+      JsonElement root = new JsonParser().parse(load(fixture));
+      JsonElement parent = root;
+      for (int i = 0; i < path.length - 1; i++) {
+         parent = parent.getAsJsonObject().get(path[i]);
+      }
+      JsonArray source = path.length == 0 ? root.getAsJsonArray()
+            : parent.getAsJsonObject().getAsJsonArray(path[path.length - 1]);
+      JsonArray scaled = new JsonArray();
+      for (int i = 0; i < size; i++) {
+         scaled.add(source.get(i % source.size()));
+      }
+      if (path.length == 0) {
+         return scaled.toString().getBytes(Charsets.UTF_8);
+      }
+      ((JsonObject) parent).add(path[path.length - 1], scaled);
+      return root.toString().getBytes(Charsets.UTF_8);
+   }
+
+   /**
+    * @return a fresh response for each invocation, since parsing releases the payload
+    */
+   static HttpResponse response(byte[] body) {
+      return HttpResponse.builder().statusCode(200).payload(body).build();
+   }
+
+   private static String load(String fixture) {
+      try {
+         return Resources.toString(Resources.getResource(Fixtures.class, "/" + fixture), Charsets.UTF_8);
+      } catch (IOException e) {
+         throw new IllegalStateException("cannot read fixture " + fixture, e);
+      }
+   }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.http.functions.ParseFirstJsonValueNamed;
+import org.jclouds.json.internal.GsonWrapper;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.TypeLiteral;
+
+/**
+ * Parses the stack and stack resource listings of Heat through the parser jclouds builds for
+ * {@code @SelectJson("stacks")} and {@code @SelectJson("resources")}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeatParseBenchmark {
+
+   @Param({ "1", "100", "1000" })
+   public int size;
+
+   private ParseFirstJsonValueNamed<List<Stack>> selectStacks;
+   private ParseFirstJsonValueNamed<List<StackResource>> selectResources;
+   private byte[] stacks;
+   private byte[] resources;
+
+   @Setup
+   public void setUp() {
+      GsonWrapper json = Fixtures.injector("openstack-heat").getInstance(GsonWrapper.class);
+      selectStacks = new ParseFirstJsonValueNamed<List<Stack>>(json, new TypeLiteral<List<Stack>>() {
+      }, "stacks");
+      selectResources = new ParseFirstJsonValueNamed<List<StackResource>>(json,
+            new TypeLiteral<List<StackResource>>() {
+            }, "resources");
+      stacks = Fixtures.scale("heat/stack_list_response.json", size, "stacks");
+      resources = Fixtures.scale("heat/stack_resources_list_response.json", size, "resources");
+   }
+
+   @Benchmark
+   public List<Stack> stacks() {
+      return selectStacks.apply(Fixtures.response(stacks));
+   }
+
+   @Benchmark
+   public List<StackResource> resources() {
+      return selectResources.apply(Fixtures.response(resources));
+   }
+}
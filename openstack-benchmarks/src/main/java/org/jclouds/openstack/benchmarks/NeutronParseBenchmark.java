@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.domain.Networks;
+import org.jclouds.openstack.neutron.v2.domain.Ports;
+import org.jclouds.openstack.neutron.v2.domain.Subnets;
+import org.jclouds.openstack.neutron.v2.functions.ParseNetworks;
+import org.jclouds.openstack.neutron.v2.functions.ParsePorts;
+import org.jclouds.openstack.neutron.v2.functions.ParseSubnets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.Injector;
+
+/**
+ * Parses the port, network and subnet listings of Neutron.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeutronParseBenchmark {
+
+   @Param({ "1", "100", "1000" })
+   public int size;
+
+   private ParsePorts parsePorts;
+   private ParseNetworks parseNetworks;
+   private ParseSubnets parseSubnets;
+   private byte[] ports;
+   private byte[] networks;
+   private byte[] subnets;
+
+   @Setup
+   public void setUp() {
+      Injector injector = Fixtures.injector("openstack-neutron");
+      parsePorts = injector.getInstance(ParsePorts.class);
+      parseNetworks = injector.getInstance(ParseNetworks.class);
+      parseSubnets = injector.getInstance(ParseSubnets.class);
+      ports = Fixtures.scale("neutron/port_list_response.json", size, "ports");
+      networks = Fixtures.scale("neutron/network_list_response.json", size, "networks");
+      subnets = Fixtures.scale("neutron/subnet_list_response.json", size, "subnets");
+   }
+
+   @Benchmark
+   public Ports ports() {
+      return parsePorts.apply(Fixtures.response(ports));
+   }
+
+   @Benchmark
+   public Networks networks() {
+      return parseNetworks.apply(Fixtures.response(networks));
+   }
+
+   @Benchmark
+   public Subnets subnets() {
+      return parseSubnets.apply(Fixtures.response(subnets));
+   }
+}
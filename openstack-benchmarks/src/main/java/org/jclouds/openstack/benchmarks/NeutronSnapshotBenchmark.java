@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Ports;
+import org.jclouds.openstack.neutron.v2.functions.ParsePorts;
+import org.jclouds.openstack.neutron.v2.util.NeutronSnapshot;
+import org.jclouds.openstack.neutron.v2.util.NeutronSnapshotWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Writes the ports of a Neutron port listing, repeated under distinct ids, to a snapshot and reads them back: opening
+ * the snapshot, decoding every port and looking ports up by id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeutronSnapshotBenchmark {
+
+   private static final int LOOKUPS = 1 << 16;
+
+   @Param({ "1", "100", "1000", "100000" })
+   public int size;
+
+   private Ports ports;
+   private ByteBuffer snapshot;
+   private NeutronSnapshot opened;
+   private String[] ids;
+   private int next;
+
+   @Setup
+   public void setUp() {
+      JsonObject root = new JsonParser().parse(
+            new String(Fixtures.scale("neutron/port_list_response_paged1.json", size, "ports"), Charsets.UTF_8))
+            .getAsJsonObject();
+      JsonArray listed = root.getAsJsonArray("ports");
+      for (int i = 0; i < size; i++) {
+         // the fixture repeats its ports, while a snapshot indexes them by id
+         JsonObject port = listed.get(i).getAsJsonObject();
+         JsonObject copy = new JsonParser().parse(port.toString()).getAsJsonObject();
+         copy.addProperty("id", "port-" + i);
+         listed.set(i, copy);
+      }
+      ports = Fixtures.injector("openstack-neutron").getInstance(ParsePorts.class)
+            .apply(Fixtures.response(root.toString().getBytes(Charsets.UTF_8)));
+      snapshot = ByteBuffer.wrap(new NeutronSnapshotWriter().addPorts(ports).toByteArray());
+      opened = NeutronSnapshot.read(snapshot);
+
+      Random random = new Random(42);
+      ids = new String[LOOKUPS];
+      for (int i = 0; i < LOOKUPS; i++) {
+         ids[i] = "port-" + random.nextInt(size);
+      }
+   }
+
+   @Benchmark
+   public byte[] write() {
+      return new NeutronSnapshotWriter().addPorts(ports).toByteArray();
+   }
+
+   @Benchmark
+   public NeutronSnapshot open() {
+      return NeutronSnapshot.read(snapshot);
+   }
+
+   @Benchmark
+   public int decode() {
+      int fixedIps = 0;
+      for (Port port : opened.getPorts()) {
+         fixedIps += port.getFixedIps().size();
+      }
+      return fixedIps;
+   }
+
+   @Benchmark
+   public Port lookup() {
+      return opened.getPort(ids[next++ & (LOOKUPS - 1)]);
+   }
+}
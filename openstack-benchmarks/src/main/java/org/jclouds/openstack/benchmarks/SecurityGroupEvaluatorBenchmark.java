@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.jclouds.openstack.neutron.v2.util.SecurityGroupEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Compiles random rules spread over 500 groups and queries them, cycling through precomputed queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityGroupEvaluatorBenchmark {
+
+   private static final int GROUPS = 500;
+   private static final int PORTS = 5000;
+   private static final int QUERIES = 1 << 16;
+
+   private static final RuleProtocol[] PROTOCOLS = { RuleProtocol.TCP, RuleProtocol.UDP, RuleProtocol.ICMP, null };
+
+   @Param({ "100", "10000", "50000" })
+   public int rules;
+
+   private List<Rule> ruleList;
+   private List<Port> ports;
+   private SecurityGroupEvaluator evaluator;
+   private String[] groups;
+   private RuleDirection[] directions;
+   private RuleProtocol[] protocols;
+   private int[] destinationPorts;
+   private String[] remotes;
+   private int next;
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(42);
+      ruleList = Lists.newArrayListWithCapacity(rules);
+      for (int i = 0; i < rules; i++) {
+         RuleDirection direction = random.nextBoolean() ? RuleDirection.INGRESS : RuleDirection.EGRESS;
+         Rule.CreateBuilder builder = Rule.createBuilder(direction, "group-" + random.nextInt(GROUPS));
+         RuleProtocol protocol = PROTOCOLS[random.nextInt(PROTOCOLS.length)];
+         if (protocol != null) {
+            int min = random.nextInt(protocol == RuleProtocol.ICMP ? 256 : 60000);
+            builder.protocol(protocol).portRangeMin(min).portRangeMax(min + random.nextInt(100));
+         }
+         switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+               builder.remoteIpPrefix(address(random) + "/" + (16 + random.nextInt(17)));
+               break;
+            case 2:
+               builder.remoteGroupId("group-" + random.nextInt(GROUPS));
+               break;
+            default:
+               break;
+         }
+         ruleList.add(builder.build());
+      }
+      ports = Lists.newArrayListWithCapacity(PORTS);
+      List<String> addresses = Lists.newArrayListWithCapacity(PORTS);
+      for (int i = 0; i < PORTS; i++) {
+         String address = address(random);
+         addresses.add(address);
+         ports.add(Port.createBuilder("net").fixedIps(ImmutableSet.of(IP.builder().ipAddress(address).build()))
+               .securityGroups(ImmutableSet.of("group-" + random.nextInt(GROUPS))).build());
+      }
+      evaluator = SecurityGroupEvaluator.compile(ruleList, ports);
+
+      groups = new String[QUERIES];
+      directions = new RuleDirection[QUERIES];
+      protocols = new RuleProtocol[QUERIES];
+      destinationPorts = new int[QUERIES];
+      remotes = new String[QUERIES];
+      for (int i = 0; i < QUERIES; i++) {
+         groups[i] = "group-" + random.nextInt(GROUPS);
+         directions[i] = random.nextBoolean() ? RuleDirection.INGRESS : RuleDirection.EGRESS;
+         protocols[i] = PROTOCOLS[random.nextInt(PROTOCOLS.length - 1)];
+         destinationPorts[i] = random.nextInt(protocols[i] == RuleProtocol.ICMP ? 256 : 65536);
+         remotes[i] = random.nextBoolean() ? addresses.get(random.nextInt(PORTS)) : address(random);
+      }
+   }
+
+   @Benchmark
+   public SecurityGroupEvaluator compile() {
+      return SecurityGroupEvaluator.compile(ruleList, ports);
+   }
+
+   @Benchmark
+   public boolean allows() {
+      int i = next++ & (QUERIES - 1);
+      return evaluator.allows(groups[i], directions[i], protocols[i], destinationPorts[i], remotes[i]);
+   }
+
+   private static String address(Random random) {
+      return "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+   }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.util.TopologyGraph;
+import org.jclouds.openstack.neutron.v2.util.TopologyNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Builds a graph of routers with two tenant networks each and ten ports per router, then runs path and reachability
+ * queries against it and interleaves queries with updates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologyGraphBenchmark {
+
+   private static final int EXTERNAL_NETWORKS = 5;
+   private static final int QUERIES = 1 << 16;
+
+   @Param({ "100", "10000" })
+   public int routers;
+
+   private String[] gateways;
+   private int[] portSubnets;
+   private TopologyGraph graph;
+   private TopologyNode[] ports;
+   private TopologyNode[] subnets;
+   private int[] updated;
+   private int next;
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(42);
+      gateways = new String[routers];
+      for (int i = 0; i < routers; i++) {
+         // most routers have a gateway, the others only route between their tenant networks
+         gateways[i] = random.nextInt(10) < 7 ? "ext-" + random.nextInt(EXTERNAL_NETWORKS) : null;
+      }
+      portSubnets = new int[10 * routers];
+      for (int i = 2 * routers; i < portSubnets.length; i++) {
+         portSubnets[i] = random.nextInt(2 * routers);
+      }
+      graph = build();
+
+      ports = new TopologyNode[QUERIES];
+      subnets = new TopologyNode[QUERIES];
+      updated = new int[QUERIES];
+      for (int i = 0; i < QUERIES; i++) {
+         ports[i] = TopologyNode.port("port-" + random.nextInt(portSubnets.length));
+         subnets[i] = TopologyNode.subnet("subnet-" + random.nextInt(2 * routers));
+         updated[i] = random.nextInt(routers);
+      }
+   }
+
+   @Benchmark
+   public TopologyGraph build() {
+      TopologyGraph graph = new TopologyGraph();
+      for (int i = 0; i < 2 * routers; i++) {
+         graph.addSubnet("subnet-" + i, "net-" + i);
+      }
+      for (int i = 0; i < routers; i++) {
+         graph.setGateway("router-" + i, gateways[i]);
+      }
+      for (int i = 0; i < portSubnets.length; i++) {
+         // the first two ports of each router are its interfaces
+         int subnet = i < 2 * routers ? i : portSubnets[i];
+         graph.addPort("port-" + i, "net-" + subnet, ImmutableList.of("subnet-" + subnet),
+               i < 2 * routers ? "router-" + i / 2 : null);
+      }
+      return graph;
+   }
+
+   @Benchmark
+   public List<TopologyNode> pathToExternal() {
+      return graph.getPathToExternal(ports[next++ & (QUERIES - 1)]);
+   }
+
+   @Benchmark
+   public boolean isReachable() {
+      int i = next++ & (QUERIES - 1);
+      return graph.isReachable(ports[i], subnets[i]);
+   }
+
+   @Benchmark
+   public List<TopologyNode> path() {
+      int i = next++ & (QUERIES - 1);
+      return graph.getPath(subnets[i], subnets[(i + 1) & (QUERIES - 1)]);
+   }
+
+   /**
+    * Detaches a router interface, queries across the split and attaches it again.
+    */
+   @Benchmark
+   public boolean update() {
+      int router = updated[next++ & (QUERIES - 1)];
+      String port = "port-" + 2 * router;
+      String subnet = "subnet-" + 2 * router;
+      graph.removePort(port);
+      boolean reachable = graph.isReachable(TopologyNode.subnet(subnet), TopologyNode.router("router-" + router));
+      graph.addPort(port, "net-" + 2 * router, ImmutableList.of(subnet), "router-" + router);
+      return reachable;
+   }
+}
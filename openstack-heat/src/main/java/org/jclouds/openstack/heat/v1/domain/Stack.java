@@ -66,6 +66,11 @@ public abstract class Stack {
     */
    @Nullable public abstract String getProject();
 
+   /**
+    * @return the ID of the parent stack of a nested stack, as listed with {@code show_nested}
+    */
+   @Nullable public abstract String getParent();
+
    /**
     * @return the parameters of this Stack.
     */
@@ -79,7 +84,7 @@ public abstract class Stack {
    /**
     * @return the outputs of this Stack.
     */
-   @Nullable public abstract List<String> getOutputs();
+   public abstract List<StackOutput> getOutputs();
 
    /**
     * @return the notification topics of this Stack.
@@ -123,11 +128,11 @@ public abstract class Stack {
 
    @SerializedNames({"id", "stack_name", "description", "owner", "capabilities", "parameters", "outputs",
          "notification_topics", "template_description", "stack_status", "stack_status_reason", "creation_time",
-         "updated_time", "timeout_mins", "disable_rollback", "project", "links"})
+         "updated_time", "timeout_mins", "disable_rollback", "project", "parent", "links"})
    private static Stack create(String id, String name, String description, String owner, Set<String> capabilities,
-                               Map<String, String> parameters, List<String> outputs, List<String> notificationTopics,
+                               Map<String, String> parameters, List<StackOutput> outputs, List<String> notificationTopics,
                                String templateDescription, StackStatus status, String statusReason, Date created, Date updated, int timeoutMins,
-                               boolean disableRollback, String project, Set<Link> links) {
+                               boolean disableRollback, String project, String parent, Set<Link> links) {
       return new AutoValue_Stack(
             id,
             name,
@@ -135,9 +140,10 @@ public abstract class Stack {
             description,
             owner,
             project,
+            parent,
             parameters != null ? ImmutableMap.copyOf(parameters) : ImmutableMap.<String, String>of(),
             capabilities != null ? ImmutableSet.copyOf(capabilities) : ImmutableSet.<String>of(),
-            outputs != null ? ImmutableList.copyOf(outputs) : ImmutableList.<String>of(),
+            outputs != null ? ImmutableList.copyOf(outputs) : ImmutableList.<StackOutput>of(),
             notificationTopics != null ? ImmutableList.copyOf(notificationTopics) : ImmutableList.<String>of(),
             status,
             statusReason,
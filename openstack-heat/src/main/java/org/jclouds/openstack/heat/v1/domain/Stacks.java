@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.domain;
+
+import java.beans.ConstructorProperties;
+
+import org.jclouds.openstack.v2_0.domain.Link;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A page of stacks.
+ * <p/>
+ * Heat links to the next page when the request has a limit and the page is full. The link repeats the query of the
+ * request, so the marker to the next page keeps its filters and sorting.
+ */
+public class Stacks extends PaginatedCollection<Stack> {
+   public static final Stacks EMPTY = new Stacks(ImmutableSet.<Stack> of(), ImmutableSet.<Link> of());
+
+   @ConstructorProperties({"stacks", "links"})
+   protected Stacks(Iterable<Stack> stacks, Iterable<Link> links) {
+      super(stacks, links);
+   }
+}
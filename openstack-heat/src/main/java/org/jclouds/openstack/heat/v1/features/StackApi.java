@@ -31,20 +31,33 @@ import javax.ws.rs.core.MediaType;
 
 import org.jclouds.Fallbacks.EmptyListOnNotFoundOr404;
 import org.jclouds.Fallbacks.EmptyMapOnNotFoundOr404;
+import org.jclouds.Fallbacks.EmptyPagedIterableOnNotFoundOr404;
 import org.jclouds.Fallbacks.FalseOnNotFoundOr404;
 import org.jclouds.Fallbacks.NullOnNotFoundOr404;
+import org.jclouds.collect.PagedIterable;
 import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.heat.v1.binders.BindStackBundleToPayload;
 import org.jclouds.openstack.heat.v1.domain.Stack;
 import org.jclouds.openstack.heat.v1.domain.StackResource;
+import org.jclouds.openstack.heat.v1.domain.Stacks;
 import org.jclouds.openstack.heat.v1.domain.Template;
+import org.jclouds.openstack.heat.v1.fallbacks.EmptyStacksFallback;
+import org.jclouds.openstack.heat.v1.functions.ParseStacks;
+import org.jclouds.openstack.heat.v1.functions.StacksToPagedIterable;
 import org.jclouds.openstack.heat.v1.options.CreateStack;
 import org.jclouds.openstack.heat.v1.options.ListStackOptions;
+import org.jclouds.openstack.heat.v1.options.StackBundle;
 import org.jclouds.openstack.heat.v1.options.UpdateStack;
 import org.jclouds.openstack.keystone.v2_0.filters.AuthenticateRequest;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
+import org.jclouds.rest.annotations.PATCH;
+import org.jclouds.rest.annotations.QueryParams;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.annotations.SelectJson;
+import org.jclouds.rest.annotations.Transform;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 
@@ -68,6 +81,29 @@ public interface StackApi {
    @Fallback(EmptyListOnNotFoundOr404.class)
    List<Stack> list(ListStackOptions options);
 
+   /**
+    * Lists all the stacks, one page after the other. The next page is requested while the current one is read.
+    * <p/>
+    * Heat only links to the next page of a request with a limit, so the stacks are listed 100 at a time.
+    */
+   @Named("stack:list")
+   @GET
+   @QueryParams(keys = "limit", values = "100")
+   @Transform(StacksToPagedIterable.class)
+   @ResponseParser(ParseStacks.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Stack> listInPages();
+
+   /**
+    * Lists one page of stacks. The options may be {@link ListStackOptions}; they need a limit for the page to have a
+    * marker to the next one, which keeps the other options.
+    */
+   @Named("stack:list")
+   @GET
+   @ResponseParser(ParseStacks.class)
+   @Fallback(EmptyStacksFallback.class)
+   Stacks listInPages(PaginationOptions options);
+
    @Named("stack:get")
    @GET
    @SelectJson("stack")
@@ -88,6 +124,14 @@ public interface StackApi {
    @SelectJson("stack")
    Stack create(@BinderParam(BindToJsonPayload.class) CreateStack options);
 
+   /**
+    * Creates a stack whose template, environment and files are streamed instead of held in memory.
+    */
+   @Named("stack:create")
+   @POST
+   @SelectJson("stack")
+   Stack create(@BinderParam(BindStackBundleToPayload.class) StackBundle bundle);
+
    @Named("stack:delete")
    @DELETE
    @Path("/{stack_name}/{stack_id}")
@@ -99,6 +143,24 @@ public interface StackApi {
    @Path("/{stack_name}/{stack_id}")
    boolean update(@PathParam("stack_name") String name, @PathParam("stack_id") String id, @BinderParam(BindToJsonPayload.class) UpdateStack options);
 
+   /**
+    * Updates a stack, keeping the template, parameters and files that {@code options} leaves out. Only the changed
+    * parameters need to be sent.
+    */
+   @Named("stack:patch")
+   @PATCH
+   @Path("/{stack_name}/{stack_id}")
+   boolean patch(@PathParam("stack_name") String name, @PathParam("stack_id") String id, @BinderParam(BindToJsonPayload.class) UpdateStack options);
+
+   /**
+    * Updates a stack with a template, environment and files that are streamed instead of held in memory.
+    */
+   @Named("stack:update")
+   @PUT
+   @Path("/{stack_name}/{stack_id}")
+   boolean update(@PathParam("stack_name") String name, @PathParam("stack_id") String id,
+         @BinderParam(BindStackBundleToPayload.class) StackBundle bundle);
+
 
    @Named("stack:list_resources")
    @GET
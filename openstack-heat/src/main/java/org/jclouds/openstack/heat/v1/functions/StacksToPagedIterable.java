@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.functions;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.jclouds.Constants;
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.collect.internal.Arg0ToPagedIterable;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Ensures Stacks works as a paged iterable. The next page is requested on the user executor as soon as a page
+ * arrives, so it is usually there by the time the current one has been consumed.
+ */
+public class StacksToPagedIterable extends Arg0ToPagedIterable.FromCaller<Stack, StacksToPagedIterable> {
+
+   private final HeatApi api;
+   private final ListeningExecutorService userExecutor;
+   private Prefetching prefetching;
+
+   @Inject
+   protected StacksToPagedIterable(HeatApi api,
+         @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor) {
+      this.api = checkNotNull(api, "api");
+      this.userExecutor = checkNotNull(userExecutor, "userExecutor");
+   }
+
+   @Override
+   public PagedIterable<Stack> apply(IterableWithMarker<Stack> input) {
+      PagedIterable<Stack> pages = super.apply(input);
+      if (prefetching != null && input.nextMarker().isPresent()) {
+         prefetching.prefetch(input.nextMarker().get());
+      }
+      return pages;
+   }
+
+   @Override
+   protected Function<Object, IterableWithMarker<Stack>> markerToNextForArg0(Optional<Object> arg0) {
+      String region = arg0.isPresent() ? arg0.get().toString() : null;
+      prefetching = new Prefetching(api.getStackApi(region), userExecutor);
+      return prefetching;
+   }
+
+   private static final class Prefetching implements Function<Object, IterableWithMarker<Stack>> {
+      private final StackApi stackApi;
+      private final ListeningExecutorService executor;
+      private Collection<String> nextMarker;
+      private ListenableFuture<IterableWithMarker<Stack>> next;
+
+      private Prefetching(StackApi stackApi, ListeningExecutorService executor) {
+         this.stackApi = stackApi;
+         this.executor = executor;
+      }
+
+      synchronized void prefetch(final Object marker) {
+         nextMarker = marker(marker);
+         next = executor.submit(new Callable<IterableWithMarker<Stack>>() {
+            @Override
+            public IterableWithMarker<Stack> call() {
+               return fetch(marker);
+            }
+         });
+      }
+
+      @Override
+      public synchronized IterableWithMarker<Stack> apply(Object input) {
+         IterableWithMarker<Stack> page;
+         if (next != null && marker(input).equals(nextMarker)) {
+            try {
+               page = Uninterruptibles.getUninterruptibly(next);
+            } catch (ExecutionException e) {
+               throw Throwables.propagate(e.getCause());
+            }
+         } else {
+            page = fetch(input);
+         }
+         next = null;
+         if (page.nextMarker().isPresent()) {
+            prefetch(page.nextMarker().get());
+         }
+         return page;
+      }
+
+      @SuppressWarnings("unchecked")
+      private IterableWithMarker<Stack> fetch(Object marker) {
+         return IterableWithMarker.class.cast(stackApi.listInPages(PaginationOptions.class.cast(marker)));
+      }
+
+      private static Collection<String> marker(Object marker) {
+         return PaginationOptions.class.cast(marker).buildQueryParameters().get("marker");
+      }
+
+      @Override
+      public String toString() {
+         return "listStacksInPages()";
+      }
+   }
+}
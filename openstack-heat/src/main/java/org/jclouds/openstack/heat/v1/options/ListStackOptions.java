@@ -192,6 +192,14 @@ public class ListStackOptions extends PaginationOptions {
       return this;
    }
 
+   /**
+    * Include the deleted stacks in the stack listing.
+    */
+   public ListStackOptions showDeleted(boolean showDeleted) {
+      this.queryParameters.put("show_deleted", Boolean.toString(showDeleted));
+      return this;
+   }
+
    public static Builder builder() {
       return new Builder();
    }
@@ -253,6 +261,13 @@ public class ListStackOptions extends PaginationOptions {
       public static ListStackOptions showNested(boolean showNested) {
          return new ListStackOptions().showNested(showNested);
       }
+
+      /**
+       * @see ListStackOptions#showDeleted(boolean)
+       */
+      public static ListStackOptions showDeleted(boolean showDeleted) {
+         return new ListStackOptions().showDeleted(showDeleted);
+      }
    }
 
 }
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.options;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.json.Json;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteProcessor;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * The options of a stack create or update whose template, environment and files are streamed from disk or from any
+ * other {@link ByteSource} instead of being held in memory as Strings like in {@link CreateStack} and
+ * {@link UpdateStack}.
+ * <p/>
+ * The JSON payload is produced while it is sent, escaping the contents on the fly, so a stack carrying megabytes of
+ * scripts in its files costs no more heap than a small one. A source added under several names, as when templates
+ * reference the same file with different paths, is measured only once; Heat still needs it under each name, so it is
+ * sent once per name. This is done per source, not per content: a {@link File} is the same source whatever path it was
+ * added with, and a {@link ByteSource} only when the same instance is added again, so equal contents from different
+ * sources are each measured.
+ *
+ * <pre>
+ * StackBundle bundle = StackBundle.builder()
+ *       .name("my-stack")
+ *       .template(new File("stack.yaml"))
+ *       .environment(new File("env.yaml"))
+ *       .files("file:///templates/", new File("/templates"))
+ *       .build();
+ * Stack stack = stackApi.create(bundle);
+ * </pre>
+ */
+public final class StackBundle {
+
+   private final String name;
+   private final ByteSource template;
+   private final String templateUrl;
+   private final ByteSource environment;
+   private final Map<String, Object> parameters;
+   private final Boolean disableRollback;
+   private final Map<String, ByteSource> files;
+
+   private StackBundle(Builder builder) {
+      this.name = builder.name;
+      this.template = builder.template;
+      this.templateUrl = builder.templateUrl;
+      this.environment = builder.environment;
+      this.parameters = builder.parameters;
+      this.disableRollback = builder.disableRollback;
+      this.files = ImmutableMap.copyOf(builder.files);
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   /**
+    * @return the name of the stack to create, or null for an update
+    */
+   public String getName() {
+      return name;
+   }
+
+   public ByteSource getTemplate() {
+      return template;
+   }
+
+   public String getTemplateUrl() {
+      return templateUrl;
+   }
+
+   public ByteSource getEnvironment() {
+      return environment;
+   }
+
+   public Map<String, Object> getParameters() {
+      return parameters;
+   }
+
+   public Boolean getDisableRollback() {
+      return disableRollback;
+   }
+
+   /**
+    * @return the contents of the files referenced by the template and the environment, by the name they are
+    *         referenced with
+    */
+   public Map<String, ByteSource> getFiles() {
+      return files;
+   }
+
+   /**
+    * Reads every content once to measure it, then returns a repeatable payload that streams the JSON request.
+    *
+    * @param json serializes the name and the parameters
+    */
+   public Payload toPayload(Json json) {
+      checkNotNull(json, "json");
+      Map<ByteSource, EscapedString> measuredBySource = Maps.newIdentityHashMap();
+      List<ByteSource> parts = Lists.newArrayList();
+      long length = 0;
+      try {
+         String separator = "{";
+         if (name != null) {
+            length += add(parts, separator + "\"stack_name\":" + json.toJson(name));
+            separator = ",";
+         }
+         if (template != null) {
+            length += add(parts, separator + "\"template\":");
+            length += add(parts, escape(template, measuredBySource));
+            separator = ",";
+         }
+         if (templateUrl != null) {
+            length += add(parts, separator + "\"template_url\":" + json.toJson(templateUrl));
+            separator = ",";
+         }
+         if (environment != null) {
+            length += add(parts, separator + "\"environment\":");
+            length += add(parts, escape(environment, measuredBySource));
+            separator = ",";
+         }
+         if (parameters != null) {
+            length += add(parts, separator + "\"parameters\":" + json.toJson(parameters));
+            separator = ",";
+         }
+         if (disableRollback != null) {
+            length += add(parts, separator + "\"disable_rollback\":" + disableRollback);
+            separator = ",";
+         }
+         if (!files.isEmpty()) {
+            String fileSeparator = separator + "\"files\":{";
+            for (Map.Entry<String, ByteSource> file : files.entrySet()) {
+               length += add(parts, fileSeparator + json.toJson(file.getKey()) + ":");
+               length += add(parts, escape(file.getValue(), measuredBySource));
+               fileSeparator = ",";
+            }
+            length += add(parts, "}");
+         }
+         length += add(parts, "}");
+      } catch (IOException e) {
+         throw Throwables.propagate(e);
+      }
+      Payload payload = Payloads.newByteSourcePayload(ByteSource.concat(parts));
+      payload.getContentMetadata().setContentType(MediaType.APPLICATION_JSON);
+      payload.getContentMetadata().setContentLength(length);
+      return payload;
+   }
+
+   private static long add(List<ByteSource> parts, String json) {
+      byte[] bytes = json.getBytes(UTF_8);
+      parts.add(ByteSource.wrap(bytes));
+      return bytes.length;
+   }
+
+   private static long add(List<ByteSource> parts, EscapedString escaped) {
+      parts.add(escaped);
+      return escaped.length;
+   }
+
+   /**
+    * @param measuredBySource the sources measured so far, by identity
+    */
+   private static EscapedString escape(ByteSource content, Map<ByteSource, EscapedString> measuredBySource)
+         throws IOException {
+      EscapedString escaped = measuredBySource.get(content);
+      if (escaped != null) {
+         return escaped;
+      }
+      long length = content.read(new ByteProcessor<Long>() {
+         private long length = 2;
+
+         @Override
+         public boolean processBytes(byte[] buf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+               length += EscapingInputStream.width(buf[i]);
+            }
+            return true;
+         }
+
+         @Override
+         public Long getResult() {
+            return length;
+         }
+      });
+      escaped = new EscapedString(content, length);
+      measuredBySource.put(content, escaped);
+      return escaped;
+   }
+
+   /**
+    * A content as a quoted JSON string.
+    */
+   private static final class EscapedString extends ByteSource {
+      private final ByteSource content;
+      private final long length;
+
+      private EscapedString(ByteSource content, long length) {
+         this.content = content;
+         this.length = length;
+      }
+
+      @Override
+      public InputStream openStream() throws IOException {
+         return new EscapingInputStream(content.openStream());
+      }
+   }
+
+   /**
+    * Quotes and escapes UTF-8 bytes as they are read. Bytes of multi-byte characters need no escaping in JSON and
+    * are passed through. The content is read a buffer at a time.
+    */
+   static final class EscapingInputStream extends InputStream {
+      private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+      private final InputStream in;
+      private final byte[] buffer = new byte[8192];
+      private final byte[] pending = new byte[6];
+      private final byte[] single = new byte[1];
+      private int next;
+      private int limit;
+      private int position;
+      private int count;
+      private boolean opened;
+      private boolean closed;
+
+      EscapingInputStream(InputStream in) {
+         this.in = in;
+      }
+
+      static int width(byte b) {
+         if (b == '"' || b == '\\' || b == '\n' || b == '\r' || b == '\t' || b == '\b' || b == '\f') {
+            return 2;
+         }
+         return b >= 0 && b < 0x20 ? 6 : 1;
+      }
+
+      @Override
+      public int read() throws IOException {
+         return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         checkPositionIndexes(off, off + len, b.length);
+         int n = 0;
+         while (n < len) {
+            if (position < count) {
+               b[off + n++] = pending[position++];
+            } else if (!opened) {
+               opened = true;
+               b[off + n++] = '"';
+            } else if (closed) {
+               break;
+            } else if (next < limit) {
+               byte c = buffer[next++];
+               if (width(c) == 1) {
+                  b[off + n++] = c;
+               } else {
+                  escape(c);
+               }
+            } else if (n > 0) {
+               // hand out what is ready instead of waiting for more
+               break;
+            } else {
+               limit = in.read(buffer);
+               next = 0;
+               if (limit < 0) {
+                  limit = 0;
+                  closed = true;
+                  b[off + n++] = '"';
+               }
+            }
+         }
+         return n == 0 && len > 0 ? -1 : n;
+      }
+
+      private void escape(byte c) {
+         pending[0] = '\\';
+         count = 2;
+         switch (c) {
+            case '\n':
+               pending[1] = 'n';
+               break;
+            case '\r':
+               pending[1] = 'r';
+               break;
+            case '\t':
+               pending[1] = 't';
+               break;
+            case '\b':
+               pending[1] = 'b';
+               break;
+            case '\f':
+               pending[1] = 'f';
+               break;
+            case '"':
+            case '\\':
+               pending[1] = c;
+               break;
+            default:
+               pending[1] = 'u';
+               pending[2] = '0';
+               pending[3] = '0';
+               pending[4] = HEX[c >> 4];
+               pending[5] = HEX[c & 0xf];
+               count = 6;
+         }
+         position = 0;
+      }
+
+      @Override
+      public void close() throws IOException {
+         in.close();
+      }
+   }
+
+   public static final class Builder {
+      private String name;
+      private ByteSource template;
+      private String templateUrl;
+      private ByteSource environment;
+      private Map<String, Object> parameters;
+      private Boolean disableRollback;
+      private final Map<String, ByteSource> files = Maps.newLinkedHashMap();
+      private final Map<File, ByteSource> sources = Maps.newHashMap();
+
+      private Builder() {
+      }
+
+      /**
+       * The name of the stack to create. Leave it unset for an update.
+       */
+      public Builder name(String name) {
+         this.name = checkNotNull(name, "name");
+         return this;
+      }
+
+      public Builder template(ByteSource template) {
+         this.template = checkNotNull(template, "template");
+         return this;
+      }
+
+      public Builder template(File template) {
+         return template(source(checkNotNull(template, "template")));
+      }
+
+      public Builder templateUrl(String templateUrl) {
+         this.templateUrl = checkNotNull(templateUrl, "templateUrl");
+         return this;
+      }
+
+      public Builder environment(ByteSource environment) {
+         this.environment = checkNotNull(environment, "environment");
+         return this;
+      }
+
+      public Builder environment(File environment) {
+         return environment(source(checkNotNull(environment, "environment")));
+      }
+
+      public Builder parameters(Map<String, Object> parameters) {
+         this.parameters = ImmutableMap.copyOf(checkNotNull(parameters, "parameters"));
+         return this;
+      }
+
+      /**
+       * Only sent when set: Heat enables rollback on create by default, and the update call does not take it.
+       */
+      public Builder disableRollback(boolean disableRollback) {
+         this.disableRollback = disableRollback;
+         return this;
+      }
+
+      /**
+       * @param name the name the template or the environment references the file with
+       * @throws IllegalArgumentException if a file already has that name
+       */
+      public Builder file(String name, ByteSource content) {
+         checkNotNull(name, "name");
+         checkArgument(!files.containsKey(name), "file %s was already added", name);
+         files.put(name, checkNotNull(content, "content"));
+         return this;
+      }
+
+      /**
+       * @param name the name the template or the environment references the file with
+       * @throws IllegalArgumentException if a file already has that name
+       */
+      public Builder file(String name, File content) {
+         return file(name, source(checkNotNull(content, "content")));
+      }
+
+      private ByteSource source(File file) {
+         File canonical;
+         try {
+            canonical = file.getCanonicalFile();
+         } catch (IOException e) {
+            throw Throwables.propagate(e);
+         }
+         ByteSource source = sources.get(canonical);
+         if (source == null) {
+            source = Files.asByteSource(canonical);
+            sources.put(canonical, source);
+         }
+         return source;
+      }
+
+      /**
+       * Adds every file below {@code directory}, named by {@code prefix} followed by its path relative to
+       * {@code directory}, with {@code /} separators.
+       */
+      public Builder files(String prefix, File directory) {
+         checkNotNull(prefix, "prefix");
+         checkArgument(checkNotNull(directory, "directory").isDirectory(), "%s is not a directory", directory);
+         addFiles(prefix, directory);
+         return this;
+      }
+
+      private void addFiles(String prefix, File directory) {
+         File[] children = directory.listFiles();
+         checkState(children != null, "could not list %s", directory);
+         Arrays.sort(children);
+         for (File child : children) {
+            if (child.isDirectory()) {
+               addFiles(prefix + child.getName() + "/", child);
+            } else if (child.isFile()) {
+               file(prefix + child.getName(), child);
+            }
+         }
+      }
+
+      public StackBundle build() {
+         checkState(template != null ^ templateUrl != null, "either a template or a template URL is required");
+         return new StackBundle(this);
+      }
+   }
+}
@@ -45,18 +45,30 @@ public abstract class UpdateStack {
     */
    @Nullable public abstract Map<String, Object> getParameters();
 
+   /**
+    * @see Builder#files(java.util.Map)
+    */
+   @Nullable public abstract Map<String, String> getFiles();
+
+   /**
+    * @see Builder#environment(String)
+    */
+   @Nullable public abstract String getEnvironment();
+
    public static Builder builder() {
       return new AutoValue_UpdateStack.Builder();
    }
 
    public abstract Builder toBuilder();
 
-   @SerializedNames({"template", "template_url", "parameters"})
-   private static UpdateStack create(@Nullable String template, @Nullable String templateUrl, @Nullable Map<String, Object> parameters) {
+   @SerializedNames({"template", "template_url", "parameters", "files", "environment"})
+   private static UpdateStack create(@Nullable String template, @Nullable String templateUrl, @Nullable Map<String, Object> parameters, @Nullable Map<String, String> files, @Nullable String environment) {
       return builder()
             .template(template)
             .templateUrl(templateUrl)
-            .parameters(parameters).build();
+            .parameters(parameters)
+            .files(files)
+            .environment(environment).build();
    }
 
 
@@ -65,13 +77,17 @@ public abstract class UpdateStack {
       public abstract Builder template(String template);
       public abstract Builder templateUrl(String templateUrl);
       public abstract Builder parameters(Map<String, Object> parameters);
+      public abstract Builder files(Map<String, String> files);
+      public abstract Builder environment(String environment);
 
       abstract Map<String, Object> getParameters();
+      abstract Map<String, String> getFiles();
 
       abstract UpdateStack autoBuild();
 
       public UpdateStack build() {
          parameters(getParameters() != null ? ImmutableMap.copyOf(getParameters()) : null);
+         files(getFiles() != null ? ImmutableMap.copyOf(getFiles()) : null);
          return autoBuild();
       }
    }
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.StackResource;
+import org.jclouds.openstack.heat.v1.domain.Template;
+import org.jclouds.openstack.heat.v1.features.ResourceApi;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * The resource types a region supports, listed once and refreshed periodically instead of before every use.
+ * <p/>
+ * The types are kept sorted, so membership and prefix queries do not scan them, and reads never block: the catalog
+ * is listed on the first query, then only replaced by refreshes. Checking the resource types of a template here
+ * lets a linter reject a misspelled type before the slower {@code TemplateApi.validate} call.
+ * <p/>
+ * Only the types of the {@code OS::} and {@code AWS::} namespaces, which Heat defines itself, are checked. Other
+ * types, such as the custom types an environment maps in its {@code resource_registry} and the URLs and file names of
+ * nested templates, are not in the catalog, and {@link #contains}, {@link #isKnown} and {@link #getUnknownTypes}
+ * treat them as known.
+ * <p/>
+ * An empty listing, which is what a region without the resource types call answers, is kept until the next refresh
+ * like any other, and no type is reported as unknown meanwhile. A refresh answering an empty listing keeps the types
+ * listed before.
+ *
+ * <pre>
+ * ResourceTypeCatalog catalog = ResourceTypeCatalog.builder(heatApi, "RegionOne")
+ *       .scheduler(Executors.newSingleThreadScheduledExecutor())
+ *       .build();
+ * Set&lt;String&gt; unknown = catalog.getUnknownTypes(template);
+ * </pre>
+ */
+public class ResourceTypeCatalog implements Closeable {
+
+   private static final ImmutableList<String> CHECKED_NAMESPACES = ImmutableList.of("OS::", "AWS::");
+
+   private final ResourceApi api;
+   private final AtomicLong requestCount = new AtomicLong();
+   private final AtomicLong refreshFailureCount = new AtomicLong();
+   private final AtomicReference<Throwable> lastRefreshFailure = new AtomicReference<Throwable>();
+   private volatile ImmutableSortedSet<String> types;
+   private ScheduledFuture<?> scheduled;
+
+   protected ResourceTypeCatalog(HeatApi api, String region, @Nullable ScheduledExecutorService scheduler,
+         long refreshIntervalNanos) {
+      this.api = checkNotNull(api, "api").getResourceApi(checkNotNull(region, "region"));
+      if (scheduler != null) {
+         scheduled = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  refresh();
+               } catch (RuntimeException e) {
+                  refreshFailureCount.incrementAndGet();
+                  lastRefreshFailure.set(e);
+               }
+            }
+         }, refreshIntervalNanos, refreshIntervalNanos, TimeUnit.NANOSECONDS);
+      }
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * @return every resource type of the region, sorted
+    */
+   public ImmutableSortedSet<String> getTypes() {
+      ImmutableSortedSet<String> current = types;
+      if (current == null) {
+         synchronized (this) {
+            current = types;
+            if (current == null) {
+               current = load();
+            }
+         }
+      }
+      return current;
+   }
+
+   /**
+    * @return false when {@code type} is a checked type the region does not support, as {@link #getUnknownTypes}
+    *         reports it
+    */
+   public boolean contains(String type) {
+      return isKnown(checkNotNull(type, "type"), getTypes());
+   }
+
+   /**
+    * @return the resource types starting with {@code prefix}, such as {@code OS::Nova::}
+    */
+   public ImmutableSortedSet<String> getTypesWithPrefix(String prefix) {
+      checkNotNull(prefix, "prefix");
+      return getTypes().subSet(prefix, prefix + Character.MAX_VALUE);
+   }
+
+   /**
+    * @return the checked types in {@code types} that the region does not support, none if its types could not be
+    *         listed
+    */
+   public ImmutableSet<String> getUnknownTypes(Iterable<String> types) {
+      checkNotNull(types, "types");
+      ImmutableSortedSet<String> known = getTypes();
+      ImmutableSet.Builder<String> unknown = ImmutableSet.builder();
+      for (String type : types) {
+         if (type != null && !isKnown(type, known)) {
+            unknown.add(type);
+         }
+      }
+      return unknown.build();
+   }
+
+   /**
+    * @return the checked types of the resources of {@code template} that the region does not support
+    */
+   public ImmutableSet<String> getUnknownTypes(Template template) {
+      ImmutableSet.Builder<String> types = ImmutableSet.builder();
+      for (Object resource : checkNotNull(template, "template").getResources().values()) {
+         if (resource instanceof Map && ((Map<?, ?>) resource).get("type") instanceof String) {
+            types.add((String) ((Map<?, ?>) resource).get("type"));
+         }
+      }
+      return getUnknownTypes(types.build());
+   }
+
+   /**
+    * @return true unless {@code type} is a checked type missing from {@code known}, which is empty when the types could
+    *         not be listed
+    */
+   private static boolean isKnown(String type, ImmutableSortedSet<String> known) {
+      if (known.isEmpty() || known.contains(type)) {
+         return true;
+      }
+      for (String namespace : CHECKED_NAMESPACES) {
+         if (type.startsWith(namespace)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @see #contains(String)
+    */
+   public boolean isKnown(StackResource resource) {
+      return contains(checkNotNull(resource, "resource").getResourceType());
+   }
+
+   /**
+    * Lists the resource types again. This is the only way the catalog is refreshed when it has no scheduler. An empty
+    * listing keeps the types listed before, if any.
+    */
+   public synchronized void refresh() {
+      load();
+   }
+
+   private ImmutableSortedSet<String> load() {
+      requestCount.incrementAndGet();
+      ImmutableSortedSet<String> loaded = ImmutableSortedSet.copyOf(api.listTypes());
+      ImmutableSortedSet<String> current = types;
+      if (loaded.isEmpty() && current != null) {
+         return current;
+      }
+      types = loaded;
+      return loaded;
+   }
+
+   /**
+    * @return how many times the resource types were listed
+    */
+   public long getRequestCount() {
+      return requestCount.get();
+   }
+
+   /**
+    * @return how many scheduled refreshes failed
+    */
+   public long getRefreshFailureCount() {
+      return refreshFailureCount.get();
+   }
+
+   @Nullable
+   public Throwable getLastRefreshFailure() {
+      return lastRefreshFailure.get();
+   }
+
+   /**
+    * Stops the scheduled refreshes. The scheduler itself is left running.
+    */
+   @Override
+   public synchronized void close() {
+      if (scheduled != null) {
+         scheduled.cancel(false);
+         scheduled = null;
+      }
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private ScheduledExecutorService scheduler;
+      private long refreshIntervalNanos = TimeUnit.HOURS.toNanos(1);
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The scheduler running the refreshes. Without one, refreshes only happen when
+       * {@link ResourceTypeCatalog#refresh()} is called.
+       */
+      public Builder scheduler(ScheduledExecutorService scheduler) {
+         this.scheduler = checkNotNull(scheduler, "scheduler");
+         return this;
+      }
+
+      /**
+       * How often the scheduler lists the resource types again. Defaults to 1 hour.
+       */
+      public Builder refreshInterval(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "refreshInterval must be positive");
+         this.refreshIntervalNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      public ResourceTypeCatalog build() {
+         return new ResourceTypeCatalog(api, region, scheduler, refreshIntervalNanos);
+      }
+   }
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackOutput;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * A read-through cache of stacks, for reading their outputs and parameters much more often than they change.
+ * <p/>
+ * Reads never block on each other: a cached stack is returned as is, and a missing one is fetched with
+ * {@link StackApi#get(String, String)}. A refresh lists every page of the stacks of the region, and fetches again
+ * only the cached stacks whose updated time or status changed since they were fetched. Cached stacks that are no
+ * longer listed are dropped, and fetched again on their next read.
+ *
+ * <pre>
+ * StackCache cache = StackCache.builder(heatApi, "RegionOne")
+ *       .scheduler(Executors.newSingleThreadScheduledExecutor())
+ *       .refreshInterval(30, TimeUnit.SECONDS)
+ *       .build();
+ * Object address = cache.getOutputValue(stackName, stackId, "server_address");
+ * </pre>
+ */
+public class StackCache implements Closeable {
+
+   private final StackApi api;
+   private final ConcurrentMap<String, Stack> stacks = Maps.newConcurrentMap();
+   private final AtomicLong hitCount = new AtomicLong();
+   private final AtomicLong missCount = new AtomicLong();
+   private final AtomicLong requestCount = new AtomicLong();
+   private final AtomicLong refreshFailureCount = new AtomicLong();
+   private final AtomicReference<Throwable> lastRefreshFailure = new AtomicReference<Throwable>();
+   private final ScheduledExecutorService scheduler;
+   private final long refreshIntervalNanos;
+   private ScheduledFuture<?> scheduled;
+
+   protected StackCache(HeatApi api, String region, @Nullable ScheduledExecutorService scheduler,
+         long refreshIntervalNanos) {
+      this.api = checkNotNull(api, "api").getStackApi(checkNotNull(region, "region"));
+      this.scheduler = scheduler;
+      this.refreshIntervalNanos = refreshIntervalNanos;
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * @return the cached stack, or the stack fetched from Heat if it is not cached yet, or null if it does not exist
+    */
+   @Nullable
+   public Stack get(String name, String id) {
+      checkNotNull(name, "name");
+      Stack stack = stacks.get(checkNotNull(id, "id"));
+      if (stack != null) {
+         hitCount.incrementAndGet();
+         return stack;
+      }
+      missCount.incrementAndGet();
+      requestCount.incrementAndGet();
+      stack = api.get(name, id);
+      if (stack != null) {
+         stacks.put(id, stack);
+      }
+      return stack;
+   }
+
+   /**
+    * @return the outputs of the stack, or null if it does not exist
+    */
+   @Nullable
+   public List<StackOutput> getOutputs(String name, String id) {
+      Stack stack = get(name, id);
+      return stack != null ? stack.getOutputs() : null;
+   }
+
+   /**
+    * @return the value of the output with the given key, or null if the stack or the output does not exist
+    */
+   @Nullable
+   public Object getOutputValue(String name, String id, String key) {
+      checkNotNull(key, "key");
+      Stack stack = get(name, id);
+      if (stack == null) {
+         return null;
+      }
+      for (StackOutput output : stack.getOutputs()) {
+         if (key.equals(output.getKey())) {
+            return output.getValue();
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return the parameters of the stack, or null if it does not exist
+    */
+   @Nullable
+   public Map<String, String> getParameters(String name, String id) {
+      Stack stack = get(name, id);
+      return stack != null ? stack.getParameters() : null;
+   }
+
+   /**
+    * Lists the stacks and fetches again the cached ones that changed. This is the only way the cache is refreshed
+    * when it has no scheduler.
+    */
+   public synchronized void refresh() {
+      if (stacks.isEmpty()) {
+         return;
+      }
+      Map<String, Stack> listed = Maps.newHashMap();
+      for (IterableWithMarker<Stack> page : api.listInPages()) {
+         requestCount.incrementAndGet();
+         for (Stack stack : page) {
+            listed.put(stack.getId(), stack);
+         }
+      }
+      for (Stack cached : stacks.values()) {
+         Stack current = listed.get(cached.getId());
+         if (current == null) {
+            stacks.remove(cached.getId(), cached);
+         } else if (!Objects.equal(current.getUpdated(), cached.getUpdated())
+               || current.getStatus() != cached.getStatus()) {
+            requestCount.incrementAndGet();
+            Stack fetched = api.get(cached.getName(), cached.getId());
+            if (fetched != null) {
+               stacks.replace(cached.getId(), cached, fetched);
+            } else {
+               stacks.remove(cached.getId(), cached);
+            }
+         }
+      }
+   }
+
+   /**
+    * Schedules the refreshes, once the cache is fully constructed, so that no refresh sees it half built.
+    */
+   private synchronized void start() {
+      if (scheduler != null) {
+         scheduled = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+               refreshQuietly();
+            }
+         }, refreshIntervalNanos, refreshIntervalNanos, TimeUnit.NANOSECONDS);
+      }
+   }
+
+   private void refreshQuietly() {
+      try {
+         refresh();
+      } catch (RuntimeException e) {
+         refreshFailureCount.incrementAndGet();
+         lastRefreshFailure.set(e);
+      }
+   }
+
+   /**
+    * Drops a stack, such as right after updating it, so that its next read fetches it.
+    */
+   public void invalidate(String id) {
+      stacks.remove(checkNotNull(id, "id"));
+   }
+
+   public void invalidateAll() {
+      stacks.clear();
+   }
+
+   /**
+    * @return how many stacks are cached
+    */
+   public int size() {
+      return stacks.size();
+   }
+
+   public long getHitCount() {
+      return hitCount.get();
+   }
+
+   public long getMissCount() {
+      return missCount.get();
+   }
+
+   /**
+    * @return how many list and get requests the reads and the refreshes sent, counting each page listed
+    */
+   public long getRequestCount() {
+      return requestCount.get();
+   }
+
+   /**
+    * @return how many scheduled refreshes failed
+    */
+   public long getRefreshFailureCount() {
+      return refreshFailureCount.get();
+   }
+
+   @Nullable
+   public Throwable getLastRefreshFailure() {
+      return lastRefreshFailure.get();
+   }
+
+   /**
+    * Stops the scheduled refreshes and empties the cache. The scheduler itself is left running.
+    */
+   @Override
+   public synchronized void close() {
+      if (scheduled != null) {
+         scheduled.cancel(false);
+         scheduled = null;
+      }
+      stacks.clear();
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private ScheduledExecutorService scheduler;
+      private long refreshIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The scheduler running the refreshes. Without one, refreshes only happen when {@link StackCache#refresh()}
+       * is called.
+       */
+      public Builder scheduler(ScheduledExecutorService scheduler) {
+         this.scheduler = checkNotNull(scheduler, "scheduler");
+         return this;
+      }
+
+      /**
+       * How often the scheduler refreshes the cache. Defaults to 30 seconds.
+       */
+      public Builder refreshInterval(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "refreshInterval must be positive");
+         this.refreshIntervalNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      public StackCache build() {
+         StackCache cache = new StackCache(api, region, scheduler, refreshIntervalNanos);
+         cache.start();
+         return cache;
+      }
+   }
+}
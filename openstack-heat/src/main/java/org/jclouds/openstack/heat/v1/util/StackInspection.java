@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import org.jclouds.openstack.heat.v1.domain.StackResource;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * What {@link StackInspector} found out about the resources of a stack.
+ */
+public class StackInspection {
+
+   private final StackResourceGraph graph;
+   private final ImmutableMap<String, StackResource> resources;
+   private final ImmutableMap<String, Map<String, Object>> metadata;
+   private final ImmutableMap<String, Throwable> failures;
+
+   protected StackInspection(StackResourceGraph graph, ImmutableMap<String, StackResource> resources,
+         ImmutableMap<String, Map<String, Object>> metadata, ImmutableMap<String, Throwable> failures) {
+      this.graph = checkNotNull(graph, "graph");
+      this.resources = checkNotNull(resources, "resources");
+      this.metadata = checkNotNull(metadata, "metadata");
+      this.failures = checkNotNull(failures, "failures");
+   }
+
+   /**
+    * @return the graph of the resources as listed
+    */
+   public StackResourceGraph getGraph() {
+      return graph;
+   }
+
+   /**
+    * @return the details of the resources that were fetched, by name
+    */
+   public ImmutableMap<String, StackResource> getResources() {
+      return resources;
+   }
+
+   /**
+    * @return the metadata of the resources that were fetched, by name
+    */
+   public ImmutableMap<String, Map<String, Object>> getMetadata() {
+      return metadata;
+   }
+
+   /**
+    * @return why the details or metadata of a resource could not be fetched, by name
+    */
+   public ImmutableMap<String, Throwable> getFailures() {
+      return failures;
+   }
+
+   public boolean isComplete() {
+      return failures.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("resources", graph.size()).add("fetched", resources.size())
+            .add("failures", failures.keySet()).toString();
+   }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.StackResource;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Lists the resources of a stack, builds their {@link StackResourceGraph}, and fetches the details and metadata of
+ * every resource concurrently, never more than {@code maxConcurrency} resources at a time.
+ * <p/>
+ * A resource whose details or metadata cannot be fetched is reported with its failure; the others are still
+ * inspected. A resource deleted since it was listed is left out of the details and metadata.
+ *
+ * <pre>
+ * StackInspector inspector = StackInspector.builder(heatApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .maxConcurrency(20)
+ *       .build();
+ * StackInspection inspection = inspector.inspect(stackName, stackId);
+ * for (String name : inspection.getGraph().getTopologicalOrder()) {
+ *    ...
+ * }
+ * </pre>
+ */
+public class StackInspector {
+
+   private final StackApi api;
+   private final ListeningExecutorService executor;
+   private final int maxConcurrency;
+
+   protected StackInspector(HeatApi api, String region, ListeningExecutorService executor, int maxConcurrency) {
+      this.api = checkNotNull(api, "api").getStackApi(checkNotNull(region, "region"));
+      this.executor = checkNotNull(executor, "executor");
+      this.maxConcurrency = maxConcurrency;
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   public StackInspection inspect(final String stackName, final String stackId) {
+      checkNotNull(stackName, "stackName");
+      checkNotNull(stackId, "stackId");
+      StackResourceGraph graph = StackResourceGraph.of(api.listStackResources(stackName, stackId));
+
+      Map<String, Callable<Inspected>> tasks = Maps.newLinkedHashMap();
+      for (final String name : graph.getResources().keySet()) {
+         tasks.put(name, new Callable<Inspected>() {
+            @Override
+            public Inspected call() {
+               StackResource resource = api.getStackResource(stackName, stackId, name);
+               if (resource == null) {
+                  return new Inspected(null, null);
+               }
+               Map<String, Object> metadata = api.getStackResourceMetadata(stackName, stackId, name);
+               return new Inspected(resource, metadata);
+            }
+         });
+      }
+
+      ImmutableMap.Builder<String, StackResource> resources = ImmutableMap.builder();
+      ImmutableMap.Builder<String, Map<String, Object>> metadata = ImmutableMap.builder();
+      ImmutableMap.Builder<String, Throwable> failures = ImmutableMap.builder();
+      for (Map.Entry<String, ConcurrentTasks.Outcome<Inspected>> outcome : ConcurrentTasks
+            .invokeAll(executor, maxConcurrency, tasks).entrySet()) {
+         Inspected inspected = outcome.getValue().getValue();
+         if (!outcome.getValue().isSuccess()) {
+            failures.put(outcome.getKey(), outcome.getValue().getFailure());
+         } else if (inspected.resource != null) {
+            resources.put(outcome.getKey(), inspected.resource);
+            metadata.put(outcome.getKey(), inspected.metadata);
+         }
+      }
+      return new StackInspection(graph, resources.build(), metadata.build(), failures.build());
+   }
+
+   private static final class Inspected {
+      private final StackResource resource;
+      private final Map<String, Object> metadata;
+
+      private Inspected(StackResource resource, Map<String, Object> metadata) {
+         this.resource = resource;
+         // metadata may hold JSON nulls, which an ImmutableMap rejects
+         this.metadata = metadata != null
+               ? Collections.unmodifiableMap(new LinkedHashMap<String, Object>(metadata))
+               : ImmutableMap.<String, Object> of();
+      }
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private ListeningExecutorService executor;
+      private int maxConcurrency = 10;
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The executor fetching the resources, typically {@code context.utils().userExecutor()}.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = checkNotNull(executor, "executor");
+         return this;
+      }
+
+      /**
+       * How many resources are fetched at the same time. Defaults to 10.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      public StackInspector build() {
+         checkArgument(executor != null, "an executor is required");
+         return new StackInspector(api, region, executor, maxConcurrency);
+      }
+   }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.jclouds.openstack.heat.v1.domain.StackResource;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The dependencies between the resources of a stack, as described by their {@code required_by} names. A resource
+ * comes before the resources that require it: Heat creates it first and deletes it last.
+ * <p/>
+ * Names in {@code required_by} that are not resources of the stack are ignored.
+ *
+ * <pre>
+ * StackResourceGraph graph = StackResourceGraph.of(stackApi.listStackResources(stackName, stackId));
+ * List&lt;String&gt; creationOrder = graph.getTopologicalOrder();
+ * Set&lt;String&gt; affected = graph.getBlastRadius("private_net");
+ * </pre>
+ */
+public class StackResourceGraph {
+
+   private static final Function<StackResource, Long> UNIT = new Function<StackResource, Long>() {
+      @Override
+      public Long apply(StackResource resource) {
+         return 1L;
+      }
+   };
+
+   private final ImmutableMap<String, StackResource> resources;
+   private final ImmutableSetMultimap<String, String> dependents;
+   private final ImmutableSetMultimap<String, String> dependencies;
+   private volatile ImmutableList<String> order;
+
+   protected StackResourceGraph(Map<String, StackResource> resources,
+         ImmutableSetMultimap<String, String> dependents) {
+      this.resources = ImmutableMap.copyOf(resources);
+      this.dependents = dependents;
+      this.dependencies = dependents.inverse();
+   }
+
+   public static StackResourceGraph of(Iterable<StackResource> resources) {
+      Map<String, StackResource> byName = Maps.newLinkedHashMap();
+      for (StackResource resource : checkNotNull(resources, "resources")) {
+         byName.put(resource.getName(), resource);
+      }
+      ImmutableSetMultimap.Builder<String, String> dependents = ImmutableSetMultimap.builder();
+      for (StackResource resource : byName.values()) {
+         for (String dependent : resource.getRequiredBy()) {
+            if (byName.containsKey(dependent)) {
+               dependents.put(resource.getName(), dependent);
+            }
+         }
+      }
+      return new StackResourceGraph(byName, dependents.build());
+   }
+
+   public int size() {
+      return resources.size();
+   }
+
+   /**
+    * @return the resources by name, in the order they were listed
+    */
+   public ImmutableMap<String, StackResource> getResources() {
+      return resources;
+   }
+
+   public StackResource getResource(String name) {
+      return resource(name);
+   }
+
+   /**
+    * @return the resources {@code name} requires
+    */
+   public ImmutableSet<String> getDependencies(String name) {
+      resource(name);
+      return dependencies.get(name);
+   }
+
+   /**
+    * @return the resources that require {@code name}
+    */
+   public ImmutableSet<String> getDependents(String name) {
+      resource(name);
+      return dependents.get(name);
+   }
+
+   /**
+    * @return the resources in an order where each comes after the resources it requires. Resources that could come
+    *         in any order are sorted by name.
+    * @throws IllegalStateException if the dependencies have a cycle
+    */
+   public ImmutableList<String> getTopologicalOrder() {
+      ImmutableList<String> sorted = order;
+      if (sorted == null) {
+         Map<String, Integer> remaining = Maps.newHashMap();
+         PriorityQueue<String> ready = new PriorityQueue<String>();
+         for (String name : resources.keySet()) {
+            int count = dependencies.get(name).size();
+            remaining.put(name, count);
+            if (count == 0) {
+               ready.add(name);
+            }
+         }
+         ImmutableList.Builder<String> builder = ImmutableList.builder();
+         int visited = 0;
+         while (!ready.isEmpty()) {
+            String name = ready.poll();
+            builder.add(name);
+            visited++;
+            for (String dependent : dependents.get(name)) {
+               int count = remaining.get(dependent) - 1;
+               remaining.put(dependent, count);
+               if (count == 0) {
+                  ready.add(dependent);
+               }
+            }
+         }
+         checkState(visited == resources.size(), "the dependencies of the stack resources have a cycle");
+         order = sorted = builder.build();
+      }
+      return sorted;
+   }
+
+   /**
+    * @return the longest chain of resources, each requiring the previous one
+    */
+   public ImmutableList<String> getCriticalPath() {
+      return getCriticalPath(UNIT);
+   }
+
+   /**
+    * @param weight the cost of each resource, such as the seconds it took to create
+    * @return the chain of resources, each requiring the previous one, with the largest total weight
+    */
+   public ImmutableList<String> getCriticalPath(Function<StackResource, Long> weight) {
+      checkNotNull(weight, "weight");
+      Map<String, Long> cost = Maps.newHashMap();
+      Map<String, String> previous = Maps.newHashMap();
+      String last = null;
+      for (String name : getTopologicalOrder()) {
+         long best = 0;
+         String from = null;
+         for (String dependency : dependencies.get(name)) {
+            if (from == null || cost.get(dependency) > best) {
+               best = cost.get(dependency);
+               from = dependency;
+            }
+         }
+         if (from != null) {
+            previous.put(name, from);
+         }
+         long total = best + checkNotNull(weight.apply(resources.get(name)), "weight of %s", name);
+         cost.put(name, total);
+         if (last == null || total > cost.get(last)) {
+            last = name;
+         }
+      }
+      List<String> path = Lists.newArrayList();
+      for (String name = last; name != null; name = previous.get(name)) {
+         path.add(name);
+      }
+      return ImmutableList.copyOf(Lists.reverse(path));
+   }
+
+   /**
+    * @return every resource that requires {@code name}, directly or not, which a failure of {@code name} affects
+    */
+   public ImmutableSet<String> getBlastRadius(String name) {
+      resource(name);
+      Set<String> reached = Sets.newLinkedHashSet();
+      Deque<String> pending = new ArrayDeque<String>(dependents.get(name));
+      while (!pending.isEmpty()) {
+         String next = pending.poll();
+         if (reached.add(next)) {
+            pending.addAll(dependents.get(next));
+         }
+      }
+      return ImmutableSet.copyOf(reached);
+   }
+
+   private StackResource resource(String name) {
+      StackResource resource = resources.get(checkNotNull(name, "name"));
+      checkArgument(resource != null, "unknown resource %s", name);
+      return resource;
+   }
+}
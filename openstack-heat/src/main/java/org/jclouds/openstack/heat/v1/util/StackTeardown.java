@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackOutput;
+import org.jclouds.openstack.heat.v1.domain.StackStatus;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Deletes a set of stacks that refer to each other, deleting the stacks that use another one before it, and the
+ * independent ones in parallel.
+ * <p/>
+ * Heat does not record which stacks use which, so this is inferred from their values: a stack uses another one when
+ * one of its parameters is the ID, the name or a string output of the other stack; the parameters of comma delimited
+ * lists are split, and so are the outputs that are lists. Only values that can identify something are matched:
+ * numbers, booleans, values shorter than {@link Builder#minValueLength} (8 characters by default), outputs that
+ * repeat a parameter of their own stack and values several stacks share are ignored. A dependency passed some other
+ * way, or through a short value, is missed, and the stacks may then be deleted in the wrong order. A stack is deleted once every stack
+ * using it is deleted, with no more than {@code maxConcurrency} deletions in progress at a time. Deletions are
+ * followed by a {@link StackTracker}, so one scheduler polls all of them.
+ * <p/>
+ * When a stack fails to be deleted, the stacks it uses are left alone, since they are still in use.
+ *
+ * <pre>
+ * StackTracker tracker = StackTracker.builder(heatApi, "RegionOne")
+ *       .scheduler(Executors.newSingleThreadScheduledExecutor())
+ *       .timeout(1, TimeUnit.HOURS)
+ *       .build();
+ * StackTeardown teardown = StackTeardown.builder(heatApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .tracker(tracker)
+ *       .maxConcurrency(10)
+ *       .build();
+ * StackTeardownResult result = teardown.delete(stackApi.list(ListStackOptions.Builder.name("env-42")));
+ * </pre>
+ */
+public class StackTeardown {
+
+   private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+
+   private final StackApi api;
+   private final ListeningExecutorService executor;
+   private final StackTracker tracker;
+   private final int maxConcurrency;
+   private final int minValueLength;
+
+   protected StackTeardown(HeatApi api, String region, ListeningExecutorService executor, StackTracker tracker,
+         int maxConcurrency, int minValueLength) {
+      this.api = checkNotNull(api, "api").getStackApi(checkNotNull(region, "region"));
+      this.executor = checkNotNull(executor, "executor");
+      this.tracker = checkNotNull(tracker, "tracker");
+      this.maxConcurrency = maxConcurrency;
+      this.minValueLength = minValueLength;
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Fetches the stacks to read their parameters and outputs, which listed stacks do not have, and works out which
+    * stacks use which, matching their values as described {@link StackTeardown above}.
+    *
+    * @return the stacks each stack uses, by ID
+    * @throws IllegalStateException if the stacks use each other in a cycle
+    */
+   public ImmutableSetMultimap<String, String> getDependencies(Iterable<Stack> stacks) {
+      return dependencies(fetch(stacks));
+   }
+
+   /**
+    * Deletes the stacks and waits for their deletion to complete or fail.
+    *
+    * @throws IllegalStateException if the stacks use each other in a cycle, before deleting any
+    */
+   public StackTeardownResult delete(Iterable<Stack> stacks) {
+      Map<String, Stack> fetched = fetch(stacks);
+      ImmutableSetMultimap<String, String> uses = dependencies(fetched);
+      Map<String, Integer> users = Maps.newHashMap();
+      for (String id : fetched.keySet()) {
+         users.put(id, uses.inverse().get(id).size());
+      }
+
+      StackTeardownResult.Builder result = StackTeardownResult.builder();
+      Deque<String> ready = Lists.newLinkedList();
+      for (String id : fetched.keySet()) {
+         if (users.get(id) == 0) {
+            ready.add(id);
+         }
+      }
+      BlockingQueue<Completion> completions = new LinkedBlockingQueue<Completion>();
+      Set<String> pending = Sets.newHashSet(fetched.keySet());
+      int inProgress = 0;
+      while (!ready.isEmpty() || inProgress > 0) {
+         while (!ready.isEmpty() && inProgress < maxConcurrency) {
+            start(fetched.get(ready.poll()), completions);
+            inProgress++;
+         }
+         Completion completion = Uninterruptibles.takeUninterruptibly(completions);
+         inProgress--;
+         pending.remove(completion.id);
+         if (completion.failure != null) {
+            result.failed(completion.id, completion.failure);
+            continue;
+         }
+         result.deleted(completion.id);
+         for (String used : uses.get(completion.id)) {
+            int remaining = users.get(used) - 1;
+            users.put(used, remaining);
+            if (remaining == 0) {
+               ready.add(used);
+            }
+         }
+      }
+      for (String id : pending) {
+         result.skipped(id);
+      }
+      return result.build();
+   }
+
+   /**
+    * Deletes the stack, then has the tracker follow the deletion.
+    */
+   private void start(final Stack stack, final BlockingQueue<Completion> completions) {
+      final ListenableFuture<Boolean> deletion = executor.submit(new Callable<Boolean>() {
+         @Override
+         public Boolean call() {
+            return api.delete(stack.getName(), stack.getId());
+         }
+      });
+      deletion.addListener(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               if (!Uninterruptibles.getUninterruptibly(deletion)) {
+                  // already gone
+                  completions.add(new Completion(stack.getId(), null));
+                  return;
+               }
+            } catch (ExecutionException e) {
+               completions.add(new Completion(stack.getId(), e.getCause()));
+               return;
+            }
+            final ListenableFuture<Stack> tracked = tracker.trackDeletion(stack.getName(), stack.getId());
+            tracked.addListener(new Runnable() {
+               @Override
+               public void run() {
+                  try {
+                     Stack deleted = Uninterruptibles.getUninterruptibly(tracked);
+                     Throwable failure = null;
+                     if (deleted != null && deleted.getStatus() == StackStatus.DELETE_FAILED) {
+                        failure = new IllegalStateException(String.format("stack %s failed to be deleted: %s",
+                              stack.getId(), deleted.getSatusReason()));
+                     }
+                     completions.add(new Completion(stack.getId(), failure));
+                  } catch (ExecutionException e) {
+                     completions.add(new Completion(stack.getId(), e.getCause()));
+                  } catch (RuntimeException e) {
+                     // cancelled when the tracker was closed
+                     completions.add(new Completion(stack.getId(), e));
+                  }
+               }
+            }, MoreExecutors.directExecutor());
+         }
+      }, MoreExecutors.directExecutor());
+   }
+
+   private Map<String, Stack> fetch(Iterable<Stack> stacks) {
+      Map<String, Callable<Stack>> tasks = Maps.newLinkedHashMap();
+      for (final Stack stack : checkNotNull(stacks, "stacks")) {
+         checkNotNull(stack.getName(), "name of stack %s", stack.getId());
+         tasks.put(stack.getId(), new Callable<Stack>() {
+            @Override
+            public Stack call() {
+               return api.get(stack.getName(), stack.getId());
+            }
+         });
+      }
+      Map<String, Stack> fetched = Maps.newLinkedHashMap();
+      for (Map.Entry<String, ConcurrentTasks.Outcome<Stack>> outcome : ConcurrentTasks
+            .invokeAll(executor, maxConcurrency, tasks).entrySet()) {
+         checkState(outcome.getValue().isSuccess(), "could not fetch stack %s: %s", outcome.getKey(),
+               outcome.getValue().getFailure());
+         // stacks that no longer exist need no deletion
+         if (outcome.getValue().getValue() != null) {
+            fetched.put(outcome.getKey(), outcome.getValue().getValue());
+         }
+      }
+      return fetched;
+   }
+
+   private ImmutableSetMultimap<String, String> dependencies(Map<String, Stack> stacks) {
+      SetMultimap<String, String> candidates = HashMultimap.create();
+      for (Stack stack : stacks.values()) {
+         if (isIdentifying(stack.getName())) {
+            candidates.put(stack.getName(), stack.getId());
+         }
+         for (StackOutput output : stack.getOutputs()) {
+            for (String value : strings(output.getValue())) {
+               // an output repeating a parameter of its stack does not identify anything of it
+               if (isIdentifying(value) && !stack.getParameters().containsValue(value)) {
+                  candidates.put(value, stack.getId());
+               }
+            }
+         }
+      }
+      Map<String, String> owners = Maps.newHashMap();
+      for (Map.Entry<String, Collection<String>> candidate : candidates.asMap().entrySet()) {
+         if (candidate.getValue().size() == 1) {
+            owners.put(candidate.getKey(), Iterables.getOnlyElement(candidate.getValue()));
+         }
+      }
+      for (Stack stack : stacks.values()) {
+         owners.put(stack.getId(), stack.getId());
+      }
+      ImmutableSetMultimap.Builder<String, String> uses = ImmutableSetMultimap.builder();
+      for (Stack stack : stacks.values()) {
+         for (Map.Entry<String, String> parameter : stack.getParameters().entrySet()) {
+            // the pseudo parameters Heat adds, such as OS::stack_id, name the stack itself
+            if (parameter.getKey().startsWith("OS::") || parameter.getValue() == null) {
+               continue;
+            }
+            for (String value : values(parameter.getValue())) {
+               String owner = owners.get(value);
+               if (owner != null && !owner.equals(stack.getId())) {
+                  uses.put(stack.getId(), owner);
+               }
+            }
+         }
+      }
+      ImmutableSetMultimap<String, String> dependencies = uses.build();
+      checkAcyclic(stacks.keySet(), dependencies);
+      return dependencies;
+   }
+
+   private static List<String> values(String parameter) {
+      List<String> values = Lists.newArrayList(parameter);
+      if (parameter.indexOf(',') >= 0) {
+         values.addAll(COMMA.splitToList(parameter));
+      }
+      return values;
+   }
+
+   /**
+    * @return the strings of an output value, which may also be a list, a map or a scalar
+    */
+   private static List<String> strings(@Nullable Object output) {
+      List<String> values = Lists.newArrayList();
+      if (output instanceof String) {
+         values.add((String) output);
+      } else if (output instanceof Iterable) {
+         for (Object element : (Iterable<?>) output) {
+            if (element instanceof String) {
+               values.add((String) element);
+            }
+         }
+      }
+      return values;
+   }
+
+   private boolean isIdentifying(@Nullable String value) {
+      if (value == null || value.length() < minValueLength || "true".equalsIgnoreCase(value)
+            || "false".equalsIgnoreCase(value)) {
+         return false;
+      }
+      try {
+         Double.parseDouble(value);
+         return false;
+      } catch (NumberFormatException e) {
+         return true;
+      }
+   }
+
+   private static void checkAcyclic(Set<String> ids, Multimap<String, String> uses) {
+      Map<String, Integer> remaining = Maps.newHashMap();
+      Deque<String> free = Lists.newLinkedList();
+      for (String id : ids) {
+         remaining.put(id, uses.get(id).size());
+         if (uses.get(id).isEmpty()) {
+            free.add(id);
+         }
+      }
+      ImmutableSetMultimap<String, String> users = ImmutableSetMultimap.copyOf(uses).inverse();
+      int visited = 0;
+      while (!free.isEmpty()) {
+         String id = free.poll();
+         visited++;
+         for (String user : users.get(id)) {
+            int count = remaining.get(user) - 1;
+            remaining.put(user, count);
+            if (count == 0) {
+               free.add(user);
+            }
+         }
+      }
+      checkState(visited == ids.size(), "the stacks use each other in a cycle");
+   }
+
+   private static final class Completion {
+      private final String id;
+      private final Throwable failure;
+
+      private Completion(String id, Throwable failure) {
+         this.id = id;
+         this.failure = failure;
+      }
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private ListeningExecutorService executor;
+      private StackTracker tracker;
+      private int maxConcurrency = 10;
+      private int minValueLength = 8;
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The executor sending the requests, typically {@code context.utils().userExecutor()}.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = checkNotNull(executor, "executor");
+         return this;
+      }
+
+      /**
+       * The tracker following the deletions, which must have a scheduler and a timeout so that waiting for the
+       * deletions ends.
+       */
+      public Builder tracker(StackTracker tracker) {
+         this.tracker = checkNotNull(tracker, "tracker");
+         return this;
+      }
+
+      /**
+       * How many stacks are deleted at the same time. Defaults to 10.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * How long a parameter or output value must be to be matched when inferring which stacks use which. Shorter
+       * values, such as ports or sizes, are too likely to be shared by chance. Defaults to 8 characters.
+       */
+      public Builder minValueLength(int minValueLength) {
+         checkArgument(minValueLength > 0, "minValueLength must be positive");
+         this.minValueLength = minValueLength;
+         return this;
+      }
+
+      public StackTeardown build() {
+         checkArgument(executor != null, "an executor is required");
+         checkArgument(tracker != null, "a tracker is required");
+         checkArgument(tracker.isBounded(), "the tracker needs a scheduler and a timeout");
+         return new StackTeardown(api, region, executor, tracker, maxConcurrency, minValueLength);
+      }
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * What {@link StackTeardown} managed to delete.
+ */
+public class StackTeardownResult {
+
+   private final ImmutableSet<String> deleted;
+   private final ImmutableMap<String, Throwable> failures;
+   private final ImmutableSet<String> skipped;
+
+   protected StackTeardownResult(ImmutableSet<String> deleted, ImmutableMap<String, Throwable> failures,
+         ImmutableSet<String> skipped) {
+      this.deleted = checkNotNull(deleted, "deleted");
+      this.failures = checkNotNull(failures, "failures");
+      this.skipped = checkNotNull(skipped, "skipped");
+   }
+
+   static Builder builder() {
+      return new Builder();
+   }
+
+   /**
+    * @return the IDs of the deleted stacks, in the order their deletion completed
+    */
+   public ImmutableSet<String> getDeleted() {
+      return deleted;
+   }
+
+   /**
+    * @return why stacks could not be deleted, by ID
+    */
+   public ImmutableMap<String, Throwable> getFailures() {
+      return failures;
+   }
+
+   /**
+    * @return the IDs of the stacks left alone because a stack using them could not be deleted
+    */
+   public ImmutableSet<String> getSkipped() {
+      return skipped;
+   }
+
+   public boolean isComplete() {
+      return failures.isEmpty() && skipped.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("deleted", deleted.size()).add("failures", failures.keySet())
+            .add("skipped", skipped).toString();
+   }
+
+   static final class Builder {
+      private final ImmutableSet.Builder<String> deleted = ImmutableSet.builder();
+      private final ImmutableMap.Builder<String, Throwable> failures = ImmutableMap.builder();
+      private final ImmutableSet.Builder<String> skipped = ImmutableSet.builder();
+
+      Builder deleted(String id) {
+         deleted.add(id);
+         return this;
+      }
+
+      Builder failed(String id, Throwable failure) {
+         failures.put(id, failure);
+         return this;
+      }
+
+      Builder skipped(String id) {
+         skipped.add(id);
+         return this;
+      }
+
+      StackTeardownResult build() {
+         return new StackTeardownResult(deleted.build(), failures.build(), skipped.build());
+      }
+   }
+}
@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackStatus;
+import org.jclouds.openstack.heat.v1.domain.Stacks;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+import org.jclouds.openstack.heat.v1.options.ListStackOptions;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Waits for many stacks of one region to leave their {@code *_IN_PROGRESS} status, with one request per poll
+ * instead of one per stack.
+ * <p/>
+ * Each poll lists the stacks that are in progress, complete or failed, and completes the future of every tracked
+ * stack found there in a terminal status with that {@link Stack}. Heat filters the listing on the status without its
+ * action, so the exact status is checked here. The listing is read one page after the other until every polled stack
+ * is found; Heat lists the most recently created stacks first, so this is usually the first page. A polled stack the
+ * listing does not return is then fetched on its own, and so is a stack polled alone. When stacks being deleted are
+ * polled, the listing also shows the deleted stacks, and a deleted stack Heat no longer keeps is fetched on its own
+ * like any other missing stack. A stack that is still in progress is polled less and less
+ * often, from the interval up to the maximum interval. The future of a stack that disappears completes with
+ * {@code null}.
+ *
+ * <pre>
+ * StackTracker tracker = StackTracker.builder(heatApi, "RegionOne")
+ *       .scheduler(Executors.newSingleThreadScheduledExecutor())
+ *       .timeout(30, TimeUnit.MINUTES)
+ *       .build();
+ * List&lt;ListenableFuture&lt;Stack&gt;&gt; stacks = Lists.newArrayList();
+ * for (CreateStack create : creates) {
+ *    stacks.add(tracker.track(stackApi.create(create)));
+ * }
+ * List&lt;Stack&gt; done = Futures.allAsList(stacks).get();
+ * </pre>
+ */
+public class StackTracker implements Closeable {
+
+   private static final int PAGE_SIZE = 100;
+   // every status but INIT, so that a stack missing from the listing has not started or is gone
+   private static final ImmutableMultimap<String, String> LISTED_STATUSES = ImmutableMultimap.of(
+         "status", "IN_PROGRESS", "status", "COMPLETE", "status", "FAILED");
+
+   private final StackApi api;
+   private final ScheduledExecutorService scheduler;
+   private final long intervalNanos;
+   private final long maxIntervalNanos;
+   private final long timeoutNanos;
+   private final Map<String, Tracked> tracked = Maps.newConcurrentMap();
+   private final AtomicLong requestCount = new AtomicLong();
+   private final AtomicLong pollFailureCount = new AtomicLong();
+   private final AtomicReference<Throwable> lastPollFailure = new AtomicReference<Throwable>();
+   // serializes the polls without blocking track() during their requests
+   private final Object pollLock = new Object();
+   private ScheduledFuture<?> scheduled;
+
+   protected StackTracker(HeatApi api, String region, @Nullable ScheduledExecutorService scheduler,
+         long intervalNanos, long maxIntervalNanos, long timeoutNanos) {
+      this.api = checkNotNull(api, "api").getStackApi(checkNotNull(region, "region"));
+      this.scheduler = scheduler;
+      this.intervalNanos = intervalNanos;
+      this.maxIntervalNanos = maxIntervalNanos;
+      this.timeoutNanos = timeoutNanos;
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Tracks a stack returned by {@link StackApi#create}, {@link StackApi#get} or {@link StackApi#list}. A stack
+    * without a status, such as the one returned by {@code create}, may complete in any terminal status.
+    *
+    * @return a future completed with the stack once it is no longer in progress
+    */
+   public ListenableFuture<Stack> track(Stack stack) {
+      checkNotNull(stack, "stack");
+      return track(stack.getName(), stack.getId(), stack.getStatus());
+   }
+
+   /**
+    * Tracks a stack by its name and id. The name may be null.
+    */
+   public ListenableFuture<Stack> track(@Nullable String name, String id) {
+      return track(name, id, null);
+   }
+
+   /**
+    * Tracks a stack {@link StackApi#delete} was just called for. Its future completes once the stack is
+    * {@code DELETE_COMPLETE} or {@code DELETE_FAILED}, or with {@code null} once Heat no longer returns it. It is
+    * polled with the other stacks, in a listing that shows the deleted stacks.
+    */
+   public ListenableFuture<Stack> trackDeletion(@Nullable String name, String id) {
+      return track(name, id, StackStatus.DELETE_IN_PROGRESS);
+   }
+
+   private synchronized ListenableFuture<Stack> track(@Nullable String name, String id,
+         @Nullable StackStatus status) {
+      checkNotNull(id, "id");
+      Tracked existing = tracked.get(id);
+      if (existing != null) {
+         return existing.future;
+      }
+      Tracked stack = new Tracked(name, id, status, System.nanoTime());
+      tracked.put(id, stack);
+      if (scheduled == null && scheduler != null) {
+         scheduled = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+               poll(false);
+            }
+         }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+      }
+      return stack.future;
+   }
+
+   /**
+    * Polls every tracked stack now, whatever its backoff. This is the only way polls happen when the tracker has no
+    * scheduler.
+    */
+   public void poll() {
+      poll(true);
+   }
+
+   /**
+    * @return how many stacks are still tracked
+    */
+   public int size() {
+      return tracked.size();
+   }
+
+   /**
+    * @return how many list and get requests the polls sent, counting each page listed
+    */
+   public long getRequestCount() {
+      return requestCount.get();
+   }
+
+   /**
+    * @return true when the stacks are polled without {@link #poll()} being called and given up on after a timeout,
+    *         so that every future eventually completes
+    */
+   boolean isBounded() {
+      return scheduler != null && timeoutNanos > 0;
+   }
+
+   public long getPollFailureCount() {
+      return pollFailureCount.get();
+   }
+
+   @Nullable
+   public Throwable getLastPollFailure() {
+      return lastPollFailure.get();
+   }
+
+   /**
+    * Stops the scheduled polls and cancels the futures of the stacks still tracked. The scheduler itself is left
+    * running.
+    */
+   @Override
+   public synchronized void close() {
+      if (scheduled != null) {
+         scheduled.cancel(false);
+         scheduled = null;
+      }
+      for (Tracked stack : tracked.values()) {
+         stack.future.cancel(false);
+      }
+      tracked.clear();
+   }
+
+   void poll(boolean all) {
+      synchronized (pollLock) {
+         long now = System.nanoTime();
+         List<Tracked> listed = Lists.newArrayList();
+         List<Tracked> fetched = Lists.newArrayList();
+         synchronized (this) {
+            for (Tracked stack : tracked.values()) {
+               if (stack.future.isDone()) {
+                  tracked.remove(stack.id);
+               } else if (timeoutNanos > 0 && now - stack.startNanos >= timeoutNanos) {
+                  stack.future.setException(new TimeoutException(String.format("stack %s is still %s after %sms",
+                        stack.id, stack.status, TimeUnit.NANOSECONDS.toMillis(timeoutNanos))));
+                  tracked.remove(stack.id);
+               } else if (all || now - stack.nextPollNanos >= 0) {
+                  listed.add(stack);
+               }
+            }
+         }
+         if (listed.size() == 1) {
+            fetched.addAll(listed);
+            listed.clear();
+         }
+         try {
+            if (!listed.isEmpty()) {
+               fetched.addAll(list(listed, now));
+            }
+            for (Tracked stack : fetched) {
+               requestCount.incrementAndGet();
+               Stack current = stack.name != null ? api.get(stack.name, stack.id) : api.get(stack.id);
+               if (current == null) {
+                  stack.future.set(null);
+                  tracked.remove(stack.id);
+               } else {
+                  update(stack, current, now);
+               }
+            }
+         } catch (RuntimeException e) {
+            pollFailureCount.incrementAndGet();
+            lastPollFailure.set(e);
+         }
+      }
+   }
+
+   /**
+    * Lists the stacks page after page until every one of {@code stacks} is found, and updates the ones found.
+    *
+    * @return the stacks the listing does not return
+    */
+   private Collection<Tracked> list(List<Tracked> stacks, long now) {
+      Map<String, Tracked> missing = Maps.newLinkedHashMap();
+      boolean deletions = false;
+      for (Tracked stack : stacks) {
+         missing.put(stack.id, stack);
+         deletions |= stack.deletion || stack.status == StackStatus.DELETE_IN_PROGRESS;
+      }
+      ListStackOptions options = new ListStackOptions();
+      options.queryParameters(LISTED_STATUSES);
+      if (deletions) {
+         options.showDeleted(true);
+      }
+      PaginationOptions page = options.limit(PAGE_SIZE);
+      while (page != null) {
+         requestCount.incrementAndGet();
+         Stacks listed = api.listInPages(page);
+         for (Stack stack : listed) {
+            Tracked found = missing.remove(stack.getId());
+            if (found != null) {
+               update(found, stack, now);
+            }
+         }
+         page = !missing.isEmpty() && listed.nextMarker().isPresent()
+               ? PaginationOptions.class.cast(listed.nextMarker().get()) : null;
+      }
+      return missing.values();
+   }
+
+   private void update(Tracked stack, @Nullable Stack current, long now) {
+      // a stack being deleted may still show its previous status for a moment
+      boolean done = stack.deletion ? current != null && isDeleted(current.getStatus())
+            : current != null && current.getStatus() != null && !isInProgress(current.getStatus());
+      if (done) {
+         stack.future.set(current);
+         tracked.remove(stack.id);
+         return;
+      }
+      if (current != null && current.getStatus() != null) {
+         stack.status = current.getStatus();
+      }
+      stack.nextPollNanos = now + stack.intervalNanos;
+      stack.intervalNanos = Math.min(stack.intervalNanos * 2, maxIntervalNanos);
+   }
+
+   private static boolean isDeleted(@Nullable StackStatus status) {
+      return status == StackStatus.DELETE_COMPLETE || status == StackStatus.DELETE_FAILED;
+   }
+
+   private static boolean isInProgress(StackStatus status) {
+      return status.name().endsWith("_IN_PROGRESS") || status == StackStatus.UNRECOGNIZED;
+   }
+
+   private final class Tracked {
+      private final String name;
+      private final String id;
+      private final long startNanos;
+      private final boolean deletion;
+      private final SettableFuture<Stack> future = SettableFuture.create();
+      private volatile StackStatus status;
+      private long nextPollNanos;
+      private long intervalNanos;
+
+      private Tracked(String name, String id, StackStatus status, long now) {
+         this.name = name;
+         this.id = id;
+         this.status = status;
+         this.deletion = status == StackStatus.DELETE_IN_PROGRESS;
+         this.startNanos = now;
+         this.intervalNanos = StackTracker.this.intervalNanos;
+         this.nextPollNanos = now + this.intervalNanos;
+      }
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private ScheduledExecutorService scheduler;
+      private long intervalNanos = TimeUnit.SECONDS.toNanos(5);
+      private long maxIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+      private long timeoutNanos;
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The scheduler running the polls. Without one, polls only happen when {@link StackTracker#poll()} is called.
+       */
+      public Builder scheduler(ScheduledExecutorService scheduler) {
+         this.scheduler = checkNotNull(scheduler, "scheduler");
+         return this;
+      }
+
+      /**
+       * How soon a stack is first polled, and how often the scheduler checks for stacks to poll. Defaults to 5
+       * seconds.
+       */
+      public Builder interval(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "interval must be positive");
+         this.intervalNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      /**
+       * The longest time between two polls of a stack, which the interval doubles up to. Defaults to 1 minute.
+       */
+      public Builder maxInterval(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "maxInterval must be positive");
+         this.maxIntervalNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      /**
+       * Fails the future of a stack with a {@link TimeoutException} once it was tracked this long. Defaults to no
+       * timeout.
+       */
+      public Builder timeout(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "timeout must be positive");
+         this.timeoutNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      public StackTracker build() {
+         checkArgument(maxIntervalNanos >= intervalNanos, "maxInterval must not be shorter than interval");
+         return new StackTracker(api, region, scheduler, intervalNanos, maxIntervalNanos, timeoutNanos);
+      }
+   }
+}
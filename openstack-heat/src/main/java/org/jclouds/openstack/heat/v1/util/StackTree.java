@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackStatus;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * A stack and the stacks nested in it, at any depth.
+ * <p/>
+ * A tree is either built from the flat list Heat returns with {@code show_nested}, where every nested stack names its
+ * parent, or expanded from the nested stack resources by {@link StackTreeWalker}. Both ways, the statuses of the
+ * whole tree can be refreshed with a single {@code show_nested} listing:
+ *
+ * <pre>
+ * List&lt;Stack&gt; stacks = stackApi.list(ListStackOptions.Builder.showNested(true));
+ * StackTree tree = StackTree.of(root, stacks);
+ * ImmutableMultiset&lt;StackStatus&gt; statuses = tree.getStatuses();
+ * </pre>
+ */
+public class StackTree {
+
+   private final Stack root;
+   private final ImmutableMap<String, Stack> stacks;
+   private final ImmutableListMultimap<String, String> children;
+   private final ImmutableMap<String, String> parents;
+
+   protected StackTree(Stack root, ImmutableListMultimap<String, Stack> children) {
+      this.root = checkNotNull(root, "root");
+      Map<String, Stack> stacks = Maps.newLinkedHashMap();
+      Map<String, String> parents = Maps.newHashMap();
+      ImmutableListMultimap.Builder<String, String> childIds = ImmutableListMultimap.builder();
+      stacks.put(root.getId(), root);
+      Deque<Stack> pending = new ArrayDeque<Stack>();
+      pending.add(root);
+      while (!pending.isEmpty()) {
+         Stack parent = pending.poll();
+         for (Stack child : children.get(parent.getId())) {
+            if (!stacks.containsKey(child.getId())) {
+               stacks.put(child.getId(), child);
+               parents.put(child.getId(), parent.getId());
+               childIds.put(parent.getId(), child.getId());
+               pending.add(child);
+            }
+         }
+      }
+      this.stacks = ImmutableMap.copyOf(stacks);
+      this.parents = ImmutableMap.copyOf(parents);
+      this.children = childIds.build();
+   }
+
+   /**
+    * Builds the tree below {@code root} from the parents of the listed stacks. Listed stacks that are not nested in
+    * {@code root} are ignored.
+    *
+    * @param stacks the stacks listed with {@code show_nested}
+    */
+   public static StackTree of(Stack root, Iterable<Stack> stacks) {
+      ImmutableListMultimap.Builder<String, Stack> children = ImmutableListMultimap.builder();
+      for (Stack stack : checkNotNull(stacks, "stacks")) {
+         if (stack.getParent() != null) {
+            children.put(stack.getParent(), stack);
+         }
+      }
+      return new StackTree(root, children.build());
+   }
+
+   public Stack getRoot() {
+      return root;
+   }
+
+   /**
+    * @return how many stacks are in the tree, the root included
+    */
+   public int size() {
+      return stacks.size();
+   }
+
+   public boolean contains(String id) {
+      return stacks.containsKey(checkNotNull(id, "id"));
+   }
+
+   /**
+    * @return the stacks by ID, parents before their children
+    */
+   public ImmutableMap<String, Stack> getStacks() {
+      return stacks;
+   }
+
+   public Stack getStack(String id) {
+      return stack(id);
+   }
+
+   /**
+    * @return the stack {@code id} is nested in, or null for the root
+    */
+   public Stack getParent(String id) {
+      stack(id);
+      String parent = parents.get(id);
+      return parent != null ? stacks.get(parent) : null;
+   }
+
+   /**
+    * @return the stacks nested directly in {@code id}
+    */
+   public ImmutableList<Stack> getChildren(String id) {
+      stack(id);
+      ImmutableList.Builder<Stack> builder = ImmutableList.builder();
+      for (String child : children.get(id)) {
+         builder.add(stacks.get(child));
+      }
+      return builder.build();
+   }
+
+   /**
+    * @return how many levels {@code id} is below the root
+    */
+   public int getDepth(String id) {
+      stack(id);
+      int depth = 0;
+      for (String parent = parents.get(id); parent != null; parent = parents.get(parent)) {
+         depth++;
+      }
+      return depth;
+   }
+
+   /**
+    * @return how many stacks of the tree are in each status
+    */
+   public ImmutableMultiset<StackStatus> getStatuses() {
+      ImmutableMultiset.Builder<StackStatus> statuses = ImmutableMultiset.builder();
+      for (Stack stack : stacks.values()) {
+         if (stack.getStatus() != null) {
+            statuses.add(stack.getStatus());
+         }
+      }
+      return statuses.build();
+   }
+
+   /**
+    * @return the stacks of the tree whose status is one of {@code statuses}
+    */
+   public ImmutableSet<Stack> getStacks(StackStatus... statuses) {
+      ImmutableSet<StackStatus> wanted = ImmutableSet.copyOf(statuses);
+      ImmutableSet.Builder<Stack> builder = ImmutableSet.builder();
+      for (Stack stack : stacks.values()) {
+         if (wanted.contains(stack.getStatus())) {
+            builder.add(stack);
+         }
+      }
+      return builder.build();
+   }
+
+   /**
+    * Replaces the stacks of the tree with their listed versions, keeping its shape. Stacks that are not listed are
+    * kept as they were.
+    *
+    * @param stacks the stacks listed with {@code show_nested}
+    */
+   public StackTree withStatuses(Iterable<Stack> stacks) {
+      Map<String, Stack> listed = Maps.newHashMap();
+      for (Stack stack : checkNotNull(stacks, "stacks")) {
+         if (this.stacks.containsKey(stack.getId())) {
+            listed.put(stack.getId(), stack);
+         }
+      }
+      ImmutableListMultimap.Builder<String, Stack> children = ImmutableListMultimap.builder();
+      for (Map.Entry<String, String> child : this.children.entries()) {
+         children.put(child.getKey(), latest(listed, child.getValue()));
+      }
+      return new StackTree(latest(listed, root.getId()), children.build());
+   }
+
+   private Stack latest(Map<String, Stack> listed, String id) {
+      Stack stack = listed.get(id);
+      return stack != null ? stack : stacks.get(id);
+   }
+
+   private Stack stack(String id) {
+      Stack stack = stacks.get(checkNotNull(id, "id"));
+      checkArgument(stack != null, "unknown stack %s", id);
+      return stack;
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("root", root.getName()).add("size", size())
+            .add("statuses", getStatuses()).toString();
+   }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackResource;
+import org.jclouds.openstack.heat.v1.domain.Stacks;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+import org.jclouds.openstack.heat.v1.options.ListStackOptions;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Builds {@link StackTree}s of nested stacks.
+ * <p/>
+ * {@link #expand(Stack)} follows the nested stack resources of a stack, one level at a time: the resources of every
+ * stack of a level are listed concurrently, then the nested stacks they point to are fetched concurrently, never
+ * more than {@code maxConcurrency} requests at a time overall. The children found for a stack are remembered, so
+ * expanding the same stacks again only fetches the parts of the tree that were not seen before.
+ * <p/>
+ * {@link #list(Stack)} and {@link #refresh(StackTree)} need a single {@code show_nested} listing, whatever the depth
+ * of the tree, read one page after the other.
+ *
+ * <pre>
+ * StackTreeWalker walker = StackTreeWalker.builder(heatApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .maxConcurrency(20)
+ *       .build();
+ * StackTree tree = walker.expand(root);
+ * ...
+ * tree = walker.refresh(tree);
+ * </pre>
+ */
+public class StackTreeWalker {
+
+   /**
+    * The resource types Heat implements with a nested stack.
+    */
+   public static final Set<String> NESTED_RESOURCE_TYPES = ImmutableSet.of("OS::Heat::Stack",
+         "OS::Heat::ResourceGroup", "OS::Heat::AutoScalingGroup");
+
+   private static final int PAGE_SIZE = 100;
+
+   private final StackApi api;
+   private final ListeningExecutorService executor;
+   private final int maxConcurrency;
+   private final Set<String> nestedResourceTypes;
+   private final ConcurrentMap<String, ImmutableList<Stack>> expanded = Maps.newConcurrentMap();
+
+   protected StackTreeWalker(HeatApi api, String region, ListeningExecutorService executor, int maxConcurrency,
+         Set<String> nestedResourceTypes) {
+      this.api = checkNotNull(api, "api").getStackApi(checkNotNull(region, "region"));
+      this.executor = checkNotNull(executor, "executor");
+      this.maxConcurrency = maxConcurrency;
+      this.nestedResourceTypes = ImmutableSet.copyOf(nestedResourceTypes);
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Follows the nested stack resources below {@code root}.
+    *
+    * @throws RuntimeException the first failure to list the resources of a stack or to fetch a nested stack
+    */
+   public StackTree expand(Stack root) {
+      checkNotNull(root, "root");
+      ImmutableListMultimap.Builder<String, Stack> children = ImmutableListMultimap.builder();
+      Set<String> seen = Sets.newHashSet(root.getId());
+      List<Stack> level = ImmutableList.of(root);
+      while (!level.isEmpty()) {
+         expandAll(level);
+         List<Stack> next = Lists.newArrayList();
+         for (Stack parent : level) {
+            for (Stack child : expanded.get(parent.getId())) {
+               if (seen.add(child.getId())) {
+                  children.put(parent.getId(), child);
+                  next.add(child);
+               }
+            }
+         }
+         level = next;
+      }
+      return new StackTree(root, children.build());
+   }
+
+   /**
+    * Builds the tree below {@code root} from a single {@code show_nested} listing.
+    */
+   public StackTree list(Stack root) {
+      checkNotNull(root, "root");
+      return StackTree.of(root, listNested());
+   }
+
+   /**
+    * Fetches the latest status of every stack of {@code tree} with a single {@code show_nested} listing.
+    */
+   public StackTree refresh(StackTree tree) {
+      checkNotNull(tree, "tree");
+      return tree.withStatuses(listNested());
+   }
+
+   /**
+    * @return every stack of the {@code show_nested} listing, following its next links
+    */
+   private List<Stack> listNested() {
+      List<Stack> stacks = Lists.newArrayList();
+      PaginationOptions page = ListStackOptions.Builder.showNested(true).limit(PAGE_SIZE);
+      while (page != null) {
+         Stacks listed = api.listInPages(page);
+         Iterables.addAll(stacks, listed);
+         page = listed.nextMarker().isPresent() ? PaginationOptions.class.cast(listed.nextMarker().get()) : null;
+      }
+      return stacks;
+   }
+
+   /**
+    * Forgets the children found for a stack, such as after it was updated.
+    */
+   public void invalidate(String id) {
+      expanded.remove(checkNotNull(id, "id"));
+   }
+
+   public void invalidateAll() {
+      expanded.clear();
+   }
+
+   private void expandAll(List<Stack> level) {
+      Map<String, Callable<List<String>>> listings = Maps.newLinkedHashMap();
+      for (final Stack stack : level) {
+         if (!expanded.containsKey(stack.getId())) {
+            listings.put(stack.getId(), new Callable<List<String>>() {
+               @Override
+               public List<String> call() {
+                  return nestedStackIds(stack);
+               }
+            });
+         }
+      }
+      if (listings.isEmpty()) {
+         return;
+      }
+      Map<String, List<String>> nested = Maps.newLinkedHashMap();
+      Map<String, Callable<Stack>> fetches = Maps.newLinkedHashMap();
+      for (Map.Entry<String, List<String>> listing : values(ConcurrentTasks.invokeAll(executor, maxConcurrency,
+            listings)).entrySet()) {
+         nested.put(listing.getKey(), listing.getValue());
+         for (final String id : listing.getValue()) {
+            fetches.put(id, new Callable<Stack>() {
+               @Override
+               public Stack call() {
+                  return api.get(id);
+               }
+            });
+         }
+      }
+      Map<String, Stack> fetched = values(ConcurrentTasks.invokeAll(executor, maxConcurrency, fetches));
+      for (Map.Entry<String, List<String>> parent : nested.entrySet()) {
+         ImmutableList.Builder<Stack> children = ImmutableList.builder();
+         for (String id : parent.getValue()) {
+            // a nested stack deleted since its resource was listed is left out
+            if (fetched.get(id) != null) {
+               children.add(fetched.get(id));
+            }
+         }
+         expanded.put(parent.getKey(), children.build());
+      }
+   }
+
+   private List<String> nestedStackIds(Stack stack) {
+      String name = checkNotNull(stack.getName(), "name of stack %s", stack.getId());
+      List<String> ids = Lists.newArrayList();
+      for (StackResource resource : api.listStackResources(name, stack.getId())) {
+         if (nestedResourceTypes.contains(resource.getResourceType())
+               && !Strings.isNullOrEmpty(resource.getPhysicalResourceId())) {
+            ids.add(resource.getPhysicalResourceId());
+         }
+      }
+      return ids;
+   }
+
+   private static <K, V> Map<K, V> values(Map<K, ConcurrentTasks.Outcome<V>> outcomes) {
+      Map<K, V> values = Maps.newLinkedHashMap();
+      for (Map.Entry<K, ConcurrentTasks.Outcome<V>> outcome : outcomes.entrySet()) {
+         if (!outcome.getValue().isSuccess()) {
+            throw Throwables.propagate(outcome.getValue().getFailure());
+         }
+         values.put(outcome.getKey(), outcome.getValue().getValue());
+      }
+      return values;
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private ListeningExecutorService executor;
+      private int maxConcurrency = 10;
+      private Set<String> nestedResourceTypes = NESTED_RESOURCE_TYPES;
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The executor running the requests, typically {@code context.utils().userExecutor()}.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = checkNotNull(executor, "executor");
+         return this;
+      }
+
+      /**
+       * How many requests run at the same time. Defaults to 10.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * The types of the resources whose physical ID is a nested stack. Defaults to
+       * {@link StackTreeWalker#NESTED_RESOURCE_TYPES}; provider resource types backed by templates can be added.
+       */
+      public Builder nestedResourceTypes(Set<String> nestedResourceTypes) {
+         this.nestedResourceTypes = ImmutableSet.copyOf(checkNotNull(nestedResourceTypes, "nestedResourceTypes"));
+         return this;
+      }
+
+      public StackTreeWalker build() {
+         checkArgument(executor != null, "an executor is required");
+         return new StackTreeWalker(api, region, executor, maxConcurrency, nestedResourceTypes);
+      }
+   }
+}
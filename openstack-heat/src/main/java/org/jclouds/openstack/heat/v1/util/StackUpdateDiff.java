@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * What an update would change in a stack, as found by {@link StackUpdater#diff}.
+ */
+public class StackUpdateDiff {
+
+   private final boolean templateChanged;
+   private final ImmutableMap<String, Object> changedParameters;
+   private final ImmutableSet<String> removedParameters;
+
+   protected StackUpdateDiff(boolean templateChanged, ImmutableMap<String, Object> changedParameters,
+         ImmutableSet<String> removedParameters) {
+      this.templateChanged = templateChanged;
+      this.changedParameters = checkNotNull(changedParameters, "changedParameters");
+      this.removedParameters = checkNotNull(removedParameters, "removedParameters");
+   }
+
+   /**
+    * @return false when the update keeps the template, environment and files, or sends the same ones as the last
+    *         update the {@link StackUpdater} made to the stack
+    */
+   public boolean isTemplateChanged() {
+      return templateChanged;
+   }
+
+   /**
+    * @return the new values of the parameters the update adds or changes
+    */
+   public ImmutableMap<String, Object> getChangedParameters() {
+      return changedParameters;
+   }
+
+   /**
+    * @return the parameters the last update of the {@link StackUpdater} sent that an update replacing the template
+    *         leaves out, which Heat resets to their defaults
+    */
+   public ImmutableSet<String> getRemovedParameters() {
+      return removedParameters;
+   }
+
+   /**
+    * @return true when sending the update would not change the stack
+    */
+   public boolean isNoOp() {
+      return !templateChanged && changedParameters.isEmpty() && removedParameters.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("templateChanged", templateChanged)
+            .add("changedParameters", changedParameters.keySet()).add("removedParameters", removedParameters)
+            .toString();
+   }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+import org.jclouds.openstack.heat.v1.options.UpdateStack;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Updates stacks only when something changes, sending as little as possible.
+ * <p/>
+ * The parameters of an update are compared with the ones of the stack. Heat does not return the files and the
+ * environment of a stack, and returns its template in another format than the one it was sent in, so the updater
+ * remembers a hash of the template, environment and files of the last update it made to each stack instead. A new
+ * updater therefore sends the template of a stack once, then skips it while it does not change. An update that
+ * names neither a template nor a template URL keeps the current template and the parameters it leaves out.
+ * <p/>
+ * Heat masks the values of hidden parameters, and lists every parameter of the template, including the ones left
+ * to their defaults. So the updater also remembers a hash of each parameter value it sent: a masked value is
+ * compared with it, and a parameter is only reported as removed when the last update sent it. A masked parameter
+ * the updater has not sent yet, such as after {@link #forget} or in a new updater, is always reported as changed, so
+ * that a changed secret is never skipped.
+ * <p/>
+ * When only parameters change, they alone are sent with a {@code PATCH}, which Heat applies to the existing
+ * template and parameters. Otherwise, and once Heat has answered that it does not support {@code PATCH}, the whole
+ * update is sent with a {@code PUT}, which needs a template.
+ *
+ * <pre>
+ * StackUpdater updater = StackUpdater.builder(heatApi, "RegionOne").build();
+ * // every hour
+ * StackUpdateDiff diff = updater.update(stackApi.get(name, id), desired);
+ * </pre>
+ */
+public class StackUpdater {
+
+   private static final String MASKED = "******";
+
+   private final StackApi api;
+   private final ConcurrentMap<String, Applied> applied = Maps.newConcurrentMap();
+   private final AtomicInteger skipped = new AtomicInteger();
+   private final AtomicInteger patched = new AtomicInteger();
+   private final AtomicInteger replaced = new AtomicInteger();
+   private volatile boolean patchSupported;
+
+   protected StackUpdater(HeatApi api, String region, boolean patch) {
+      this.api = checkNotNull(api, "api").getStackApi(checkNotNull(region, "region"));
+      this.patchSupported = patch;
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Compares {@code update} with {@code stack} without sending anything.
+    */
+   public StackUpdateDiff diff(Stack stack, UpdateStack update) {
+      checkNotNull(stack, "stack");
+      checkNotNull(update, "update");
+      boolean replacesTemplate = replacesTemplate(update);
+      Applied last = applied.get(stack.getId());
+      boolean templateChanged = replacesTemplate
+            && (last == null || !fingerprint(update).equals(last.template));
+
+      Map<String, Object> desired = update.getParameters() != null ? update.getParameters()
+            : ImmutableMap.<String, Object> of();
+      ImmutableMap.Builder<String, Object> changed = ImmutableMap.builder();
+      for (Map.Entry<String, Object> parameter : desired.entrySet()) {
+         String current = stack.getParameters().get(parameter.getKey());
+         String value = format(parameter.getValue());
+         if (MASKED.equals(current)) {
+            // a hidden parameter can only be compared with what was sent; an unknown value may have changed
+            HashCode sent = last != null ? last.parameters.get(parameter.getKey()) : null;
+            if (sent == null || !sent.equals(hash(value))) {
+               changed.put(parameter);
+            }
+         } else if (current == null || !current.equals(value)) {
+            changed.put(parameter);
+         }
+      }
+      ImmutableSet.Builder<String> removed = ImmutableSet.builder();
+      // an update keeping the template keeps the parameters it leaves out
+      if (replacesTemplate && last != null) {
+         for (String name : last.parameters.keySet()) {
+            if (!desired.containsKey(name)) {
+               removed.add(name);
+            }
+         }
+      }
+      return new StackUpdateDiff(templateChanged, changed.build(), removed.build());
+   }
+
+   /**
+    * Sends {@code update} to {@code stack} unless it would change nothing.
+    *
+    * @return what the update changed
+    */
+   public StackUpdateDiff update(Stack stack, UpdateStack update) {
+      StackUpdateDiff diff = diff(stack, update);
+      String name = checkNotNull(stack.getName(), "name of stack %s", stack.getId());
+      if (diff.isNoOp()) {
+         skipped.incrementAndGet();
+         return diff;
+      }
+      if (!diff.isTemplateChanged() && diff.getRemovedParameters().isEmpty() && patchSupported) {
+         try {
+            api.patch(name, stack.getId(), UpdateStack.builder().parameters(diff.getChangedParameters()).build());
+            patched.incrementAndGet();
+            Applied last = applied.get(stack.getId());
+            Map<String, HashCode> parameters = Maps.newHashMap();
+            if (last != null) {
+               parameters.putAll(last.parameters);
+            }
+            parameters.putAll(hashes(diff.getChangedParameters()));
+            applied.put(stack.getId(), new Applied(last != null ? last.template : null, parameters));
+            return diff;
+         } catch (HttpResponseException e) {
+            if (e.getResponse() == null || e.getResponse().getStatusCode() != 405) {
+               throw e;
+            }
+            patchSupported = false;
+         }
+      }
+      checkState(replacesTemplate(update), "stack %s can only be updated without a template with a PATCH, which is "
+            + "disabled or not supported; the update needs a template or a template URL", stack.getId());
+      api.update(name, stack.getId(), update);
+      replaced.incrementAndGet();
+      applied.put(stack.getId(), new Applied(fingerprint(update), update.getParameters() != null
+            ? hashes(update.getParameters()) : ImmutableMap.<String, HashCode> of()));
+      return diff;
+   }
+
+   /**
+    * Forgets the template and parameters last sent to a stack, such as after it was updated by other means.
+    */
+   public void forget(String id) {
+      applied.remove(checkNotNull(id, "id"));
+   }
+
+   /**
+    * @return how many updates changed nothing and were not sent
+    */
+   public int getSkippedCount() {
+      return skipped.get();
+   }
+
+   /**
+    * @return how many updates only sent their changed parameters
+    */
+   public int getPatchedCount() {
+      return patched.get();
+   }
+
+   /**
+    * @return how many updates were sent whole
+    */
+   public int getReplacedCount() {
+      return replaced.get();
+   }
+
+   private static boolean replacesTemplate(UpdateStack update) {
+      return update.getTemplate() != null || update.getTemplateUrl() != null;
+   }
+
+   /**
+    * Formats a parameter value the way Heat returns it in the parameters of a stack.
+    */
+   private static String format(Object value) {
+      if (value instanceof Iterable) {
+         return Joiner.on(',').useForNull("").join((Iterable<?>) value);
+      }
+      return String.valueOf(value);
+   }
+
+   private static Map<String, HashCode> hashes(Map<String, Object> parameters) {
+      ImmutableMap.Builder<String, HashCode> hashes = ImmutableMap.builder();
+      for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+         hashes.put(parameter.getKey(), hash(format(parameter.getValue())));
+      }
+      return hashes.build();
+   }
+
+   private static HashCode hash(String value) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      put(hasher, value);
+      return hasher.hash();
+   }
+
+   private static HashCode fingerprint(UpdateStack update) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      put(hasher, update.getTemplate());
+      put(hasher, update.getTemplateUrl());
+      put(hasher, update.getEnvironment());
+      if (update.getFiles() != null) {
+         SortedMap<String, String> files = ImmutableSortedMap.copyOf(update.getFiles());
+         for (Map.Entry<String, String> file : files.entrySet()) {
+            put(hasher, file.getKey());
+            put(hasher, file.getValue());
+         }
+      }
+      return hasher.hash();
+   }
+
+   private static void put(Hasher hasher, String value) {
+      if (value == null) {
+         hasher.putInt(-1);
+      } else {
+         byte[] bytes = value.getBytes(UTF_8);
+         hasher.putInt(bytes.length).putBytes(bytes);
+      }
+   }
+
+   /**
+    * What the updater last sent to a stack, hashed so that it keeps no secrets.
+    */
+   private static final class Applied {
+      private final HashCode template;
+      private final ImmutableMap<String, HashCode> parameters;
+
+      private Applied(HashCode template, Map<String, HashCode> parameters) {
+         this.template = template;
+         this.parameters = ImmutableMap.copyOf(parameters);
+      }
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private boolean patch = true;
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * Whether parameter changes may be sent with a {@code PATCH}. Defaults to true; Heat supports it since its
+       * Juno release.
+       */
+      public Builder patch(boolean patch) {
+         this.patch = patch;
+         return this;
+      }
+
+      public StackUpdater build() {
+         return new StackUpdater(api, region, patch);
+      }
+   }
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.json.Json;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.Template;
+import org.jclouds.openstack.heat.v1.features.StackApi;
+import org.jclouds.openstack.heat.v1.features.TemplateApi;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Remembers the templates Heat validated and the templates of stacks, so that an unchanged template costs no round
+ * trip to the server.
+ * <p/>
+ * Validations are keyed by a SHA-256 hash of the template and of the files it refers to, so the same template
+ * validated from another URL is a hit, and a changed nested file is a miss. Stack templates are keyed by the id of
+ * the stack and the time it was last updated. Results are kept in a bounded memory tier and, when a directory is
+ * given, in a disk tier shared by later runs. The disk tier may be shared by several clouds and regions, so its keys
+ * also hold the endpoint and the region of the cache. Failed validations are not cached.
+ *
+ * <pre>
+ * TemplateCache cache = TemplateCache.builder(heatApi, "RegionOne")
+ *       .maximumSize(500)
+ *       .directory(new File(".heat-cache"), context.utils().json(), URI.create("https://keystone:5000/v2.0"))
+ *       .build();
+ * Template template = cache.validate(templateUrl, templateBody, files);
+ * </pre>
+ */
+public class TemplateCache {
+
+   private final TemplateApi templateApi;
+   private final StackApi stackApi;
+   private final Cache<String, Optional<Template>> memory;
+   private final File directory;
+   private final Json json;
+   private final String diskPrefix;
+   private final AtomicLong hitCount = new AtomicLong();
+   private final AtomicLong diskHitCount = new AtomicLong();
+   private final AtomicLong missCount = new AtomicLong();
+
+   protected TemplateCache(HeatApi api, String region, long maximumSize, @Nullable File directory,
+         @Nullable Json json, @Nullable URI endpoint) {
+      checkNotNull(api, "api");
+      checkNotNull(region, "region");
+      this.templateApi = api.getTemplateApi(region);
+      this.stackApi = api.getStackApi(region);
+      this.memory = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+      this.directory = directory;
+      this.json = json;
+      this.diskPrefix = endpoint != null ? scope(endpoint, region) + "-" : null;
+   }
+
+   public static Builder builder(HeatApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Validates the template at {@code templateUrl} unless a template with the same content and files was validated
+    * before.
+    *
+    * @param template the content of the template at {@code templateUrl}
+    * @param files    the files the template refers to, by name, as given to {@code CreateStack}
+    */
+   public Template validate(final String templateUrl, String template, @Nullable Map<String, String> files) {
+      checkNotNull(templateUrl, "templateUrl");
+      return load("template-" + hash(checkNotNull(template, "template"), files), new Callable<Template>() {
+         @Override
+         public Template call() {
+            return templateApi.validate(templateUrl);
+         }
+      });
+   }
+
+   /**
+    * Reads the template at {@code templateUrl} to hash it, then validates it as
+    * {@link #validate(String, String, Map)} does. Reading the template is usually much faster than validating it.
+    */
+   public Template validate(String templateUrl) {
+      String template;
+      try {
+         template = Resources.toString(new URL(checkNotNull(templateUrl, "templateUrl")), Charsets.UTF_8);
+      } catch (IOException e) {
+         throw new IllegalArgumentException("cannot read template " + templateUrl, e);
+      }
+      return validate(templateUrl, template, null);
+   }
+
+   /**
+    * @return the template of the stack, which is fetched again only when the stack was updated, or null if the stack
+    *         does not exist
+    */
+   @Nullable
+   public Template getTemplate(final Stack stack) {
+      checkNotNull(stack, "stack");
+      checkArgument(stack.getName() != null, "stack %s has no name", stack.getId());
+      Date version = stack.getUpdated() != null ? stack.getUpdated() : stack.getCreated();
+      String key = "stack-" + stack.getId() + "-" + (version != null ? version.getTime() : 0);
+      return load(key, new Callable<Template>() {
+         @Override
+         public Template call() {
+            return stackApi.getTemplate(stack.getName(), stack.getId());
+         }
+      });
+   }
+
+   /**
+    * Drops every template from the memory tier. The disk tier is left as it is.
+    */
+   public void invalidateAll() {
+      memory.invalidateAll();
+   }
+
+   /**
+    * @return how many templates were found in memory
+    */
+   public long getHitCount() {
+      return hitCount.get();
+   }
+
+   /**
+    * @return how many templates were found on disk
+    */
+   public long getDiskHitCount() {
+      return diskHitCount.get();
+   }
+
+   /**
+    * @return how many templates were asked to the server
+    */
+   public long getMissCount() {
+      return missCount.get();
+   }
+
+   private Template load(final String key, final Callable<Template> server) {
+      final boolean[] loaded = new boolean[1];
+      Optional<Template> template;
+      try {
+         template = memory.get(key, new Callable<Optional<Template>>() {
+            @Override
+            public Optional<Template> call() throws Exception {
+               loaded[0] = true;
+               Template stored = read(key);
+               if (stored != null) {
+                  diskHitCount.incrementAndGet();
+                  return Optional.of(stored);
+               }
+               missCount.incrementAndGet();
+               Template fetched = server.call();
+               if (fetched != null) {
+                  write(key, fetched);
+               }
+               return Optional.fromNullable(fetched);
+            }
+         });
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      } catch (UncheckedExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+      if (!loaded[0]) {
+         hitCount.incrementAndGet();
+      }
+      if (!template.isPresent()) {
+         // a missing stack may exist later
+         memory.invalidate(key);
+      }
+      return template.orNull();
+   }
+
+   @Nullable
+   private Template read(String key) {
+      if (directory == null) {
+         return null;
+      }
+      File file = new File(directory, diskPrefix + key + ".json");
+      if (!file.isFile()) {
+         return null;
+      }
+      try {
+         return json.fromJson(Files.toString(file, Charsets.UTF_8), Template.class);
+      } catch (IOException e) {
+         return null;
+      } catch (RuntimeException e) {
+         // a corrupt entry is replaced by the next write
+         return null;
+      }
+   }
+
+   private void write(String key, Template template) {
+      if (directory == null) {
+         return;
+      }
+      File file = new File(directory, diskPrefix + key + ".json");
+      try {
+         File temp = File.createTempFile(diskPrefix + key, ".tmp", directory);
+         Files.write(json.toJson(template), temp, Charsets.UTF_8);
+         if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+               temp.delete();
+            }
+         }
+      } catch (IOException e) {
+         // the disk tier is best effort, the template is still kept in memory
+      }
+   }
+
+   static String hash(String template, @Nullable Map<String, String> files) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      hasher.putInt(template.length()).putString(template, Charsets.UTF_8);
+      Map<String, String> sorted = files != null ? ImmutableSortedMap.copyOf(files)
+            : ImmutableMap.<String, String> of();
+      for (Map.Entry<String, String> file : sorted.entrySet()) {
+         hasher.putInt(file.getKey().length()).putString(file.getKey(), Charsets.UTF_8);
+         hasher.putInt(file.getValue().length()).putString(file.getValue(), Charsets.UTF_8);
+      }
+      return hasher.hash().toString();
+   }
+
+   /**
+    * @return a short hash naming the cloud and region the disk entries belong to
+    */
+   static String scope(URI endpoint, String region) {
+      String scope = endpoint.toString();
+      return Hashing.sha256().newHasher().putInt(scope.length()).putString(scope, Charsets.UTF_8)
+            .putString(region, Charsets.UTF_8).hash().toString().substring(0, 16);
+   }
+
+   public static final class Builder {
+      private final HeatApi api;
+      private final String region;
+      private long maximumSize = 1000;
+      private File directory;
+      private Json json;
+      private URI endpoint;
+
+      private Builder(HeatApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The most templates kept in memory. Defaults to 1000.
+       */
+      public Builder maximumSize(long maximumSize) {
+         checkArgument(maximumSize > 0, "maximumSize must be positive");
+         this.maximumSize = maximumSize;
+         return this;
+      }
+
+      /**
+       * Also keeps the templates as JSON files in {@code directory}, which is created if needed.
+       *
+       * @param json     typically {@code context.utils().json()}
+       * @param endpoint the endpoint the api was built with, which keeps the entries of different clouds apart
+       */
+      public Builder directory(File directory, Json json, URI endpoint) {
+         this.directory = checkNotNull(directory, "directory");
+         this.json = checkNotNull(json, "json");
+         this.endpoint = checkNotNull(endpoint, "endpoint");
+         return this;
+      }
+
+      public TemplateCache build() {
+         if (directory != null) {
+            checkArgument(directory.isDirectory() || directory.mkdirs(), "cannot create directory %s", directory);
+         }
+         return new TemplateCache(api, region, maximumSize, directory, json, endpoint);
+      }
+   }
+}
@@ -28,12 +28,19 @@ import java.util.Map;
 import org.jclouds.openstack.heat.v1.HeatApi;
 import org.jclouds.openstack.heat.v1.domain.Stack;
 import org.jclouds.openstack.heat.v1.domain.StackResource;
+import org.jclouds.openstack.heat.v1.domain.StackStatus;
+import org.jclouds.openstack.heat.v1.domain.Stacks;
 import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
 import org.jclouds.openstack.heat.v1.options.CreateStack;
 import org.jclouds.openstack.heat.v1.options.ListStackOptions;
+import org.jclouds.openstack.heat.v1.options.StackBundle;
 import org.jclouds.openstack.heat.v1.options.UpdateStack;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
 
@@ -47,6 +54,11 @@ public class StackApiMockTest extends BaseHeatApiMockTest {
    public static final String TEST_STACK_ID = "testStack";
    public static final String RESOURCES_TEST_NAME = "testResources";
    public static final String TEST_STACK_RESOURCE_NAME = "cinder_volume";
+   private static final String BUNDLE_TEMPLATE = "heat_template_version: 2013-05-23\ndescription: \"web tier\"\n"
+         + "resources:\n  server:\n    type: server.yaml\n";
+   private static final String BUNDLE_SERVER_TEMPLATE = "heat_template_version: 2013-05-23\nresources:\n"
+         + "  instance:\n    type: OS::Nova::Server\n    properties:\n      user_data: |\n        #!/bin/sh\n"
+         + "        echo \"C:\\\\temp\\tdone\" > /tmp/out\n";
 
 
    public void testGetAutoStack() throws Exception {
@@ -157,6 +169,104 @@ public class StackApiMockTest extends BaseHeatApiMockTest {
       }
    }
 
+   public void testListInPages() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_list_response_paged1.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_list_response_paged2.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackApi api = heatApi.getStackApi("RegionOne");
+
+         List<Stack> stacks = api.listInPages().concat().toList();
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(3);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?limit=100");
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks?limit=100&marker=c4a0b2d3-5e6f-4a1b-8c9d-0e1f2a3b4c5d");
+
+         /*
+          * Check response
+          */
+         assertThat(stacks.size()).isEqualTo(3);
+         assertThat(stacks.get(0).getName()).isEqualTo("web");
+         assertThat(stacks.get(2).getName()).isEqualTo("other");
+
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testListInPagesKeepsOptions() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_list_response_paged_filtered.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_list_response_paged2.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackApi api = heatApi.getStackApi("RegionOne");
+
+         Stacks first = api.listInPages(ListStackOptions.Builder.status(StackStatus.CREATE_COMPLETE).limit(1));
+         Stacks second = api.listInPages(PaginationOptions.class.cast(first.nextMarker().get()));
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(3);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?status=CREATE_COMPLETE&limit=1");
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks?status=CREATE_COMPLETE&limit=1&marker=7d6f2e6a-2bd1-4e8a-9a53-3b8f4c1d0b11");
+
+         /*
+          * Check response
+          */
+         assertThat(first.toList()).hasSize(1);
+         assertThat(second.nextMarker().isPresent()).isFalse();
+
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testListInPagesWhenResponseIs404() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackApi api = heatApi.getStackApi("RegionOne");
+
+         List<Stack> stacks = api.listInPages().concat().toList();
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(2);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?limit=100");
+
+         /*
+          * Check response
+          */
+         assertThat(stacks).isEmpty();
+
+      } finally {
+         server.shutdown();
+      }
+   }
+
    public void testListResource() throws Exception {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
@@ -313,6 +423,80 @@ public class StackApiMockTest extends BaseHeatApiMockTest {
       }
    }
 
+   public void testCreateStackFromBundle() throws IOException, InterruptedException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/create_stack.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackApi api = heatApi.getStackApi("RegionOne");
+
+         ByteSource serverTemplate = bytes(BUNDLE_SERVER_TEMPLATE);
+         StackBundle bundle = StackBundle.builder()
+               .name(TEST_STACK_NAME)
+               .template(bytes(BUNDLE_TEMPLATE))
+               .environment(bytes("parameters:\n  key_name: myKey\n"))
+               .parameters(ImmutableMap.<String, Object> of("key_name", "myKey"))
+               .disableRollback(false)
+               .file("server.yaml", serverTemplate)
+               .file("file:///templates/server.yaml", serverTemplate)
+               .build();
+         Stack stack = api.create(bundle);
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(2);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "POST", BASE_URI + "/stacks", "/stack_bundle_create_request.json");
+
+         /*
+          * Check response
+          */
+         assertThat(stack).isNotNull();
+         assertThat(stack.getId()).isEqualTo("3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testUpdateStackFromBundle() throws IOException, InterruptedException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(202)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackApi api = heatApi.getStackApi("RegionOne");
+
+         StackBundle bundle = StackBundle.builder()
+               .template(bytes(BUNDLE_TEMPLATE))
+               .file("server.yaml", bytes(BUNDLE_SERVER_TEMPLATE))
+               .build();
+         boolean result = api.update(TEST_STACK_NAME, TEST_STACK_ID, bundle);
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 2);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "PUT", BASE_URI + "/stacks/" + TEST_STACK_NAME + "/" + TEST_STACK_ID,
+               "/stack_bundle_update_request.json");
+
+         /*
+          * Check response
+          */
+         assertTrue(result);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static ByteSource bytes(String content) {
+      return ByteSource.wrap(content.getBytes(Charsets.UTF_8));
+   }
+
    public void testResourcesMetadata() throws IOException, InterruptedException {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
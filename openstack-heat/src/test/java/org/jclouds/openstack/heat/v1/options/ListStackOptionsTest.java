@@ -24,6 +24,7 @@ import org.testng.annotations.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jclouds.openstack.heat.v1.options.ListStackOptions.Builder.globalTenant;
+import static org.jclouds.openstack.heat.v1.options.ListStackOptions.Builder.showDeleted;
 import static org.jclouds.openstack.heat.v1.options.ListStackOptions.Builder.showNested;
 import static org.jclouds.openstack.heat.v1.options.ListStackOptions.Builder.limit;
 import static org.jclouds.openstack.heat.v1.options.ListStackOptions.Builder.marker;
@@ -114,4 +115,10 @@ public class ListStackOptionsTest {
              .isEqualTo(ImmutableSet.of("true"));
     }
 
+   public void testShowDeleted() {
+      ListStackOptions options = showDeleted(true);
+      assertThat(options.buildQueryParameters().get("show_deleted"))
+            .isEqualTo(ImmutableSet.of("true"));
+   }
+
 }
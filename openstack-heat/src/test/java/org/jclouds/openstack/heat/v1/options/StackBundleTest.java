@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.options;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jclouds.io.Payload;
+import org.jclouds.json.Json;
+import org.jclouds.json.config.GsonModule;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Guice;
+
+/**
+ * Tests the streamed JSON of {@link StackBundle}
+ */
+@Test(groups = "unit", testName = "StackBundleTest")
+public class StackBundleTest {
+
+   public void testEscaping() throws IOException {
+      for (String content : ImmutableSet.of("", "plain", "quote \" and backslash \\", "line\nfeed\r\n\ttab",
+            "\b\f\u0000\u0001\u001f\u007f", "caf\u00e9 \u6f22\u5b57 \ud83d\ude80", "C:\\temp\\new")) {
+         byte[] bytes = content.getBytes(UTF_8);
+         InputStream escaped = new StackBundle.EscapingInputStream(ByteSource.wrap(bytes).openStream());
+         String json = new String(ByteStreams.toByteArray(escaped), UTF_8);
+
+         assertEquals(new JsonParser().parse(json).getAsString(), content);
+         long width = 2;
+         for (byte b : bytes) {
+            width += StackBundle.EscapingInputStream.width(b);
+         }
+         assertEquals(json.getBytes(UTF_8).length, width, content);
+
+         // a byte at a time gives the same JSON as a buffer at a time
+         InputStream byByte = new StackBundle.EscapingInputStream(ByteSource.wrap(bytes).openStream());
+         ByteArrayOutputStream read = new ByteArrayOutputStream();
+         for (int b = byByte.read(); b != -1; b = byByte.read()) {
+            read.write(b);
+         }
+         assertEquals(new String(read.toByteArray(), UTF_8), json);
+      }
+   }
+
+   public void testPayload() throws IOException {
+      Json json = Guice.createInjector(new GsonModule()).getInstance(Json.class);
+      File directory = Files.createTempDir();
+      try {
+         File script = new File(directory, "boot.sh");
+         Files.write("#!/bin/sh\necho \"ready\"\n", script, UTF_8);
+         StackBundle bundle = StackBundle.builder()
+               .name("stack")
+               .templateUrl("http://templates/stack.yaml")
+               .file("boot.sh", script)
+               .file("file:///scripts/boot.sh", new File(directory, "../" + directory.getName() + "/boot.sh"))
+               .build();
+         // the same file under two names is a single source
+         assertSame(bundle.getFiles().get("boot.sh"), bundle.getFiles().get("file:///scripts/boot.sh"));
+
+         Payload payload = bundle.toPayload(json);
+         byte[] bytes = ByteStreams.toByteArray(payload.openStream());
+
+         assertEquals(payload.getContentMetadata().getContentLength(), Long.valueOf(bytes.length));
+         JsonObject parsed = new JsonParser().parse(new String(bytes, UTF_8)).getAsJsonObject();
+         assertEquals(parsed.get("stack_name").getAsString(), "stack");
+         assertEquals(parsed.get("template_url").getAsString(), "http://templates/stack.yaml");
+         assertEquals(parsed.getAsJsonObject("files").get("file:///scripts/boot.sh").getAsString(),
+               "#!/bin/sh\necho \"ready\"\n");
+         // repeatable
+         assertEquals(ByteStreams.toByteArray(payload.openStream()), bytes);
+      } finally {
+         new File(directory, "boot.sh").delete();
+         directory.delete();
+      }
+   }
+
+   public void testFilesOfDirectory() throws IOException {
+      File directory = Files.createTempDir();
+      File nested = new File(directory, "nested");
+      try {
+         nested.mkdir();
+         Files.write("a", new File(directory, "a.yaml"), UTF_8);
+         Files.write("b", new File(nested, "b.yaml"), UTF_8);
+         StackBundle bundle = StackBundle.builder().template(ByteSource.wrap(new byte[0]))
+               .files("file:///templates/", directory).build();
+
+         assertEquals(bundle.getFiles().keySet(),
+               ImmutableSet.of("file:///templates/a.yaml", "file:///templates/nested/b.yaml"));
+         assertEquals(bundle.getFiles().get("file:///templates/nested/b.yaml").read(), "b".getBytes(UTF_8));
+      } finally {
+         new File(nested, "b.yaml").delete();
+         nested.delete();
+         new File(directory, "a.yaml").delete();
+         directory.delete();
+      }
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testDuplicateFileName() {
+      StackBundle.builder().file("a.yaml", ByteSource.wrap(new byte[0])).file("a.yaml", ByteSource.wrap(new byte[1]));
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class)
+   public void testTemplateRequired() {
+      StackBundle.builder().name("stack").build();
+   }
+}
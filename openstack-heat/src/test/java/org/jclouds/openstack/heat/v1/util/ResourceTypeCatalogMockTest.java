@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Template;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the queries and refreshes of {@link ResourceTypeCatalog}
+ */
+@Test(groups = "unit", testName = "ResourceTypeCatalogMockTest")
+public class ResourceTypeCatalogMockTest extends BaseHeatApiMockTest {
+
+   public void testQueries() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/resource_type_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/template_get_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/resource_type_list_response.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         ResourceTypeCatalog catalog = ResourceTypeCatalog.builder(heatApi, "RegionOne").build();
+
+         // the first query lists the types, the next ones do not
+         assertThat(catalog.contains("OS::Nova::Server")).isTrue();
+         assertThat(catalog.contains("OS::Nova::Servr")).isFalse();
+         // types outside the checked namespaces are not in the catalog
+         assertThat(catalog.contains("My::Server")).isTrue();
+         assertThat(catalog.getTypesWithPrefix("OS::Cinder::"))
+               .containsExactly("OS::Cinder::Volume", "OS::Cinder::VolumeAttachment");
+         assertThat(catalog.getTypesWithPrefix("OS::Neutron::")).isEmpty();
+         assertThat(catalog.getUnknownTypes(ImmutableList.of("OS::Nova::Servr", "OS::Nova::Server", "server.yaml",
+               "My::Server")))
+               .containsOnly("OS::Nova::Servr");
+
+         Template template = heatApi.getStackApi("RegionOne").getTemplate("simple_stack",
+               "3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+         assertThat(catalog.getUnknownTypes(template)).isEmpty();
+         catalog.refresh();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/resource_types");
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks/simple_stack/3095aefc-09fb-4bc7-b1f0-f21a304e864c/template");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/resource_types");
+
+         /*
+          * Check response
+          */
+         assertThat(catalog.getTypes()).hasSize(20);
+         assertThat(catalog.getRequestCount()).isEqualTo(2);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testEmptyListingIsKeptUntilRefresh() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/resource_type_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         ResourceTypeCatalog catalog = ResourceTypeCatalog.builder(heatApi, "RegionOne").build();
+
+         // nothing is unknown while the types cannot be listed, and they are not listed again before a refresh
+         assertThat(catalog.getUnknownTypes(ImmutableList.of("OS::Nova::Servr"))).isEmpty();
+         assertThat(catalog.contains("OS::Nova::Servr")).isTrue();
+         assertThat(catalog.getTypes()).isEmpty();
+         catalog.refresh();
+         // an empty refresh keeps the types listed before
+         catalog.refresh();
+         assertThat(catalog.contains("OS::Nova::Servr")).isFalse();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/resource_types");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/resource_types");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/resource_types");
+
+         /*
+          * Check response
+          */
+         assertThat(catalog.getTypes()).hasSize(20);
+         assertThat(catalog.getRequestCount()).isEqualTo(3);
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.StackOutput;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the reads and refreshes of {@link StackCache}
+ */
+@Test(groups = "unit", testName = "StackCacheMockTest")
+public class StackCacheMockTest extends BaseHeatApiMockTest {
+
+   private static final String ID = "3095aefc-09fb-4bc7-b1f0-f21a304e864c";
+
+   public void testReadThroughAndRefresh() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_get_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_cache_get_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_tracker_list_response.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackCache cache = StackCache.builder(heatApi, "RegionOne").build();
+
+         assertThat(cache.get("simple_stack", ID).getId()).isEqualTo(ID);
+         assertThat(cache.getOutputs("simple_stack", ID)).isEmpty();
+         assertThat(cache.getParameters("simple_stack", ID)).doesNotContainKey("key_name");
+
+         // the listed stack was updated since it was fetched
+         cache.refresh();
+         assertThat(cache.getParameters("simple_stack", ID)).containsEntry("key_name", "myKey");
+         List<StackOutput> outputs = cache.getOutputs("simple_stack", ID);
+         assertThat(outputs).hasSize(3);
+         assertThat(outputs.get(0).getKey()).isEqualTo("server_address");
+         assertThat(outputs.get(0).getDescription()).isEqualTo("The address of the server");
+         assertThat(outputs.get(2).getError()).isNotNull();
+         assertThat(cache.getOutputValue("simple_stack", ID, "server_address")).isEqualTo("10.0.0.4");
+         assertThat(cache.getOutputValue("simple_stack", ID, "server_ids")).isEqualTo(
+               ImmutableList.of("8fbd3c5c-f1cd-4bc6-9e5a-b3f2bd1a2b3e", "0d5b0f2a-65a4-43b3-9d86-0b4b0a3c1f10"));
+         assertThat(cache.getOutputValue("simple_stack", ID, "volume_id")).isNull();
+         assertThat(cache.getOutputValue("simple_stack", ID, "missing")).isNull();
+
+         // the stack is no longer listed
+         cache.refresh();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/simple_stack/" + ID);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?limit=100");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/simple_stack/" + ID);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?limit=100");
+
+         /*
+          * Check response
+          */
+         assertThat(cache.size()).isEqualTo(0);
+         assertThat(cache.getHitCount()).isEqualTo(8);
+         assertThat(cache.getMissCount()).isEqualTo(1);
+         assertThat(cache.getRequestCount()).isEqualTo(4);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testRefreshReadsEveryPage() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_get_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_list_response_paged1.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_cache_list_page2.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackCache cache = StackCache.builder(heatApi, "RegionOne").build();
+
+         cache.get("simple_stack", ID);
+         // the stack is listed, unchanged, on the second page
+         cache.refresh();
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(4);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/simple_stack/" + ID);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?limit=100");
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks?limit=100&marker=c4a0b2d3-5e6f-4a1b-8c9d-0e1f2a3b4c5d");
+
+         /*
+          * Check response
+          */
+         assertThat(cache.size()).isEqualTo(1);
+         assertThat(cache.getRequestCount()).isEqualTo(3);
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the dependency queries of {@link StackResourceGraph} and the fetching of {@link StackInspector}
+ */
+@Test(groups = "unit", testName = "StackInspectorMockTest")
+public class StackInspectorMockTest extends BaseHeatApiMockTest {
+
+   private static final String STACK = "/stacks/graph_stack/5f4c2a1e-8b3d-4e6f-9a0b-1c2d3e4f5a6b";
+
+   public void testInspect() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_resources_graph_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_resources_get_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/resources_metadata.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_resources_get_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/resources_metadata_null_value.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(409)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         // a single resource at a time on the calling thread keeps the requests in order
+         StackInspector inspector = StackInspector.builder(heatApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService()).maxConcurrency(1).build();
+
+         StackInspection inspection = inspector.inspect("graph_stack", "5f4c2a1e-8b3d-4e6f-9a0b-1c2d3e4f5a6b");
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources/private_net");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources/private_net/metadata");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources/private_subnet");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources/private_subnet/metadata");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources/server");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK + "/resources/cinder_volume");
+
+         /*
+          * Check response
+          */
+         assertThat(inspection.getResources().keySet()).containsExactly("private_net", "private_subnet");
+         assertThat(inspection.getMetadata().get("private_net")).containsEntry("some_key", "some_value");
+         // a null metadata value does not fail the resource
+         assertThat(inspection.getMetadata().get("private_subnet")).containsEntry("some_key", "some_value");
+         assertThat(inspection.getFailures().keySet()).containsExactly("server");
+         assertThat(inspection.getFailures().get("server")).isInstanceOf(IllegalStateException.class);
+         assertThat(inspection.isComplete()).isFalse();
+
+         StackResourceGraph graph = inspection.getGraph();
+         assertThat(graph.size()).isEqualTo(4);
+         assertThat(graph.getTopologicalOrder())
+               .containsExactly("cinder_volume", "private_net", "private_subnet", "server");
+         assertThat(graph.getDependencies("server")).containsOnly("private_subnet", "cinder_volume");
+         assertThat(graph.getCriticalPath()).containsExactly("private_net", "private_subnet", "server");
+         assertThat(graph.getBlastRadius("private_net")).containsExactly("private_subnet", "server");
+         assertThat(graph.getBlastRadius("server")).isEmpty();
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the ordering of the deletions of {@link StackTeardown}
+ */
+@Test(groups = "unit", testName = "StackTeardownMockTest")
+public class StackTeardownMockTest extends BaseHeatApiMockTest {
+
+   private static final String NETWORK = "/stacks/teardown_network/1f2e3d4c-5b6a-4978-8695-a4b3c2d1e0f9";
+   private static final String DB = "/stacks/teardown_db/2a3b4c5d-6e7f-4081-9283-a4b5c6d7e8f9";
+   private static final String APP = "/stacks/teardown_app/3b4c5d6e-7f80-4192-a3b4-c5d6e7f8091a";
+
+   public void testUsersAreDeletedFirst() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      enqueue(server, 200, "/teardown_list_response.json");
+      enqueue(server, 200, "/teardown_get_network.json");
+      enqueue(server, 200, "/teardown_get_db.json");
+      enqueue(server, 200, "/teardown_get_app.json");
+      // the app uses the db and the network, the db uses the network
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      enqueue(server, 200, "/teardown_deleted_db.json");
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      enqueue(server, 200, "/teardown_delete_failed_network.json");
+
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").scheduler(scheduler)
+               .interval(10, TimeUnit.MILLISECONDS).timeout(1, TimeUnit.MINUTES).build();
+         // a single deletion at a time on the calling thread keeps the requests in order
+         StackTeardown teardown = StackTeardown.builder(heatApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService()).tracker(tracker).maxConcurrency(1).build();
+
+         List<Stack> stacks = heatApi.getStackApi("RegionOne").list();
+         StackTeardownResult result = teardown.delete(stacks);
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + NETWORK);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + DB);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + APP);
+         assertRequest(server.takeRequest(), "DELETE", BASE_URI + APP);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + APP);
+         assertRequest(server.takeRequest(), "DELETE", BASE_URI + DB);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + DB);
+         assertRequest(server.takeRequest(), "DELETE", BASE_URI + NETWORK);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + NETWORK);
+
+         /*
+          * Check response
+          */
+         assertThat(result.getDeleted()).containsExactly("3b4c5d6e-7f80-4192-a3b4-c5d6e7f8091a",
+               "2a3b4c5d-6e7f-4081-9283-a4b5c6d7e8f9");
+         assertThat(result.getFailures()).containsKey("1f2e3d4c-5b6a-4978-8695-a4b3c2d1e0f9");
+         assertThat(result.getSkipped()).isEmpty();
+         assertThat(result.isComplete()).isFalse();
+         tracker.close();
+      } finally {
+         scheduler.shutdownNow();
+         server.shutdown();
+      }
+   }
+
+   public void testDependenciesFromOutputs() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      enqueue(server, 200, "/teardown_outputs_list.json");
+      enqueue(server, 200, "/teardown_outputs_network.json");
+      enqueue(server, 200, "/teardown_outputs_db.json");
+
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").scheduler(scheduler)
+               .timeout(1, TimeUnit.MINUTES).build();
+         StackTeardown teardown = StackTeardown.builder(heatApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService()).tracker(tracker).build();
+
+         List<Stack> stacks = heatApi.getStackApi("RegionOne").list();
+         // the db uses the network output of the network stack; the port, the booleans and the flavor they share
+         // identify neither stack
+         ImmutableSetMultimap<String, String> dependencies = teardown.getDependencies(stacks);
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(4);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + NETWORK);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + DB);
+
+         /*
+          * Check response
+          */
+         assertThat(dependencies).isEqualTo(ImmutableSetMultimap.of("2a3b4c5d-6e7f-4081-9283-a4b5c6d7e8f9",
+               "1f2e3d4c-5b6a-4978-8695-a4b3c2d1e0f9"));
+         tracker.close();
+      } finally {
+         scheduler.shutdownNow();
+         server.shutdown();
+      }
+   }
+
+   public void testTrackerMustEnd() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").build();
+         try {
+            StackTeardown.builder(heatApi, "RegionOne").executor(MoreExecutors.newDirectExecutorService())
+                  .tracker(tracker).build();
+            fail("a tracker without a scheduler would never complete the deletions");
+         } catch (IllegalArgumentException expected) {
+         }
+         assertThat(server.getRequestCount()).isEqualTo(0);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private void enqueue(MockWebServer server, int code, String resource) {
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(code).setBody(stringFromResource(resource))));
+   }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackStatus;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the polling of {@link StackTracker}
+ */
+@Test(groups = "unit", testName = "StackTrackerMockTest")
+public class StackTrackerMockTest extends BaseHeatApiMockTest {
+
+   private static final String LISTED_STATUSES = "status=IN_PROGRESS&status=COMPLETE&status=FAILED";
+
+   public void testOneListPerPoll() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_tracker_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_get_response.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").interval(1, TimeUnit.HOURS)
+               .maxInterval(2, TimeUnit.HOURS).build();
+
+         ListenableFuture<Stack> web = tracker.track("web", "7d6f2e6a-2bd1-4e8a-9a53-3b8f4c1d0b11");
+         ListenableFuture<Stack> db = tracker.track("db", "c4a0b2d3-5e6f-4a1b-8c9d-0e1f2a3b4c5d");
+         ListenableFuture<Stack> app = tracker.track("app", "5f9e1d2c-3b4a-4c5d-8e7f-1a2b3c4d5e6f");
+         ListenableFuture<Stack> simple = tracker.track("simple_stack", "3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+         tracker.poll();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?" + LISTED_STATUSES + "&limit=100");
+         // the stack the listing does not return is fetched on its own
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks/simple_stack/3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+
+         /*
+          * Check response
+          */
+         assertThat(web.get().getStatus()).isEqualTo(StackStatus.CREATE_COMPLETE);
+         assertThat(db.get().getStatus()).isEqualTo(StackStatus.ROLLBACK_COMPLETE);
+         assertThat(simple.get().getStatus()).isEqualTo(StackStatus.CREATE_COMPLETE);
+         // the stack still in progress waits for a later poll
+         assertThat(app.isDone()).isFalse();
+         assertThat(tracker.size()).isEqualTo(1);
+         assertThat(tracker.getRequestCount()).isEqualTo(2);
+         assertThat(tracker.getPollFailureCount()).isEqualTo(0);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testListsPagesUntilEveryStackIsFound() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_tracker_list_page1.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_list_response_paged2.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/stack_tracker_list_page1.json"))));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").build();
+
+         ListenableFuture<Stack> web = tracker.track("web", "7d6f2e6a-2bd1-4e8a-9a53-3b8f4c1d0b11");
+         ListenableFuture<Stack> other = tracker.track("other", "0a1b2c3d-4e5f-6a7b-8c9d-aabbccddeeff");
+         tracker.poll();
+         // every stack is on the first page, the next one is not read
+         ListenableFuture<Stack> db = tracker.track("db", "c4a0b2d3-5e6f-4a1b-8c9d-0e1f2a3b4c5d");
+         ListenableFuture<Stack> stillWeb = tracker.track("web", "7d6f2e6a-2bd1-4e8a-9a53-3b8f4c1d0b11");
+         tracker.poll();
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(4);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?" + LISTED_STATUSES + "&limit=100");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?" + LISTED_STATUSES
+               + "&limit=100&marker=c4a0b2d3-5e6f-4a1b-8c9d-0e1f2a3b4c5d");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?" + LISTED_STATUSES + "&limit=100");
+
+         /*
+          * Check response
+          */
+         assertThat(web.get().getStatus()).isEqualTo(StackStatus.CREATE_COMPLETE);
+         assertThat(other.get().getStatus()).isEqualTo(StackStatus.UPDATE_FAILED);
+         assertThat(db.get().getStatus()).isEqualTo(StackStatus.ROLLBACK_COMPLETE);
+         assertThat(stillWeb.get().getStatus()).isEqualTo(StackStatus.CREATE_COMPLETE);
+         assertThat(tracker.getRequestCount()).isEqualTo(3);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testDeletionsAreListedWithTheDeletedStacks() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_tracker_deleted_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").build();
+
+         ListenableFuture<Stack> app = tracker.trackDeletion("teardown_app", "3b4c5d6e-7f80-4192-a3b4-c5d6e7f8091a");
+         ListenableFuture<Stack> db = tracker.trackDeletion("teardown_db", "2a3b4c5d-6e7f-4081-9283-a4b5c6d7e8f9");
+         ListenableFuture<Stack> network = tracker.trackDeletion("teardown_network",
+               "1f2e3d4c-5b6a-4978-8695-a4b3c2d1e0f9");
+         tracker.poll();
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(3);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks?" + LISTED_STATUSES + "&show_deleted=true&limit=100");
+         // the stack Heat no longer lists is fetched on its own
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks/teardown_network/1f2e3d4c-5b6a-4978-8695-a4b3c2d1e0f9");
+
+         /*
+          * Check response
+          */
+         assertThat(db.get().getStatus()).isEqualTo(StackStatus.DELETE_COMPLETE);
+         assertThat(network.get()).isNull();
+         assertThat(app.isDone()).isFalse();
+         assertThat(tracker.size()).isEqualTo(1);
+         assertThat(tracker.getRequestCount()).isEqualTo(2);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testMissingStackCompletesWithNull() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackTracker tracker = StackTracker.builder(heatApi, "RegionOne").build();
+
+         ListenableFuture<Stack> gone = tracker.track(null, "3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+         tracker.poll();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+
+         /*
+          * Check response
+          */
+         assertThat(gone.get()).isNull();
+         assertThat(tracker.size()).isEqualTo(0);
+      } finally {
+         server.shutdown();
+      }
+   }
+}
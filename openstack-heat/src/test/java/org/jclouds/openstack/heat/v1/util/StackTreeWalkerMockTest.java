@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.domain.StackStatus;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the expansion of nested stacks by {@link StackTreeWalker} and the queries of {@link StackTree}
+ */
+@Test(groups = "unit", testName = "StackTreeWalkerMockTest")
+public class StackTreeWalkerMockTest extends BaseHeatApiMockTest {
+
+   private static final String ROOT = "3095aefc-09fb-4bc7-b1f0-f21a304e864c";
+   private static final String NETWORK = "9a1e5c2b-3d4f-4a6b-8c7d-2e3f4a5b6c7d";
+   private static final String SERVERS = "4b5c6d7e-8f9a-4b0c-9d1e-3f4a5b6c7d8e";
+   private static final String PORTS = "7c8d9e0f-1a2b-4c3d-8e4f-5a6b7c8d9e0f";
+
+   public void testExpandAndRefresh() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      enqueue(server, "/stack_get_response.json");
+      enqueue(server, "/nested_stack_root_resources.json");
+      enqueue(server, "/nested_stack_get_network.json");
+      enqueue(server, "/nested_stack_get_servers.json");
+      enqueue(server, "/nested_stack_network_resources.json");
+      enqueue(server, "/nested_stack_empty_resources.json");
+      enqueue(server, "/nested_stack_get_ports.json");
+      enqueue(server, "/nested_stack_empty_resources.json");
+      enqueue(server, "/nested_stack_list_page1.json");
+      enqueue(server, "/nested_stack_list_page2.json");
+      enqueue(server, "/nested_stack_list_response.json");
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         // the calling thread runs every request, which keeps them in order
+         StackTreeWalker walker = StackTreeWalker.builder(heatApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService()).maxConcurrency(2).build();
+
+         Stack root = heatApi.getStackApi("RegionOne").get("simple_stack", ROOT);
+         StackTree tree = walker.expand(root);
+         // the children of every stack are remembered
+         StackTree again = walker.expand(root);
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/simple_stack/" + ROOT);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/simple_stack/" + ROOT + "/resources");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/" + NETWORK);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/" + SERVERS);
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks/simple_stack-network-abcdefgh/" + NETWORK + "/resources");
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks/simple_stack-servers-ijklmnop/" + SERVERS + "/resources");
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks/" + PORTS);
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks/simple_stack-network-abcdefgh-ports-qrstuvwx/" + PORTS + "/resources");
+
+         /*
+          * Check response
+          */
+         assertThat(tree.size()).isEqualTo(4);
+         assertThat(again.getStacks().keySet()).isEqualTo(tree.getStacks().keySet());
+         assertThat(tree.getChildren(ROOT)).extracting("id").containsExactly(NETWORK, SERVERS);
+         assertThat(tree.getChildren(NETWORK)).extracting("id").containsExactly(PORTS);
+         assertThat(tree.getChildren(SERVERS)).isEmpty();
+         assertThat(tree.getParent(PORTS).getId()).isEqualTo(NETWORK);
+         assertThat(tree.getParent(ROOT)).isNull();
+         assertThat(tree.getDepth(PORTS)).isEqualTo(2);
+         assertThat(tree.getStatuses().count(StackStatus.CREATE_COMPLETE)).isEqualTo(4);
+
+         // a single listing refreshes the whole tree, page after page
+         StackTree refreshed = walker.refresh(tree);
+
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?show_nested=true&limit=100");
+         assertRequest(server.takeRequest(), "GET",
+               BASE_URI + "/stacks?show_nested=true&limit=100&marker=4b5c6d7e-8f9a-4b0c-9d1e-3f4a5b6c7d8e");
+         assertThat(refreshed.size()).isEqualTo(4);
+         assertThat(refreshed.getStatuses().count(StackStatus.UPDATE_IN_PROGRESS)).isEqualTo(2);
+         assertThat(refreshed.getStacks(StackStatus.UPDATE_FAILED)).extracting("id").containsExactly(PORTS);
+         assertThat(refreshed.getChildren(NETWORK)).extracting("id").containsExactly(PORTS);
+
+         // the parents of the listed stacks give the same tree, without the stacks nested elsewhere
+         StackTree listed = walker.list(root);
+
+         assertRequest(server.takeRequest(), "GET", BASE_URI + "/stacks?show_nested=true&limit=100");
+         assertThat(listed.getStacks().keySet()).containsOnly(ROOT, NETWORK, SERVERS, PORTS);
+         assertThat(listed.getParent(PORTS).getId()).isEqualTo(NETWORK);
+         assertThat(server.getRequestCount()).isEqualTo(12);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private void enqueue(MockWebServer server, String resource) {
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource(resource))));
+   }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.Map;
+
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Stack;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.jclouds.openstack.heat.v1.options.UpdateStack;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the skipping and patching of {@link StackUpdater}
+ */
+@Test(groups = "unit", testName = "StackUpdaterMockTest")
+public class StackUpdaterMockTest extends BaseHeatApiMockTest {
+
+   private static final String STACK = "/stacks/simple_stack/3095aefc-09fb-4bc7-b1f0-f21a304e864c";
+   private static final String TEMPLATE = "heat_template_version: 2013-05-23\nparameters:\n  key_name:\n"
+         + "    type: string\n  flavor:\n    type: string\n  count:\n    type: number\n  db_password:\n"
+         + "    type: string\n    hidden: true\n  image:\n    type: string\n    default: cirros\n";
+
+   public void testSkipAndPatch() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_updater_get_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(202)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(202)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackUpdater updater = StackUpdater.builder(heatApi, "RegionOne").build();
+         Stack stack = heatApi.getStackApi("RegionOne").get("simple_stack", "3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+
+         // a new updater does not know the template of the stack
+         StackUpdateDiff first = updater.update(stack, update("m1.small", "s3cret"));
+         // the same template and parameters again, the hidden one being masked and the image left to its default
+         StackUpdateDiff second = updater.update(stack, update("m1.small", "s3cret"));
+         // a single parameter changed
+         StackUpdateDiff third = updater.update(stack, update("m1.large", "s3cret"));
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK);
+         assertRequest(server.takeRequest(), "PUT", BASE_URI + STACK, "/stack_updater_put_request.json");
+         assertRequest(server.takeRequest(), "PATCH", BASE_URI + STACK, "/stack_updater_patch_request.json");
+
+         /*
+          * Check response
+          */
+         assertThat(first.isTemplateChanged()).isTrue();
+         // nothing was sent for the masked parameter yet
+         assertThat(first.getChangedParameters()).isEqualTo(ImmutableMap.of("db_password", "s3cret"));
+         assertThat(second.isNoOp()).isTrue();
+         assertThat(third.isTemplateChanged()).isFalse();
+         assertThat(third.getChangedParameters()).isEqualTo(ImmutableMap.of("flavor", "m1.large"));
+         assertThat(updater.getReplacedCount()).isEqualTo(1);
+         assertThat(updater.getSkippedCount()).isEqualTo(1);
+         assertThat(updater.getPatchedCount()).isEqualTo(1);
+
+         // parameters the updater sent and an update replacing the template leaves out are reset
+         StackUpdateDiff removed = updater.diff(stack, UpdateStack.builder().template(TEMPLATE)
+               .parameters(ImmutableMap.<String, Object> of("key_name", "myKey", "flavor", "m1.large",
+                     "db_password", "s3cret")).build());
+         assertThat(removed.getRemovedParameters()).containsOnly("count");
+         // a masked parameter is compared with the value the updater sent
+         StackUpdateDiff rotated = updater.diff(stack, update("m1.small", "n3w"));
+         assertThat(rotated.getChangedParameters()).isEqualTo(ImmutableMap.of("db_password", "n3w"));
+         // an updater that never sent the masked parameter cannot skip it
+         updater.forget(stack.getId());
+         StackUpdateDiff unknown = updater.diff(stack, UpdateStack.builder()
+               .parameters(ImmutableMap.<String, Object> of("db_password", "s3cret")).build());
+         assertThat(unknown.isNoOp()).isFalse();
+         assertThat(unknown.getChangedParameters()).isEqualTo(ImmutableMap.of("db_password", "s3cret"));
+         assertThat(server.getRequestCount()).isEqualTo(4);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testPutWhenPatchIsNotAllowed() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/stack_updater_get_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(405)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(202)));
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         StackUpdater updater = StackUpdater.builder(heatApi, "RegionOne").build();
+         Stack stack = heatApi.getStackApi("RegionOne").get("simple_stack", "3095aefc-09fb-4bc7-b1f0-f21a304e864c");
+
+         UpdateStack keepTemplate = UpdateStack.builder()
+               .parameters(ImmutableMap.<String, Object> of("flavor", "m1.large")).build();
+         // a PUT needs a template
+         try {
+            updater.update(stack, keepTemplate);
+            fail("an update without a template cannot be sent with a PUT");
+         } catch (IllegalStateException expected) {
+         }
+         // the server does not support PATCH, it is not tried again
+         try {
+            updater.update(stack, keepTemplate);
+            fail("an update without a template cannot be sent with a PUT");
+         } catch (IllegalStateException expected) {
+         }
+         updater.update(stack, update("m1.small", "s3cret"));
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(4);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", BASE_URI + STACK);
+         assertRequest(server.takeRequest(), "PATCH", BASE_URI + STACK, "/stack_updater_patch_request.json");
+         assertRequest(server.takeRequest(), "PUT", BASE_URI + STACK, "/stack_updater_put_request.json");
+
+         /*
+          * Check response
+          */
+         assertThat(updater.getPatchedCount()).isEqualTo(0);
+         assertThat(updater.getReplacedCount()).isEqualTo(1);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static UpdateStack update(String flavor, String password) {
+      Map<String, Object> parameters = ImmutableMap.<String, Object> of("key_name", "myKey", "flavor", flavor,
+            "count", 3, "db_password", password);
+      return UpdateStack.builder().template(TEMPLATE).parameters(parameters).build();
+   }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.heat.v1.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Map;
+
+import org.jclouds.json.Json;
+import org.jclouds.json.config.GsonModule;
+import org.jclouds.openstack.heat.v1.HeatApi;
+import org.jclouds.openstack.heat.v1.domain.Template;
+import org.jclouds.openstack.heat.v1.internal.BaseHeatApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the tiers of {@link TemplateCache}
+ */
+@Test(groups = "unit", testName = "TemplateCacheMockTest")
+public class TemplateCacheMockTest extends BaseHeatApiMockTest {
+
+   private static final String TEMPLATE_URL = "https://examplevalidateurl.com/exampletemplate.json";
+   private static final String TEMPLATE = "heat_template_version: 2013-05-23\nresources:\n  db:\n    type: db.yaml\n";
+
+   public void testValidateOncePerContent() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/template_validate_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/template_validate_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/template_validate_response.json"))));
+      File directory = Files.createTempDir();
+      Json json = Guice.createInjector(new GsonModule()).getInstance(Json.class);
+
+      try {
+         HeatApi heatApi = api(server.getUrl("/").toString(), "openstack-heat", overrides);
+         URI endpoint = server.getUrl("/").toURI();
+         Map<String, String> files = ImmutableMap.of("db.yaml", "heat_template_version: 2013-05-23\n");
+
+         TemplateCache cache = TemplateCache.builder(heatApi, "RegionOne").directory(directory, json, endpoint).build();
+         Template validated = cache.validate(TEMPLATE_URL, TEMPLATE, files);
+         Template cached = cache.validate(TEMPLATE_URL, TEMPLATE, files);
+
+         // a later run only has the disk tier
+         TemplateCache nextRun = TemplateCache.builder(heatApi, "RegionOne").directory(directory, json, endpoint).build();
+         Template stored = nextRun.validate(TEMPLATE_URL, TEMPLATE, files);
+
+         // a changed nested file is validated again
+         nextRun.validate(TEMPLATE_URL, TEMPLATE, ImmutableMap.of("db.yaml", "heat_template_version: 2014-10-16\n"));
+
+         // another cloud sharing the directory does not see these entries
+         TemplateCache otherCloud = TemplateCache.builder(heatApi, "RegionOne")
+               .directory(directory, json, URI.create("https://keystone.example.com:5000/v2.0")).build();
+         otherCloud.validate(TEMPLATE_URL, TEMPLATE, files);
+
+         /*
+          * Check request
+          */
+         assertThat(server.getRequestCount()).isEqualTo(4);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "POST", BASE_URI + "/validate", "/template_validate_request.json");
+         assertRequest(server.takeRequest(), "POST", BASE_URI + "/validate", "/template_validate_request.json");
+         assertRequest(server.takeRequest(), "POST", BASE_URI + "/validate", "/template_validate_request.json");
+
+         /*
+          * Check response
+          */
+         assertThat(cached).isSameAs(validated);
+         assertThat(stored).isEqualTo(validated);
+         assertThat(cache.getHitCount()).isEqualTo(1);
+         assertThat(cache.getMissCount()).isEqualTo(1);
+         assertThat(nextRun.getDiskHitCount()).isEqualTo(1);
+         assertThat(nextRun.getMissCount()).isEqualTo(1);
+         assertThat(otherCloud.getMissCount()).isEqualTo(1);
+      } finally {
+         server.shutdown();
+         for (File file : directory.listFiles()) {
+            file.delete();
+         }
+         directory.delete();
+      }
+   }
+
+   public void testHashCoversFiles() {
+      String bare = TemplateCache.hash(TEMPLATE, null);
+      assertThat(TemplateCache.hash(TEMPLATE, ImmutableMap.<String, String> of())).isEqualTo(bare);
+      assertThat(TemplateCache.hash(TEMPLATE, ImmutableMap.of("a", "bc"))).isNotEqualTo(bare);
+      assertThat(TemplateCache.hash(TEMPLATE, ImmutableMap.of("a", "bc")))
+            .isNotEqualTo(TemplateCache.hash(TEMPLATE, ImmutableMap.of("ab", "c")));
+      assertThat(TemplateCache.hash(TEMPLATE, ImmutableMap.of("a", "1", "b", "2")))
+            .isEqualTo(TemplateCache.hash(TEMPLATE, ImmutableMap.of("b", "2", "a", "1")));
+   }
+
+   public void testScopeCoversEndpointAndRegion() {
+      URI endpoint = URI.create("https://keystone.example.com:5000/v2.0");
+      String scope = TemplateCache.scope(endpoint, "RegionOne");
+      assertThat(TemplateCache.scope(endpoint, "RegionTwo")).isNotEqualTo(scope);
+      assertThat(TemplateCache.scope(URI.create("https://keystone.example.org:5000/v2.0"), "RegionOne"))
+            .isNotEqualTo(scope);
+   }
+}
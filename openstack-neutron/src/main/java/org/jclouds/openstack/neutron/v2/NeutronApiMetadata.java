@@ -18,6 +18,8 @@ package org.jclouds.openstack.neutron.v2;
 
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.CREDENTIAL_TYPE;
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.SERVICE_TYPE;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSION_CACHE_REFRESH;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSION_CACHE_WARMUP;
 
 import java.net.URI;
 import java.util.Properties;
@@ -59,6 +61,8 @@ public class NeutronApiMetadata extends BaseHttpApiMetadata<NeutronApi> {
       Properties properties = BaseHttpApiMetadata.defaultProperties();
       properties.setProperty(SERVICE_TYPE, ServiceType.NETWORK);
       properties.setProperty(CREDENTIAL_TYPE, CredentialTypes.PASSWORD_CREDENTIALS);
+      properties.setProperty(EXTENSION_CACHE_REFRESH, "3600");
+      properties.setProperty(EXTENSION_CACHE_WARMUP, "true");
       return properties;
    }
 
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSION_CACHE_WARMUP;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.jclouds.Constants;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.v2_0.domain.Extension;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Loads and refreshes the extensions of each region for the cache behind {@code NeutronApi.getRouterApi(region)} and
+ * the other extension getters, and exposes its metrics.
+ * <p/>
+ * Refreshes run on the user executor while callers keep getting the cached extensions. A refresh that fails keeps
+ * the previous extensions instead of evicting them, so a transient error of the extensions endpoint does not turn
+ * into missing extensions or blocked calls.
+ */
+@Singleton
+public class ExtensionCache extends CacheLoader<String, Set<? extends Extension>> {
+
+   private final Provider<NeutronApi> neutronApi;
+   private final Provider<LoadingCache<String, Set<? extends Extension>>> cache;
+   private final ListeningExecutorService userExecutor;
+   private final AtomicBoolean warmupPending;
+   private final AtomicLong refreshes = new AtomicLong();
+   private final AtomicLong refreshFailures = new AtomicLong();
+   private final AtomicReference<Throwable> lastRefreshFailure = new AtomicReference<Throwable>();
+
+   @Inject
+   protected ExtensionCache(Provider<NeutronApi> neutronApi,
+         Provider<LoadingCache<String, Set<? extends Extension>>> cache,
+         @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor,
+         @Named(EXTENSION_CACHE_WARMUP) boolean warmup) {
+      this.neutronApi = checkNotNull(neutronApi, "neutronApi");
+      this.cache = checkNotNull(cache, "cache");
+      this.userExecutor = checkNotNull(userExecutor, "userExecutor");
+      this.warmupPending = new AtomicBoolean(warmup);
+   }
+
+   @Override
+   public Set<? extends Extension> load(String region) {
+      Set<? extends Extension> extensions = neutronApi.get().getExtensionApi(region).list();
+      if (warmupPending.compareAndSet(true, false)) {
+         warmUp(region);
+      }
+      return extensions;
+   }
+
+   @Override
+   public ListenableFuture<Set<? extends Extension>> reload(final String region,
+         final Set<? extends Extension> oldValue) {
+      return userExecutor.submit(new Callable<Set<? extends Extension>>() {
+         @Override
+         public Set<? extends Extension> call() {
+            try {
+               Set<? extends Extension> extensions = neutronApi.get().getExtensionApi(region).list();
+               refreshes.incrementAndGet();
+               return extensions;
+            } catch (RuntimeException e) {
+               refreshFailures.incrementAndGet();
+               lastRefreshFailure.set(e);
+               return oldValue;
+            }
+         }
+      });
+   }
+
+   /**
+    * Loads, on the user executor, the extensions of every configured region that is not cached yet.
+    *
+    * @return a future that completes when all regions are loaded; it never fails, since a region that cannot be
+    *         loaded now is simply loaded again on its first use
+    */
+   public ListenableFuture<Void> warmUp() {
+      return warmUp(null);
+   }
+
+   private ListenableFuture<Void> warmUp(@Nullable final String loading) {
+      return userExecutor.submit(new Callable<Void>() {
+         @Override
+         public Void call() {
+            LoadingCache<String, Set<? extends Extension>> extensions = cache.get();
+            for (String region : neutronApi.get().getConfiguredRegions()) {
+               if (!region.equals(loading) && extensions.getIfPresent(region) == null) {
+                  try {
+                     extensions.getUnchecked(region);
+                  } catch (RuntimeException e) {
+                     lastRefreshFailure.set(e);
+                  }
+               }
+            }
+            return null;
+         }
+      });
+   }
+
+   /**
+    * @return the number of lookups that found the extensions of the region cached
+    */
+   public long getHitCount() {
+      return cache.get().stats().hitCount();
+   }
+
+   /**
+    * @return the number of lookups that had to load the extensions of the region, blocking the caller
+    */
+   public long getMissCount() {
+      return cache.get().stats().missCount();
+   }
+
+   /**
+    * @return the number of background refreshes that replaced the cached extensions
+    */
+   public long getRefreshCount() {
+      return refreshes.get();
+   }
+
+   /**
+    * @return the number of background refreshes that failed and kept the cached extensions
+    */
+   public long getRefreshFailureCount() {
+      return refreshFailures.get();
+   }
+
+   /**
+    * @return the error of the last failed refresh or warm-up, if any
+    */
+   @Nullable
+   public Throwable getLastRefreshFailure() {
+      return lastRefreshFailure.get();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("hits", getHitCount())
+            .add("misses", getMissCount())
+            .add("refreshes", getRefreshCount())
+            .add("refreshFailures", getRefreshFailureCount())
+            .toString();
+   }
+}
@@ -17,12 +17,13 @@
 package org.jclouds.openstack.neutron.v2.config;
 
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneHttpApiModule.namespaceAliasBinder;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSION_CACHE_REFRESH;
 
 import java.net.URI;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
-import javax.inject.Provider;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.jclouds.http.HttpErrorHandler;
@@ -41,7 +42,6 @@ import org.jclouds.rest.config.HttpApiModule;
 import org.jclouds.rest.functions.ImplicitOptionalConverter;
 
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.inject.Provides;
 import com.google.inject.multibindings.MapBinder;
@@ -71,16 +71,21 @@ public class NeutronHttpApiModule extends HttpApiModule<NeutronApi> {
             URI.create("http://docs.openstack.org/networking/ext/lbaas/api/v1.0"));
    }
 
+   /**
+    * Extensions are refreshed in the background once they are older than
+    * {@link NeutronProperties#EXTENSION_CACHE_REFRESH} and never expire, so only the first lookup of a region waits
+    * for them.
+    *
+    * @see ExtensionCache
+    */
    @Provides
    @Singleton
-   public LoadingCache<String, Set<? extends Extension>> provideExtensionsByRegion(final Provider<NeutronApi> neutronApi) {
-      return CacheBuilder.newBuilder().expireAfterWrite(23, TimeUnit.HOURS)
-            .build(new CacheLoader<String, Set<? extends Extension>>() {
-               @Override
-               public Set<? extends Extension> load(String key) throws Exception {
-                  return neutronApi.get().getExtensionApi(key).list();
-               }
-            });
+   public LoadingCache<String, Set<? extends Extension>> provideExtensionsByRegion(ExtensionCache loader,
+         @Named(EXTENSION_CACHE_REFRESH) long refreshSeconds) {
+      return CacheBuilder.newBuilder()
+            .refreshAfterWrite(refreshSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build(loader);
    }
 
    @Override
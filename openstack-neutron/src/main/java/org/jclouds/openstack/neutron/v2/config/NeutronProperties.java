@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+/**
+ * Configuration properties and constants used in Neutron connections.
+ */
+public final class NeutronProperties {
+
+   /**
+    * How long, in seconds, the extensions of a region are cached before they are refreshed in the background. Callers
+    * keep getting the cached extensions during the refresh, and after it if it fails. Defaults to 3600.
+    */
+   public static final String EXTENSION_CACHE_REFRESH = "jclouds.openstack-neutron.extension-cache.refresh";
+
+   /**
+    * Whether loading the extensions of a region for the first time also loads, in the background, the extensions of
+    * all the other configured regions. Defaults to true.
+    */
+   public static final String EXTENSION_CACHE_WARMUP = "jclouds.openstack-neutron.extension-cache.warmup";
+
+   private NeutronProperties() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+}
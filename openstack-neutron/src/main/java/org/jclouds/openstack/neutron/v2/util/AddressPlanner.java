@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Plans the fixed IPs and MAC addresses of ports before they are created, so that bulk creations with explicit
+ * {@code fixed_ips} do not collide with addresses already in use.
+ * <p/>
+ * Each subnet gets a bitmap of its allocation pools in which the network, broadcast and gateway addresses and the
+ * fixed IPs of the known ports are marked used. Allocation takes the next free bit after the last one handed out,
+ * scanning 64 addresses per step. Each subnet is locked on its own, so threads allocating in different subnets never
+ * wait for each other and threads allocating in the same subnet never get the same address.
+ * <p/>
+ * Bitmaps cover at most {@value #MAX_ADDRESSES} addresses from the start of the first allocation pool, which leaves
+ * the rest of very large IPv6 pools unplanned.
+ *
+ * <pre>
+ * AddressPlanner planner = AddressPlanner.load(neutronApi, "RegionOne");
+ * for (int i = 0; i &lt; 100; i++) {
+ *    portApi.create(planner.createPortBuilder(subnetId).name("worker-" + i).build());
+ * }
+ * </pre>
+ */
+public class AddressPlanner {
+
+   /**
+    * The OpenStack default prefix of the MAC addresses of ports.
+    */
+   public static final String DEFAULT_MAC_PREFIX = "fa:16:3e";
+
+   static final int MAX_ADDRESSES = 1 << 24;
+
+   private final ConcurrentMap<String, SubnetSpace> subnets = Maps.newConcurrentMap();
+   private final Set<Long> macs = Sets.newSetFromMap(Maps.<Long, Boolean> newConcurrentMap());
+   private final Random random = new Random();
+
+   /**
+    * Plans against the subnets and ports of one region.
+    */
+   public static AddressPlanner load(NeutronApi api, String region) {
+      return create(api.getSubnetApi(region).list().concat(), api.getPortApi(region).list().concat());
+   }
+
+   public static AddressPlanner create(Iterable<? extends Subnet> subnets, Iterable<? extends Port> ports) {
+      AddressPlanner planner = new AddressPlanner();
+      for (Subnet subnet : subnets) {
+         planner.addSubnet(subnet);
+      }
+      for (Port port : ports) {
+         planner.markUsed(port);
+      }
+      return planner;
+   }
+
+   /**
+    * Adds a subnet, or resets the plan of a known one. Its addresses are free until ports are marked used.
+    */
+   public void addSubnet(Subnet subnet) {
+      checkNotNull(subnet, "subnet");
+      subnets.put(checkNotNull(subnet.getId(), "subnet id"), new SubnetSpace(subnet));
+   }
+
+   /**
+    * Marks the fixed IPs and the MAC address of a port used, for example after it was created outside the planner.
+    * Fixed IPs of unknown subnets are ignored.
+    */
+   public void markUsed(Port port) {
+      checkNotNull(port, "port");
+      if (port.getFixedIps() != null) {
+         for (IP ip : port.getFixedIps()) {
+            SubnetSpace space = ip.getSubnetId() != null ? subnets.get(ip.getSubnetId()) : null;
+            if (space != null && ip.getIpAddress() != null) {
+               space.reserve(ip.getIpAddress());
+            }
+         }
+      }
+      if (port.getMacAddress() != null) {
+         macs.add(NeutronInventory.packMac(port.getMacAddress()));
+      }
+   }
+
+   /**
+    * @return a free address of the subnet, which is now used
+    * @throws IllegalStateException if the subnet has no free address left
+    */
+   public IP allocate(String subnetId) {
+      return allocate(subnetId, 1).get(0);
+   }
+
+   /**
+    * @return {@code count} free addresses of the subnet, which are now used
+    * @throws IllegalStateException if the subnet has fewer free addresses, in which case none is allocated
+    */
+   public ImmutableList<IP> allocate(String subnetId, int count) {
+      checkArgument(count > 0, "count must be positive");
+      SubnetSpace space = space(subnetId);
+      ImmutableList.Builder<IP> ips = ImmutableList.builder();
+      for (String address : space.allocate(count)) {
+         ips.add(IP.builder().ipAddress(address).subnetId(subnetId).build());
+      }
+      return ips.build();
+   }
+
+   /**
+    * Marks an address used without handing it out.
+    *
+    * @return false if the address was already used or is outside the allocation pools of the subnet
+    */
+   public boolean reserve(String subnetId, String address) {
+      return space(subnetId).reserve(checkNotNull(address, "address"));
+   }
+
+   /**
+    * Makes an address free again, typically after the creation of its port failed.
+    *
+    * @return false if the address was already free
+    */
+   public boolean release(String subnetId, String address) {
+      return space(subnetId).release(checkNotNull(address, "address"));
+   }
+
+   public boolean isFree(String subnetId, String address) {
+      return space(subnetId).isFree(checkNotNull(address, "address"));
+   }
+
+   /**
+    * @return how many addresses of the subnet can still be allocated
+    */
+   public int getFreeCount(String subnetId) {
+      return space(subnetId).getFreeCount();
+   }
+
+   /**
+    * @return an unused MAC address with the OpenStack default prefix, which is now used
+    */
+   public String allocateMac() {
+      return allocateMac(DEFAULT_MAC_PREFIX);
+   }
+
+   /**
+    * @param prefix the first three bytes of the address, such as {@code fa:16:3e}
+    * @return an unused MAC address starting with {@code prefix}, which is now used
+    */
+   public String allocateMac(String prefix) {
+      long base = NeutronInventory.packMac(checkNotNull(prefix, "prefix") + ":00:00:00");
+      for (int attempt = 0; attempt < 1 << 16; attempt++) {
+         long mac = base | random.nextInt(1 << 24);
+         if (macs.add(mac)) {
+            return NeutronInventory.unpackMac(mac);
+         }
+      }
+      throw new IllegalStateException("no free MAC address left with prefix " + prefix);
+   }
+
+   /**
+    * Starts the creation of a port with one planned fixed IP in each of the given subnets and a planned MAC address.
+    * The subnets must belong to the same network.
+    */
+   public Port.CreateBuilder createPortBuilder(String... subnetIds) {
+      checkArgument(subnetIds.length > 0, "at least one subnet is required");
+      String networkId = space(subnetIds[0]).networkId;
+      ImmutableSet.Builder<IP> fixedIps = ImmutableSet.builder();
+      for (String subnetId : subnetIds) {
+         checkArgument(space(subnetId).networkId.equals(networkId), "subnets %s are not in the same network",
+               Arrays.toString(subnetIds));
+         fixedIps.add(allocate(subnetId));
+      }
+      return Port.createBuilder(networkId).fixedIps(fixedIps.build()).macAddress(allocateMac());
+   }
+
+   private SubnetSpace space(String subnetId) {
+      SubnetSpace space = subnets.get(checkNotNull(subnetId, "subnetId"));
+      checkArgument(space != null, "unknown subnet %s", subnetId);
+      return space;
+   }
+
+   /**
+    * The bitmap of one subnet. A set bit is an address that cannot be allocated.
+    */
+   private static final class SubnetSpace {
+      private final String subnetId;
+      private final String networkId;
+      private final int length;
+      private final BigInteger first;
+      private final int addressLength;
+      private final long[] used;
+      private int free;
+      private int cursor;
+
+      private SubnetSpace(Subnet subnet) {
+         this.subnetId = subnet.getId();
+         this.networkId = subnet.getNetworkId();
+         Cidr cidr = Cidr.parse(checkNotNull(subnet.getCidr(), "cidr of subnet %s", subnetId));
+         this.addressLength = cidr.getAddress().length;
+         BigInteger network = new BigInteger(1, cidr.getAddress());
+         BigInteger last = network.add(BigInteger.ONE.shiftLeft(addressLength * 8 - cidr.getPrefixLength()))
+               .subtract(BigInteger.ONE);
+
+         List<BigInteger[]> pools = Lists.newArrayList();
+         if (subnet.getAllocationPools() != null) {
+            for (AllocationPool pool : subnet.getAllocationPools()) {
+               pools.add(new BigInteger[] { toInteger(pool.getStart()), toInteger(pool.getEnd()) });
+            }
+         }
+         if (pools.isEmpty()) {
+            // the pool Neutron uses when none is given
+            pools.add(new BigInteger[] { network.add(BigInteger.ONE),
+                  addressLength == 4 ? last.subtract(BigInteger.ONE) : last });
+         }
+         BigInteger start = null;
+         BigInteger end = null;
+         for (BigInteger[] pool : pools) {
+            start = start == null || pool[0].compareTo(start) < 0 ? pool[0] : start;
+            end = end == null || pool[1].compareTo(end) > 0 ? pool[1] : end;
+         }
+         this.first = start;
+         this.length = end.subtract(start).add(BigInteger.ONE).min(BigInteger.valueOf(MAX_ADDRESSES)).intValue();
+         this.used = new long[(length + 63) >>> 6];
+         Arrays.fill(used, -1L);
+         for (BigInteger[] pool : pools) {
+            int from = offset(pool[0]);
+            int to = offset(pool[1].min(first.add(BigInteger.valueOf(length - 1))));
+            for (int i = from; i <= to; i++) {
+               used[i >>> 6] &= ~(1L << i);
+            }
+         }
+         for (long word : used) {
+            free += Long.bitCount(~word);
+         }
+         for (BigInteger excluded : ImmutableList.of(network, last)) {
+            mark(offset(excluded));
+         }
+         if (subnet.getGatewayIp() != null) {
+            mark(offset(toInteger(subnet.getGatewayIp())));
+         }
+      }
+
+      synchronized List<String> allocate(int count) {
+         checkState(free >= count, "subnet %s has %s free addresses, %s wanted", subnetId, free, count);
+         ImmutableList.Builder<String> addresses = ImmutableList.builder();
+         for (int n = 0; n < count; n++) {
+            int word = cursor >>> 6;
+            long bits = used[word] | ((1L << (cursor & 63)) - 1);
+            while (bits == -1L) {
+               word = word + 1 == used.length ? 0 : word + 1;
+               bits = used[word];
+            }
+            int offset = (word << 6) + Long.numberOfTrailingZeros(~bits);
+            mark(offset);
+            cursor = offset + 1 == length ? 0 : offset + 1;
+            addresses.add(toAddress(offset));
+         }
+         return addresses.build();
+      }
+
+      synchronized boolean reserve(String address) {
+         return mark(offset(toInteger(address)));
+      }
+
+      synchronized boolean release(String address) {
+         int offset = offset(toInteger(address));
+         if (offset < 0 || (used[offset >>> 6] & 1L << offset) == 0) {
+            return false;
+         }
+         used[offset >>> 6] &= ~(1L << offset);
+         free++;
+         return true;
+      }
+
+      synchronized boolean isFree(String address) {
+         int offset = offset(toInteger(address));
+         return offset >= 0 && (used[offset >>> 6] & 1L << offset) == 0;
+      }
+
+      synchronized int getFreeCount() {
+         return free;
+      }
+
+      private boolean mark(int offset) {
+         if (offset < 0 || (used[offset >>> 6] & 1L << offset) != 0) {
+            return false;
+         }
+         used[offset >>> 6] |= 1L << offset;
+         free--;
+         return true;
+      }
+
+      /**
+       * @return the position of an address in the bitmap, or -1 if it is outside
+       */
+      private int offset(@Nullable BigInteger address) {
+         if (address == null) {
+            return -1;
+         }
+         BigInteger offset = address.subtract(first);
+         return offset.signum() < 0 || offset.compareTo(BigInteger.valueOf(length)) >= 0 ? -1 : offset.intValue();
+      }
+
+      @Nullable
+      private BigInteger toInteger(String address) {
+         byte[] bytes = Cidr.toBytes(address);
+         return bytes.length == addressLength ? new BigInteger(1, bytes) : null;
+      }
+
+      private String toAddress(int offset) {
+         byte[] magnitude = first.add(BigInteger.valueOf(offset)).toByteArray();
+         byte[] address = new byte[addressLength];
+         int copied = Math.min(magnitude.length, addressLength);
+         System.arraycopy(magnitude, magnitude.length - copied, address, addressLength - copied, copied);
+         return Cidr.toAddrString(address);
+      }
+   }
+}
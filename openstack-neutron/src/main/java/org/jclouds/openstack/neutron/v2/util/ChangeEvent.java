@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A resource that appeared, changed or disappeared between two polls of a {@link NeutronWatcher}.
+ */
+public final class ChangeEvent<T> {
+
+   public enum Type {
+      ADDED, CHANGED, REMOVED
+   }
+
+   private final Type type;
+   private final NeutronWatcher.Resource resource;
+   private final String id;
+   private final T previous;
+   private final T current;
+
+   ChangeEvent(Type type, NeutronWatcher.Resource resource, String id, @Nullable T previous, @Nullable T current) {
+      this.type = checkNotNull(type, "type");
+      this.resource = checkNotNull(resource, "resource");
+      this.id = checkNotNull(id, "id");
+      this.previous = previous;
+      this.current = current;
+   }
+
+   public Type getType() {
+      return type;
+   }
+
+   /**
+    * @return the kind of resource that changed
+    */
+   public NeutronWatcher.Resource getResource() {
+      return resource;
+   }
+
+   /**
+    * @return the id of the resource that changed
+    */
+   public String getId() {
+      return id;
+   }
+
+   /**
+    * @return the resource as of the previous poll, or null if it was added
+    */
+   @Nullable
+   public T getPrevious() {
+      return previous;
+   }
+
+   /**
+    * @return the resource as of the last poll, or null if it was removed
+    */
+   @Nullable
+   public T getCurrent() {
+      return current;
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("type", type).add("resource", resource).add("id", id).toString();
+   }
+}
@@ -0,0 +1,29 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+/**
+ * Receives the changes found by a {@link NeutronWatcher}.
+ */
+public interface ChangeListener<T> {
+
+   /**
+    * Called once per changed resource, from the thread that polled. Events of one resource type are delivered in
+    * order and never concurrently; an exception thrown here does not stop delivery to the other listeners.
+    */
+   void onChange(ChangeEvent<T> event);
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * An IPv4 or IPv6 network in CIDR notation. Host bits below the prefix length are cleared, so {@code 10.1.2.3/8} and
+ * {@code 10.0.0.0/8} are equal. A bare address is a network of a single host.
+ */
+public final class Cidr {
+
+   private final byte[] address;
+   private final int prefixLength;
+
+   private Cidr(byte[] address, int prefixLength) {
+      this.address = address;
+      this.prefixLength = prefixLength;
+      for (int bit = prefixLength; bit < address.length * 8; bit++) {
+         address[bit >>> 3] &= ~(0x80 >>> (bit & 7));
+      }
+   }
+
+   /**
+    * @param cidr an address, optionally followed by {@code /prefixLength}
+    * @throws IllegalArgumentException if {@code cidr} is not a valid IP literal or prefix length
+    */
+   public static Cidr parse(String cidr) {
+      checkNotNull(cidr, "cidr");
+      int slash = cidr.indexOf('/');
+      byte[] address = toBytes(slash < 0 ? cidr : cidr.substring(0, slash));
+      int prefixLength = address.length * 8;
+      if (slash >= 0) {
+         try {
+            prefixLength = Integer.parseInt(cidr.substring(slash + 1));
+         } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid prefix length in " + cidr, e);
+         }
+         checkArgument(prefixLength >= 0 && prefixLength <= address.length * 8, "invalid prefix length in %s", cidr);
+      }
+      return new Cidr(address, prefixLength);
+   }
+
+   /**
+    * Parses an IP literal without ever resolving host names.
+    *
+    * @return 4 bytes for IPv4 addresses, 16 for IPv6 addresses
+    */
+   public static byte[] toBytes(String address) {
+      InetAddress inet = InetAddresses.forString(checkNotNull(address, "address"));
+      return inet.getAddress();
+   }
+
+   /**
+    * @return the value of bit {@code index} of {@code address}, most significant bit first
+    */
+   static int bit(byte[] address, int index) {
+      return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+   }
+
+   public boolean isIpv6() {
+      return address.length == 16;
+   }
+
+   public int getPrefixLength() {
+      return prefixLength;
+   }
+
+   /**
+    * @return a copy of the network address
+    */
+   public byte[] getAddress() {
+      return address.clone();
+   }
+
+   /**
+    * @return the number of addresses in this network, saturated at {@link Long#MAX_VALUE}
+    */
+   public long size() {
+      int hostBits = address.length * 8 - prefixLength;
+      return hostBits >= 63 ? Long.MAX_VALUE : 1L << hostBits;
+   }
+
+   public boolean contains(byte[] other) {
+      if (other.length != address.length) {
+         return false;
+      }
+      for (int i = 0; i < prefixLength; i++) {
+         if (bit(other, i) != bit(address, i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public boolean contains(String other) {
+      return contains(toBytes(other));
+   }
+
+   /**
+    * @return whether every address of {@code other} is in this network
+    */
+   public boolean contains(Cidr other) {
+      return other.prefixLength >= prefixLength && contains(other.address);
+   }
+
+   /**
+    * @return whether the two networks share at least one address
+    */
+   public boolean overlaps(Cidr other) {
+      return contains(other) || other.contains(this);
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+      Cidr that = Cidr.class.cast(o);
+      return prefixLength == that.prefixLength && Arrays.equals(address, that.address);
+   }
+
+   @Override
+   public int hashCode() {
+      return 31 * Arrays.hashCode(address) + prefixLength;
+   }
+
+   /**
+    * @return the canonical text form of a 4 or 16 byte address
+    */
+   static String toAddrString(byte[] address) {
+      try {
+         return InetAddresses.toAddrString(InetAddress.getByAddress(address));
+      } catch (UnknownHostException e) {
+         throw new IllegalArgumentException("invalid address length " + address.length, e);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return toAddrString(address) + "/" + prefixLength;
+   }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Helpers to run batches of Neutron calls concurrently.
+ */
+public final class ConcurrentTasks {
+
+   private ConcurrentTasks() {
+   }
+
+   /**
+    * Submits every task to the executor, never letting more than {@code maxConcurrency} of them run at the same time,
+    * and waits for all of them to finish. A failing task does not cancel the others.
+    *
+    * @return the outcome of every task, keyed and ordered like {@code tasks}
+    */
+   public static <K, V> ImmutableMap<K, Outcome<V>> invokeAll(ListeningExecutorService executor, int maxConcurrency,
+         Map<K, ? extends Callable<V>> tasks) {
+      checkNotNull(executor, "executor");
+      checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+      final Semaphore permits = new Semaphore(maxConcurrency);
+      Runnable release = new Runnable() {
+         @Override
+         public void run() {
+            permits.release();
+         }
+      };
+
+      Map<K, ListenableFuture<V>> futures = Maps.newLinkedHashMap();
+      for (Map.Entry<K, ? extends Callable<V>> task : tasks.entrySet()) {
+         permits.acquireUninterruptibly();
+         ListenableFuture<V> future;
+         try {
+            future = executor.submit(task.getValue());
+         } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+         }
+         future.addListener(release, MoreExecutors.directExecutor());
+         futures.put(task.getKey(), future);
+      }
+
+      ImmutableMap.Builder<K, Outcome<V>> outcomes = ImmutableMap.builder();
+      for (Map.Entry<K, ListenableFuture<V>> future : futures.entrySet()) {
+         try {
+            outcomes.put(future.getKey(), Outcome.success(Uninterruptibles.getUninterruptibly(future.getValue())));
+         } catch (ExecutionException e) {
+            outcomes.put(future.getKey(), Outcome.<V> failure(e.getCause()));
+         }
+      }
+      return outcomes.build();
+   }
+
+   /**
+    * Wraps a task so that it is retried when Neutron answers with a 409 conflict, which the
+    * {@link org.jclouds.openstack.neutron.v2.handlers.NeutronErrorHandler} surfaces as an
+    * {@link IllegalStateException} caused by the {@link HttpResponseException}. Other failures, including other
+    * {@code IllegalStateException}s, are thrown at once. The delay doubles after every attempt.
+    *
+    * @param maxRetries   how many times the task is retried after the first conflict
+    * @param initialDelay the delay before the first retry
+    */
+   public static <V> Callable<V> retryOnConflict(final Callable<V> task, final int maxRetries, final long initialDelay,
+         final TimeUnit unit) {
+      checkNotNull(task, "task");
+      checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+      checkNotNull(unit, "unit");
+      return new Callable<V>() {
+         @Override
+         public V call() throws Exception {
+            long delay = unit.toMillis(initialDelay);
+            for (int attempt = 0;; attempt++) {
+               try {
+                  return task.call();
+               } catch (IllegalStateException e) {
+                  if (attempt >= maxRetries || !isConflict(e)) {
+                     throw e;
+                  }
+                  Uninterruptibles.sleepUninterruptibly(delay, TimeUnit.MILLISECONDS);
+                  delay *= 2;
+               }
+            }
+         }
+
+         @Override
+         public String toString() {
+            return MoreObjects.toStringHelper("retryOnConflict").add("task", task).add("maxRetries", maxRetries)
+                  .toString();
+         }
+      };
+   }
+
+   private static boolean isConflict(Throwable failure) {
+      for (Throwable cause : Throwables.getCausalChain(failure)) {
+         if (cause instanceof HttpResponseException) {
+            HttpResponseException httpFailure = (HttpResponseException) cause;
+            return httpFailure.getResponse() != null && httpFailure.getResponse().getStatusCode() == 409;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * The result of one task run by {@link ConcurrentTasks#invokeAll}: either a value or the exception it failed with.
+    */
+   public static final class Outcome<V> {
+      private final V value;
+      private final Throwable failure;
+
+      private Outcome(V value, Throwable failure) {
+         this.value = value;
+         this.failure = failure;
+      }
+
+      static <V> Outcome<V> success(@Nullable V value) {
+         return new Outcome<V>(value, null);
+      }
+
+      static <V> Outcome<V> failure(Throwable failure) {
+         return new Outcome<V>(null, checkNotNull(failure, "failure"));
+      }
+
+      public boolean isSuccess() {
+         return failure == null;
+      }
+
+      /**
+       * @return the value returned by the task, or null if it failed
+       */
+      @Nullable
+      public V getValue() {
+         return value;
+      }
+
+      /**
+       * @return the exception thrown by the task, or null if it succeeded
+       */
+      @Nullable
+      public Throwable getFailure() {
+         return failure;
+      }
+
+      @Override
+      public String toString() {
+         return MoreObjects.toStringHelper(this).omitNullValues().add("value", value).add("failure", failure)
+               .toString();
+      }
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Assigns every distinct value a dense int code, so that repeated values are stored once and referenced by code.
+ * Null is always encoded as -1.
+ */
+final class Dictionary<T> {
+
+   private final Map<T, Integer> codes = Maps.newHashMap();
+   private final List<T> values = Lists.newArrayList();
+
+   /**
+    * @return the code of {@code value}, adding it if it is new
+    */
+   int encode(@Nullable T value) {
+      if (value == null) {
+         return -1;
+      }
+      Integer code = codes.get(value);
+      if (code == null) {
+         code = values.size();
+         values.add(value);
+         codes.put(value, code);
+      }
+      return code;
+   }
+
+   /**
+    * @return the code of {@code value}, or -1 if it was never encoded
+    */
+   int indexOf(@Nullable T value) {
+      Integer code = value != null ? codes.get(value) : null;
+      return code != null ? code : -1;
+   }
+
+   @Nullable
+   T decode(int code) {
+      return code < 0 ? null : values.get(code);
+   }
+
+   int size() {
+      return values.size();
+   }
+
+   /**
+    * @return every value, in code order
+    */
+   ImmutableList<T> values() {
+      return ImmutableList.copyOf(values);
+   }
+}
@@ -0,0 +1,608 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.FirewallPolicy;
+import org.jclouds.openstack.neutron.v2.domain.FirewallRule;
+import org.jclouds.openstack.neutron.v2.domain.IpVersion;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Evaluates flows against the ordered rules of a firewall policy locally, so a policy change can be checked before it
+ * is pushed with {@code FWaaSApi}. The first enabled rule matching a flow decides; a flow no rule matches is denied.
+ * <p/>
+ * Rules are compiled into one bit set per value of every field (protocol, source and destination address, source and
+ * destination port), bit {@code i} standing for the {@code i}-th rule. Address bit sets hang off a binary prefix trie
+ * and port bit sets off sorted elementary intervals. The first matching rule of a flow is the lowest bit of the
+ * intersection of its five bit sets, so a query costs a trie walk, two binary searches and a scan of a few words,
+ * however many rules the policy has.
+ * <p/>
+ * To simulate a policy:
+ * <pre>
+ * FirewallPolicySimulator simulator = FirewallPolicySimulator.compile(fwaasApi.getFirewallPolicy(policyId),
+ *       fwaasApi.listFirewallRules().concat());
+ * </pre>
+ */
+public final class FirewallPolicySimulator {
+
+   public static final String ALLOW = "allow";
+   public static final String DENY = "deny";
+
+   private static final int MAX_PORT = 65535;
+
+   private final ImmutableList<FirewallRule> rules;
+   private final ImmutableList<Match> matches;
+   private final Map<String, long[]> protocols;
+   private final long[] otherProtocols;
+   private final AddressIndex[] sources;
+   private final AddressIndex[] destinations;
+   private final PortIndex sourcePorts;
+   private final PortIndex destinationPorts;
+
+   private FirewallPolicySimulator(ImmutableList<FirewallRule> rules) {
+      this.rules = rules;
+      ImmutableList.Builder<Match> matches = ImmutableList.builder();
+      for (FirewallRule rule : rules) {
+         matches.add(new Match(rule));
+      }
+      this.matches = matches.build();
+      int words = (rules.size() + 63) >>> 6;
+
+      Map<String, long[]> protocols = Maps.newHashMap();
+      for (Match match : this.matches) {
+         if (match.protocol != null && !protocols.containsKey(match.protocol)) {
+            protocols.put(match.protocol, new long[words]);
+         }
+      }
+      this.otherProtocols = new long[words];
+      TrieNode[] sourceTries = { new TrieNode(), new TrieNode() };
+      TrieNode[] destinationTries = { new TrieNode(), new TrieNode() };
+      PortIndex.Builder sourcePorts = new PortIndex.Builder(words);
+      PortIndex.Builder destinationPorts = new PortIndex.Builder(words);
+      for (int i = 0; i < this.matches.size(); i++) {
+         Match match = this.matches.get(i);
+         if (match.protocol == null) {
+            set(otherProtocols, i);
+            for (long[] bits : protocols.values()) {
+               set(bits, i);
+            }
+         } else {
+            set(protocols.get(match.protocol), i);
+         }
+         int family = match.ipv6 ? 1 : 0;
+         sourceTries[family].insert(match.source, i);
+         destinationTries[family].insert(match.destination, i);
+         sourcePorts.add(match.sourcePorts, i);
+         destinationPorts.add(match.destinationPorts, i);
+      }
+      this.protocols = ImmutableMap.copyOf(protocols);
+      this.sources = new AddressIndex[] { new AddressIndex(sourceTries[0], words),
+            new AddressIndex(sourceTries[1], words) };
+      this.destinations = new AddressIndex[] { new AddressIndex(destinationTries[0], words),
+            new AddressIndex(destinationTries[1], words) };
+      this.sourcePorts = sourcePorts.build();
+      this.destinationPorts = destinationPorts.build();
+   }
+
+   /**
+    * @param orderedRules the rules of a policy, in policy order; disabled rules are ignored
+    * @throws IllegalArgumentException if a rule has an invalid address or port range
+    */
+   public static FirewallPolicySimulator compile(List<FirewallRule> orderedRules) {
+      ImmutableList.Builder<FirewallRule> enabled = ImmutableList.builder();
+      for (FirewallRule rule : orderedRules) {
+         if (rule.isEnabled()) {
+            enabled.add(rule);
+         }
+      }
+      return new FirewallPolicySimulator(enabled.build());
+   }
+
+   /**
+    * @param rules any rules, including at least all the rules of the policy
+    * @throws IllegalArgumentException if a rule of the policy is missing from {@code rules}
+    */
+   public static FirewallPolicySimulator compile(FirewallPolicy policy, Iterable<FirewallRule> rules) {
+      Map<String, FirewallRule> byId = Maps.newHashMap();
+      for (FirewallRule rule : rules) {
+         byId.put(rule.getId(), rule);
+      }
+      ImmutableList.Builder<FirewallRule> ordered = ImmutableList.builder();
+      if (policy.getFirewallRules() != null) {
+         for (String id : policy.getFirewallRules()) {
+            FirewallRule rule = byId.get(id);
+            checkArgument(rule != null, "rule %s of policy %s not found", id, policy.getId());
+            ordered.add(rule);
+         }
+      }
+      return compile(ordered.build());
+   }
+
+   /**
+    * @return the enabled rules, in the order they are evaluated
+    */
+   public ImmutableList<FirewallRule> getRules() {
+      return rules;
+   }
+
+   public Decision evaluate(Flow flow) {
+      checkNotNull(flow, "flow");
+      long[] protocol = protocols.get(flow.protocol);
+      if (protocol == null) {
+         protocol = otherProtocols;
+      }
+      int family = flow.source.length == 16 ? 1 : 0;
+      checkArgument(flow.destination.length == flow.source.length, "mixed address families in %s", flow);
+      long[] source = sources[family].lookup(flow.source);
+      long[] destination = destinations[family].lookup(flow.destination);
+      long[] sourcePort = sourcePorts.lookup(flow.sourcePort);
+      long[] destinationPort = destinationPorts.lookup(flow.destinationPort);
+      for (int word = 0; word < protocol.length; word++) {
+         long candidates = protocol[word] & source[word] & destination[word] & sourcePort[word]
+               & destinationPort[word];
+         if (candidates != 0) {
+            return new Decision(flow, rules.get((word << 6) + Long.numberOfTrailingZeros(candidates)));
+         }
+      }
+      return new Decision(flow, null);
+   }
+
+   /**
+    * @return the decision for every flow, in the order of {@code flows}
+    */
+   public ImmutableList<Decision> evaluate(Iterable<Flow> flows) {
+      ImmutableList.Builder<Decision> decisions = ImmutableList.builder();
+      for (Flow flow : flows) {
+         decisions.add(evaluate(flow));
+      }
+      return decisions.build();
+   }
+
+   /**
+    * Finds rules that never decide anything:
+    * <ul>
+    * <li>a rule is {@link Anomaly.Type#SHADOWED} when an earlier rule matches every flow it matches with another
+    * action, so it can never take effect;</li>
+    * <li>a rule is {@link Anomaly.Type#REDUNDANT} when an earlier rule matches every flow it matches with the same
+    * action, or when a later rule does and no rule in between matches any of its flows with another action, so
+    * removing it changes nothing.</li>
+    * </ul>
+    * Rules are compared pairwise: a rule covered only by the union of several others is not reported.
+    */
+   public ImmutableList<Anomaly> findAnomalies() {
+      ImmutableList.Builder<Anomaly> anomalies = ImmutableList.builder();
+      for (int j = 0; j < matches.size(); j++) {
+         Match rule = matches.get(j);
+         Anomaly anomaly = null;
+         for (int i = 0; i < j && anomaly == null; i++) {
+            if (matches.get(i).covers(rule)) {
+               anomaly = new Anomaly(sameAction(i, j) ? Anomaly.Type.REDUNDANT : Anomaly.Type.SHADOWED,
+                     rules.get(j), rules.get(i));
+            }
+         }
+         for (int k = j + 1; k < matches.size() && anomaly == null; k++) {
+            Match later = matches.get(k);
+            if (!later.intersects(rule)) {
+               continue;
+            }
+            if (!sameAction(j, k)) {
+               break;
+            }
+            if (later.covers(rule)) {
+               anomaly = new Anomaly(Anomaly.Type.REDUNDANT, rules.get(j), rules.get(k));
+            }
+         }
+         if (anomaly != null) {
+            anomalies.add(anomaly);
+         }
+      }
+      return anomalies.build();
+   }
+
+   private boolean sameAction(int a, int b) {
+      return action(rules.get(a)).equals(action(rules.get(b)));
+   }
+
+   private static String action(@Nullable FirewallRule rule) {
+      return rule == null || rule.getAction() == null ? DENY : Ascii.toLowerCase(rule.getAction());
+   }
+
+   private static void set(long[] bits, int index) {
+      bits[index >>> 6] |= 1L << index;
+   }
+
+   private static int[] parsePorts(@Nullable String ports) {
+      if (ports == null || ports.isEmpty()) {
+         return new int[] { 0, MAX_PORT };
+      }
+      int colon = ports.indexOf(':');
+      try {
+         int min = Integer.parseInt(colon < 0 ? ports : ports.substring(0, colon));
+         int max = colon < 0 ? min : Integer.parseInt(ports.substring(colon + 1));
+         checkArgument(0 <= min && min <= max && max <= MAX_PORT, "invalid port range %s", ports);
+         return new int[] { min, max };
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("invalid port range " + ports, e);
+      }
+   }
+
+   /**
+    * A packet to evaluate. For protocols without ports, such as ICMP, ports are ignored by the rules and may be 0.
+    */
+   public static final class Flow {
+      private final String protocol;
+      private final byte[] source;
+      private final int sourcePort;
+      private final byte[] destination;
+      private final int destinationPort;
+
+      private Flow(String protocol, byte[] source, int sourcePort, byte[] destination, int destinationPort) {
+         this.protocol = protocol;
+         this.source = source;
+         this.sourcePort = sourcePort;
+         this.destination = destination;
+         this.destinationPort = destinationPort;
+      }
+
+      /**
+       * @param protocol a protocol name as used in firewall rules, such as {@code tcp}
+       */
+      public static Flow of(String protocol, String sourceAddress, int sourcePort, String destinationAddress,
+            int destinationPort) {
+         checkArgument(0 <= sourcePort && sourcePort <= MAX_PORT, "invalid source port %s", sourcePort);
+         checkArgument(0 <= destinationPort && destinationPort <= MAX_PORT, "invalid destination port %s",
+               destinationPort);
+         return new Flow(Ascii.toLowerCase(checkNotNull(protocol, "protocol")), Cidr.toBytes(sourceAddress),
+               sourcePort, Cidr.toBytes(destinationAddress), destinationPort);
+      }
+
+      @Override
+      public String toString() {
+         return MoreObjects.toStringHelper(this).omitNullValues()
+               .add("protocol", protocol)
+               .add("source", Cidr.toAddrString(source) + ":" + sourcePort)
+               .add("destination", Cidr.toAddrString(destination) + ":" + destinationPort)
+               .toString();
+      }
+   }
+
+   /**
+    * The outcome of a flow: the first rule matching it, if any, and its action.
+    */
+   public static final class Decision {
+      private final Flow flow;
+      private final FirewallRule rule;
+
+      private Decision(Flow flow, @Nullable FirewallRule rule) {
+         this.flow = flow;
+         this.rule = rule;
+      }
+
+      public Flow getFlow() {
+         return flow;
+      }
+
+      /**
+       * @return the rule that decided, or null if the flow fell through to the implicit deny
+       */
+      @Nullable
+      public FirewallRule getRule() {
+         return rule;
+      }
+
+      /**
+       * @return {@code allow}, {@code deny} or {@code reject}
+       */
+      public String getAction() {
+         return action(rule);
+      }
+
+      public boolean isAllowed() {
+         return ALLOW.equals(getAction());
+      }
+
+      @Override
+      public String toString() {
+         return MoreObjects.toStringHelper(this)
+               .add("flow", flow)
+               .add("rule", rule != null ? rule.getId() : null)
+               .add("action", getAction())
+               .toString();
+      }
+   }
+
+   /**
+    * A rule that never decides a flow, and the rule that makes it so.
+    */
+   public static final class Anomaly {
+
+      public enum Type {
+         SHADOWED, REDUNDANT
+      }
+
+      private final Type type;
+      private final FirewallRule rule;
+      private final FirewallRule coveredBy;
+
+      private Anomaly(Type type, FirewallRule rule, FirewallRule coveredBy) {
+         this.type = type;
+         this.rule = rule;
+         this.coveredBy = coveredBy;
+      }
+
+      public Type getType() {
+         return type;
+      }
+
+      public FirewallRule getRule() {
+         return rule;
+      }
+
+      /**
+       * @return the rule matching every flow {@link #getRule()} matches
+       */
+      public FirewallRule getCoveredBy() {
+         return coveredBy;
+      }
+
+      @Override
+      public String toString() {
+         return MoreObjects.toStringHelper(this)
+               .add("type", type)
+               .add("rule", rule.getId())
+               .add("coveredBy", coveredBy.getId())
+               .toString();
+      }
+   }
+
+   /**
+    * What a rule matches, with defaults made explicit.
+    */
+   private static final class Match {
+      private final String protocol;
+      private final boolean ipv6;
+      private final Cidr source;
+      private final Cidr destination;
+      private final int[] sourcePorts;
+      private final int[] destinationPorts;
+
+      Match(FirewallRule rule) {
+         this.protocol = rule.getProtocol() != null && !rule.getProtocol().isEmpty()
+               ? Ascii.toLowerCase(rule.getProtocol()) : null;
+         this.ipv6 = rule.getIpVersion() == IpVersion.IPV6;
+         this.source = rule.getSourceIpAddress() != null ? Cidr.parse(rule.getSourceIpAddress()) : null;
+         this.destination = rule.getDestinationIpAddress() != null ? Cidr.parse(rule.getDestinationIpAddress()) : null;
+         checkArgument(source == null || source.isIpv6() == ipv6, "source of rule %s is not IPv%s", rule.getId(),
+               ipv6 ? 6 : 4);
+         checkArgument(destination == null || destination.isIpv6() == ipv6, "destination of rule %s is not IPv%s",
+               rule.getId(), ipv6 ? 6 : 4);
+         boolean ported = "tcp".equals(protocol) || "udp".equals(protocol);
+         this.sourcePorts = ported ? parsePorts(rule.getSourcePort()) : parsePorts(null);
+         this.destinationPorts = ported ? parsePorts(rule.getDestinationPort()) : parsePorts(null);
+      }
+
+      boolean covers(Match other) {
+         return ipv6 == other.ipv6
+               && (protocol == null || protocol.equals(other.protocol))
+               && covers(source, other.source) && covers(destination, other.destination)
+               && covers(sourcePorts, other.sourcePorts) && covers(destinationPorts, other.destinationPorts);
+      }
+
+      boolean intersects(Match other) {
+         return ipv6 == other.ipv6
+               && (protocol == null || other.protocol == null || protocol.equals(other.protocol))
+               && overlaps(source, other.source) && overlaps(destination, other.destination)
+               && overlaps(sourcePorts, other.sourcePorts) && overlaps(destinationPorts, other.destinationPorts);
+      }
+
+      private static boolean covers(@Nullable Cidr a, @Nullable Cidr b) {
+         return a == null || b != null && a.contains(b);
+      }
+
+      private static boolean overlaps(@Nullable Cidr a, @Nullable Cidr b) {
+         return a == null || b == null || a.overlaps(b);
+      }
+
+      private static boolean covers(int[] a, int[] b) {
+         return a[0] <= b[0] && b[1] <= a[1];
+      }
+
+      private static boolean overlaps(int[] a, int[] b) {
+         return a[0] <= b[1] && b[0] <= a[1];
+      }
+   }
+
+   /**
+    * A binary trie over address bits, used while compiling.
+    */
+   private static final class TrieNode {
+      private final TrieNode[] children = new TrieNode[2];
+      private List<Integer> rules;
+
+      void insert(@Nullable Cidr prefix, int rule) {
+         TrieNode node = this;
+         if (prefix != null) {
+            byte[] address = prefix.getAddress();
+            for (int i = 0; i < prefix.getPrefixLength(); i++) {
+               int bit = Cidr.bit(address, i);
+               if (node.children[bit] == null) {
+                  node.children[bit] = new TrieNode();
+               }
+               node = node.children[bit];
+            }
+         }
+         if (node.rules == null) {
+            node.rules = Lists.newArrayList();
+         }
+         node.rules.add(rule);
+      }
+
+      int count() {
+         int count = 1;
+         for (TrieNode child : children) {
+            if (child != null) {
+               count += child.count();
+            }
+         }
+         return count;
+      }
+   }
+
+   /**
+    * A prefix trie flattened into arrays. Every node refers to the bit set of the rules whose prefix contains it, so a
+    * lookup returns the bit set of the deepest node on the path of the address; nodes adding no rule share the bit
+    * set of their parent.
+    */
+   private static final class AddressIndex {
+      private final int[] zero;
+      private final int[] one;
+      private final long[][] bits;
+      private int size;
+
+      AddressIndex(TrieNode root, int words) {
+         int count = root.count();
+         zero = new int[count];
+         one = new int[count];
+         bits = new long[count][];
+         add(root, new long[words]);
+      }
+
+      private int add(TrieNode node, long[] inherited) {
+         int index = size++;
+         long[] nodeBits = inherited;
+         if (node.rules != null) {
+            nodeBits = inherited.clone();
+            for (int rule : node.rules) {
+               set(nodeBits, rule);
+            }
+         }
+         bits[index] = nodeBits;
+         zero[index] = node.children[0] != null ? add(node.children[0], nodeBits) : -1;
+         one[index] = node.children[1] != null ? add(node.children[1], nodeBits) : -1;
+         return index;
+      }
+
+      long[] lookup(byte[] address) {
+         int node = 0;
+         int bitCount = address.length * 8;
+         for (int i = 0; i < bitCount; i++) {
+            int next = Cidr.bit(address, i) == 0 ? zero[node] : one[node];
+            if (next < 0) {
+               break;
+            }
+            node = next;
+         }
+         return bits[node];
+      }
+   }
+
+   /**
+    * The port space cut into elementary intervals on which every rule either matches or not, each with the bit set
+    * of the rules matching it.
+    */
+   private static final class PortIndex {
+      private final int[] starts;
+      private final long[][] bits;
+
+      private PortIndex(int[] starts, long[][] bits) {
+         this.starts = starts;
+         this.bits = bits;
+      }
+
+      long[] lookup(int port) {
+         int i = Arrays.binarySearch(starts, port);
+         return bits[i >= 0 ? i : -i - 2];
+      }
+
+      static final class Builder {
+         private final int words;
+         private final List<int[]> ranges = Lists.newArrayList();
+
+         Builder(int words) {
+            this.words = words;
+         }
+
+         void add(int[] range, int rule) {
+            ranges.add(new int[] { range[0], range[1], rule });
+         }
+
+         PortIndex build() {
+            SortedSet<Integer> boundaries = Sets.newTreeSet();
+            boundaries.add(0);
+            for (int[] range : ranges) {
+               boundaries.add(range[0]);
+               if (range[1] < MAX_PORT) {
+                  boundaries.add(range[1] + 1);
+               }
+            }
+            int[] starts = new int[boundaries.size()];
+            int n = 0;
+            for (int start : boundaries) {
+               starts[n++] = start;
+            }
+            // sweep the intervals, adding rules where their range starts and removing them after it ends
+            List<List<Integer>> opening = newLists(starts.length);
+            List<List<Integer>> closing = newLists(starts.length);
+            for (int[] range : ranges) {
+               opening.get(Arrays.binarySearch(starts, range[0])).add(range[2]);
+               if (range[1] < MAX_PORT) {
+                  closing.get(Arrays.binarySearch(starts, range[1] + 1)).add(range[2]);
+               }
+            }
+            long[][] bits = new long[starts.length][];
+            long[] current = new long[words];
+            for (int i = 0; i < starts.length; i++) {
+               if (!opening.get(i).isEmpty() || !closing.get(i).isEmpty()) {
+                  current = current.clone();
+                  for (int rule : closing.get(i)) {
+                     current[rule >>> 6] &= ~(1L << rule);
+                  }
+                  for (int rule : opening.get(i)) {
+                     set(current, rule);
+                  }
+               }
+               bits[i] = current;
+            }
+            return new PortIndex(starts, bits);
+         }
+
+         private static List<List<Integer>> newLists(int count) {
+            List<List<Integer>> lists = Lists.newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+               lists.add(Lists.<Integer> newArrayListWithCapacity(2));
+            }
+            return lists;
+         }
+      }
+   }
+}
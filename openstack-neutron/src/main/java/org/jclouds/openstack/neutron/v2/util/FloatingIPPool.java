@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.extensions.FloatingIPApi;
+import org.jclouds.rest.ResourceNotFoundException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Keeps a reserve of unassociated floating IPs on each external network, so that giving a port a floating IP costs a
+ * single {@link FloatingIPApi#update} instead of a {@link FloatingIPApi#create} on the provisioning path.
+ * <p/>
+ * The reserve is topped up in the background on the given executor whenever an IP is handed out. Released IPs are
+ * dissociated and go back to the reserve; they are only deleted when the reserve is already full. When the reserve of
+ * a network is empty, {@link #allocate} falls back to creating the floating IP directly on the port.
+ * <p/>
+ * The pool only hands out, and only deletes, the floating IPs it created itself. Unassociated floating IPs the tenant
+ * already owns, which may be parked on purpose behind DNS records, are left alone unless
+ * {@link Builder#adoptExisting()} is set.
+ *
+ * <pre>
+ * FloatingIPPool pool = FloatingIPPool.builder(neutronApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .network(externalNetworkId, 10)
+ *       .build();
+ * pool.start();
+ * FloatingIP ip = pool.allocate(externalNetworkId, portId);
+ * ...
+ * pool.release(ip);
+ * </pre>
+ */
+public class FloatingIPPool {
+
+   private final FloatingIPApi api;
+   private final ListeningExecutorService executor;
+   private final Map<String, Reserve> reserves;
+   private final String tenantId;
+   private final boolean adoptExisting;
+   // the ids of the floating IPs this pool may hand out and delete
+   private final Set<String> owned = Sets.newConcurrentHashSet();
+   private final AtomicLong refillFailureCount = new AtomicLong();
+   private final AtomicReference<Throwable> lastRefillFailure = new AtomicReference<Throwable>();
+
+   protected FloatingIPPool(FloatingIPApi api, ListeningExecutorService executor, Map<String, Integer> sizes,
+         String tenantId, boolean adoptExisting) {
+      this.api = checkNotNull(api, "api");
+      this.executor = checkNotNull(executor, "executor");
+      checkArgument(!sizes.isEmpty(), "at least one external network is required");
+      ImmutableMap.Builder<String, Reserve> reserves = ImmutableMap.builder();
+      for (Map.Entry<String, Integer> size : sizes.entrySet()) {
+         reserves.put(size.getKey(), new Reserve(size.getValue()));
+      }
+      this.reserves = reserves.build();
+      this.tenantId = tenantId;
+      this.adoptExisting = adoptExisting;
+   }
+
+   public static Builder builder(NeutronApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Starts filling the reserves in the background. With {@link Builder#adoptExisting()}, the unassociated floating
+    * IPs that already exist on the managed networks are adopted first, up to the size of each reserve.
+    */
+   public void start() {
+      if (adoptExisting) {
+         for (FloatingIP floatingIP : api.list().concat()) {
+            Reserve reserve = reserves.get(floatingIP.getFloatingNetworkId());
+            if (reserve != null && floatingIP.getPortId() == null && reserve.free.size() < reserve.size) {
+               owned.add(floatingIP.getId());
+               reserve.free.offer(floatingIP);
+            }
+         }
+      }
+      for (String networkId : reserves.keySet()) {
+         refill(networkId);
+      }
+   }
+
+   /**
+    * Associates a floating IP of the given external network with a port. A reserved IP is used when there is one;
+    * an IP that was deleted behind the pool's back is dropped and the next one is tried. When the reserve is empty
+    * the floating IP is created on the port directly.
+    * <p/>
+    * A conflict cannot tell an IP taken by someone else from a port that already has a floating IP on its fixed IP,
+    * so the reserved IP is put back and the conflict is rethrown rather than emptying the reserve one IP at a time.
+    *
+    * @return the floating IP, associated with {@code portId}
+    * @throws IllegalStateException if Neutron refused the association with a conflict
+    */
+   public FloatingIP allocate(String networkId, String portId) {
+      Reserve reserve = reserve(networkId);
+      checkNotNull(portId, "portId");
+      try {
+         FloatingIP floatingIP;
+         while ((floatingIP = reserve.free.poll()) != null) {
+            try {
+               return own(api.update(floatingIP.getId(), FloatingIP.updateBuilder().portId(portId).build()));
+            } catch (ResourceNotFoundException e) {
+               owned.remove(floatingIP.getId());
+               continue;
+            } catch (IllegalStateException e) {
+               reserve.free.offerFirst(floatingIP);
+               throw e;
+            }
+         }
+         return own(api.create(createBuilder(networkId).portId(portId).build()));
+      } finally {
+         refill(networkId);
+      }
+   }
+
+   /**
+    * Dissociates a floating IP from its port and puts it back in the reserve of its network. If the reserve is full,
+    * or the network is not managed by this pool, the floating IP is deleted instead.
+    *
+    * @return true if the floating IP went back to the reserve, false if it was deleted
+    * @throws IllegalArgumentException if the floating IP was not handed out by this pool
+    */
+   public boolean release(FloatingIP floatingIP) {
+      checkNotNull(floatingIP, "floatingIP");
+      checkArgument(floatingIP.getId() != null && owned.contains(floatingIP.getId()),
+            "floating IP %s was not allocated by this pool",
+            floatingIP.getId());
+      Reserve reserve = reserves.get(floatingIP.getFloatingNetworkId());
+      if (reserve == null || reserve.free.size() + reserve.pending.get() >= reserve.size) {
+         delete(floatingIP);
+         return false;
+      }
+      FloatingIP dissociated = api.update(floatingIP.getId(), FloatingIP.updateBuilder().build());
+      if (!reserve.free.offerFirst(dissociated)) {
+         delete(floatingIP);
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Deletes every floating IP held in the reserves, which are only the ones the pool created or adopted. Refills still running may add a few more; call it once the
+    * pool is no longer used.
+    *
+    * @return the number of floating IPs deleted
+    */
+   public int drain() {
+      int deleted = 0;
+      for (Reserve reserve : reserves.values()) {
+         FloatingIP floatingIP;
+         while ((floatingIP = reserve.free.poll()) != null) {
+            if (delete(floatingIP)) {
+               deleted++;
+            }
+         }
+      }
+      return deleted;
+   }
+
+   /**
+    * @return the external networks this pool keeps a reserve for
+    */
+   public Set<String> getNetworks() {
+      return reserves.keySet();
+   }
+
+   /**
+    * @return the number of floating IPs ready to be handed out on the given network
+    */
+   public int getAvailable(String networkId) {
+      return reserve(networkId).free.size();
+   }
+
+   /**
+    * @return the number of floating IPs being created in the background for the given network
+    */
+   public int getPending(String networkId) {
+      return reserve(networkId).pending.get();
+   }
+
+   /**
+    * @return how many background creations have failed since the pool was built
+    */
+   public long getRefillFailureCount() {
+      return refillFailureCount.get();
+   }
+
+   /**
+    * @return the error of the last failed background creation, or null
+    */
+   public Throwable getLastRefillFailure() {
+      return lastRefillFailure.get();
+   }
+
+   /**
+    * Schedules one creation per missing floating IP. A failed creation is recorded and not retried until the next
+    * allocation.
+    */
+   protected void refill(final String networkId) {
+      final Reserve reserve = reserve(networkId);
+      while (true) {
+         int pending = reserve.pending.get();
+         if (reserve.free.size() + pending >= reserve.size) {
+            return;
+         }
+         if (!reserve.pending.compareAndSet(pending, pending + 1)) {
+            continue;
+         }
+         executor.execute(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  FloatingIP created = own(api.create(createBuilder(networkId).build()));
+                  if (!reserve.free.offer(created)) {
+                     delete(created);
+                  }
+               } catch (RuntimeException e) {
+                  refillFailureCount.incrementAndGet();
+                  lastRefillFailure.set(e);
+               } finally {
+                  reserve.pending.decrementAndGet();
+               }
+            }
+         });
+      }
+   }
+
+   private FloatingIP own(FloatingIP floatingIP) {
+      owned.add(floatingIP.getId());
+      return floatingIP;
+   }
+
+   private boolean delete(FloatingIP floatingIP) {
+      owned.remove(floatingIP.getId());
+      return api.delete(floatingIP.getId());
+   }
+
+   private FloatingIP.CreateBuilder createBuilder(String networkId) {
+      FloatingIP.CreateBuilder builder = FloatingIP.createBuilder(networkId);
+      if (tenantId != null) {
+         builder.tenantId(tenantId);
+      }
+      return builder;
+   }
+
+   private Reserve reserve(String networkId) {
+      Reserve reserve = reserves.get(checkNotNull(networkId, "networkId"));
+      checkArgument(reserve != null, "network %s is not managed by this pool", networkId);
+      return reserve;
+   }
+
+   private static final class Reserve {
+      private final int size;
+      private final BlockingDeque<FloatingIP> free;
+      private final AtomicInteger pending = new AtomicInteger();
+
+      private Reserve(int size) {
+         this.size = size;
+         // bounded so that concurrent refills and releases can never grow it past its size
+         this.free = new LinkedBlockingDeque<FloatingIP>(Math.max(1, size));
+      }
+   }
+
+   public static final class Builder {
+      private final FloatingIPApi api;
+      private final ImmutableMap.Builder<String, Integer> sizes = ImmutableMap.builder();
+      private ListeningExecutorService executor;
+      private String tenantId;
+      private boolean adoptExisting;
+
+      private Builder(NeutronApi api, String region) {
+         checkNotNull(api, "api");
+         checkNotNull(region, "region");
+         checkState(api.getFloatingIPApi(region).isPresent(), "floating IPs are not supported in region %s", region);
+         this.api = api.getFloatingIPApi(region).get();
+      }
+
+      /**
+       * The executor refilling the reserves, typically {@code context.utils().userExecutor()}.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = checkNotNull(executor, "executor");
+         return this;
+      }
+
+      /**
+       * Keeps {@code reserve} unassociated floating IPs ready on an external network.
+       */
+      public Builder network(String networkId, int reserve) {
+         checkArgument(reserve >= 0, "reserve must not be negative");
+         sizes.put(checkNotNull(networkId, "networkId"), reserve);
+         return this;
+      }
+
+      /**
+       * Keeps {@code reserve} unassociated floating IPs ready on each of the given external networks.
+       */
+      public Builder networks(Set<String> networkIds, int reserve) {
+         for (String networkId : ImmutableSet.copyOf(networkIds)) {
+            network(networkId, reserve);
+         }
+         return this;
+      }
+
+      /**
+       * The tenant owning the created floating IPs. Admin-only; defaults to the authenticated tenant.
+       */
+      public Builder tenantId(String tenantId) {
+         this.tenantId = tenantId;
+         return this;
+      }
+
+      /**
+       * Makes {@link FloatingIPPool#start()} adopt the unassociated floating IPs that already exist on the managed
+       * networks. Adopted IPs are handed out and deleted like the ones the pool creates, so only set this when no
+       * unassociated floating IP of the tenant on these networks is kept on purpose. Off by default.
+       */
+      public Builder adoptExisting() {
+         this.adoptExisting = true;
+         return this;
+      }
+
+      public FloatingIPPool build() {
+         return new FloatingIPPool(api, executor, sizes.build(), tenantId, adoptExisting);
+      }
+   }
+}
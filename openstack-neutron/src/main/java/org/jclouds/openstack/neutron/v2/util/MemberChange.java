@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Member;
+
+import com.google.common.base.Objects;
+import com.google.common.net.InetAddresses;
+
+/**
+ * One call made by a {@link PoolMemberSynchronizer} for one pool member: creating it, updating its weight or admin
+ * state, draining it to weight 0, or deleting it.
+ */
+public final class MemberChange {
+
+   public enum Type {
+      CREATE, UPDATE, DRAIN, DELETE
+   }
+
+   private final Type type;
+   private final String address;
+   private final int protocolPort;
+   private final Member live;
+   private final Member.CreateMember desired;
+
+   MemberChange(Type type, String address, int protocolPort, @Nullable Member live,
+         @Nullable Member.CreateMember desired) {
+      this.type = checkNotNull(type, "type");
+      this.address = checkNotNull(address, "address");
+      this.protocolPort = protocolPort;
+      this.live = live;
+      this.desired = desired;
+   }
+
+   /**
+    * @return the key members are matched on: the canonical address and the protocol port
+    */
+   static String key(String address, Integer protocolPort) {
+      checkNotNull(address, "address");
+      checkNotNull(protocolPort, "protocolPort");
+      if (InetAddresses.isInetAddress(address)) {
+         address = InetAddresses.toAddrString(InetAddresses.forString(address));
+      }
+      return address + ":" + protocolPort;
+   }
+
+   MemberChange withType(Type type) {
+      return new MemberChange(type, address, protocolPort, live, desired);
+   }
+
+   public Type getType() {
+      return type;
+   }
+
+   public String getAddress() {
+      return address;
+   }
+
+   public int getProtocolPort() {
+      return protocolPort;
+   }
+
+   /**
+    * @return the id of the live member, or null for a creation
+    */
+   @Nullable
+   public String getMemberId() {
+      return live != null ? live.getId() : null;
+   }
+
+   /**
+    * @return the member as it was before the change, or null for a creation
+    */
+   @Nullable
+   public Member getLive() {
+      return live;
+   }
+
+   /**
+    * @return the wanted member, or null for a drain or a deletion
+    */
+   @Nullable
+   public Member.CreateMember getDesired() {
+      return desired;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      MemberChange that = (MemberChange) o;
+      return type == that.type && protocolPort == that.protocolPort && Objects.equal(address, that.address)
+            && Objects.equal(getMemberId(), that.getMemberId());
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(type, address, protocolPort, getMemberId());
+   }
+
+   @Override
+   public String toString() {
+      return type + " " + key(address, protocolPort) + (live != null ? " (" + live.getId() + ")" : "");
+   }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Member;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * The changes needed to bring the members of one LBaaS v1 pool to a desired state. Members are matched on address and
+ * protocol port; a desired member whose weight or admin state is null accepts any live value.
+ */
+public final class MemberDiff {
+
+   private final String poolId;
+   private final ImmutableList<MemberChange> toCreate;
+   private final ImmutableList<MemberChange> toUpdate;
+   private final ImmutableList<MemberChange> toDelete;
+
+   private MemberDiff(String poolId, ImmutableList<MemberChange> toCreate, ImmutableList<MemberChange> toUpdate,
+         ImmutableList<MemberChange> toDelete) {
+      this.poolId = poolId;
+      this.toCreate = toCreate;
+      this.toUpdate = toUpdate;
+      this.toDelete = toDelete;
+   }
+
+   /**
+    * @param poolId  the pool being synchronized; live members of other pools are ignored
+    * @param desired the wanted members
+    * @param live    the existing members of the synchronized pool
+    */
+   public static MemberDiff compute(String poolId, Iterable<? extends Member.CreateMember> desired,
+         Iterable<? extends Member> live) {
+      checkNotNull(poolId, "poolId");
+      Map<String, Member.CreateMember> wanted = Maps.newLinkedHashMap();
+      for (Member.CreateMember member : desired) {
+         checkArgument(member.getPoolId() == null || poolId.equals(member.getPoolId()),
+               "member %s belongs to pool %s, not %s", member.getAddress(), member.getPoolId(), poolId);
+         String key = MemberChange.key(member.getAddress(), member.getProtocolPort());
+         checkArgument(wanted.put(key, member) == null, "member %s is wanted twice", key);
+      }
+
+      ImmutableList.Builder<MemberChange> toUpdate = ImmutableList.builder();
+      ImmutableList.Builder<MemberChange> toDelete = ImmutableList.builder();
+      for (Member member : live) {
+         if (!poolId.equals(member.getPoolId())) {
+            continue;
+         }
+         Member.CreateMember match = wanted.remove(MemberChange.key(member.getAddress(), member.getProtocolPort()));
+         if (match == null) {
+            toDelete.add(new MemberChange(MemberChange.Type.DELETE, member.getAddress(), member.getProtocolPort(),
+                  member, null));
+         } else if (differs(match.getWeight(), member.getWeight())
+               || differs(match.getAdminStateUp(), member.getAdminStateUp())) {
+            toUpdate.add(new MemberChange(MemberChange.Type.UPDATE, member.getAddress(), member.getProtocolPort(),
+                  member, match));
+         }
+      }
+
+      ImmutableList.Builder<MemberChange> toCreate = ImmutableList.builder();
+      for (Member.CreateMember member : wanted.values()) {
+         toCreate.add(new MemberChange(MemberChange.Type.CREATE, member.getAddress(), member.getProtocolPort(), null,
+               member));
+      }
+      return new MemberDiff(poolId, toCreate.build(), toUpdate.build(), toDelete.build());
+   }
+
+   private static boolean differs(Object desired, Object live) {
+      return desired != null && !Objects.equal(desired, live);
+   }
+
+   public String getPoolId() {
+      return poolId;
+   }
+
+   /**
+    * @return the members to create
+    */
+   public ImmutableList<MemberChange> getToCreate() {
+      return toCreate;
+   }
+
+   /**
+    * @return the members whose weight or admin state must change
+    */
+   public ImmutableList<MemberChange> getToUpdate() {
+      return toUpdate;
+   }
+
+   /**
+    * @return the members to remove from the pool
+    */
+   public ImmutableList<MemberChange> getToDelete() {
+      return toDelete;
+   }
+
+   /**
+    * @return true if the pool already has the desired members
+    */
+   public boolean isEmpty() {
+      return toCreate.isEmpty() && toUpdate.isEmpty() && toDelete.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("poolId", poolId).add("toCreate", toCreate.size())
+            .add("toUpdate", toUpdate.size()).add("toDelete", toDelete.size()).toString();
+   }
+}
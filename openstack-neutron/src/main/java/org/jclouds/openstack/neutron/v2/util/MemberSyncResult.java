@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * What a {@link PoolMemberSynchronizer} did, or would have done in dry-run mode.
+ */
+public final class MemberSyncResult {
+
+   private final MemberDiff diff;
+   private final boolean dryRun;
+   private final ImmutableList<MemberChange> completed;
+   private final ImmutableMap<MemberChange, Throwable> failures;
+
+   MemberSyncResult(MemberDiff diff, boolean dryRun, Iterable<MemberChange> completed,
+         Map<MemberChange, Throwable> failures) {
+      this.diff = checkNotNull(diff, "diff");
+      this.dryRun = dryRun;
+      this.completed = ImmutableList.copyOf(completed);
+      this.failures = ImmutableMap.copyOf(failures);
+   }
+
+   /**
+    * @return the changes that were computed
+    */
+   public MemberDiff getDiff() {
+      return diff;
+   }
+
+   /**
+    * @return true if the changes were only computed, not applied
+    */
+   public boolean isDryRun() {
+      return dryRun;
+   }
+
+   /**
+    * @return the calls that succeeded, drains included: creations and updates first, then drains, then deletions
+    */
+   public ImmutableList<MemberChange> getCompleted() {
+      return completed;
+   }
+
+   /**
+    * @return the calls that failed and why. A member whose drain failed is not deleted and only appears here with
+    *         its {@link MemberChange.Type#DRAIN} change.
+    */
+   public ImmutableMap<MemberChange, Throwable> getFailures() {
+      return failures;
+   }
+
+   /**
+    * @return true if no call failed
+    */
+   public boolean isSuccess() {
+      return failures.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("diff", diff).add("dryRun", dryRun)
+            .add("completed", completed.size()).add("failures", failures).toString();
+   }
+}
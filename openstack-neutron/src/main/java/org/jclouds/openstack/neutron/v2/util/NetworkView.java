@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.field;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackBoolean;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackEnum;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackInteger;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.NetworkSegment;
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+import org.jclouds.openstack.neutron.v2.domain.NetworkType;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A network stored in a {@link NeutronInventory}, with the getters of
+ * {@link org.jclouds.openstack.neutron.v2.domain.Network}.
+ */
+public final class NetworkView {
+
+   private final NeutronInventory inventory;
+   private final NeutronInventory.Networks networks;
+   private final int row;
+
+   NetworkView(NeutronInventory inventory, int row) {
+      this.inventory = inventory;
+      this.networks = inventory.networks;
+      this.row = row;
+   }
+
+   public String getId() {
+      return networks.ids.decode(row);
+   }
+
+   @Nullable
+   public NetworkStatus getStatus() {
+      return unpackEnum(NeutronInventory.STATUSES,
+            field(networks.flags[row], NeutronInventory.Networks.STATUS, NeutronInventory.STATUS_BITS));
+   }
+
+   @Nullable
+   public ImmutableSet<String> getSubnets() {
+      return inventory.stringSets.decode(networks.subnets[row]);
+   }
+
+   @Nullable
+   public String getName() {
+      return inventory.strings.decode(networks.name[row]);
+   }
+
+   @Nullable
+   public Boolean getAdminStateUp() {
+      return unpackBoolean(field(networks.flags[row], NeutronInventory.Networks.ADMIN_STATE_UP, 2));
+   }
+
+   @Nullable
+   public Boolean getShared() {
+      return unpackBoolean(field(networks.flags[row], NeutronInventory.Networks.SHARED, 2));
+   }
+
+   @Nullable
+   public String getTenantId() {
+      return inventory.strings.decode(networks.tenantId[row]);
+   }
+
+   @Nullable
+   public NetworkType getNetworkType() {
+      return unpackEnum(NeutronInventory.NETWORK_TYPES,
+            field(networks.flags[row], NeutronInventory.Networks.NETWORK_TYPE, NeutronInventory.NETWORK_TYPE_BITS));
+   }
+
+   @Nullable
+   public String getPhysicalNetworkName() {
+      return inventory.strings.decode(networks.physicalNetworkName[row]);
+   }
+
+   @Nullable
+   public Integer getSegmentationId() {
+      return unpackInteger(networks.segmentationId[row]);
+   }
+
+   @Nullable
+   public Boolean getExternal() {
+      return unpackBoolean(field(networks.flags[row], NeutronInventory.Networks.EXTERNAL, 2));
+   }
+
+   @Nullable
+   public Boolean getPortSecurity() {
+      return unpackBoolean(field(networks.flags[row], NeutronInventory.Networks.PORT_SECURITY, 2));
+   }
+
+   @Nullable
+   public String getProfileId() {
+      return inventory.strings.decode(networks.profileId[row]);
+   }
+
+   @Nullable
+   public String getMulticastIp() {
+      return inventory.strings.decode(networks.multicastIp[row]);
+   }
+
+   @Nullable
+   public String getSegmentAdd() {
+      return inventory.strings.decode(networks.segmentAdd[row]);
+   }
+
+   @Nullable
+   public String getSegmentDel() {
+      return inventory.strings.decode(networks.segmentDel[row]);
+   }
+
+   @Nullable
+   public String getMemberSegments() {
+      return inventory.strings.decode(networks.memberSegments[row]);
+   }
+
+   @Nullable
+   public ImmutableSet<NetworkSegment> getSegments() {
+      return inventory.segments.decode(networks.networkSegments[row]);
+   }
+
+   @Nullable
+   public String getNetworkFlavor() {
+      return inventory.strings.decode(networks.networkFlavor[row]);
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+      NetworkView that = NetworkView.class.cast(o);
+      return inventory == that.inventory && row == that.row;
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(System.identityHashCode(inventory), row);
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("id", getId())
+            .add("status", getStatus())
+            .add("name", getName())
+            .add("tenantId", getTenantId())
+            .add("networkType", getNetworkType())
+            .add("subnets", getSubnets())
+            .toString();
+   }
+}
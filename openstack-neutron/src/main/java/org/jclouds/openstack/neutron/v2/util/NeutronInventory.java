@@ -0,0 +1,605 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.AddressPair;
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.ExtraDhcpOption;
+import org.jclouds.openstack.neutron.v2.domain.HostRoute;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.IPv6DHCPMode;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.NetworkSegment;
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+import org.jclouds.openstack.neutron.v2.domain.NetworkType;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.domain.VIFType;
+import org.jclouds.openstack.neutron.v2.domain.VNICType;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A memory-compact store for large numbers of ports, networks and subnets.
+ * <p/>
+ * Every resource is a row of primitive columns: strings such as tenant, network and device owner ids are
+ * dictionary-encoded, and so are collections like security group sets and DNS servers, which many resources share.
+ * Enums and nullable booleans are packed into a single int of flags, MAC addresses into a long and IP addresses into
+ * two longs. Resources are read back through {@link PortView}, {@link NetworkView} and {@link SubnetView}, flyweights
+ * that decode columns on demand and have the same getters as the domain classes.
+ * <p/>
+ * Adding a resource whose id is already stored replaces it. Instances are not thread safe: populate them from a single
+ * thread, or guard them externally.
+ */
+public final class NeutronInventory {
+
+   /**
+    * Stored in both address columns for a missing address. It is the IPv6 address ff..ff, which is never assigned.
+    */
+   static final long NO_ADDRESS = -1L;
+
+   /**
+    * The high bits of an IPv4 address stored as the IPv4-mapped IPv6 address ::ffff:a.b.c.d.
+    */
+   private static final long IPV4_MAPPED = 0xFFFFL << 32;
+
+   private static final int INITIAL_CAPACITY = 64;
+
+   final Dictionary<String> strings = new Dictionary<String>();
+   final Dictionary<ImmutableSet<String>> stringSets = new Dictionary<ImmutableSet<String>>();
+   final Dictionary<ImmutableMap<String, Object>> maps = new Dictionary<ImmutableMap<String, Object>>();
+   final Dictionary<ImmutableSet<AddressPair>> addressPairs = new Dictionary<ImmutableSet<AddressPair>>();
+   final Dictionary<ImmutableSet<ExtraDhcpOption>> dhcpOptions = new Dictionary<ImmutableSet<ExtraDhcpOption>>();
+   final Dictionary<ImmutableSet<NetworkSegment>> segments = new Dictionary<ImmutableSet<NetworkSegment>>();
+   final Dictionary<ImmutableSet<AllocationPool>> allocationPools = new Dictionary<ImmutableSet<AllocationPool>>();
+   final Dictionary<ImmutableSet<HostRoute>> hostRoutes = new Dictionary<ImmutableSet<HostRoute>>();
+
+   final Ports ports = new Ports();
+   final Networks networks = new Networks();
+   final Subnets subnets = new Subnets();
+
+   /**
+    * Lists every port, network and subnet of a region into a new inventory.
+    */
+   public static NeutronInventory load(NeutronApi api, String region) {
+      NeutronInventory inventory = new NeutronInventory();
+      inventory.addNetworks(api.getNetworkApi(region).list().concat());
+      inventory.addSubnets(api.getSubnetApi(region).list().concat());
+      inventory.addPorts(api.getPortApi(region).list().concat());
+      return inventory;
+   }
+
+   public PortView addPort(Port port) {
+      return new PortView(this, ports.add(checkNotNull(port, "port")));
+   }
+
+   public void addPorts(Iterable<? extends Port> ports) {
+      for (Port port : ports) {
+         addPort(port);
+      }
+   }
+
+   public NetworkView addNetwork(Network network) {
+      return new NetworkView(this, networks.add(checkNotNull(network, "network")));
+   }
+
+   public void addNetworks(Iterable<? extends Network> networks) {
+      for (Network network : networks) {
+         addNetwork(network);
+      }
+   }
+
+   public SubnetView addSubnet(Subnet subnet) {
+      return new SubnetView(this, subnets.add(checkNotNull(subnet, "subnet")));
+   }
+
+   public void addSubnets(Iterable<? extends Subnet> subnets) {
+      for (Subnet subnet : subnets) {
+         addSubnet(subnet);
+      }
+   }
+
+   /**
+    * @return the port with this id, or null if it is not stored
+    */
+   @Nullable
+   public PortView getPort(String id) {
+      int row = ports.ids.indexOf(id);
+      return row < 0 ? null : new PortView(this, row);
+   }
+
+   @Nullable
+   public NetworkView getNetwork(String id) {
+      int row = networks.ids.indexOf(id);
+      return row < 0 ? null : new NetworkView(this, row);
+   }
+
+   @Nullable
+   public SubnetView getSubnet(String id) {
+      int row = subnets.ids.indexOf(id);
+      return row < 0 ? null : new SubnetView(this, row);
+   }
+
+   /**
+    * @return every port, in insertion order; views are created as elements are read
+    */
+   public List<PortView> getPorts() {
+      return new AbstractList<PortView>() {
+         @Override
+         public PortView get(int index) {
+            checkRow(index, size());
+            return new PortView(NeutronInventory.this, index);
+         }
+
+         @Override
+         public int size() {
+            return ports.ids.size();
+         }
+      };
+   }
+
+   public List<NetworkView> getNetworks() {
+      return new AbstractList<NetworkView>() {
+         @Override
+         public NetworkView get(int index) {
+            checkRow(index, size());
+            return new NetworkView(NeutronInventory.this, index);
+         }
+
+         @Override
+         public int size() {
+            return networks.ids.size();
+         }
+      };
+   }
+
+   public List<SubnetView> getSubnets() {
+      return new AbstractList<SubnetView>() {
+         @Override
+         public SubnetView get(int index) {
+            checkRow(index, size());
+            return new SubnetView(NeutronInventory.this, index);
+         }
+
+         @Override
+         public int size() {
+            return subnets.ids.size();
+         }
+      };
+   }
+
+   private static void checkRow(int index, int size) {
+      if (index < 0 || index >= size) {
+         throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+      }
+   }
+
+   /*
+    * Column encoding helpers
+    */
+
+   static int packBoolean(@Nullable Boolean value) {
+      return value == null ? 0 : (value ? 2 : 1);
+   }
+
+   @Nullable
+   static Boolean unpackBoolean(int packed) {
+      return packed == 0 ? null : Boolean.valueOf(packed == 2);
+   }
+
+   static int packEnum(@Nullable Enum<?> value) {
+      return value == null ? 0 : value.ordinal() + 1;
+   }
+
+   @Nullable
+   static <E extends Enum<E>> E unpackEnum(E[] values, int packed) {
+      return packed == 0 ? null : values[packed - 1];
+   }
+
+   static int field(int flags, int shift, int bits) {
+      return (flags >>> shift) & ((1 << bits) - 1);
+   }
+
+   static int packInteger(@Nullable Integer value) {
+      checkArgument(value == null || value != Integer.MIN_VALUE, "unsupported value %s", value);
+      return value == null ? Integer.MIN_VALUE : value;
+   }
+
+   @Nullable
+   static Integer unpackInteger(int packed) {
+      return packed == Integer.MIN_VALUE ? null : Integer.valueOf(packed);
+   }
+
+   /**
+    * Packs a MAC address such as {@code fa:16:3e:12:34:56} into the low 48 bits of a long, or -1 if it is null.
+    */
+   static long packMac(@Nullable String mac) {
+      if (mac == null) {
+         return -1L;
+      }
+      checkArgument(mac.length() == 17, "invalid MAC address %s", mac);
+      long packed = 0;
+      for (int i = 0; i < 6; i++) {
+         checkArgument(i == 5 || mac.charAt(i * 3 + 2) == ':' || mac.charAt(i * 3 + 2) == '-',
+               "invalid MAC address %s", mac);
+         int high = Character.digit(mac.charAt(i * 3), 16);
+         int low = Character.digit(mac.charAt(i * 3 + 1), 16);
+         checkArgument(high >= 0 && low >= 0, "invalid MAC address %s", mac);
+         packed = packed << 8 | high << 4 | low;
+      }
+      return packed;
+   }
+
+   @Nullable
+   static String unpackMac(long packed) {
+      if (packed < 0) {
+         return null;
+      }
+      char[] mac = new char[17];
+      for (int i = 0; i < 6; i++) {
+         int octet = (int) (packed >>> (40 - i * 8)) & 0xFF;
+         mac[i * 3] = Character.forDigit(octet >>> 4, 16);
+         mac[i * 3 + 1] = Character.forDigit(octet & 0xF, 16);
+         if (i < 5) {
+            mac[i * 3 + 2] = ':';
+         }
+      }
+      return new String(mac);
+   }
+
+   /**
+    * @return the high 64 bits of an address as IPv6, IPv4 addresses being mapped to {@code ::ffff:a.b.c.d}
+    */
+   static long addressHigh(@Nullable byte[] address) {
+      if (address == null) {
+         return NO_ADDRESS;
+      }
+      return address.length == 4 ? 0 : toLong(address, 0);
+   }
+
+   static long addressLow(@Nullable byte[] address) {
+      if (address == null) {
+         return NO_ADDRESS;
+      }
+      return address.length == 4 ? IPV4_MAPPED | (toLong(address, 0) >>> 32) : toLong(address, 8);
+   }
+
+   @Nullable
+   static byte[] toAddress(@Nullable String address) {
+      return address != null ? Cidr.toBytes(address) : null;
+   }
+
+   @Nullable
+   static String unpackAddress(long high, long low) {
+      if (high == NO_ADDRESS && low == NO_ADDRESS) {
+         return null;
+      }
+      byte[] address;
+      if (high == 0 && (low >>> 32) == 0xFFFFL) {
+         address = new byte[4];
+         for (int i = 0; i < 4; i++) {
+            address[i] = (byte) (low >>> (24 - i * 8));
+         }
+      } else {
+         address = new byte[16];
+         for (int i = 0; i < 8; i++) {
+            address[i] = (byte) (high >>> (56 - i * 8));
+            address[i + 8] = (byte) (low >>> (56 - i * 8));
+         }
+      }
+      return Cidr.toAddrString(address);
+   }
+
+   private static long toLong(byte[] bytes, int offset) {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+         value = value << 8 | (offset + i < bytes.length ? bytes[offset + i] & 0xFF : 0);
+      }
+      return value;
+   }
+
+   static int[] grow(int[] column, int capacity) {
+      return column.length >= capacity ? column : Arrays.copyOf(column, Math.max(capacity, column.length * 2));
+   }
+
+   static long[] grow(long[] column, int capacity) {
+      return column.length >= capacity ? column : Arrays.copyOf(column, Math.max(capacity, column.length * 2));
+   }
+
+   /*
+    * Tables
+    */
+
+   final class Ports {
+      static final int STATUS = 0;
+      static final int VIF_TYPE = 3;
+      static final int VNIC_TYPE = 8;
+      static final int ADMIN_STATE_UP = 11;
+      static final int PORT_SECURITY = 13;
+      static final int MAC_LEARNING = 15;
+
+      final Dictionary<String> ids = new Dictionary<String>();
+      int[] name = new int[INITIAL_CAPACITY];
+      int[] networkId = new int[INITIAL_CAPACITY];
+      int[] tenantId = new int[INITIAL_CAPACITY];
+      int[] deviceId = new int[INITIAL_CAPACITY];
+      int[] deviceOwner = new int[INITIAL_CAPACITY];
+      int[] hostId = new int[INITIAL_CAPACITY];
+      int[] qosQueueId = new int[INITIAL_CAPACITY];
+      int[] profileId = new int[INITIAL_CAPACITY];
+      int[] flags = new int[INITIAL_CAPACITY];
+      int[] qosRxtxFactor = new int[INITIAL_CAPACITY];
+      long[] mac = new long[INITIAL_CAPACITY];
+      int[] securityGroups = new int[INITIAL_CAPACITY];
+      int[] allowedAddressPairs = new int[INITIAL_CAPACITY];
+      int[] extraDhcpOptions = new int[INITIAL_CAPACITY];
+      int[] vifDetails = new int[INITIAL_CAPACITY];
+      int[] profile = new int[INITIAL_CAPACITY];
+      // fixed IPs of row r are entries fixedIpStart[r] to fixedIpStart[r] + fixedIpCount[r] of the pool
+      int[] fixedIpStart = new int[INITIAL_CAPACITY];
+      int[] fixedIpCount = new int[INITIAL_CAPACITY];
+      int poolSize;
+      long[] poolHigh = new long[INITIAL_CAPACITY];
+      long[] poolLow = new long[INITIAL_CAPACITY];
+      int[] poolSubnetId = new int[INITIAL_CAPACITY];
+
+      int add(Port port) {
+         int row = ids.encode(checkNotNull(port.getId(), "id"));
+         ensureCapacity(row + 1);
+         name[row] = strings.encode(port.getName());
+         networkId[row] = strings.encode(port.getNetworkId());
+         tenantId[row] = strings.encode(port.getTenantId());
+         deviceId[row] = strings.encode(port.getDeviceId());
+         deviceOwner[row] = strings.encode(port.getDeviceOwner());
+         hostId[row] = strings.encode(port.getHostId());
+         qosQueueId[row] = strings.encode(port.getQosQueueId());
+         profileId[row] = strings.encode(port.getProfileId());
+         flags[row] = packEnum(port.getStatus()) << STATUS
+               | packEnum(port.getVifType()) << VIF_TYPE
+               | packEnum(port.getVnicType()) << VNIC_TYPE
+               | packBoolean(port.getAdminStateUp()) << ADMIN_STATE_UP
+               | packBoolean(port.getPortSecurity()) << PORT_SECURITY
+               | packBoolean(port.getMacLearning()) << MAC_LEARNING;
+         qosRxtxFactor[row] = packInteger(port.getQosRxtxFactor());
+         mac[row] = packMac(port.getMacAddress());
+         securityGroups[row] = stringSets.encode(port.getSecurityGroups());
+         allowedAddressPairs[row] = addressPairs.encode(port.getAllowedAddressPairs());
+         extraDhcpOptions[row] = dhcpOptions.encode(port.getExtraDhcpOptions());
+         vifDetails[row] = maps.encode(port.getVifDetails());
+         profile[row] = maps.encode(port.getProfile());
+
+         ImmutableSet<IP> fixedIps = port.getFixedIps();
+         int count = fixedIps != null ? fixedIps.size() : -1;
+         // a replaced port reuses its pool entries when the new addresses fit
+         if (count > 0 && count > fixedIpCount[row]) {
+            fixedIpStart[row] = poolSize;
+            poolSize += count;
+            poolHigh = grow(poolHigh, poolSize);
+            poolLow = grow(poolLow, poolSize);
+            poolSubnetId = grow(poolSubnetId, poolSize);
+         }
+         fixedIpCount[row] = count;
+         int entry = fixedIpStart[row];
+         if (fixedIps != null) {
+            for (IP ip : fixedIps) {
+               byte[] address = toAddress(ip.getIpAddress());
+               poolHigh[entry] = addressHigh(address);
+               poolLow[entry] = addressLow(address);
+               poolSubnetId[entry] = strings.encode(ip.getSubnetId());
+               entry++;
+            }
+         }
+         return row;
+      }
+
+      private void ensureCapacity(int capacity) {
+         if (name.length >= capacity) {
+            return;
+         }
+         name = grow(name, capacity);
+         networkId = grow(networkId, capacity);
+         tenantId = grow(tenantId, capacity);
+         deviceId = grow(deviceId, capacity);
+         deviceOwner = grow(deviceOwner, capacity);
+         hostId = grow(hostId, capacity);
+         qosQueueId = grow(qosQueueId, capacity);
+         profileId = grow(profileId, capacity);
+         flags = grow(flags, capacity);
+         qosRxtxFactor = grow(qosRxtxFactor, capacity);
+         mac = grow(mac, capacity);
+         securityGroups = grow(securityGroups, capacity);
+         allowedAddressPairs = grow(allowedAddressPairs, capacity);
+         extraDhcpOptions = grow(extraDhcpOptions, capacity);
+         vifDetails = grow(vifDetails, capacity);
+         profile = grow(profile, capacity);
+         fixedIpStart = grow(fixedIpStart, capacity);
+         fixedIpCount = grow(fixedIpCount, capacity);
+      }
+   }
+
+   final class Networks {
+      static final int STATUS = 0;
+      static final int NETWORK_TYPE = 3;
+      static final int ADMIN_STATE_UP = 6;
+      static final int SHARED = 8;
+      static final int EXTERNAL = 10;
+      static final int PORT_SECURITY = 12;
+
+      final Dictionary<String> ids = new Dictionary<String>();
+      int[] name = new int[INITIAL_CAPACITY];
+      int[] tenantId = new int[INITIAL_CAPACITY];
+      int[] physicalNetworkName = new int[INITIAL_CAPACITY];
+      int[] profileId = new int[INITIAL_CAPACITY];
+      int[] multicastIp = new int[INITIAL_CAPACITY];
+      int[] segmentAdd = new int[INITIAL_CAPACITY];
+      int[] segmentDel = new int[INITIAL_CAPACITY];
+      int[] memberSegments = new int[INITIAL_CAPACITY];
+      int[] networkFlavor = new int[INITIAL_CAPACITY];
+      int[] flags = new int[INITIAL_CAPACITY];
+      int[] segmentationId = new int[INITIAL_CAPACITY];
+      int[] subnets = new int[INITIAL_CAPACITY];
+      int[] networkSegments = new int[INITIAL_CAPACITY];
+
+      int add(Network network) {
+         int row = ids.encode(checkNotNull(network.getId(), "id"));
+         ensureCapacity(row + 1);
+         name[row] = strings.encode(network.getName());
+         tenantId[row] = strings.encode(network.getTenantId());
+         physicalNetworkName[row] = strings.encode(network.getPhysicalNetworkName());
+         profileId[row] = strings.encode(network.getProfileId());
+         multicastIp[row] = strings.encode(network.getMulticastIp());
+         segmentAdd[row] = strings.encode(network.getSegmentAdd());
+         segmentDel[row] = strings.encode(network.getSegmentDel());
+         memberSegments[row] = strings.encode(network.getMemberSegments());
+         networkFlavor[row] = strings.encode(network.getNetworkFlavor());
+         flags[row] = packEnum(network.getStatus()) << STATUS
+               | packEnum(network.getNetworkType()) << NETWORK_TYPE
+               | packBoolean(network.getAdminStateUp()) << ADMIN_STATE_UP
+               | packBoolean(network.getShared()) << SHARED
+               | packBoolean(network.getExternal()) << EXTERNAL
+               | packBoolean(network.getPortSecurity()) << PORT_SECURITY;
+         segmentationId[row] = packInteger(network.getSegmentationId());
+         subnets[row] = stringSets.encode(network.getSubnets());
+         networkSegments[row] = segments.encode(network.getSegments());
+         return row;
+      }
+
+      private void ensureCapacity(int capacity) {
+         if (name.length >= capacity) {
+            return;
+         }
+         name = grow(name, capacity);
+         tenantId = grow(tenantId, capacity);
+         physicalNetworkName = grow(physicalNetworkName, capacity);
+         profileId = grow(profileId, capacity);
+         multicastIp = grow(multicastIp, capacity);
+         segmentAdd = grow(segmentAdd, capacity);
+         segmentDel = grow(segmentDel, capacity);
+         memberSegments = grow(memberSegments, capacity);
+         networkFlavor = grow(networkFlavor, capacity);
+         flags = grow(flags, capacity);
+         segmentationId = grow(segmentationId, capacity);
+         subnets = grow(subnets, capacity);
+         networkSegments = grow(networkSegments, capacity);
+      }
+   }
+
+   final class Subnets {
+      static final int IP_VERSION = 0;
+      static final int ENABLE_DHCP = 2;
+      static final int IPV6_ADDRESS_MODE = 4;
+      static final int IPV6_RA_MODE = 7;
+      // the prefix length plus one, 0 when there is no cidr
+      static final int PREFIX_LENGTH = 10;
+
+      final Dictionary<String> ids = new Dictionary<String>();
+      int[] name = new int[INITIAL_CAPACITY];
+      int[] networkId = new int[INITIAL_CAPACITY];
+      int[] tenantId = new int[INITIAL_CAPACITY];
+      int[] flags = new int[INITIAL_CAPACITY];
+      long[] gatewayHigh = new long[INITIAL_CAPACITY];
+      long[] gatewayLow = new long[INITIAL_CAPACITY];
+      long[] cidrHigh = new long[INITIAL_CAPACITY];
+      long[] cidrLow = new long[INITIAL_CAPACITY];
+      int[] pools = new int[INITIAL_CAPACITY];
+      int[] dnsNameservers = new int[INITIAL_CAPACITY];
+      int[] routes = new int[INITIAL_CAPACITY];
+
+      int add(Subnet subnet) {
+         int row = ids.encode(checkNotNull(subnet.getId(), "id"));
+         ensureCapacity(row + 1);
+         name[row] = strings.encode(subnet.getName());
+         networkId[row] = strings.encode(subnet.getNetworkId());
+         tenantId[row] = strings.encode(subnet.getTenantId());
+         Integer ipVersion = subnet.getIpVersion();
+         checkArgument(ipVersion == null || ipVersion == 4 || ipVersion == 6, "unsupported ip version %s", ipVersion);
+         Cidr cidr = subnet.getCidr() != null ? Cidr.parse(subnet.getCidr()) : null;
+         flags[row] = (ipVersion == null ? 0 : ipVersion == 4 ? 1 : 2) << IP_VERSION
+               | packBoolean(subnet.getEnableDhcp()) << ENABLE_DHCP
+               | packEnum(subnet.getIPv6AddressMode()) << IPV6_ADDRESS_MODE
+               | packEnum(subnet.getIPv6RAMode()) << IPV6_RA_MODE
+               | (cidr != null ? cidr.getPrefixLength() + 1 : 0) << PREFIX_LENGTH;
+         byte[] gateway = toAddress(subnet.getGatewayIp());
+         gatewayHigh[row] = addressHigh(gateway);
+         gatewayLow[row] = addressLow(gateway);
+         byte[] network = cidr != null ? cidr.getAddress() : null;
+         cidrHigh[row] = addressHigh(network);
+         cidrLow[row] = addressLow(network);
+         pools[row] = allocationPools.encode(subnet.getAllocationPools());
+         dnsNameservers[row] = stringSets.encode(subnet.getDnsNameservers());
+         routes[row] = hostRoutes.encode(subnet.getHostRoutes());
+         return row;
+      }
+
+      private void ensureCapacity(int capacity) {
+         if (name.length >= capacity) {
+            return;
+         }
+         name = grow(name, capacity);
+         networkId = grow(networkId, capacity);
+         tenantId = grow(tenantId, capacity);
+         flags = grow(flags, capacity);
+         gatewayHigh = grow(gatewayHigh, capacity);
+         gatewayLow = grow(gatewayLow, capacity);
+         cidrHigh = grow(cidrHigh, capacity);
+         cidrLow = grow(cidrLow, capacity);
+         pools = grow(pools, capacity);
+         dnsNameservers = grow(dnsNameservers, capacity);
+         routes = grow(routes, capacity);
+      }
+   }
+
+   static final VIFType[] VIF_TYPES = VIFType.values();
+   static final VNICType[] VNIC_TYPES = VNICType.values();
+   static final NetworkStatus[] STATUSES = NetworkStatus.values();
+   static final NetworkType[] NETWORK_TYPES = NetworkType.values();
+   static final IPv6DHCPMode[] IPV6_MODES = IPv6DHCPMode.values();
+
+   // the widths of the enum fields of the flags columns
+   static final int STATUS_BITS = 3;
+   static final int VIF_TYPE_BITS = 5;
+   static final int VNIC_TYPE_BITS = 3;
+   static final int NETWORK_TYPE_BITS = 3;
+   static final int IPV6_MODE_BITS = 3;
+
+   static {
+      checkFits(STATUSES, STATUS_BITS);
+      checkFits(VIF_TYPES, VIF_TYPE_BITS);
+      checkFits(VNIC_TYPES, VNIC_TYPE_BITS);
+      checkFits(NETWORK_TYPES, NETWORK_TYPE_BITS);
+      checkFits(IPV6_MODES, IPV6_MODE_BITS);
+   }
+
+   /**
+    * Fails when a constant added to an enum would overflow its field, since {@link #packEnum} keeps 0 for null.
+    */
+   private static void checkFits(Enum<?>[] values, int bits) {
+      checkState(values.length < 1 << bits, "%s constants of %s do not fit in %s bits", values.length,
+            values.getClass().getComponentType().getSimpleName(), bits);
+   }
+}
@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Defaults;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closer;
+
+/**
+ * A read-only view of a snapshot written by {@link NeutronSnapshotWriter}.
+ * <p/>
+ * The file is memory-mapped and only its header is read when it is opened; records are decoded into domain objects
+ * when they are accessed, so opening a snapshot takes the same time whatever its size. Lookups by id are binary
+ * searches in the sorted index of each section. Instances are safe to share between threads.
+ */
+public final class NeutronSnapshot {
+
+   private final ByteBuffer buffer;
+   private final short version;
+   private final int stringCount;
+   private final int stringOffsets;
+   private final int stringData;
+   private final String[] strings;
+   private final DecodedSchema[] schemas;
+   private final Map<Class<?>, Section> sections = Maps.newHashMap();
+   private final int records;
+
+   private NeutronSnapshot(ByteBuffer buffer) {
+      this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+      int position = buffer.position();
+      checkArgument(buffer.getInt(position) == SnapshotFormat.MAGIC, "not a Neutron snapshot");
+      this.version = buffer.getShort(position + 4);
+      checkArgument(version <= SnapshotFormat.VERSION, "unsupported snapshot version %s", version);
+      position += 8;
+
+      this.stringCount = buffer.getInt(position);
+      this.stringOffsets = position + 4;
+      this.stringData = stringOffsets + 4 * (stringCount + 1);
+      this.strings = new String[stringCount];
+      position = stringData + buffer.getInt(stringOffsets + 4 * stringCount);
+
+      this.schemas = new DecodedSchema[buffer.getInt(position)];
+      position += 4;
+      for (int i = 0; i < schemas.length; i++) {
+         String className = string(buffer.getInt(position));
+         String[] properties = new String[buffer.getInt(position + 4)];
+         position += 8;
+         for (int p = 0; p < properties.length; p++, position += 4) {
+            properties[p] = string(buffer.getInt(position));
+         }
+         schemas[i] = new DecodedSchema(className, properties);
+      }
+
+      int sectionCount = buffer.getInt(position);
+      position += 4;
+      for (int i = 0; i < sectionCount; i++) {
+         int code = buffer.getInt(position);
+         Section section = new Section(buffer.getInt(position + 4), buffer.getInt(position + 8),
+               buffer.getInt(position + 12), position + 16);
+         if (code < SnapshotFormat.SECTIONS.size()) {
+            sections.put(SnapshotFormat.SECTIONS.get(code), section);
+         }
+         position = section.rows + 4 * section.indexCount;
+      }
+      this.records = position + 4;
+   }
+
+   /**
+    * Maps a snapshot file into memory.
+    */
+   public static NeutronSnapshot open(File file) throws IOException {
+      Closer closer = Closer.create();
+      try {
+         FileChannel channel = closer.register(new RandomAccessFile(file, "r")).getChannel();
+         // the mapping stays valid once the channel is closed
+         return new NeutronSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      } catch (Throwable e) {
+         throw closer.rethrow(e);
+      } finally {
+         closer.close();
+      }
+   }
+
+   /**
+    * Reads a snapshot from a buffer, starting at its position.
+    */
+   public static NeutronSnapshot read(ByteBuffer buffer) {
+      return new NeutronSnapshot(checkNotNull(buffer, "buffer").duplicate());
+   }
+
+   /**
+    * @return the format version the snapshot was written with
+    */
+   public int getVersion() {
+      return version;
+   }
+
+   public List<Port> getPorts() {
+      return list(Port.class);
+   }
+
+   @Nullable
+   public Port getPort(String id) {
+      return get(Port.class, id);
+   }
+
+   public List<Network> getNetworks() {
+      return list(Network.class);
+   }
+
+   @Nullable
+   public Network getNetwork(String id) {
+      return get(Network.class, id);
+   }
+
+   public List<Subnet> getSubnets() {
+      return list(Subnet.class);
+   }
+
+   @Nullable
+   public Subnet getSubnet(String id) {
+      return get(Subnet.class, id);
+   }
+
+   public List<Router> getRouters() {
+      return list(Router.class);
+   }
+
+   @Nullable
+   public Router getRouter(String id) {
+      return get(Router.class, id);
+   }
+
+   public List<FloatingIP> getFloatingIPs() {
+      return list(FloatingIP.class);
+   }
+
+   @Nullable
+   public FloatingIP getFloatingIP(String id) {
+      return get(FloatingIP.class, id);
+   }
+
+   public List<SecurityGroup> getSecurityGroups() {
+      return list(SecurityGroup.class);
+   }
+
+   @Nullable
+   public SecurityGroup getSecurityGroup(String id) {
+      return get(SecurityGroup.class, id);
+   }
+
+   public List<Rule> getRules() {
+      return list(Rule.class);
+   }
+
+   @Nullable
+   public Rule getRule(String id) {
+      return get(Rule.class, id);
+   }
+
+   /**
+    * @return the resources of one type, in the order they were written, decoded on access
+    */
+   private <T> List<T> list(final Class<T> type) {
+      final Section section = sections.get(type);
+      if (section == null) {
+         return ImmutableList.of();
+      }
+      return new AbstractList<T>() {
+         @Override
+         public T get(int index) {
+            if (index < 0 || index >= section.count) {
+               throw new IndexOutOfBoundsException(index + " is not in [0, " + section.count + ")");
+            }
+            return type.cast(decode(section, index, type));
+         }
+
+         @Override
+         public int size() {
+            return section.count;
+         }
+      };
+   }
+
+   private <T> T get(Class<T> type, String id) {
+      checkNotNull(id, "id");
+      Section section = sections.get(type);
+      if (section == null) {
+         return null;
+      }
+      int low = 0;
+      int high = section.indexCount - 1;
+      while (low <= high) {
+         int middle = (low + high) >>> 1;
+         int comparison = string(buffer.getInt(section.ids + 4 * middle)).compareTo(id);
+         if (comparison < 0) {
+            low = middle + 1;
+         } else if (comparison > 0) {
+            high = middle - 1;
+         } else {
+            return type.cast(decode(section, buffer.getInt(section.rows + 4 * middle), type));
+         }
+      }
+      return null;
+   }
+
+   private Object decode(Section section, int row, Class<?> type) {
+      Input in = new Input(records + buffer.getInt(section.offsets + 4 * row));
+      return readFields(in, schemas[section.schema], type);
+   }
+
+   private String string(int index) {
+      String string = strings[index];
+      if (string == null) {
+         int start = buffer.getInt(stringOffsets + 4 * index);
+         byte[] bytes = new byte[buffer.getInt(stringOffsets + 4 * index + 4) - start];
+         ByteBuffer slice = buffer.duplicate();
+         slice.position(stringData + start);
+         slice.get(bytes);
+         // racing threads decode the same immutable value, so the cache needs no locking
+         string = new String(bytes, Charsets.UTF_8);
+         strings[index] = string;
+      }
+      return string;
+   }
+
+   private Object readFields(Input in, DecodedSchema written, Class<?> type) {
+      SnapshotFormat.Schema schema = SnapshotFormat.schema(type);
+      int[] positions = written.positions(schema);
+      Object[] values = new Object[schema.properties.size()];
+      for (int i = 0; i < positions.length; i++) {
+         if (positions[i] < 0) {
+            readValue(in, Object.class);
+         } else {
+            values[positions[i]] = readValue(in, schema.parameterTypes[positions[i]]);
+         }
+      }
+      for (int i = 0; i < values.length; i++) {
+         Type parameter = schema.parameterTypes[i];
+         if (values[i] == null && parameter instanceof Class && ((Class<?>) parameter).isPrimitive()) {
+            values[i] = Defaults.defaultValue((Class<?>) parameter);
+         }
+      }
+      return schema.create(values);
+   }
+
+   private Object readValue(Input in, Type declared) {
+      Class<?> raw = raw(declared);
+      byte tag = in.readByte();
+      switch (tag) {
+         case SnapshotFormat.NULL:
+            return null;
+         case SnapshotFormat.STRING:
+            return string(in.readVarint());
+         case SnapshotFormat.TRUE:
+            return Boolean.TRUE;
+         case SnapshotFormat.FALSE:
+            return Boolean.FALSE;
+         case SnapshotFormat.INT:
+            long value = unZigZag(in.readVarlong());
+            if (raw == Long.class || raw == long.class) {
+               return value;
+            }
+            return (int) value;
+         case SnapshotFormat.LONG:
+            return unZigZag(in.readVarlong());
+         case SnapshotFormat.DOUBLE:
+            return Double.longBitsToDouble(in.readVarlong());
+         case SnapshotFormat.ENUM:
+            return readEnum(string(in.readVarint()), raw);
+         case SnapshotFormat.LIST:
+            int size = in.readVarint();
+            Type element = typeArgument(declared, 0);
+            ImmutableList.Builder<Object> items = ImmutableList.builder();
+            for (int i = 0; i < size; i++) {
+               Object item = readValue(in, element);
+               if (item != null) {
+                  items.add(item);
+               }
+            }
+            return Set.class.isAssignableFrom(raw) ? ImmutableSet.copyOf(items.build()) : items.build();
+         case SnapshotFormat.MAP:
+            int entries = in.readVarint();
+            Type mapped = typeArgument(declared, 1);
+            Map<String, Object> map = Maps.newLinkedHashMap();
+            for (int i = 0; i < entries; i++) {
+               String key = string(in.readVarint());
+               Object entry = readValue(in, mapped);
+               if (entry != null) {
+                  map.put(key, entry);
+               }
+            }
+            return ImmutableMap.copyOf(map);
+         case SnapshotFormat.OBJECT:
+            DecodedSchema written = schemas[in.readVarint()];
+            return readFields(in, written, raw != Object.class ? raw : written.type());
+         default:
+            throw new IllegalStateException("corrupt snapshot: unknown tag " + tag);
+      }
+   }
+
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   private static Object readEnum(String name, Class<?> type) {
+      if (!type.isEnum()) {
+         return name;
+      }
+      try {
+         return Enum.valueOf((Class) type, name);
+      } catch (IllegalArgumentException e) {
+         // written by a version of the domain type that has more constants
+         return null;
+      }
+   }
+
+   private static Class<?> raw(Type type) {
+      if (type instanceof Class) {
+         return (Class<?>) type;
+      }
+      if (type instanceof ParameterizedType) {
+         return (Class<?>) ((ParameterizedType) type).getRawType();
+      }
+      return Object.class;
+   }
+
+   private static Type typeArgument(Type declared, int index) {
+      if (declared instanceof ParameterizedType) {
+         Type[] arguments = ((ParameterizedType) declared).getActualTypeArguments();
+         if (index < arguments.length) {
+            return arguments[index];
+         }
+      }
+      return Object.class;
+   }
+
+   private static long unZigZag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+   }
+
+   /**
+    * The offsets of the tables of one section in the buffer.
+    */
+   private static final class Section {
+      private final int schema;
+      private final int count;
+      private final int indexCount;
+      private final int offsets;
+      private final int ids;
+      private final int rows;
+
+      private Section(int schema, int count, int indexCount, int offsets) {
+         this.schema = schema;
+         this.count = count;
+         this.indexCount = indexCount;
+         this.offsets = offsets;
+         this.ids = offsets + 4 * count;
+         this.rows = ids + 4 * indexCount;
+      }
+   }
+
+   /**
+    * A schema as written in the snapshot, which may differ from the current one of its type.
+    */
+   private static final class DecodedSchema {
+      private final String className;
+      private final String[] properties;
+      private volatile Resolution resolution;
+
+      private DecodedSchema(String className, String[] properties) {
+         this.className = className;
+         this.properties = properties;
+      }
+
+      private Class<?> type() {
+         try {
+            return Class.forName(className, false, NeutronSnapshot.class.getClassLoader());
+         } catch (ClassNotFoundException e) {
+            throw Throwables.propagate(e);
+         }
+      }
+
+      /**
+       * @return for every written property, its position in the constructor of {@code schema}, or -1
+       */
+      private int[] positions(SnapshotFormat.Schema schema) {
+         Resolution current = resolution;
+         if (current == null || current.schema != schema) {
+            int[] positions = new int[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+               positions[i] = schema.position(properties[i]);
+            }
+            current = new Resolution(schema, positions);
+            resolution = current;
+         }
+         return current.positions;
+      }
+   }
+
+   private static final class Resolution {
+      private final SnapshotFormat.Schema schema;
+      private final int[] positions;
+
+      private Resolution(SnapshotFormat.Schema schema, int[] positions) {
+         this.schema = schema;
+         this.positions = positions;
+      }
+   }
+
+   /**
+    * A cursor over the records, reading the buffer with absolute gets so that concurrent reads do not interfere.
+    */
+   private final class Input {
+      private int position;
+
+      private Input(int position) {
+         this.position = position;
+      }
+
+      byte readByte() {
+         return buffer.get(position++);
+      }
+
+      int readVarint() {
+         return (int) readVarlong();
+      }
+
+      long readVarlong() {
+         long value = 0;
+         for (int shift = 0;; shift += 7) {
+            byte b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+               return value;
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.extensions.FloatingIPApi;
+import org.jclouds.openstack.neutron.v2.extensions.RouterApi;
+import org.jclouds.openstack.neutron.v2.features.SecurityGroupApi;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closer;
+
+/**
+ * Writes ports, networks, subnets, routers, floating IPs, security groups and rules to a compact binary snapshot that
+ * {@link NeutronSnapshot} maps back into memory. See {@link SnapshotFormat} for the layout.
+ *
+ * <pre>
+ * NeutronSnapshotWriter.capture(neutronApi, "RegionOne").writeTo(new File("RegionOne.snapshot"));
+ * NeutronSnapshot snapshot = NeutronSnapshot.open(new File("RegionOne.snapshot"));
+ * </pre>
+ */
+public class NeutronSnapshotWriter {
+
+   private final List<List<Object>> sections = Lists.newArrayList();
+
+   public NeutronSnapshotWriter() {
+      for (int i = 0; i < SnapshotFormat.SECTIONS.size(); i++) {
+         sections.add(Lists.newArrayList());
+      }
+   }
+
+   /**
+    * Lists every supported resource of a region. Routers and floating IPs are skipped when the region does not
+    * support them.
+    */
+   public static NeutronSnapshotWriter capture(NeutronApi api, String region) {
+      NeutronSnapshotWriter writer = new NeutronSnapshotWriter();
+      writer.addPorts(api.getPortApi(region).list().concat());
+      writer.addNetworks(api.getNetworkApi(region).list().concat());
+      writer.addSubnets(api.getSubnetApi(region).list().concat());
+      Optional<RouterApi> routerApi = api.getRouterApi(region);
+      if (routerApi.isPresent()) {
+         writer.addRouters(routerApi.get().list().concat());
+      }
+      Optional<FloatingIPApi> floatingIPApi = api.getFloatingIPApi(region);
+      if (floatingIPApi.isPresent()) {
+         writer.addFloatingIPs(floatingIPApi.get().list().concat());
+      }
+      SecurityGroupApi securityGroupApi = api.getSecurityGroupApi(region);
+      writer.addSecurityGroups(securityGroupApi.listSecurityGroups().concat());
+      writer.addRules(securityGroupApi.listRules().concat());
+      return writer;
+   }
+
+   public NeutronSnapshotWriter addPorts(Iterable<? extends Port> ports) {
+      return add(Port.class, ports);
+   }
+
+   public NeutronSnapshotWriter addNetworks(Iterable<? extends Network> networks) {
+      return add(Network.class, networks);
+   }
+
+   public NeutronSnapshotWriter addSubnets(Iterable<? extends Subnet> subnets) {
+      return add(Subnet.class, subnets);
+   }
+
+   public NeutronSnapshotWriter addRouters(Iterable<? extends Router> routers) {
+      return add(Router.class, routers);
+   }
+
+   public NeutronSnapshotWriter addFloatingIPs(Iterable<? extends FloatingIP> floatingIPs) {
+      return add(FloatingIP.class, floatingIPs);
+   }
+
+   public NeutronSnapshotWriter addSecurityGroups(Iterable<? extends SecurityGroup> securityGroups) {
+      return add(SecurityGroup.class, securityGroups);
+   }
+
+   public NeutronSnapshotWriter addRules(Iterable<? extends Rule> rules) {
+      return add(Rule.class, rules);
+   }
+
+   private NeutronSnapshotWriter add(Class<?> type, Iterable<?> resources) {
+      List<Object> section = sections.get(SnapshotFormat.SECTIONS.indexOf(type));
+      for (Object resource : checkNotNull(resources, "resources")) {
+         section.add(checkNotNull(resource, "resource"));
+      }
+      return this;
+   }
+
+   public void writeTo(File file) throws IOException {
+      Closer closer = Closer.create();
+      try {
+         writeTo(closer.register(new BufferedOutputStream(new FileOutputStream(file), 1 << 16)));
+      } catch (Throwable e) {
+         throw closer.rethrow(e);
+      } finally {
+         closer.close();
+      }
+   }
+
+   public byte[] toByteArray() {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try {
+         writeTo(bytes);
+      } catch (IOException e) {
+         throw new AssertionError(e);
+      }
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Writes the snapshot. The stream is not closed.
+    */
+   public void writeTo(OutputStream stream) throws IOException {
+      Encoder encoder = new Encoder();
+      int[][] offsets = new int[sections.size()][];
+      int[][] ids = new int[sections.size()][];
+      int[][] rows = new int[sections.size()][];
+      int[] schemas = new int[sections.size()];
+      for (int s = 0; s < sections.size(); s++) {
+         List<Object> section = sections.get(s);
+         SnapshotFormat.Schema schema = SnapshotFormat.schema(SnapshotFormat.SECTIONS.get(s));
+         schemas[s] = encoder.schemaId(schema);
+         int id = schema.position("id");
+         offsets[s] = new int[section.size()];
+         final String[] keys = new String[section.size()];
+         Integer[] indexed = new Integer[section.size()];
+         int indexCount = 0;
+         for (int row = 0; row < section.size(); row++) {
+            offsets[s][row] = encoder.records.size();
+            encoder.writeFields(schema, section.get(row));
+            keys[row] = (String) schema.get(section.get(row), id);
+            if (keys[row] != null) {
+               indexed[indexCount++] = row;
+            }
+         }
+         Arrays.sort(indexed, 0, indexCount, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+               return keys[a].compareTo(keys[b]);
+            }
+         });
+         ids[s] = new int[indexCount];
+         rows[s] = new int[indexCount];
+         for (int i = 0; i < indexCount; i++) {
+            rows[s][i] = indexed[i];
+            ids[s][i] = encoder.strings.encode(keys[indexed[i]]);
+         }
+      }
+
+      DataOutputStream out = new DataOutputStream(stream);
+      out.writeInt(SnapshotFormat.MAGIC);
+      out.writeShort(SnapshotFormat.VERSION);
+      out.writeShort(0);
+
+      List<String> strings = encoder.strings.values();
+      byte[][] utf8 = new byte[strings.size()][];
+      out.writeInt(strings.size());
+      int offset = 0;
+      out.writeInt(offset);
+      for (int i = 0; i < utf8.length; i++) {
+         utf8[i] = strings.get(i).getBytes(Charsets.UTF_8);
+         offset += utf8[i].length;
+         out.writeInt(offset);
+      }
+      for (byte[] string : utf8) {
+         out.write(string);
+      }
+
+      List<SnapshotFormat.Schema> schemaList = encoder.schemas.values();
+      out.writeInt(schemaList.size());
+      for (SnapshotFormat.Schema schema : schemaList) {
+         out.writeInt(encoder.strings.indexOf(schema.type.getName()));
+         out.writeInt(schema.properties.size());
+         for (String property : schema.properties) {
+            out.writeInt(encoder.strings.indexOf(property));
+         }
+      }
+
+      out.writeInt(sections.size());
+      for (int s = 0; s < sections.size(); s++) {
+         out.writeInt(s);
+         out.writeInt(schemas[s]);
+         out.writeInt(offsets[s].length);
+         out.writeInt(ids[s].length);
+         for (int[] column : new int[][] { offsets[s], ids[s], rows[s] }) {
+            for (int value : column) {
+               out.writeInt(value);
+            }
+         }
+      }
+
+      out.writeInt(encoder.records.size());
+      encoder.records.writeTo(out);
+      out.flush();
+   }
+
+   /**
+    * Encodes records, collecting the strings and schemas they use.
+    */
+   private static final class Encoder {
+      private final Dictionary<String> strings = new Dictionary<String>();
+      private final Dictionary<SnapshotFormat.Schema> schemas = new Dictionary<SnapshotFormat.Schema>();
+      private final ByteArrayOutputStream records = new ByteArrayOutputStream(1 << 16);
+
+      int schemaId(SnapshotFormat.Schema schema) {
+         int existing = schemas.indexOf(schema);
+         if (existing >= 0) {
+            return existing;
+         }
+         strings.encode(schema.type.getName());
+         for (String property : schema.properties) {
+            strings.encode(property);
+         }
+         return schemas.encode(schema);
+      }
+
+      void writeFields(SnapshotFormat.Schema schema, Object instance) {
+         for (int i = 0; i < schema.properties.size(); i++) {
+            writeValue(schema.get(instance, i), schema.parameterTypes[i]);
+         }
+      }
+
+      private void writeValue(Object value, Type declared) {
+         if (value == null) {
+            records.write(SnapshotFormat.NULL);
+         } else if (value instanceof String) {
+            records.write(SnapshotFormat.STRING);
+            writeVarint(strings.encode((String) value));
+         } else if (value instanceof Boolean) {
+            records.write((Boolean) value ? SnapshotFormat.TRUE : SnapshotFormat.FALSE);
+         } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            records.write(SnapshotFormat.INT);
+            writeVarlong(zigZag(((Number) value).longValue()));
+         } else if (value instanceof Long) {
+            records.write(SnapshotFormat.LONG);
+            writeVarlong(zigZag((Long) value));
+         } else if (value instanceof Number) {
+            records.write(SnapshotFormat.DOUBLE);
+            writeVarlong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+         } else if (value instanceof Enum) {
+            records.write(SnapshotFormat.ENUM);
+            writeVarint(strings.encode(((Enum<?>) value).name()));
+         } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            Type element = typeArgument(declared, 0);
+            records.write(SnapshotFormat.LIST);
+            writeVarint(collection.size());
+            for (Object item : collection) {
+               writeValue(item, element);
+            }
+         } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Type mapped = typeArgument(declared, 1);
+            records.write(SnapshotFormat.MAP);
+            writeVarint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+               writeVarint(strings.encode(String.valueOf(entry.getKey())));
+               writeValue(entry.getValue(), mapped);
+            }
+         } else {
+            Class<?> type = declared instanceof Class && declared != Object.class ? (Class<?>) declared
+                  : value.getClass();
+            SnapshotFormat.Schema schema = SnapshotFormat.schema(type);
+            records.write(SnapshotFormat.OBJECT);
+            writeVarint(schemaId(schema));
+            writeFields(schema, value);
+         }
+      }
+
+      private static Type typeArgument(Type declared, int index) {
+         if (declared instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) declared).getActualTypeArguments();
+            if (index < arguments.length) {
+               return arguments[index];
+            }
+         }
+         return Object.class;
+      }
+
+      private static long zigZag(long value) {
+         return (value << 1) ^ (value >> 63);
+      }
+
+      private void writeVarint(int value) {
+         writeVarlong(value & 0xFFFFFFFFL);
+      }
+
+      private void writeVarlong(long value) {
+         while ((value & ~0x7FL) != 0) {
+            records.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+         }
+         records.write((int) value);
+      }
+   }
+}
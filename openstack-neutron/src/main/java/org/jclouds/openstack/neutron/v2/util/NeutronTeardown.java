@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.neutron.v2.util.ConcurrentTasks.retryOnConflict;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.ExternalGatewayInfo;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.extensions.FloatingIPApi;
+import org.jclouds.openstack.neutron.v2.extensions.RouterApi;
+import org.jclouds.openstack.neutron.v2.features.NetworkApi;
+import org.jclouds.openstack.neutron.v2.features.PortApi;
+import org.jclouds.openstack.neutron.v2.features.SubnetApi;
+import org.jclouds.openstack.neutron.v2.util.ConcurrentTasks.Outcome;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Removes networks and everything attached to them from a region, running the independent calls of every
+ * {@link TeardownPlan} level in parallel.
+ * <p/>
+ * Calls that fail with a 409 conflict are retried, since they usually only mean that Neutron has not finished
+ * releasing a resource of the previous level yet. When a level still has failures after the retries, the following
+ * levels are skipped: they would only fail on the same dependencies.
+ *
+ * <pre>
+ * NeutronTeardown teardown = NeutronTeardown.builder(neutronApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .maxConcurrency(16)
+ *       .build();
+ * TeardownResult result = teardown.teardown(ImmutableSet.of(networkId));
+ * </pre>
+ */
+public class NeutronTeardown {
+
+   private final NeutronApi api;
+   private final String region;
+   private final ListeningExecutorService executor;
+   private final int maxConcurrency;
+   private final int maxRetries;
+   private final long retryDelayMillis;
+
+   protected NeutronTeardown(NeutronApi api, String region, ListeningExecutorService executor, int maxConcurrency,
+         int maxRetries, long retryDelayMillis) {
+      this.api = checkNotNull(api, "api");
+      this.region = checkNotNull(region, "region");
+      this.executor = checkNotNull(executor, "executor");
+      this.maxConcurrency = maxConcurrency;
+      this.maxRetries = maxRetries;
+      this.retryDelayMillis = retryDelayMillis;
+   }
+
+   public static Builder builder(NeutronApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   /**
+    * Lists the ports, subnets and routers of the region and works out how to remove the given networks.
+    */
+   public TeardownPlan plan(Set<String> networkIds) {
+      Optional<RouterApi> routerApi = api.getRouterApi(region);
+      Iterable<Router> routers = routerApi.isPresent() ? routerApi.get().list().concat() : ImmutableSet.<Router> of();
+      return TeardownPlan.forNetworks(networkIds, api.getPortApi(region).list().concat(),
+            api.getSubnetApi(region).list().concat(), routers);
+   }
+
+   /**
+    * Removes the given networks and everything attached to them.
+    */
+   public TeardownResult teardown(Set<String> networkIds) {
+      return execute(plan(networkIds));
+   }
+
+   /**
+    * Runs a plan level by level.
+    */
+   public TeardownResult execute(TeardownPlan plan) {
+      final PortApi portApi = api.getPortApi(region);
+      final SubnetApi subnetApi = api.getSubnetApi(region);
+      final NetworkApi networkApi = api.getNetworkApi(region);
+      Optional<RouterApi> routerApi = api.getRouterApi(region);
+      checkArgument(routerApi.isPresent() || (plan.getRouterInterfaces().isEmpty() && plan.getRouterGateways().isEmpty()
+            && plan.getRouters().isEmpty()),
+            "the plan removes routers but the router extension is not available in region %s", region);
+      Optional<FloatingIPApi> floatingIPApi = plan.getFloatingIPs().isEmpty() ? Optional.<FloatingIPApi> absent()
+            : api.getFloatingIPApi(region);
+      checkArgument(floatingIPApi.isPresent() || plan.getFloatingIPs().isEmpty(),
+            "the plan removes floating IPs but the floating IP extension is not available in region %s", region);
+
+      List<Map<String, Callable<Boolean>>> levels = Lists.newArrayList();
+      Map<String, Callable<Boolean>> ports = Maps.newLinkedHashMap();
+      for (final String id : plan.getPorts()) {
+         ports.put(id, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return portApi.delete(id);
+            }
+         });
+      }
+      if (floatingIPApi.isPresent()) {
+         final FloatingIPApi floatingIPs = floatingIPApi.get();
+         for (final String id : plan.getFloatingIPs()) {
+            ports.put(id, new Callable<Boolean>() {
+               @Override
+               public Boolean call() {
+                  return floatingIPs.delete(id);
+               }
+            });
+         }
+      }
+      levels.add(ports);
+
+      if (routerApi.isPresent()) {
+         final RouterApi routers = routerApi.get();
+         Map<String, Callable<Boolean>> interfaces = Maps.newLinkedHashMap();
+         for (final TeardownPlan.RouterInterfaceRef ref : plan.getRouterInterfaces()) {
+            interfaces.put(ref.toString(), new Callable<Boolean>() {
+               @Override
+               public Boolean call() {
+                  return ref.getSubnetId() != null
+                        ? routers.removeInterfaceForSubnet(ref.getRouterId(), ref.getSubnetId())
+                        : routers.removeInterfaceForPort(ref.getRouterId(), ref.getPortId());
+               }
+            });
+         }
+         // an empty gateway info clears the gateway
+         final Router.UpdateRouter clearGateway = Router.updateBuilder()
+               .externalGatewayInfo(ExternalGatewayInfo.builder().build()).build();
+         for (final String id : plan.getRouterGateways()) {
+            interfaces.put(id + "/gateway", new Callable<Boolean>() {
+               @Override
+               public Boolean call() {
+                  routers.update(id, clearGateway);
+                  return true;
+               }
+            });
+         }
+         levels.add(interfaces);
+
+         Map<String, Callable<Boolean>> routerDeletes = Maps.newLinkedHashMap();
+         for (final String id : plan.getRouters()) {
+            routerDeletes.put(id, new Callable<Boolean>() {
+               @Override
+               public Boolean call() {
+                  return routers.delete(id);
+               }
+            });
+         }
+         levels.add(routerDeletes);
+      }
+
+      Map<String, Callable<Boolean>> subnets = Maps.newLinkedHashMap();
+      for (final String id : plan.getSubnets()) {
+         subnets.put(id, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return subnetApi.delete(id);
+            }
+         });
+      }
+      levels.add(subnets);
+
+      Map<String, Callable<Boolean>> networks = Maps.newLinkedHashMap();
+      for (final String id : plan.getNetworks()) {
+         networks.put(id, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return networkApi.delete(id);
+            }
+         });
+      }
+      levels.add(networks);
+
+      return run(levels);
+   }
+
+   private TeardownResult run(List<Map<String, Callable<Boolean>>> levels) {
+      ImmutableList.Builder<String> removed = ImmutableList.builder();
+      Map<String, Throwable> failures = Maps.newLinkedHashMap();
+      ImmutableList.Builder<String> skipped = ImmutableList.builder();
+
+      for (Map<String, Callable<Boolean>> level : levels) {
+         if (!failures.isEmpty()) {
+            skipped.addAll(level.keySet());
+            continue;
+         }
+         Map<String, Callable<Boolean>> retrying = Maps.newLinkedHashMap();
+         for (Map.Entry<String, Callable<Boolean>> call : level.entrySet()) {
+            retrying.put(call.getKey(),
+                  retryOnConflict(call.getValue(), maxRetries, retryDelayMillis, TimeUnit.MILLISECONDS));
+         }
+         // a false result means the resource was already gone, which is just as good
+         for (Map.Entry<String, Outcome<Boolean>> outcome : ConcurrentTasks
+               .invokeAll(executor, maxConcurrency, retrying).entrySet()) {
+            if (outcome.getValue().isSuccess()) {
+               removed.add(outcome.getKey());
+            } else {
+               failures.put(outcome.getKey(), outcome.getValue().getFailure());
+            }
+         }
+      }
+      return new TeardownResult(removed.build(), failures, skipped.build());
+   }
+
+   public static class Builder {
+      private final NeutronApi api;
+      private final String region;
+      private ListeningExecutorService executor;
+      private int maxConcurrency = 10;
+      private int maxRetries = 5;
+      private long retryDelayMillis = 1000;
+
+      protected Builder(NeutronApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+      }
+
+      /**
+       * The executor that runs the calls, usually the jclouds user executor. Required.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      /**
+       * The maximum number of calls in flight at any time. Defaults to 10.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * How many times a call is retried after a 409 conflict. Defaults to 5.
+       */
+      public Builder maxRetries(int maxRetries) {
+         this.maxRetries = maxRetries;
+         return this;
+      }
+
+      /**
+       * The delay before the first retry of a call; it doubles on every retry. Defaults to one second.
+       */
+      public Builder retryDelay(long delay, TimeUnit unit) {
+         this.retryDelayMillis = unit.toMillis(delay);
+         return this;
+      }
+
+      public NeutronTeardown build() {
+         checkNotNull(executor, "executor");
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+         checkArgument(retryDelayMillis >= 0, "retryDelay must not be negative");
+         return new NeutronTeardown(api, region, executor, maxConcurrency, maxRetries, retryDelayMillis);
+      }
+   }
+}
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.extensions.FloatingIPApi;
+import org.jclouds.openstack.neutron.v2.extensions.RouterApi;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Polls the ports, floating IPs and routers of one region and tells subscribers what was added, changed or removed
+ * since the previous poll, so that they do not have to fetch and compare whole listings themselves.
+ * <p/>
+ * Each resource type is listed once per interval however many listeners subscribed to it, and only while at least
+ * one listener is subscribed. Resources are matched on their id and compared with {@code hashCode} and
+ * {@code equals}. The first poll reports every existing resource as {@link ChangeEvent.Type#ADDED}; a listener that
+ * subscribes later first receives {@code ADDED} events for the resources seen by the last poll.
+ *
+ * <pre>
+ * NeutronWatcher watcher = NeutronWatcher.builder(neutronApi, "RegionOne")
+ *       .scheduler(Executors.newSingleThreadScheduledExecutor())
+ *       .interval(NeutronWatcher.Resource.PORTS, 10, TimeUnit.SECONDS)
+ *       .build();
+ * NeutronWatcher.Subscription subscription = watcher.subscribePorts(new ChangeListener&lt;Port&gt;() {
+ *    public void onChange(ChangeEvent&lt;Port&gt; event) {
+ *       ...
+ *    }
+ * });
+ * </pre>
+ */
+public class NeutronWatcher implements Closeable {
+
+   public enum Resource {
+      PORTS, FLOATING_IPS, ROUTERS
+   }
+
+   private final ScheduledExecutorService scheduler;
+   private final Feed<Port> ports;
+   private final Feed<FloatingIP> floatingIPs;
+   private final Feed<Router> routers;
+   private final AtomicLong pollFailureCount = new AtomicLong();
+   private final AtomicReference<Throwable> lastPollFailure = new AtomicReference<Throwable>();
+   private final AtomicLong listenerFailureCount = new AtomicLong();
+
+   protected NeutronWatcher(final NeutronApi api, final String region, @Nullable ScheduledExecutorService scheduler,
+         Map<Resource, Long> intervalNanos) {
+      checkNotNull(api, "api");
+      checkNotNull(region, "region");
+      this.scheduler = scheduler;
+      this.ports = new Feed<Port>(Resource.PORTS, intervalNanos.get(Resource.PORTS)) {
+         @Override
+         Iterable<Port> list() {
+            return api.getPortApi(region).list().concat();
+         }
+
+         @Override
+         String id(Port port) {
+            return port.getId();
+         }
+      };
+      this.floatingIPs = new Feed<FloatingIP>(Resource.FLOATING_IPS, intervalNanos.get(Resource.FLOATING_IPS)) {
+         @Override
+         Iterable<FloatingIP> list() {
+            Optional<FloatingIPApi> floatingIPApi = api.getFloatingIPApi(region);
+            checkState(floatingIPApi.isPresent(), "floating IPs are not supported in region %s", region);
+            return floatingIPApi.get().list().concat();
+         }
+
+         @Override
+         String id(FloatingIP floatingIP) {
+            return floatingIP.getId();
+         }
+      };
+      this.routers = new Feed<Router>(Resource.ROUTERS, intervalNanos.get(Resource.ROUTERS)) {
+         @Override
+         Iterable<Router> list() {
+            Optional<RouterApi> routerApi = api.getRouterApi(region);
+            checkState(routerApi.isPresent(), "routers are not supported in region %s", region);
+            return routerApi.get().list().concat();
+         }
+
+         @Override
+         String id(Router router) {
+            return router.getId();
+         }
+      };
+   }
+
+   public static Builder builder(NeutronApi api, String region) {
+      return new Builder(api, region);
+   }
+
+   public Subscription subscribePorts(ChangeListener<Port> listener) {
+      return ports.subscribe(listener);
+   }
+
+   public Subscription subscribeFloatingIPs(ChangeListener<FloatingIP> listener) {
+      return floatingIPs.subscribe(listener);
+   }
+
+   public Subscription subscribeRouters(ChangeListener<Router> listener) {
+      return routers.subscribe(listener);
+   }
+
+   /**
+    * Polls every resource type that has subscribers now, in the calling thread, instead of waiting for the next
+    * scheduled poll. This is the only way polls happen when the watcher has no scheduler.
+    */
+   public void poll() {
+      for (Feed<?> feed : ImmutableList.of(ports, floatingIPs, routers)) {
+         if (!feed.listeners.isEmpty()) {
+            feed.poll();
+         }
+      }
+   }
+
+   /**
+    * @return how many polls have failed since the watcher was built
+    */
+   public long getPollFailureCount() {
+      return pollFailureCount.get();
+   }
+
+   /**
+    * @return the error of the last failed poll, or null
+    */
+   @Nullable
+   public Throwable getLastPollFailure() {
+      return lastPollFailure.get();
+   }
+
+   /**
+    * @return how many times a listener threw an exception
+    */
+   public long getListenerFailureCount() {
+      return listenerFailureCount.get();
+   }
+
+   /**
+    * Stops the scheduled polls. The scheduler itself is left running.
+    */
+   @Override
+   public void close() {
+      for (Feed<?> feed : ImmutableList.of(ports, floatingIPs, routers)) {
+         feed.stop();
+      }
+   }
+
+   /**
+    * Stops the events of one listener.
+    */
+   public static final class Subscription {
+      private final Feed<?> feed;
+      private final ChangeListener<?> listener;
+
+      private Subscription(Feed<?> feed, ChangeListener<?> listener) {
+         this.feed = feed;
+         this.listener = listener;
+      }
+
+      public void cancel() {
+         feed.unsubscribe(listener);
+      }
+   }
+
+   private abstract class Feed<T> {
+      private final Resource resource;
+      private final long intervalNanos;
+      private final List<ChangeListener<T>> listeners = new CopyOnWriteArrayList<ChangeListener<T>>();
+      private final Object pollLock = new Object();
+      private Map<String, T> snapshot;
+      private ScheduledFuture<?> scheduled;
+
+      private Feed(Resource resource, long intervalNanos) {
+         this.resource = resource;
+         this.intervalNanos = intervalNanos;
+      }
+
+      abstract Iterable<T> list();
+
+      abstract String id(T value);
+
+      synchronized Subscription subscribe(ChangeListener<T> listener) {
+         checkNotNull(listener, "listener");
+         if (snapshot != null) {
+            for (Map.Entry<String, T> entry : snapshot.entrySet()) {
+               deliver(listener, new ChangeEvent<T>(ChangeEvent.Type.ADDED, resource, entry.getKey(), null,
+                     entry.getValue()));
+            }
+         }
+         listeners.add(listener);
+         if (scheduled == null && scheduler != null) {
+            scheduled = scheduler.scheduleWithFixedDelay(new Runnable() {
+               @Override
+               public void run() {
+                  poll();
+               }
+            }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+         }
+         return new Subscription(this, listener);
+      }
+
+      synchronized void unsubscribe(ChangeListener<?> listener) {
+         listeners.remove(listener);
+         if (listeners.isEmpty()) {
+            stop();
+            // without listeners nothing keeps the snapshot current, so the next subscriber starts from scratch
+            snapshot = null;
+         }
+      }
+
+      synchronized void stop() {
+         if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+         }
+      }
+
+      void poll() {
+         synchronized (pollLock) {
+            Iterable<T> current;
+            try {
+               current = ImmutableList.copyOf(list());
+            } catch (RuntimeException e) {
+               pollFailureCount.incrementAndGet();
+               lastPollFailure.set(e);
+               return;
+            }
+            synchronized (this) {
+               publish(current);
+            }
+         }
+      }
+
+      private void publish(Iterable<T> current) {
+         Map<String, T> previous = snapshot != null ? snapshot : Maps.<String, T> newHashMap();
+         Map<String, T> next = Maps.newLinkedHashMap();
+         for (T value : current) {
+            String id = id(value);
+            next.put(id, value);
+            T before = previous.remove(id);
+            if (before == null) {
+               publish(new ChangeEvent<T>(ChangeEvent.Type.ADDED, resource, id, null, value));
+            } else if (before.hashCode() != value.hashCode() || !before.equals(value)) {
+               publish(new ChangeEvent<T>(ChangeEvent.Type.CHANGED, resource, id, before, value));
+            }
+         }
+         for (Map.Entry<String, T> removed : previous.entrySet()) {
+            publish(new ChangeEvent<T>(ChangeEvent.Type.REMOVED, resource, removed.getKey(), removed.getValue(),
+                  null));
+         }
+         snapshot = next;
+      }
+
+      private void publish(ChangeEvent<T> event) {
+         for (ChangeListener<T> listener : listeners) {
+            deliver(listener, event);
+         }
+      }
+
+      private void deliver(ChangeListener<T> listener, ChangeEvent<T> event) {
+         try {
+            listener.onChange(event);
+         } catch (RuntimeException e) {
+            listenerFailureCount.incrementAndGet();
+         }
+      }
+   }
+
+   public static final class Builder {
+      private final NeutronApi api;
+      private final String region;
+      private final Map<Resource, Long> intervalNanos = Maps.newEnumMap(Resource.class);
+      private ScheduledExecutorService scheduler;
+
+      private Builder(NeutronApi api, String region) {
+         this.api = checkNotNull(api, "api");
+         this.region = checkNotNull(region, "region");
+         interval(30, TimeUnit.SECONDS);
+      }
+
+      /**
+       * The scheduler running the polls. Without one, polls only happen when {@link NeutronWatcher#poll()} is called.
+       */
+      public Builder scheduler(ScheduledExecutorService scheduler) {
+         this.scheduler = checkNotNull(scheduler, "scheduler");
+         return this;
+      }
+
+      /**
+       * How long to wait between the polls of every resource type. Defaults to 30 seconds.
+       */
+      public Builder interval(long interval, TimeUnit unit) {
+         for (Resource resource : Resource.values()) {
+            interval(resource, interval, unit);
+         }
+         return this;
+      }
+
+      /**
+       * How long to wait between the polls of one resource type.
+       */
+      public Builder interval(Resource resource, long interval, TimeUnit unit) {
+         checkArgument(interval > 0, "interval must be positive");
+         intervalNanos.put(checkNotNull(resource, "resource"), unit.toNanos(interval));
+         return this;
+      }
+
+      public NeutronWatcher build() {
+         return new NeutronWatcher(api, region, scheduler, intervalNanos);
+      }
+   }
+}
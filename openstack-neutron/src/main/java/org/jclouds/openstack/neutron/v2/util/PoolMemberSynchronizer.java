@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Member;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Members;
+import org.jclouds.openstack.neutron.v2.extensions.lbaas.v1.LBaaSApi;
+import org.jclouds.openstack.neutron.v2.util.ConcurrentTasks.Outcome;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Brings the members of an LBaaS v1 pool to a desired set of addresses, ports, weights and admin states with as few
+ * calls as possible, running them in parallel.
+ * <p/>
+ * The live members of the pool are listed, filtered by pool on the server, and compared with the desired ones in a
+ * {@link MemberDiff}. Creations and updates run first. Members to remove are then drained, by setting their weight
+ * to 0 so that the load balancer stops sending them new connections. After the drain delay, which gives their
+ * connections in flight time to finish, only the ones drained successfully are deleted.
+ *
+ * <pre>
+ * PoolMemberSynchronizer synchronizer = PoolMemberSynchronizer.builder(neutronApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .maxConcurrency(20)
+ *       .drainDelay(30, TimeUnit.SECONDS)
+ *       .build();
+ * MemberSyncResult result = synchronizer.sync(poolId, ImmutableList.of(
+ *       Member.createBuilder(poolId, "10.0.0.5", 80).weight(1).build(),
+ *       Member.createBuilder(poolId, "10.0.0.6", 80).weight(1).build()));
+ * </pre>
+ */
+public class PoolMemberSynchronizer {
+
+   /**
+    * Told about every call as soon as it finishes. Called from the executor threads, so it must be thread-safe.
+    */
+   public interface Listener {
+
+      /**
+       * @param change  the call that finished
+       * @param failure why it failed, or null if it succeeded
+       * @param done    how many calls of this synchronization have finished so far, this one included
+       * @param total   how many calls this synchronization makes at most
+       */
+      void onChange(MemberChange change, @Nullable Throwable failure, int done, int total);
+   }
+
+   private final LBaaSApi lbaasApi;
+   private final ListeningExecutorService executor;
+   private final int maxConcurrency;
+   private final boolean drain;
+   private final long drainDelayNanos;
+   private final boolean dryRun;
+   private final Listener listener;
+
+   protected PoolMemberSynchronizer(LBaaSApi lbaasApi, ListeningExecutorService executor, int maxConcurrency,
+         boolean drain, long drainDelayNanos, boolean dryRun, @Nullable Listener listener) {
+      this.lbaasApi = checkNotNull(lbaasApi, "lbaasApi");
+      this.executor = checkNotNull(executor, "executor");
+      this.maxConcurrency = maxConcurrency;
+      this.drain = drain;
+      this.drainDelayNanos = drainDelayNanos;
+      this.dryRun = dryRun;
+      this.listener = listener;
+   }
+
+   public static Builder builder(NeutronApi api, String region) {
+      checkNotNull(api, "api");
+      checkNotNull(region, "region");
+      checkState(api.getLBaaSApi(region).isPresent(), "LBaaS v1 is not supported in region %s", region);
+      return new Builder(api.getLBaaSApi(region).get());
+   }
+
+   /**
+    * Compares the desired members of a pool with the live ones.
+    */
+   public MemberDiff diff(String poolId, Iterable<? extends Member.CreateMember> desired) {
+      return MemberDiff.compute(poolId, desired, listMembers(checkNotNull(poolId, "poolId")));
+   }
+
+   /**
+    * Computes the changes and applies them, unless this synchronizer is in dry-run mode.
+    */
+   public MemberSyncResult sync(String poolId, Iterable<? extends Member.CreateMember> desired) {
+      MemberDiff diff = diff(poolId, desired);
+      return dryRun ? new MemberSyncResult(diff, true, ImmutableList.<MemberChange> of(),
+            Maps.<MemberChange, Throwable> newHashMap()) : apply(diff);
+   }
+
+   /**
+    * Applies previously computed changes, regardless of the dry-run mode.
+    */
+   public MemberSyncResult apply(final MemberDiff diff) {
+      List<MemberChange> drains = Lists.newArrayList();
+      List<MemberChange> deletes = Lists.newArrayList();
+      for (MemberChange change : diff.getToDelete()) {
+         Integer weight = change.getLive().getWeight();
+         if (drain && (weight == null || weight != 0)) {
+            drains.add(change.withType(MemberChange.Type.DRAIN));
+         } else {
+            deletes.add(change);
+         }
+      }
+      Progress progress = new Progress(diff.getToCreate().size() + diff.getToUpdate().size() + drains.size()
+            + diff.getToDelete().size());
+      ImmutableList.Builder<MemberChange> completed = ImmutableList.builder();
+      Map<MemberChange, Throwable> failures = Maps.newLinkedHashMap();
+
+      Map<MemberChange, Callable<Member>> writes = Maps.newLinkedHashMap();
+      for (final MemberChange change : diff.getToCreate()) {
+         writes.put(change, progress.report(change, new Callable<Member>() {
+            @Override
+            public Member call() {
+               Member.CreateMember desired = change.getDesired();
+               Member.CreateBuilder create = Member.createBuilder(diff.getPoolId(), desired.getAddress(),
+                     desired.getProtocolPort());
+               if (desired.getTenantId() != null) {
+                  create.tenantId(desired.getTenantId());
+               }
+               if (desired.getWeight() != null) {
+                  create.weight(desired.getWeight());
+               }
+               if (desired.getAdminStateUp() != null) {
+                  create.adminStateUp(desired.getAdminStateUp());
+               }
+               return lbaasApi.createMember(create.build());
+            }
+         }));
+      }
+      for (final MemberChange change : diff.getToUpdate()) {
+         writes.put(change, progress.report(change, new Callable<Member>() {
+            @Override
+            public Member call() {
+               Member.CreateMember desired = change.getDesired();
+               Member.UpdateBuilder update = Member.updateBuilder();
+               if (desired.getWeight() != null && !desired.getWeight().equals(change.getLive().getWeight())) {
+                  update.weight(desired.getWeight());
+               }
+               if (desired.getAdminStateUp() != null
+                     && !desired.getAdminStateUp().equals(change.getLive().getAdminStateUp())) {
+                  update.adminStateUp(desired.getAdminStateUp());
+               }
+               return lbaasApi.updateMember(change.getMemberId(), update.build());
+            }
+         }));
+      }
+      collect(ConcurrentTasks.invokeAll(executor, maxConcurrency, writes), completed, failures);
+
+      Map<MemberChange, Callable<Member>> drainCalls = Maps.newLinkedHashMap();
+      for (final MemberChange change : drains) {
+         drainCalls.put(change, progress.report(change, new Callable<Member>() {
+            @Override
+            public Member call() {
+               return lbaasApi.updateMember(change.getMemberId(), Member.updateBuilder().weight(0).build());
+            }
+         }));
+      }
+      boolean drained = false;
+      for (Map.Entry<MemberChange, Outcome<Member>> outcome : ConcurrentTasks
+            .invokeAll(executor, maxConcurrency, drainCalls).entrySet()) {
+         if (outcome.getValue().isSuccess()) {
+            completed.add(outcome.getKey());
+            deletes.add(outcome.getKey().withType(MemberChange.Type.DELETE));
+            drained = true;
+         } else {
+            failures.put(outcome.getKey(), outcome.getValue().getFailure());
+         }
+      }
+      if (drained && drainDelayNanos > 0) {
+         Uninterruptibles.sleepUninterruptibly(drainDelayNanos, TimeUnit.NANOSECONDS);
+      }
+
+      Map<MemberChange, Callable<Boolean>> deleteCalls = Maps.newLinkedHashMap();
+      for (final MemberChange change : deletes) {
+         deleteCalls.put(change, progress.report(change, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return lbaasApi.deleteMember(change.getMemberId());
+            }
+         }));
+      }
+      collect(ConcurrentTasks.invokeAll(executor, maxConcurrency, deleteCalls), completed, failures);
+      return new MemberSyncResult(diff, false, completed.build(), failures);
+   }
+
+   /**
+    * Lists the members of a single pool, one page after the other.
+    */
+   private List<Member> listMembers(String poolId) {
+      List<Member> members = Lists.newArrayList();
+      PaginationOptions options = PaginationOptions.Builder
+            .queryParameters(ImmutableMultimap.of("pool_id", poolId));
+      while (options != null) {
+         Members page = lbaasApi.listMembers(options);
+         Iterables.addAll(members, page);
+         options = page.nextMarker().isPresent() ? PaginationOptions.class.cast(page.nextMarker().get()) : null;
+      }
+      return members;
+   }
+
+   private static <V> void collect(Map<MemberChange, Outcome<V>> outcomes,
+         ImmutableList.Builder<MemberChange> completed, Map<MemberChange, Throwable> failures) {
+      for (Map.Entry<MemberChange, Outcome<V>> outcome : outcomes.entrySet()) {
+         if (outcome.getValue().isSuccess()) {
+            completed.add(outcome.getKey());
+         } else {
+            failures.put(outcome.getKey(), outcome.getValue().getFailure());
+         }
+      }
+   }
+
+   private final class Progress {
+      private final int total;
+      private final AtomicInteger done = new AtomicInteger();
+
+      private Progress(int total) {
+         this.total = total;
+      }
+
+      private <V> Callable<V> report(final MemberChange change, final Callable<V> call) {
+         if (listener == null) {
+            return call;
+         }
+         return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+               try {
+                  V value = call.call();
+                  listener.onChange(change, null, done.incrementAndGet(), total);
+                  return value;
+               } catch (Exception e) {
+                  listener.onChange(change, e, done.incrementAndGet(), total);
+                  throw e;
+               }
+            }
+         };
+      }
+   }
+
+   public static class Builder {
+      private final LBaaSApi lbaasApi;
+      private ListeningExecutorService executor;
+      private int maxConcurrency = 10;
+      private boolean drain = true;
+      private long drainDelayNanos = TimeUnit.SECONDS.toNanos(30);
+      private boolean dryRun;
+      private Listener listener;
+
+      protected Builder(LBaaSApi lbaasApi) {
+         this.lbaasApi = lbaasApi;
+      }
+
+      /**
+       * The executor that runs the calls, usually the jclouds user executor. Required.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      /**
+       * The maximum number of calls in flight at any time. Defaults to 10.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * When true, members are set to weight 0 before they are deleted. Defaults to true.
+       */
+      public Builder drain(boolean drain) {
+         this.drain = drain;
+         return this;
+      }
+
+      /**
+       * How long drained members keep serving their connections in flight before they are deleted. Defaults to 30
+       * seconds; {@link PoolMemberSynchronizer#apply} waits this long when it drains members.
+       */
+      public Builder drainDelay(long duration, TimeUnit unit) {
+         checkArgument(duration >= 0, "drainDelay must not be negative");
+         this.drainDelayNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      /**
+       * When true, {@link PoolMemberSynchronizer#sync} only computes the changes. Defaults to false.
+       */
+      public Builder dryRun(boolean dryRun) {
+         this.dryRun = dryRun;
+         return this;
+      }
+
+      /**
+       * Receives the progress of every call.
+       */
+      public Builder listener(Listener listener) {
+         this.listener = listener;
+         return this;
+      }
+
+      public PoolMemberSynchronizer build() {
+         checkNotNull(executor, "executor");
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         return new PoolMemberSynchronizer(lbaasApi, executor, maxConcurrency, drain, drainDelayNanos, dryRun,
+               listener);
+      }
+   }
+}
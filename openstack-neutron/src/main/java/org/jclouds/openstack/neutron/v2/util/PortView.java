@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.field;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackAddress;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackBoolean;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackEnum;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackInteger;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackMac;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.AddressPair;
+import org.jclouds.openstack.neutron.v2.domain.ExtraDhcpOption;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+import org.jclouds.openstack.neutron.v2.domain.VIFType;
+import org.jclouds.openstack.neutron.v2.domain.VNICType;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A port stored in a {@link NeutronInventory}, with the getters of
+ * {@link org.jclouds.openstack.neutron.v2.domain.Port}. Values are decoded on every call, so keep the result rather
+ * than calling a getter repeatedly in a loop.
+ */
+public final class PortView {
+
+   private final NeutronInventory inventory;
+   private final NeutronInventory.Ports ports;
+   private final int row;
+
+   PortView(NeutronInventory inventory, int row) {
+      this.inventory = inventory;
+      this.ports = inventory.ports;
+      this.row = row;
+   }
+
+   public String getId() {
+      return ports.ids.decode(row);
+   }
+
+   @Nullable
+   public NetworkStatus getStatus() {
+      return unpackEnum(NeutronInventory.STATUSES,
+            field(ports.flags[row], NeutronInventory.Ports.STATUS, NeutronInventory.STATUS_BITS));
+   }
+
+   @Nullable
+   public VIFType getVifType() {
+      return unpackEnum(NeutronInventory.VIF_TYPES,
+            field(ports.flags[row], NeutronInventory.Ports.VIF_TYPE, NeutronInventory.VIF_TYPE_BITS));
+   }
+
+   @Nullable
+   public ImmutableMap<String, Object> getVifDetails() {
+      return inventory.maps.decode(ports.vifDetails[row]);
+   }
+
+   @Nullable
+   public String getQosQueueId() {
+      return inventory.strings.decode(ports.qosQueueId[row]);
+   }
+
+   @Nullable
+   public String getName() {
+      return inventory.strings.decode(ports.name[row]);
+   }
+
+   @Nullable
+   public String getNetworkId() {
+      return inventory.strings.decode(ports.networkId[row]);
+   }
+
+   @Nullable
+   public Boolean getAdminStateUp() {
+      return unpackBoolean(field(ports.flags[row], NeutronInventory.Ports.ADMIN_STATE_UP, 2));
+   }
+
+   @Nullable
+   public String getMacAddress() {
+      return unpackMac(ports.mac[row]);
+   }
+
+   /**
+    * @return the fixed IPs, with addresses in canonical form
+    */
+   @Nullable
+   public ImmutableSet<IP> getFixedIps() {
+      int count = ports.fixedIpCount[row];
+      if (count < 0) {
+         return null;
+      }
+      ImmutableSet.Builder<IP> fixedIps = ImmutableSet.builder();
+      for (int entry = ports.fixedIpStart[row]; entry < ports.fixedIpStart[row] + count; entry++) {
+         fixedIps.add(IP.builder()
+               .ipAddress(unpackAddress(ports.poolHigh[entry], ports.poolLow[entry]))
+               .subnetId(inventory.strings.decode(ports.poolSubnetId[entry]))
+               .build());
+      }
+      return fixedIps.build();
+   }
+
+   @Nullable
+   public String getDeviceId() {
+      return inventory.strings.decode(ports.deviceId[row]);
+   }
+
+   @Nullable
+   public String getDeviceOwner() {
+      return inventory.strings.decode(ports.deviceOwner[row]);
+   }
+
+   @Nullable
+   public String getTenantId() {
+      return inventory.strings.decode(ports.tenantId[row]);
+   }
+
+   @Nullable
+   public ImmutableSet<String> getSecurityGroups() {
+      return inventory.stringSets.decode(ports.securityGroups[row]);
+   }
+
+   @Nullable
+   public ImmutableSet<AddressPair> getAllowedAddressPairs() {
+      return inventory.addressPairs.decode(ports.allowedAddressPairs[row]);
+   }
+
+   @Nullable
+   public ImmutableSet<ExtraDhcpOption> getExtraDhcpOptions() {
+      return inventory.dhcpOptions.decode(ports.extraDhcpOptions[row]);
+   }
+
+   @Nullable
+   public VNICType getVnicType() {
+      return unpackEnum(NeutronInventory.VNIC_TYPES,
+            field(ports.flags[row], NeutronInventory.Ports.VNIC_TYPE, NeutronInventory.VNIC_TYPE_BITS));
+   }
+
+   @Nullable
+   public String getHostId() {
+      return inventory.strings.decode(ports.hostId[row]);
+   }
+
+   @Nullable
+   public ImmutableMap<String, Object> getProfile() {
+      return inventory.maps.decode(ports.profile[row]);
+   }
+
+   @Nullable
+   public Boolean getPortSecurity() {
+      return unpackBoolean(field(ports.flags[row], NeutronInventory.Ports.PORT_SECURITY, 2));
+   }
+
+   @Nullable
+   public String getProfileId() {
+      return inventory.strings.decode(ports.profileId[row]);
+   }
+
+   @Nullable
+   public Boolean getMacLearning() {
+      return unpackBoolean(field(ports.flags[row], NeutronInventory.Ports.MAC_LEARNING, 2));
+   }
+
+   @Nullable
+   public Integer getQosRxtxFactor() {
+      return unpackInteger(ports.qosRxtxFactor[row]);
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+      PortView that = PortView.class.cast(o);
+      return inventory == that.inventory && row == that.row;
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(System.identityHashCode(inventory), row);
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("id", getId())
+            .add("status", getStatus())
+            .add("name", getName())
+            .add("networkId", getNetworkId())
+            .add("macAddress", getMacAddress())
+            .add("fixedIps", getFixedIps())
+            .add("deviceId", getDeviceId())
+            .add("deviceOwner", getDeviceOwner())
+            .add("tenantId", getTenantId())
+            .add("securityGroups", getSecurityGroups())
+            .toString();
+   }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * What a {@link SecurityGroupReconciler} did, or would have done in dry-run mode.
+ */
+public final class ReconcileResult {
+
+   private final RuleDiff diff;
+   private final boolean dryRun;
+   private final ImmutableList<Rule> created;
+   private final ImmutableSet<String> deleted;
+   private final ImmutableMap<Rule.CreateRule, Throwable> createFailures;
+   private final ImmutableMap<String, Throwable> deleteFailures;
+
+   ReconcileResult(RuleDiff diff, boolean dryRun, Iterable<Rule> created, Iterable<String> deleted,
+         Map<Rule.CreateRule, Throwable> createFailures, Map<String, Throwable> deleteFailures) {
+      this.diff = checkNotNull(diff, "diff");
+      this.dryRun = dryRun;
+      this.created = ImmutableList.copyOf(created);
+      this.deleted = ImmutableSet.copyOf(deleted);
+      this.createFailures = ImmutableMap.copyOf(createFailures);
+      this.deleteFailures = ImmutableMap.copyOf(deleteFailures);
+   }
+
+   static ReconcileResult dryRun(RuleDiff diff) {
+      return new ReconcileResult(diff, true, ImmutableList.<Rule> of(), ImmutableSet.<String> of(),
+            ImmutableMap.<Rule.CreateRule, Throwable> of(), ImmutableMap.<String, Throwable> of());
+   }
+
+   /**
+    * @return the changes that were computed
+    */
+   public RuleDiff getDiff() {
+      return diff;
+   }
+
+   /**
+    * @return true if the changes were only computed, not applied
+    */
+   public boolean isDryRun() {
+      return dryRun;
+   }
+
+   /**
+    * @return the rules that were created
+    */
+   public ImmutableList<Rule> getCreated() {
+      return created;
+   }
+
+   /**
+    * @return the ids of the rules that were deleted
+    */
+   public ImmutableSet<String> getDeleted() {
+      return deleted;
+   }
+
+   /**
+    * @return the rules that could not be created
+    */
+   public ImmutableMap<Rule.CreateRule, Throwable> getCreateFailures() {
+      return createFailures;
+   }
+
+   /**
+    * @return the ids of the rules that could not be deleted
+    */
+   public ImmutableMap<String, Throwable> getDeleteFailures() {
+      return deleteFailures;
+   }
+
+   /**
+    * @return true if every change was applied
+    */
+   public boolean isComplete() {
+      return !dryRun && createFailures.isEmpty() && deleteFailures.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("dryRun", dryRun)
+            .add("created", created.size())
+            .add("deleted", deleted.size())
+            .add("unchanged", diff.getUnchanged())
+            .add("createFailures", createFailures)
+            .add("deleteFailures", deleteFailures)
+            .toString();
+   }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Runs the same operation against every region of a {@link NeutronApi} at once, so a global scan takes as long as the
+ * slowest region instead of the sum of all of them.
+ * <p/>
+ * A region that fails or does not answer in time does not fail the others: its error or timeout is reported in the
+ * {@link RegionResults} next to the values of the regions that did answer.
+ *
+ * <pre>
+ * RegionFanOut fanOut = RegionFanOut.builder(neutronApi)
+ *       .executor(context.utils().userExecutor())
+ *       .timeout(30, TimeUnit.SECONDS)
+ *       .build();
+ * RegionResults&lt;List&lt;Port&gt;&gt; ports = fanOut.run(new Function&lt;String, List&lt;Port&gt;&gt;() {
+ *    public List&lt;Port&gt; apply(String region) {
+ *       return neutronApi.getPortApi(region).list().concat().toList();
+ *    }
+ * });
+ * List&lt;RegionTagged&lt;Port&gt;&gt; allPorts = RegionResults.merge(ports);
+ * </pre>
+ */
+public class RegionFanOut {
+
+   private final NeutronApi api;
+   private final ListeningExecutorService executor;
+   private final Set<String> regions;
+   private final long timeoutNanos;
+
+   protected RegionFanOut(NeutronApi api, ListeningExecutorService executor, Set<String> regions,
+         long timeoutNanos) {
+      this.api = checkNotNull(api, "api");
+      this.executor = checkNotNull(executor, "executor");
+      this.regions = regions;
+      this.timeoutNanos = timeoutNanos;
+   }
+
+   public static Builder builder(NeutronApi api) {
+      return new Builder(api);
+   }
+
+   /**
+    * @return the regions the operations run in: the ones given to the builder, or else the configured regions
+    */
+   public Set<String> getRegions() {
+      return regions != null ? regions : api.getConfiguredRegions();
+   }
+
+   /**
+    * Calls {@code operation} once per region, concurrently, and waits for all of them or for the timeout. The
+    * timeout applies to every region and runs from the moment the calls are submitted, so the executor should be
+    * able to run one task per region at the same time. Calls still running when it expires are cancelled.
+    */
+   public <V> RegionResults<V> run(final Function<String, V> operation) {
+      checkNotNull(operation, "operation");
+      Map<String, ListenableFuture<V>> futures = Maps.newLinkedHashMap();
+      long deadline = System.nanoTime() + timeoutNanos;
+      for (final String region : getRegions()) {
+         futures.put(region, executor.submit(new Callable<V>() {
+            @Override
+            public V call() {
+               return operation.apply(region);
+            }
+         }));
+      }
+
+      Map<String, V> values = Maps.newLinkedHashMap();
+      Map<String, Throwable> failures = Maps.newLinkedHashMap();
+      ImmutableSet.Builder<String> timedOut = ImmutableSet.builder();
+      for (Map.Entry<String, ListenableFuture<V>> future : futures.entrySet()) {
+         try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            V value = Uninterruptibles.getUninterruptibly(future.getValue(), remaining, TimeUnit.NANOSECONDS);
+            if (value != null) {
+               values.put(future.getKey(), value);
+            }
+         } catch (ExecutionException e) {
+            failures.put(future.getKey(), e.getCause());
+         } catch (TimeoutException e) {
+            future.getValue().cancel(true);
+            timedOut.add(future.getKey());
+         }
+      }
+      return new RegionResults<V>(values, failures, timedOut.build());
+   }
+
+   public static final class Builder {
+      private final NeutronApi api;
+      private ListeningExecutorService executor;
+      private Set<String> regions;
+      private long timeoutNanos = TimeUnit.MINUTES.toNanos(2);
+
+      private Builder(NeutronApi api) {
+         this.api = checkNotNull(api, "api");
+      }
+
+      /**
+       * The executor running the calls, typically {@code context.utils().userExecutor()}.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = checkNotNull(executor, "executor");
+         return this;
+      }
+
+      /**
+       * Restricts the operations to some regions. Defaults to {@link NeutronApi#getConfiguredRegions()}.
+       */
+      public Builder regions(Set<String> regions) {
+         this.regions = ImmutableSet.copyOf(checkNotNull(regions, "regions"));
+         return this;
+      }
+
+      /**
+       * How long to wait for each region. Defaults to 2 minutes.
+       */
+      public Builder timeout(long timeout, TimeUnit unit) {
+         checkArgument(timeout > 0, "timeout must be positive");
+         this.timeoutNanos = unit.toNanos(timeout);
+         return this;
+      }
+
+      public RegionFanOut build() {
+         return new RegionFanOut(api, executor, regions, timeoutNanos);
+      }
+   }
+}
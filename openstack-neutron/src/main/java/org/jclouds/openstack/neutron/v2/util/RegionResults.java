@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The outcome of a {@link RegionFanOut}: the value of every region that answered, and what went wrong in the
+ * others.
+ */
+public class RegionResults<V> {
+
+   private final ImmutableMap<String, V> values;
+   private final ImmutableMap<String, Throwable> failures;
+   private final ImmutableSet<String> timedOut;
+
+   protected RegionResults(Map<String, V> values, Map<String, Throwable> failures, Set<String> timedOut) {
+      this.values = ImmutableMap.copyOf(values);
+      this.failures = ImmutableMap.copyOf(failures);
+      this.timedOut = ImmutableSet.copyOf(timedOut);
+   }
+
+   /**
+    * @return the non-null value of every region that answered in time, keyed by region
+    */
+   public ImmutableMap<String, V> getValues() {
+      return values;
+   }
+
+   /**
+    * @return the exception of every region whose call failed, keyed by region
+    */
+   public ImmutableMap<String, Throwable> getFailures() {
+      return failures;
+   }
+
+   /**
+    * @return the regions that did not answer before the timeout
+    */
+   public ImmutableSet<String> getTimedOut() {
+      return timedOut;
+   }
+
+   /**
+    * @return whether every region answered
+    */
+   public boolean isComplete() {
+      return failures.isEmpty() && timedOut.isEmpty();
+   }
+
+   /**
+    * Flattens collection values into a single list whose elements remember their region, in region order.
+    */
+   public static <T> ImmutableList<RegionTagged<T>> merge(RegionResults<? extends Iterable<? extends T>> results) {
+      ImmutableList.Builder<RegionTagged<T>> merged = ImmutableList.builder();
+      for (Map.Entry<String, ? extends Iterable<? extends T>> entry : results.getValues().entrySet()) {
+         for (T value : entry.getValue()) {
+            merged.add(new RegionTagged<T>(entry.getKey(), value));
+         }
+      }
+      return merged.build();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("regions", values.keySet())
+            .add("failures", failures)
+            .add("timedOut", timedOut)
+            .toString();
+   }
+}
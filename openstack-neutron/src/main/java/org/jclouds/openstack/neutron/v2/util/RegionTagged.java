@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * A value and the region it comes from.
+ */
+public final class RegionTagged<T> {
+
+   private final String region;
+   private final T value;
+
+   public RegionTagged(String region, T value) {
+      this.region = checkNotNull(region, "region");
+      this.value = checkNotNull(value, "value");
+   }
+
+   public String getRegion() {
+      return region;
+   }
+
+   public T get() {
+      return value;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+      RegionTagged<?> that = RegionTagged.class.cast(o);
+      return Objects.equal(this.region, that.region) && Objects.equal(this.value, that.value);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(region, value);
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).add("region", region).add("value", value).toString();
+   }
+}
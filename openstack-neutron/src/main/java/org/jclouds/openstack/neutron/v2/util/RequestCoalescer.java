@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Makes concurrent identical reads share one request. Feature APIs wrapped by a coalescer send a single request for
+ * all the threads calling the same {@code @GET} or {@code @HEAD} method with equal arguments at the same time, and
+ * every caller gets its response, or its exception. Other methods are passed through, and once they return, the
+ * reads of the same api in flight or kept are not used any more, so that the change is seen at once.
+ * <p/>
+ * With a time to live, responses are also kept for that long and returned without any request. Keep it short: a
+ * cached response does not see the changes made since through other apis or other clients.
+ *
+ * <pre>
+ * RequestCoalescer coalescer = RequestCoalescer.builder().timeToLive(500, TimeUnit.MILLISECONDS).build();
+ * PortApi portApi = coalescer.wrap(PortApi.class, neutronApi.getPortApi("RegionOne"));
+ * NetworkApi networkApi = coalescer.wrap(NetworkApi.class, neutronApi.getNetworkApi("RegionOne"));
+ * </pre>
+ */
+public class RequestCoalescer {
+
+   private final ConcurrentMap<Key, FutureTask<Object>> inFlight = Maps.newConcurrentMap();
+   private final Cache<Key, Optional<Object>> cache;
+   private final AtomicLong generation = new AtomicLong();
+   // the writes sent through each wrapped api, by identity
+   private final ConcurrentMap<Object, AtomicLong> writes = new MapMaker().weakKeys().makeMap();
+   private final AtomicLong requests = new AtomicLong();
+   private final AtomicLong coalesced = new AtomicLong();
+   private final AtomicLong cacheHits = new AtomicLong();
+
+   protected RequestCoalescer(long timeToLiveNanos, long maximumSize) {
+      this.cache = timeToLiveNanos > 0
+            ? CacheBuilder.newBuilder().expireAfterWrite(timeToLiveNanos, TimeUnit.NANOSECONDS)
+                  .maximumSize(maximumSize).<Key, Optional<Object>> build()
+            : null;
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   /**
+    * @return a view of {@code api} whose reads go through this coalescer
+    */
+   public <A> A wrap(Class<A> type, final A api) {
+      checkArgument(checkNotNull(type, "type").isInterface(), "%s is not an interface", type);
+      checkNotNull(api, "api");
+      writes.putIfAbsent(api, new AtomicLong());
+      final AtomicLong apiWrites = writes.get(api);
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+            new InvocationHandler() {
+               @Override
+               public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                  if (method.getDeclaringClass() == Object.class) {
+                     return invokeObjectMethod(proxy, api, method, args);
+                  }
+                  if (!method.isAnnotationPresent(GET.class) && !method.isAnnotationPresent(HEAD.class)) {
+                     try {
+                        return passThrough(api, method, args);
+                     } finally {
+                        // even a failed write may have changed something
+                        invalidate(api, apiWrites);
+                     }
+                  }
+                  return read(new Key(api, method, args, generation.get(), apiWrites.get()));
+               }
+            }));
+   }
+
+   /**
+    * Drops the cached responses, for example after a change that must be seen at once. Reads in flight are not shared
+    * with later reads any more, and their responses are not cached.
+    */
+   public void invalidateAll() {
+      // responses of earlier generations are stored under keys no later read looks up
+      generation.incrementAndGet();
+      if (cache != null) {
+         cache.invalidateAll();
+      }
+   }
+
+   private void invalidate(Object api, AtomicLong apiWrites) {
+      // reads started before the write are stored under keys no later read looks up
+      apiWrites.incrementAndGet();
+      if (cache != null) {
+         for (Key key : cache.asMap().keySet()) {
+            if (key.api == api) {
+               cache.invalidate(key);
+            }
+         }
+      }
+   }
+
+   /**
+    * @return how many reads were sent to the wrapped apis
+    */
+   public long getRequestCount() {
+      return requests.get();
+   }
+
+   /**
+    * @return how many reads shared a request already in flight
+    */
+   public long getCoalescedCount() {
+      return coalesced.get();
+   }
+
+   /**
+    * @return how many reads were answered from the cache
+    */
+   public long getCacheHitCount() {
+      return cacheHits.get();
+   }
+
+   private Object read(final Key key) throws Throwable {
+      if (cache != null) {
+         Optional<Object> cached = cache.getIfPresent(key);
+         if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached.orNull();
+         }
+      }
+      FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+         @Override
+         public Object call() throws Exception {
+            requests.incrementAndGet();
+            try {
+               Object value = passThrough(key.api, key.method, key.args);
+               if (cache != null) {
+                  cache.put(key, Optional.fromNullable(value));
+               }
+               return value;
+            } catch (Throwable e) {
+               throw new InvocationTargetException(e);
+            }
+         }
+      });
+      FutureTask<Object> running = inFlight.putIfAbsent(key, task);
+      if (running == null) {
+         try {
+            task.run();
+         } finally {
+            inFlight.remove(key, task);
+         }
+         running = task;
+      } else {
+         coalesced.incrementAndGet();
+      }
+      try {
+         return Uninterruptibles.getUninterruptibly(running);
+      } catch (ExecutionException e) {
+         throw e.getCause() instanceof InvocationTargetException ? e.getCause().getCause() : e.getCause();
+      }
+   }
+
+   private static Object passThrough(Object api, Method method, Object[] args) throws Throwable {
+      try {
+         return method.invoke(api, args);
+      } catch (InvocationTargetException e) {
+         throw e.getCause();
+      }
+   }
+
+   private static Object invokeObjectMethod(Object proxy, Object api, Method method, Object[] args) {
+      if (method.getName().equals("equals")) {
+         return proxy == args[0];
+      } else if (method.getName().equals("hashCode")) {
+         return System.identityHashCode(proxy);
+      }
+      return "Coalescing(" + api + ")";
+   }
+
+   /**
+    * A read of one wrapped api, which is compared by identity since apis of different regions may be equal, in the
+    * generation it was started in and after the number of writes sent through the api by then.
+    */
+   private static final class Key {
+      private final Object api;
+      private final Method method;
+      private final Object[] args;
+      private final List<Object> argList;
+      private final long generation;
+      private final long writes;
+
+      private Key(Object api, Method method, Object[] args, long generation, long writes) {
+         this.api = api;
+         this.method = method;
+         this.args = args;
+         this.argList = args == null ? null : Arrays.asList(args);
+         this.generation = generation;
+         this.writes = writes;
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         if (this == obj) {
+            return true;
+         }
+         if (obj == null || getClass() != obj.getClass()) {
+            return false;
+         }
+         Key that = (Key) obj;
+         return this.api == that.api && this.generation == that.generation && this.writes == that.writes
+               && this.method.equals(that.method)
+               && Objects.equal(this.argList, that.argList);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(System.identityHashCode(api), method, argList, generation, writes);
+      }
+   }
+
+   public static final class Builder {
+      private long timeToLiveNanos;
+      private long maximumSize = 1000;
+
+      private Builder() {
+      }
+
+      /**
+       * Keeps responses for this long after they arrive. Defaults to 0, which only shares the requests in flight.
+       */
+      public Builder timeToLive(long duration, TimeUnit unit) {
+         checkArgument(duration >= 0, "duration must not be negative");
+         this.timeToLiveNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      /**
+       * The most responses kept when a time to live is set. Defaults to 1000.
+       */
+      public Builder maximumSize(long maximumSize) {
+         checkArgument(maximumSize > 0, "maximumSize must be positive");
+         this.maximumSize = maximumSize;
+         return this;
+      }
+
+      public RequestCoalescer build() {
+         return new RequestCoalescer(timeToLiveNanos, maximumSize);
+      }
+   }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The minimal set of rule creations and deletions that turns the live rules of some security groups into the desired
+ * ones. Rules are compared by {@link RuleKey}, so a live rule that already matches a desired one is left untouched.
+ * Live rules whose protocol is not recognized cannot be compared, so they are left untouched as well and reported by
+ * {@link #getIgnored()}.
+ */
+public final class RuleDiff {
+
+   private final ImmutableList<Rule.CreateRule> toCreate;
+   private final ImmutableList<Rule> toDelete;
+   private final int unchanged;
+   private final ImmutableList<Rule> ignored;
+
+   private RuleDiff(ImmutableList<Rule.CreateRule> toCreate, ImmutableList<Rule> toDelete, int unchanged,
+         ImmutableList<Rule> ignored) {
+      this.toCreate = toCreate;
+      this.toDelete = toDelete;
+      this.unchanged = unchanged;
+      this.ignored = ignored;
+   }
+
+   /**
+    * @param desired the wanted rules of every reconciled security group, by security group id. The security group id
+    *                of the rules themselves is ignored. Groups that are not in the map are not touched.
+    * @param live    the current rules; rules of groups that are not in {@code desired} are ignored
+    * @throws IllegalArgumentException if a desired rule has a protocol that is not recognized
+    */
+   public static RuleDiff compute(Map<String, ? extends Iterable<? extends Rule>> desired, Iterable<Rule> live) {
+      checkNotNull(desired, "desired");
+      checkNotNull(live, "live");
+      Map<String, Set<RuleKey>> missing = Maps.newLinkedHashMap();
+      for (Map.Entry<String, ? extends Iterable<? extends Rule>> group : desired.entrySet()) {
+         Set<RuleKey> keys = Sets.newLinkedHashSet();
+         for (Rule rule : group.getValue()) {
+            keys.add(RuleKey.of(rule));
+         }
+         missing.put(group.getKey(), keys);
+      }
+
+      ImmutableList.Builder<Rule> toDelete = ImmutableList.builder();
+      ImmutableList.Builder<Rule> ignored = ImmutableList.builder();
+      int unchanged = 0;
+      for (Rule rule : live) {
+         Set<RuleKey> wanted = missing.get(rule.getSecurityGroupId());
+         if (wanted == null) {
+            continue;
+         }
+         if (rule.getProtocol() == RuleProtocol.UNRECOGNIZED) {
+            ignored.add(rule);
+            continue;
+         }
+         // once a wanted key is matched, further live copies of it are duplicates and go away as well
+         if (wanted.remove(RuleKey.of(rule))) {
+            unchanged++;
+         } else {
+            toDelete.add(rule);
+         }
+      }
+
+      ImmutableList.Builder<Rule.CreateRule> toCreate = ImmutableList.builder();
+      for (Map.Entry<String, Set<RuleKey>> group : missing.entrySet()) {
+         for (RuleKey key : group.getValue()) {
+            toCreate.add(key.toCreateRule(group.getKey()));
+         }
+      }
+      return new RuleDiff(toCreate.build(), toDelete.build(), unchanged, ignored.build());
+   }
+
+   /**
+    * @return the rules to create
+    */
+   public ImmutableList<Rule.CreateRule> getToCreate() {
+      return toCreate;
+   }
+
+   /**
+    * @return the live rules to delete
+    */
+   public ImmutableList<Rule> getToDelete() {
+      return toDelete;
+   }
+
+   /**
+    * @return how many live rules already match a desired rule
+    */
+   public int getUnchanged() {
+      return unchanged;
+   }
+
+   /**
+    * @return the live rules of the reconciled groups left untouched because their protocol is not recognized
+    */
+   public ImmutableList<Rule> getIgnored() {
+      return ignored;
+   }
+
+   /**
+    * @return true when the live rules already are the desired ones
+    */
+   public boolean isEmpty() {
+      return toCreate.isEmpty() && toDelete.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("toCreate", toCreate)
+            .add("toDelete", toDelete)
+            .add("unchanged", unchanged)
+            .add("ignored", ignored)
+            .toString();
+   }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * The canonical identity of a security group rule: what traffic it matches, independently of its id, tenant or
+ * security group. Two rules with the same key are interchangeable.
+ * <p/>
+ * Values Neutron treats as equivalent are normalized: a missing ethertype is IPv4, the port range is ignored when no
+ * protocol is set, a remote prefix is a network with its host bits cleared, and a remote prefix matching every address
+ * is the same as no remote prefix.
+ * <p/>
+ * A rule whose protocol {@link RuleProtocol} does not recognize, such as {@code gre} or a protocol number, has no key,
+ * since it could be neither told apart from other such rules nor created again.
+ */
+public final class RuleKey {
+
+   private final RuleDirection direction;
+   private final RuleEthertype ethertype;
+   private final RuleProtocol protocol;
+   private final Integer portRangeMin;
+   private final Integer portRangeMax;
+   private final String remoteIpPrefix;
+   private final String remoteGroupId;
+
+   private RuleKey(RuleDirection direction, RuleEthertype ethertype, RuleProtocol protocol, Integer portRangeMin,
+         Integer portRangeMax, String remoteIpPrefix, String remoteGroupId) {
+      this.direction = direction;
+      this.ethertype = ethertype;
+      this.protocol = protocol;
+      this.portRangeMin = portRangeMin;
+      this.portRangeMax = portRangeMax;
+      this.remoteIpPrefix = remoteIpPrefix;
+      this.remoteGroupId = remoteGroupId;
+   }
+
+   /**
+    * @throws IllegalArgumentException if the protocol of the rule is {@link RuleProtocol#UNRECOGNIZED}
+    */
+   public static RuleKey of(Rule rule) {
+      checkNotNull(rule, "rule");
+      checkArgument(rule.getProtocol() != RuleProtocol.UNRECOGNIZED, "rule %s has an unrecognized protocol",
+            rule.getId());
+      RuleEthertype ethertype = rule.getEthertype() != null ? rule.getEthertype() : RuleEthertype.IPV4;
+      RuleProtocol protocol = rule.getProtocol();
+      Integer min = protocol != null ? rule.getPortRangeMin() : null;
+      Integer max = protocol != null ? rule.getPortRangeMax() : null;
+      if (min != null && max == null && protocol != RuleProtocol.ICMP) {
+         max = min;
+      }
+      return new RuleKey(rule.getDirection(), ethertype, protocol, min, max,
+            normalizePrefix(rule.getRemoteIpPrefix()), rule.getRemoteGroupId());
+   }
+
+   @Nullable
+   private static String normalizePrefix(@Nullable String prefix) {
+      if (prefix == null || prefix.isEmpty()) {
+         return null;
+      }
+      Cidr network = Cidr.parse(prefix);
+      return network.getPrefixLength() == 0 ? null : network.toString();
+   }
+
+   @Nullable
+   public RuleDirection getDirection() {
+      return direction;
+   }
+
+   public RuleEthertype getEthertype() {
+      return ethertype;
+   }
+
+   @Nullable
+   public RuleProtocol getProtocol() {
+      return protocol;
+   }
+
+   @Nullable
+   public Integer getPortRangeMin() {
+      return portRangeMin;
+   }
+
+   @Nullable
+   public Integer getPortRangeMax() {
+      return portRangeMax;
+   }
+
+   /**
+    * @return the normalized remote prefix, or null when the rule matches every remote address
+    */
+   @Nullable
+   public String getRemoteIpPrefix() {
+      return remoteIpPrefix;
+   }
+
+   @Nullable
+   public String getRemoteGroupId() {
+      return remoteGroupId;
+   }
+
+   /**
+    * @return a rule matching this key, ready to be created in the given security group
+    */
+   public Rule.CreateRule toCreateRule(String securityGroupId) {
+      return Rule.createBuilder(direction, securityGroupId)
+            .ethertype(ethertype)
+            .protocol(protocol)
+            .portRangeMin(portRangeMin)
+            .portRangeMax(portRangeMax)
+            .remoteIpPrefix(remoteIpPrefix)
+            .remoteGroupId(remoteGroupId)
+            .build();
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+      RuleKey that = (RuleKey) o;
+      return Objects.equal(this.direction, that.direction) &&
+            Objects.equal(this.ethertype, that.ethertype) &&
+            Objects.equal(this.protocol, that.protocol) &&
+            Objects.equal(this.portRangeMin, that.portRangeMin) &&
+            Objects.equal(this.portRangeMax, that.portRangeMax) &&
+            Objects.equal(this.remoteIpPrefix, that.remoteIpPrefix) &&
+            Objects.equal(this.remoteGroupId, that.remoteGroupId);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(direction, ethertype, protocol, portRangeMin, portRangeMax, remoteIpPrefix,
+            remoteGroupId);
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this).omitNullValues()
+            .add("direction", direction)
+            .add("ethertype", ethertype)
+            .add("protocol", protocol)
+            .add("portRangeMin", portRangeMin)
+            .add("portRangeMax", portRangeMax)
+            .add("remoteIpPrefix", remoteIpPrefix)
+            .add("remoteGroupId", remoteGroupId)
+            .toString();
+   }
+}
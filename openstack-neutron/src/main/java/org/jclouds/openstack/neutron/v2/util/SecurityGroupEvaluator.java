@@ -0,0 +1,551 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * Answers "is this packet allowed?" against a snapshot of security group rules without talking to Neutron.
+ * <p/>
+ * Rules are compiled once: for every security group, direction, ethertype and protocol, the port ranges of rules
+ * without a remote are merged into a sorted interval list, rules with a remote IP prefix are stored in a binary prefix
+ * trie, flattened into arrays, whose nodes carry merged port ranges, and rules with a remote group are keyed by that
+ * group. A query is then a walk of at most 32 (or 128) trie nodes and a few binary searches, regardless of how many
+ * rules a group has.
+ * <p/>
+ * Remote group membership is resolved from the fixed IPs of the ports given at compile time. Ports are told apart by
+ * their network and fixed IP, since tenant networks may overlap; as in the ip sets Neutron programs, an address used
+ * on several networks is a member of the groups of all its ports unless the network is given. For ICMP the port is
+ * the ICMP type. Instances are immutable and safe to share between threads.
+ */
+public final class SecurityGroupEvaluator {
+
+   private static final int ANY_PROTOCOL = RuleProtocol.values().length;
+   private static final int PROTOCOLS = ANY_PROTOCOL + 1;
+   private static final int MAX_PORT = 65535;
+
+   private final Map<String, RuleTable[]> tables;
+   // address, then network id
+   private final Map<ByteBuffer, Map<String, Binding>> bindings;
+   // address, then the groups of every port using it
+   private final Map<ByteBuffer, Set<String>> members;
+   private final int ruleCount;
+
+   private SecurityGroupEvaluator(Map<String, RuleTable[]> tables, Map<ByteBuffer, Map<String, Binding>> bindings,
+         Map<ByteBuffer, Set<String>> members, int ruleCount) {
+      this.tables = tables;
+      this.bindings = bindings;
+      this.members = members;
+      this.ruleCount = ruleCount;
+   }
+
+   /**
+    * Compiles every rule of every group. Groups without rules are kept and deny everything.
+    */
+   public static SecurityGroupEvaluator compileGroups(Iterable<SecurityGroup> groups, Iterable<Port> ports) {
+      Map<String, RuleTable[]> tables = Maps.newHashMap();
+      int ruleCount = 0;
+      for (SecurityGroup group : groups) {
+         RuleTable[] groupTables = tablesFor(tables, group.getId());
+         for (Rule rule : group.getRules()) {
+            add(groupTables, rule);
+            ruleCount++;
+         }
+      }
+      return freeze(tables, ports, ruleCount);
+   }
+
+   /**
+    * Compiles rules as returned by {@code SecurityGroupApi.listRules()}, grouped by their security group id.
+    */
+   public static SecurityGroupEvaluator compile(Iterable<Rule> rules, Iterable<Port> ports) {
+      Map<String, RuleTable[]> tables = Maps.newHashMap();
+      int ruleCount = 0;
+      for (Rule rule : rules) {
+         add(tablesFor(tables, checkNotNull(rule.getSecurityGroupId(), "securityGroupId of %s", rule)), rule);
+         ruleCount++;
+      }
+      return freeze(tables, ports, ruleCount);
+   }
+
+   /**
+    * Lists every security group rule and port of a region and compiles them.
+    */
+   public static SecurityGroupEvaluator load(NeutronApi api, String region) {
+      return compile(api.getSecurityGroupApi(region).listRules().concat(), api.getPortApi(region).list().concat());
+   }
+
+   public int getRuleCount() {
+      return ruleCount;
+   }
+
+   /**
+    * @return the ids of the security groups applied to the ports owning {@code address} on any network, or an empty
+    *         set if no port owns it
+    */
+   public Set<String> getSecurityGroups(String address) {
+      Set<String> groups = members.get(canonical(address));
+      return groups != null ? groups : ImmutableSet.<String> of();
+   }
+
+   /**
+    * @return the ids of the security groups applied to the port owning {@code address} on the network, or an empty
+    *         set if no port owns it
+    */
+   public Set<String> getSecurityGroups(String networkId, String address) {
+      Binding binding = binding(checkNotNull(networkId, "networkId"), address);
+      return binding != null ? binding.securityGroups : ImmutableSet.<String> of();
+   }
+
+   /**
+    * @param remoteAddress the source of ingress traffic or the destination of egress traffic
+    * @param port the destination port, or the ICMP type
+    * @return whether a rule of the security group lets the packet through
+    */
+   public boolean allows(String securityGroupId, RuleDirection direction, RuleProtocol protocol, int port,
+         String remoteAddress) {
+      return allows(ImmutableSet.of(securityGroupId), direction, protocol, port, remoteAddress);
+   }
+
+   /**
+    * @return whether a rule of any of the security groups lets the packet through
+    * @see #allows(String, RuleDirection, RuleProtocol, int, String)
+    */
+   public boolean allows(Iterable<String> securityGroupIds, RuleDirection direction, RuleProtocol protocol, int port,
+         String remoteAddress) {
+      return allows(securityGroupIds, direction, protocol, port, null, remoteAddress);
+   }
+
+   /**
+    * @param remoteNetworkId the network of the remote address, or null to match the remote groups of every port
+    *                        using the address
+    * @return whether a rule of any of the security groups lets the packet through
+    * @see #allows(String, RuleDirection, RuleProtocol, int, String)
+    */
+   public boolean allows(Iterable<String> securityGroupIds, RuleDirection direction, RuleProtocol protocol, int port,
+         @Nullable String remoteNetworkId, String remoteAddress) {
+      checkNotNull(direction, "direction");
+      checkNotNull(protocol, "protocol");
+      byte[] remote = Cidr.toBytes(remoteAddress);
+      Set<String> remoteGroups;
+      if (remoteNetworkId != null) {
+         Binding remoteBinding = binding(remoteNetworkId, remoteAddress);
+         remoteGroups = remoteBinding != null ? remoteBinding.securityGroups : ImmutableSet.<String> of();
+      } else {
+         remoteGroups = members.get(canonical(remote));
+         remoteGroups = remoteGroups != null ? remoteGroups : ImmutableSet.<String> of();
+      }
+      int base = index(direction, remote.length == 16 ? RuleEthertype.IPV6 : RuleEthertype.IPV4, 0);
+      for (String securityGroupId : securityGroupIds) {
+         RuleTable[] groupTables = tables.get(securityGroupId);
+         if (groupTables == null) {
+            continue;
+         }
+         RuleTable specific = groupTables[base + protocol.ordinal()];
+         RuleTable any = groupTables[base + ANY_PROTOCOL];
+         if (specific != null && specific.matches(port, remote, remoteGroups)
+               || any != null && any.matches(port, remote, remoteGroups)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Checks both ends of a flow: the egress rules of the port owning {@code sourceAddress} and the ingress rules of
+    * the port owning {@code destinationAddress}. An address that no port owns, or whose port has port security
+    * disabled, is not filtered.
+    *
+    * @throws IllegalArgumentException if ports of several networks use one of the addresses
+    * @see #allowsTraffic(String, String, String, String, RuleProtocol, int)
+    */
+   public boolean allowsTraffic(String sourceAddress, String destinationAddress, RuleProtocol protocol, int port) {
+      return allowsTraffic(null, sourceAddress, null, destinationAddress, protocol, port);
+   }
+
+   /**
+    * Checks both ends of a flow between addresses of the given networks, which tells apart the ports of overlapping
+    * networks. A null network stands for the only network using the address.
+    */
+   public boolean allowsTraffic(@Nullable String sourceNetworkId, String sourceAddress,
+         @Nullable String destinationNetworkId, String destinationAddress, RuleProtocol protocol, int port) {
+      Binding source = binding(sourceNetworkId, sourceAddress);
+      Binding destination = binding(destinationNetworkId, destinationAddress);
+      if (source != null && source.filtered && !allows(source.securityGroups, RuleDirection.EGRESS, protocol, port,
+            destination != null ? destination.networkId : destinationNetworkId, destinationAddress)) {
+         return false;
+      }
+      return destination == null || !destination.filtered
+            || allows(destination.securityGroups, RuleDirection.INGRESS, protocol, port,
+                  source != null ? source.networkId : sourceNetworkId, sourceAddress);
+   }
+
+   /**
+    * @return the port owning the address on the network, or on the only network using it when the network is null
+    */
+   @Nullable
+   private Binding binding(@Nullable String networkId, String address) {
+      Map<String, Binding> byNetwork = bindings.get(canonical(address));
+      if (byNetwork == null) {
+         return null;
+      }
+      if (networkId != null) {
+         return byNetwork.get(networkId);
+      }
+      checkArgument(byNetwork.size() == 1, "address %s is used on networks %s; give its network", address,
+            byNetwork.keySet());
+      return byNetwork.values().iterator().next();
+   }
+
+   private static RuleTable[] tablesFor(Map<String, RuleTable[]> tables, String securityGroupId) {
+      RuleTable[] groupTables = tables.get(securityGroupId);
+      if (groupTables == null) {
+         groupTables = new RuleTable[2 * 2 * PROTOCOLS];
+         tables.put(securityGroupId, groupTables);
+      }
+      return groupTables;
+   }
+
+   private static int index(RuleDirection direction, RuleEthertype ethertype, int protocol) {
+      int d = direction == RuleDirection.EGRESS ? 1 : 0;
+      int e = ethertype == RuleEthertype.IPV6 ? 1 : 0;
+      return (d * 2 + e) * PROTOCOLS + protocol;
+   }
+
+   private static void add(RuleTable[] groupTables, Rule rule) {
+      if (rule.getDirection() == null || rule.getDirection() == RuleDirection.UNRECOGNIZED
+            || rule.getEthertype() == RuleEthertype.UNRECOGNIZED) {
+         return;
+      }
+      Cidr prefix = rule.getRemoteIpPrefix() != null && !rule.getRemoteIpPrefix().isEmpty()
+            ? Cidr.parse(rule.getRemoteIpPrefix()) : null;
+      RuleEthertype ethertype = prefix != null
+            ? (prefix.isIpv6() ? RuleEthertype.IPV6 : RuleEthertype.IPV4)
+            : (rule.getEthertype() != null ? rule.getEthertype() : RuleEthertype.IPV4);
+      RuleProtocol protocol = rule.getProtocol();
+      int i = index(rule.getDirection(), ethertype, protocol != null ? protocol.ordinal() : ANY_PROTOCOL);
+      if (groupTables[i] == null) {
+         groupTables[i] = new RuleTable();
+      }
+      int min = 0;
+      int max = MAX_PORT;
+      if (protocol != null && rule.getPortRangeMin() != null) {
+         min = rule.getPortRangeMin();
+         max = protocol == RuleProtocol.ICMP || rule.getPortRangeMax() == null ? min : rule.getPortRangeMax();
+      }
+      groupTables[i].add(min, max, prefix, rule.getRemoteGroupId());
+   }
+
+   private static SecurityGroupEvaluator freeze(Map<String, RuleTable[]> tables, Iterable<Port> ports,
+         int ruleCount) {
+      for (RuleTable[] groupTables : tables.values()) {
+         for (RuleTable table : groupTables) {
+            if (table != null) {
+               table.freeze();
+            }
+         }
+      }
+      Map<ByteBuffer, Map<String, Binding>> bindings = Maps.newHashMap();
+      SetMultimap<ByteBuffer, String> members = HashMultimap.create();
+      for (Port port : ports) {
+         if (port.getFixedIps() == null) {
+            continue;
+         }
+         Binding binding = new Binding(Strings.nullToEmpty(port.getNetworkId()),
+               port.getSecurityGroups() != null ? port.getSecurityGroups() : ImmutableSet.<String> of(),
+               !Boolean.FALSE.equals(port.getPortSecurity()));
+         for (IP ip : port.getFixedIps()) {
+            if (ip.getIpAddress() != null) {
+               ByteBuffer address = canonical(ip.getIpAddress());
+               Map<String, Binding> byNetwork = bindings.get(address);
+               if (byNetwork == null) {
+                  byNetwork = Maps.newHashMap();
+                  bindings.put(address, byNetwork);
+               }
+               byNetwork.put(binding.networkId, binding);
+               members.putAll(address, binding.securityGroups);
+            }
+         }
+      }
+      ImmutableMap.Builder<ByteBuffer, Map<String, Binding>> frozenBindings = ImmutableMap.builder();
+      for (Map.Entry<ByteBuffer, Map<String, Binding>> byNetwork : bindings.entrySet()) {
+         frozenBindings.put(byNetwork.getKey(), ImmutableMap.copyOf(byNetwork.getValue()));
+      }
+      ImmutableMap.Builder<ByteBuffer, Set<String>> frozenMembers = ImmutableMap.builder();
+      for (Map.Entry<ByteBuffer, Collection<String>> groups : members.asMap().entrySet()) {
+         frozenMembers.put(groups.getKey(), ImmutableSet.copyOf(groups.getValue()));
+      }
+      return new SecurityGroupEvaluator(ImmutableMap.copyOf(tables), frozenBindings.build(), frozenMembers.build(),
+            ruleCount);
+   }
+
+   private static ByteBuffer canonical(String address) {
+      return canonical(Cidr.toBytes(address));
+   }
+
+   private static ByteBuffer canonical(byte[] address) {
+      return ByteBuffer.wrap(address);
+   }
+
+   private static final class Binding {
+      private final String networkId;
+      private final Set<String> securityGroups;
+      private final boolean filtered;
+
+      private Binding(String networkId, Set<String> securityGroups, boolean filtered) {
+         this.networkId = networkId;
+         this.securityGroups = securityGroups;
+         this.filtered = filtered;
+      }
+   }
+
+   /**
+    * The rules of one group, direction, ethertype and protocol.
+    */
+   private static final class RuleTable {
+      private PortRanges.Builder anyRemoteBuilder;
+      private PortRanges anyRemote;
+      private TrieNode prefixRoot;
+      private PrefixTrie prefixes;
+      private Map<String, PortRanges.Builder> remoteGroupBuilders;
+      private Map<String, PortRanges> remoteGroups;
+
+      void add(int min, int max, @Nullable Cidr prefix, @Nullable String remoteGroupId) {
+         if (remoteGroupId != null) {
+            if (remoteGroupBuilders == null) {
+               remoteGroupBuilders = Maps.newHashMap();
+            }
+            PortRanges.Builder builder = remoteGroupBuilders.get(remoteGroupId);
+            if (builder == null) {
+               builder = new PortRanges.Builder();
+               remoteGroupBuilders.put(remoteGroupId, builder);
+            }
+            builder.add(min, max);
+         } else if (prefix != null && prefix.getPrefixLength() > 0) {
+            if (prefixRoot == null) {
+               prefixRoot = new TrieNode();
+            }
+            prefixRoot.insert(prefix, min, max);
+         } else {
+            if (anyRemoteBuilder == null) {
+               anyRemoteBuilder = new PortRanges.Builder();
+            }
+            anyRemoteBuilder.add(min, max);
+         }
+      }
+
+      void freeze() {
+         if (anyRemoteBuilder != null) {
+            anyRemote = anyRemoteBuilder.build();
+            anyRemoteBuilder = null;
+         }
+         if (prefixRoot != null) {
+            prefixes = new PrefixTrie(prefixRoot);
+            prefixRoot = null;
+         }
+         if (remoteGroupBuilders != null) {
+            ImmutableMap.Builder<String, PortRanges> frozen = ImmutableMap.builder();
+            for (Map.Entry<String, PortRanges.Builder> entry : remoteGroupBuilders.entrySet()) {
+               frozen.put(entry.getKey(), entry.getValue().build());
+            }
+            remoteGroups = frozen.build();
+            remoteGroupBuilders = null;
+         }
+      }
+
+      boolean matches(int port, byte[] remote, Set<String> memberOf) {
+         if (anyRemote != null && anyRemote.contains(port)) {
+            return true;
+         }
+         if (prefixes != null && prefixes.matches(remote, port)) {
+            return true;
+         }
+         if (remoteGroups != null) {
+            for (String group : memberOf) {
+               PortRanges ranges = remoteGroups.get(group);
+               if (ranges != null && ranges.contains(port)) {
+                  return true;
+               }
+            }
+         }
+         return false;
+      }
+   }
+
+   /**
+    * A binary trie over address bits, used while compiling. A node at depth {@code n} holds the port ranges of the
+    * rules whose remote prefix is the path to it, of length {@code n}.
+    */
+   private static final class TrieNode {
+      private final TrieNode[] children = new TrieNode[2];
+      private PortRanges.Builder builder;
+
+      void insert(Cidr prefix, int min, int max) {
+         byte[] address = prefix.getAddress();
+         TrieNode node = this;
+         for (int i = 0; i < prefix.getPrefixLength(); i++) {
+            int bit = Cidr.bit(address, i);
+            if (node.children[bit] == null) {
+               node.children[bit] = new TrieNode();
+            }
+            node = node.children[bit];
+         }
+         if (node.builder == null) {
+            node.builder = new PortRanges.Builder();
+         }
+         node.builder.add(min, max);
+      }
+
+      int count() {
+         int count = 1;
+         for (TrieNode child : children) {
+            if (child != null) {
+               count += child.count();
+            }
+         }
+         return count;
+      }
+   }
+
+   /**
+    * The frozen form of a {@link TrieNode} tree: nodes are laid out in preorder in flat arrays so a lookup touches a
+    * few contiguous cache lines instead of chasing one object per address bit.
+    */
+   private static final class PrefixTrie {
+      private final int[] zero;
+      private final int[] one;
+      private final PortRanges[] ranges;
+      private int size;
+
+      PrefixTrie(TrieNode root) {
+         int count = root.count();
+         zero = new int[count];
+         one = new int[count];
+         ranges = new PortRanges[count];
+         add(root);
+      }
+
+      private int add(TrieNode node) {
+         int index = size++;
+         ranges[index] = node.builder != null ? node.builder.build() : null;
+         zero[index] = node.children[0] != null ? add(node.children[0]) : -1;
+         one[index] = node.children[1] != null ? add(node.children[1]) : -1;
+         return index;
+      }
+
+      boolean matches(byte[] address, int port) {
+         int bits = address.length * 8;
+         int node = 0;
+         for (int i = 0; node >= 0; i++) {
+            PortRanges nodeRanges = ranges[node];
+            if (nodeRanges != null && nodeRanges.contains(port)) {
+               return true;
+            }
+            if (i == bits) {
+               break;
+            }
+            node = Cidr.bit(address, i) == 0 ? zero[node] : one[node];
+         }
+         return false;
+      }
+   }
+
+   /**
+    * Sorted, disjoint, inclusive port ranges. Overlapping and adjacent ranges are merged when built, so membership is
+    * a single binary search.
+    */
+   static final class PortRanges {
+      private final int[] starts;
+      private final int[] ends;
+
+      private PortRanges(int[] starts, int[] ends) {
+         this.starts = starts;
+         this.ends = ends;
+      }
+
+      boolean contains(int port) {
+         int i = Arrays.binarySearch(starts, port);
+         if (i >= 0) {
+            return true;
+         }
+         int before = -i - 2;
+         return before >= 0 && port <= ends[before];
+      }
+
+      int size() {
+         return starts.length;
+      }
+
+      static final class Builder {
+         private long[] ranges = new long[4];
+         private int count;
+
+         Builder add(int min, int max) {
+            checkArgument(min <= max, "invalid port range %s-%s", min, max);
+            if (count == ranges.length) {
+               ranges = Arrays.copyOf(ranges, count * 2);
+            }
+            ranges[count++] = (long) min << 32 | max;
+            return this;
+         }
+
+         PortRanges build() {
+            long[] sorted = Arrays.copyOf(ranges, count);
+            Arrays.sort(sorted);
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int merged = -1;
+            for (long range : sorted) {
+               int min = (int) (range >>> 32);
+               int max = (int) range;
+               if (merged >= 0 && min <= ends[merged] + 1) {
+                  ends[merged] = Math.max(ends[merged], max);
+               } else {
+                  merged++;
+                  starts[merged] = min;
+                  ends[merged] = max;
+               }
+            }
+            return new PortRanges(Arrays.copyOf(starts, merged + 1), Arrays.copyOf(ends, merged + 1));
+         }
+      }
+   }
+}
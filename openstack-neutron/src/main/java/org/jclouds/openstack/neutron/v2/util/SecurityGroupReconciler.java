@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.features.SecurityGroupApi;
+import org.jclouds.openstack.neutron.v2.util.ConcurrentTasks.Outcome;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Brings the rules of a set of security groups to a desired state with as few calls as possible.
+ * <p/>
+ * The live rules are fetched with a single listing, compared with the desired ones by {@link RuleKey}, and only the
+ * missing rules are created and the unwanted ones deleted, in parallel. Creations run before deletions so that traffic
+ * allowed by both the old and the new rules is never interrupted.
+ *
+ * <pre>
+ * SecurityGroupReconciler reconciler = SecurityGroupReconciler.builder(neutronApi, "RegionOne")
+ *       .executor(context.utils().userExecutor())
+ *       .dryRun(true)
+ *       .build();
+ * ReconcileResult result = reconciler.reconcile(ImmutableMap.of(groupId, desiredRules));
+ * </pre>
+ */
+public class SecurityGroupReconciler {
+
+   private final SecurityGroupApi securityGroupApi;
+   private final ListeningExecutorService executor;
+   private final int maxConcurrency;
+   private final boolean dryRun;
+
+   protected SecurityGroupReconciler(SecurityGroupApi securityGroupApi, ListeningExecutorService executor,
+         int maxConcurrency, boolean dryRun) {
+      this.securityGroupApi = checkNotNull(securityGroupApi, "securityGroupApi");
+      this.executor = checkNotNull(executor, "executor");
+      this.maxConcurrency = maxConcurrency;
+      this.dryRun = dryRun;
+   }
+
+   public static Builder builder(NeutronApi api, String region) {
+      return new Builder(checkNotNull(api, "api").getSecurityGroupApi(checkNotNull(region, "region")));
+   }
+
+   /**
+    * Compares the desired rules with the live ones.
+    *
+    * @param desired the wanted rules by security group id; groups that are not in the map are not touched
+    */
+   public RuleDiff diff(Map<String, ? extends Iterable<? extends Rule>> desired) {
+      return RuleDiff.compute(desired, securityGroupApi.listRules().concat());
+   }
+
+   /**
+    * Computes the changes and applies them, unless this reconciler is in dry-run mode.
+    *
+    * @param desired the wanted rules by security group id; groups that are not in the map are not touched
+    */
+   public ReconcileResult reconcile(Map<String, ? extends Iterable<? extends Rule>> desired) {
+      RuleDiff diff = diff(desired);
+      return dryRun ? ReconcileResult.dryRun(diff) : apply(diff);
+   }
+
+   /**
+    * Applies previously computed changes, regardless of the dry-run mode.
+    */
+   public ReconcileResult apply(RuleDiff diff) {
+      Map<Rule.CreateRule, Callable<Rule>> creates = Maps.newLinkedHashMap();
+      for (final Rule.CreateRule rule : diff.getToCreate()) {
+         creates.put(rule, new Callable<Rule>() {
+            @Override
+            public Rule call() {
+               return securityGroupApi.create(rule);
+            }
+         });
+      }
+      ImmutableList.Builder<Rule> created = ImmutableList.builder();
+      Map<Rule.CreateRule, Throwable> createFailures = Maps.newLinkedHashMap();
+      for (Map.Entry<Rule.CreateRule, Outcome<Rule>> outcome : ConcurrentTasks
+            .invokeAll(executor, maxConcurrency, creates).entrySet()) {
+         if (outcome.getValue().isSuccess()) {
+            created.add(outcome.getValue().getValue());
+         } else {
+            createFailures.put(outcome.getKey(), outcome.getValue().getFailure());
+         }
+      }
+
+      Map<String, Callable<Boolean>> deletes = Maps.newLinkedHashMap();
+      for (final Rule rule : diff.getToDelete()) {
+         deletes.put(rule.getId(), new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return securityGroupApi.deleteRule(rule.getId());
+            }
+         });
+      }
+      ImmutableSet.Builder<String> deleted = ImmutableSet.builder();
+      Map<String, Throwable> deleteFailures = Maps.newLinkedHashMap();
+      for (Map.Entry<String, Outcome<Boolean>> outcome : ConcurrentTasks
+            .invokeAll(executor, maxConcurrency, deletes).entrySet()) {
+         if (outcome.getValue().isSuccess()) {
+            deleted.add(outcome.getKey());
+         } else {
+            deleteFailures.put(outcome.getKey(), outcome.getValue().getFailure());
+         }
+      }
+      return new ReconcileResult(diff, false, created.build(), deleted.build(), createFailures, deleteFailures);
+   }
+
+   public static class Builder {
+      private final SecurityGroupApi securityGroupApi;
+      private ListeningExecutorService executor;
+      private int maxConcurrency = 10;
+      private boolean dryRun;
+
+      protected Builder(SecurityGroupApi securityGroupApi) {
+         this.securityGroupApi = securityGroupApi;
+      }
+
+      /**
+       * The executor that runs the calls, usually the jclouds user executor. Required.
+       */
+      public Builder executor(ListeningExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      /**
+       * The maximum number of calls in flight at any time. Defaults to 10.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * When true, {@link SecurityGroupReconciler#reconcile} only computes the changes. Defaults to false.
+       */
+      public Builder dryRun(boolean dryRun) {
+         this.dryRun = dryRun;
+         return this;
+      }
+
+      public SecurityGroupReconciler build() {
+         checkNotNull(executor, "executor");
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         return new SecurityGroupReconciler(securityGroupApi, executor, maxConcurrency, dryRun);
+      }
+   }
+}
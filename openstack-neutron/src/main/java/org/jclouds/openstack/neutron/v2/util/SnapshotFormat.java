@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Named;
+
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Constants and schemas shared by {@link NeutronSnapshotWriter} and {@link NeutronSnapshot}.
+ * <p/>
+ * A snapshot starts with a magic number and a format version, followed by a table of all the distinct strings, the
+ * schemas of the stored types, one section per resource type and the records themselves:
+ *
+ * <pre>
+ * int magic, short version, short reserved
+ * int stringCount, int[stringCount + 1] utf8Offsets, byte[] utf8
+ * int schemaCount, { int className, int propertyCount, int[propertyCount] propertyNames }
+ * int sectionCount, { int section, int schema, int count, int indexCount,
+ *                     int[count] recordOffsets, int[indexCount] sortedIds, int[indexCount] sortedRows }
+ * int recordsLength, byte[] records
+ * </pre>
+ *
+ * The fixed-width tables can be read in place, so opening a snapshot does not depend on its size. A record holds the
+ * values of the constructor properties of its type, in schema order, each prefixed by a tag byte; strings are varint
+ * references to the string table. Schemas list properties by their JSON name, so a reader skips properties it does not
+ * know and leaves the ones missing from an older snapshot null.
+ */
+final class SnapshotFormat {
+
+   static final int MAGIC = 0x4E534E50;
+   static final short VERSION = 1;
+
+   static final byte NULL = 0;
+   static final byte STRING = 1;
+   static final byte INT = 2;
+   static final byte LONG = 3;
+   static final byte DOUBLE = 4;
+   static final byte TRUE = 5;
+   static final byte FALSE = 6;
+   static final byte ENUM = 7;
+   static final byte LIST = 8;
+   static final byte MAP = 9;
+   static final byte OBJECT = 10;
+
+   /**
+    * The resource types stored in a snapshot, by section code.
+    */
+   static final ImmutableList<Class<?>> SECTIONS = ImmutableList.<Class<?>> of(Port.class, Network.class,
+         Subnet.class, Router.class, FloatingIP.class, SecurityGroup.class, Rule.class);
+
+   private static final ConcurrentMap<Class<?>, Schema> SCHEMAS = Maps.newConcurrentMap();
+
+   private SnapshotFormat() {
+   }
+
+   /**
+    * @return true if instances of {@code type} are stored property by property
+    */
+   static boolean isRecord(Class<?> type) {
+      return schemaConstructor(type) != null;
+   }
+
+   static Schema schema(Class<?> type) {
+      Schema schema = SCHEMAS.get(type);
+      if (schema == null) {
+         schema = new Schema(type);
+         SCHEMAS.putIfAbsent(type, schema);
+      }
+      return schema;
+   }
+
+   private static Constructor<?> schemaConstructor(Class<?> type) {
+      for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+         if (constructor.isAnnotationPresent(ConstructorProperties.class)) {
+            return constructor;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * How the instances of a domain type are taken apart and rebuilt: the values of its
+    * {@link ConstructorProperties} constructor, read from the fields bound to the same JSON names.
+    */
+   static final class Schema {
+      final Class<?> type;
+      final ImmutableList<String> properties;
+      final Type[] parameterTypes;
+      private final Constructor<?> constructor;
+      private final Field[] fields;
+      private final Map<String, Integer> positions;
+
+      private Schema(Class<?> type) {
+         this.type = type;
+         this.constructor = schemaConstructor(type);
+         checkArgument(constructor != null, "%s has no @ConstructorProperties constructor", type);
+         constructor.setAccessible(true);
+         this.properties = ImmutableList.copyOf(constructor.getAnnotation(ConstructorProperties.class).value());
+         this.parameterTypes = constructor.getGenericParameterTypes();
+         this.fields = new Field[properties.size()];
+         ImmutableMap.Builder<String, Integer> positions = ImmutableMap.builder();
+         for (int i = 0; i < fields.length; i++) {
+            fields[i] = field(type, properties.get(i));
+            positions.put(properties.get(i), i);
+         }
+         this.positions = positions.build();
+      }
+
+      private static Field field(Class<?> type, String property) {
+         for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+               Named named = field.getAnnotation(Named.class);
+               if (named != null ? named.value().equals(property) : field.getName().equals(property)) {
+                  field.setAccessible(true);
+                  return field;
+               }
+            }
+         }
+         throw new IllegalArgumentException(type + " has no field for property " + property);
+      }
+
+      /**
+       * @return the position of a property in the constructor, or -1 if this type does not have it
+       */
+      int position(String property) {
+         Integer position = positions.get(property);
+         return position != null ? position : -1;
+      }
+
+      Object get(Object instance, int position) {
+         try {
+            return fields[position].get(instance);
+         } catch (IllegalAccessException e) {
+            throw Throwables.propagate(e);
+         }
+      }
+
+      Object create(Object[] values) {
+         try {
+            return constructor.newInstance(values);
+         } catch (Exception e) {
+            throw Throwables.propagate(e);
+         }
+      }
+   }
+}
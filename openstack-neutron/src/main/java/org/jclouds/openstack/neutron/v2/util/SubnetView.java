@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.field;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackAddress;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackBoolean;
+import static org.jclouds.openstack.neutron.v2.util.NeutronInventory.unpackEnum;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.HostRoute;
+import org.jclouds.openstack.neutron.v2.domain.IPv6DHCPMode;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A subnet stored in a {@link NeutronInventory}, with the getters of
+ * {@link org.jclouds.openstack.neutron.v2.domain.Subnet}.
+ */
+public final class SubnetView {
+
+   private final NeutronInventory inventory;
+   private final NeutronInventory.Subnets subnets;
+   private final int row;
+
+   SubnetView(NeutronInventory inventory, int row) {
+      this.inventory = inventory;
+      this.subnets = inventory.subnets;
+      this.row = row;
+   }
+
+   public String getId() {
+      return subnets.ids.decode(row);
+   }
+
+   @Nullable
+   public String getName() {
+      return inventory.strings.decode(subnets.name[row]);
+   }
+
+   @Nullable
+   public String getNetworkId() {
+      return inventory.strings.decode(subnets.networkId[row]);
+   }
+
+   @Nullable
+   public String getTenantId() {
+      return inventory.strings.decode(subnets.tenantId[row]);
+   }
+
+   @Nullable
+   public ImmutableSet<AllocationPool> getAllocationPools() {
+      return inventory.allocationPools.decode(subnets.pools[row]);
+   }
+
+   @Nullable
+   public String getGatewayIp() {
+      return unpackAddress(subnets.gatewayHigh[row], subnets.gatewayLow[row]);
+   }
+
+   @Nullable
+   public Integer getIpVersion() {
+      int version = field(subnets.flags[row], NeutronInventory.Subnets.IP_VERSION, 2);
+      return version == 0 ? null : Integer.valueOf(version == 1 ? 4 : 6);
+   }
+
+   /**
+    * @return the cidr in canonical form: host bits cleared and IPv6 addresses compressed
+    */
+   @Nullable
+   public String getCidr() {
+      int prefixLength = field(subnets.flags[row], NeutronInventory.Subnets.PREFIX_LENGTH, 8) - 1;
+      return prefixLength < 0 ? null
+            : unpackAddress(subnets.cidrHigh[row], subnets.cidrLow[row]) + "/" + prefixLength;
+   }
+
+   @Nullable
+   public Boolean getEnableDhcp() {
+      return unpackBoolean(field(subnets.flags[row], NeutronInventory.Subnets.ENABLE_DHCP, 2));
+   }
+
+   @Nullable
+   public ImmutableSet<String> getDnsNameservers() {
+      return inventory.stringSets.decode(subnets.dnsNameservers[row]);
+   }
+
+   @Nullable
+   public ImmutableSet<HostRoute> getHostRoutes() {
+      return inventory.hostRoutes.decode(subnets.routes[row]);
+   }
+
+   @Nullable
+   public IPv6DHCPMode getIPv6AddressMode() {
+      return unpackEnum(NeutronInventory.IPV6_MODES,
+            field(subnets.flags[row], NeutronInventory.Subnets.IPV6_ADDRESS_MODE, NeutronInventory.IPV6_MODE_BITS));
+   }
+
+   @Nullable
+   public IPv6DHCPMode getIPv6RAMode() {
+      return unpackEnum(NeutronInventory.IPV6_MODES,
+            field(subnets.flags[row], NeutronInventory.Subnets.IPV6_RA_MODE, NeutronInventory.IPV6_MODE_BITS));
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+      SubnetView that = SubnetView.class.cast(o);
+      return inventory == that.inventory && row == that.row;
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(System.identityHashCode(inventory), row);
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("id", getId())
+            .add("name", getName())
+            .add("networkId", getNetworkId())
+            .add("cidr", getCidr())
+            .add("gatewayIp", getGatewayIp())
+            .toString();
+   }
+}
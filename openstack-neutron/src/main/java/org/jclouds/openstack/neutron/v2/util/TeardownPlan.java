@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The ordered list of calls needed to remove a set of networks and everything attached to them.
+ * <p/>
+ * Neutron refuses (409) to delete a resource that something else still depends on, so the plan is split in levels that
+ * must run one after the other, while the calls inside a level are independent of each other:
+ * <ol>
+ * <li>ports plugged into the networks (instances, load balancers, ...) and floating IPs allocated from them</li>
+ * <li>router interfaces on the networks' subnets, and router gateways on the networks</li>
+ * <li>routers that are left without any interface</li>
+ * <li>subnets</li>
+ * <li>networks</li>
+ * </ol>
+ * Ports owned by Neutron itself are not deleted directly: DHCP ports go away with their network, router gateway ports
+ * when the gateway of their router is cleared, and floating IP ports when their floating IP is deleted. The gateway of
+ * a router that is deleted anyway is left to the deletion.
+ */
+public final class TeardownPlan {
+
+   public static final String ROUTER_INTERFACE_OWNER_PREFIX = "network:router_interface";
+   public static final String NETWORK_OWNER_PREFIX = "network:";
+   public static final String ROUTER_GATEWAY_OWNER = "network:router_gateway";
+   public static final String FLOATING_IP_OWNER = "network:floatingip";
+
+   private final ImmutableList<String> ports;
+   private final ImmutableList<String> floatingIPs;
+   private final ImmutableList<RouterInterfaceRef> routerInterfaces;
+   private final ImmutableList<String> routerGateways;
+   private final ImmutableList<String> routers;
+   private final ImmutableList<String> subnets;
+   private final ImmutableList<String> networks;
+
+   private TeardownPlan(ImmutableList<String> ports, ImmutableList<String> floatingIPs,
+         ImmutableList<RouterInterfaceRef> routerInterfaces, ImmutableList<String> routerGateways,
+         ImmutableList<String> routers, ImmutableList<String> subnets, ImmutableList<String> networks) {
+      this.ports = ports;
+      this.floatingIPs = floatingIPs;
+      this.routerInterfaces = routerInterfaces;
+      this.routerGateways = routerGateways;
+      this.routers = routers;
+      this.subnets = subnets;
+      this.networks = networks;
+   }
+
+   /**
+    * Works out what has to be deleted, and in which order, to remove the given networks.
+    *
+    * @param networkIds the networks to remove
+    * @param ports      the ports of the region; ports on other networks are ignored
+    * @param subnets    the subnets of the region; subnets on other networks are ignored
+    * @param routers    the routers of the region; a router is only deleted when all its interfaces are removed by the plan
+    */
+   public static TeardownPlan forNetworks(Set<String> networkIds, Iterable<Port> ports, Iterable<Subnet> subnets,
+         Iterable<Router> routers) {
+      checkNotNull(networkIds, "networkIds");
+      ImmutableList.Builder<String> portIds = ImmutableList.builder();
+      Set<String> floatingIPIds = Sets.newLinkedHashSet();
+      ImmutableList.Builder<RouterInterfaceRef> interfaces = ImmutableList.builder();
+      Set<String> gateways = Sets.newLinkedHashSet();
+      // router id -> does it keep an interface outside of the networks being removed
+      Map<String, Boolean> routerKeepsInterfaces = Maps.newHashMap();
+
+      for (Port port : checkNotNull(ports, "ports")) {
+         String owner = port.getDeviceOwner() != null ? port.getDeviceOwner() : "";
+         boolean inScope = networkIds.contains(port.getNetworkId());
+         if (owner.startsWith(ROUTER_INTERFACE_OWNER_PREFIX) && port.getDeviceId() != null) {
+            Boolean keeps = routerKeepsInterfaces.get(port.getDeviceId());
+            routerKeepsInterfaces.put(port.getDeviceId(), (keeps != null && keeps) || !inScope);
+            if (inScope) {
+               interfaces.addAll(interfacesOf(port));
+            }
+         } else if (!inScope) {
+            continue;
+         } else if (owner.equals(ROUTER_GATEWAY_OWNER) && port.getDeviceId() != null) {
+            gateways.add(port.getDeviceId());
+         } else if (owner.equals(FLOATING_IP_OWNER) && port.getDeviceId() != null) {
+            // the device of a floating IP port is the floating IP itself
+            floatingIPIds.add(port.getDeviceId());
+         } else if (!owner.startsWith(NETWORK_OWNER_PREFIX)) {
+            portIds.add(port.getId());
+         }
+      }
+
+      Set<String> routerIds = Sets.newLinkedHashSet();
+      for (Router router : checkNotNull(routers, "routers")) {
+         Boolean keeps = routerKeepsInterfaces.get(router.getId());
+         if (keeps != null && !keeps) {
+            routerIds.add(router.getId());
+         }
+      }
+      gateways.removeAll(routerIds);
+
+      ImmutableList.Builder<String> subnetIds = ImmutableList.builder();
+      for (Subnet subnet : checkNotNull(subnets, "subnets")) {
+         if (networkIds.contains(subnet.getNetworkId())) {
+            subnetIds.add(subnet.getId());
+         }
+      }
+
+      return new TeardownPlan(portIds.build(), ImmutableList.copyOf(floatingIPIds), interfaces.build(),
+            ImmutableList.copyOf(gateways), ImmutableList.copyOf(routerIds), subnetIds.build(),
+            ImmutableList.copyOf(networkIds));
+   }
+
+   private static Iterable<RouterInterfaceRef> interfacesOf(Port port) {
+      if (port.getFixedIps() == null || port.getFixedIps().isEmpty()) {
+         return ImmutableSet.of(new RouterInterfaceRef(port.getDeviceId(), null, port.getId()));
+      }
+      ImmutableSet.Builder<RouterInterfaceRef> refs = ImmutableSet.builder();
+      for (IP ip : port.getFixedIps()) {
+         refs.add(new RouterInterfaceRef(port.getDeviceId(), ip.getSubnetId(), port.getId()));
+      }
+      return refs.build();
+   }
+
+   /**
+    * @return the ports to delete in the first level
+    */
+   public ImmutableList<String> getPorts() {
+      return ports;
+   }
+
+   /**
+    * @return the floating IPs allocated from the networks, to delete in the first level
+    */
+   public ImmutableList<String> getFloatingIPs() {
+      return floatingIPs;
+   }
+
+   /**
+    * @return the router interfaces to remove in the second level
+    */
+   public ImmutableList<RouterInterfaceRef> getRouterInterfaces() {
+      return routerInterfaces;
+   }
+
+   /**
+    * @return the routers whose gateway is on the networks and is cleared in the second level
+    */
+   public ImmutableList<String> getRouterGateways() {
+      return routerGateways;
+   }
+
+   /**
+    * @return the routers to delete in the third level
+    */
+   public ImmutableList<String> getRouters() {
+      return routers;
+   }
+
+   /**
+    * @return the subnets to delete in the fourth level
+    */
+   public ImmutableList<String> getSubnets() {
+      return subnets;
+   }
+
+   /**
+    * @return the networks to delete in the last level
+    */
+   public ImmutableList<String> getNetworks() {
+      return networks;
+   }
+
+   /**
+    * @return the total number of calls in this plan
+    */
+   public int size() {
+      return ports.size() + floatingIPs.size() + routerInterfaces.size() + routerGateways.size() + routers.size()
+            + subnets.size() + networks.size();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("ports", ports)
+            .add("floatingIPs", floatingIPs)
+            .add("routerInterfaces", routerInterfaces)
+            .add("routerGateways", routerGateways)
+            .add("routers", routers)
+            .add("subnets", subnets)
+            .add("networks", networks)
+            .toString();
+   }
+
+   /**
+    * A router interface to remove: by subnet when the interface port has an address on it, by port otherwise.
+    */
+   public static final class RouterInterfaceRef {
+      private final String routerId;
+      private final String subnetId;
+      private final String portId;
+
+      RouterInterfaceRef(String routerId, @Nullable String subnetId, String portId) {
+         this.routerId = checkNotNull(routerId, "routerId");
+         this.subnetId = subnetId;
+         this.portId = checkNotNull(portId, "portId");
+      }
+
+      public String getRouterId() {
+         return routerId;
+      }
+
+      @Nullable
+      public String getSubnetId() {
+         return subnetId;
+      }
+
+      public String getPortId() {
+         return portId;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o)
+            return true;
+         if (o == null || getClass() != o.getClass())
+            return false;
+         RouterInterfaceRef that = (RouterInterfaceRef) o;
+         return Objects.equal(this.routerId, that.routerId) && Objects.equal(this.subnetId, that.subnetId)
+               && Objects.equal(this.portId, that.portId);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(routerId, subnetId, portId);
+      }
+
+      /**
+       * @return routerId/subnetId, or routerId/portId when removed by port
+       */
+      @Override
+      public String toString() {
+         return routerId + "/" + (subnetId != null ? subnetId : portId);
+      }
+   }
+}
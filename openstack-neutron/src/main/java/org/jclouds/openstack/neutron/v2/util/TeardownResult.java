@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * What happened to each call of a {@link TeardownPlan}. Calls are identified by the id of the resource they remove,
+ * or by {@link TeardownPlan.RouterInterfaceRef#toString()} for router interfaces.
+ */
+public final class TeardownResult {
+
+   private final ImmutableSet<String> removed;
+   private final ImmutableMap<String, Throwable> failures;
+   private final ImmutableSet<String> skipped;
+
+   TeardownResult(Iterable<String> removed, Map<String, Throwable> failures, Iterable<String> skipped) {
+      this.removed = ImmutableSet.copyOf(checkNotNull(removed, "removed"));
+      this.failures = ImmutableMap.copyOf(checkNotNull(failures, "failures"));
+      this.skipped = ImmutableSet.copyOf(checkNotNull(skipped, "skipped"));
+   }
+
+   /**
+    * @return the resources that were removed, or were already gone
+    */
+   public ImmutableSet<String> getRemoved() {
+      return removed;
+   }
+
+   /**
+    * @return the resources that could not be removed, with the last error returned by Neutron
+    */
+   public ImmutableMap<String, Throwable> getFailures() {
+      return failures;
+   }
+
+   /**
+    * @return the resources that were not attempted because an earlier level failed
+    */
+   public ImmutableSet<String> getSkipped() {
+      return skipped;
+   }
+
+   /**
+    * @return true if every call of the plan succeeded
+    */
+   public boolean isComplete() {
+      return failures.isEmpty() && skipped.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return MoreObjects.toStringHelper(this)
+            .add("removed", removed.size())
+            .add("failures", failures)
+            .add("skipped", skipped.size())
+            .toString();
+   }
+}
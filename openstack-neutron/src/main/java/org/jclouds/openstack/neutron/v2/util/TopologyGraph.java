@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.RouterInterface;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.extensions.RouterApi;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * An in-memory L3 graph of routers, networks, subnets and ports, answering path and reachability questions such as
+ * "how does this subnet reach an external network?" without any further call to Neutron.
+ * <p/>
+ * Subnets are linked to their network, ports to the subnets of their fixed IPs (or to their network when they have
+ * none), router ports to their router, and routers to the external network of their gateway. Paths are shortest in
+ * number of hops. Connected components are kept in a union-find structure that is updated in place when links are
+ * added and rebuilt on the next query after links are removed.
+ * <p/>
+ * All the add methods replace what was known about the resource, so the graph can be kept current by feeding it the
+ * events of a {@link NeutronWatcher}. Networks are created when first referenced and stay in the graph. The graph is
+ * not thread-safe.
+ */
+public class TopologyGraph {
+
+   private static final int[] NO_EDGES = new int[0];
+
+   private final Map<TopologyNode, Integer> index = Maps.newHashMap();
+   private final Map<Integer, Integer> gateways = Maps.newHashMap();
+   private TopologyNode[] nodes = new TopologyNode[64];
+   private int[][] edges = new int[64][];
+   private int[] degree = new int[64];
+   private int[] externalRefs = new int[64];
+   private int[] free = new int[16];
+   private int freeCount;
+   private int size;
+   private int count;
+
+   private int[] parent = new int[64];
+   private boolean componentsDirty;
+
+   private int[] visited = new int[64];
+   private int[] previous = new int[64];
+   private int[] queue = new int[64];
+   private int generation;
+
+   /**
+    * Builds the graph of one region from the listings of its routers, subnets and ports.
+    */
+   public static TopologyGraph load(NeutronApi api, String region) {
+      TopologyGraph graph = new TopologyGraph();
+      for (Subnet subnet : api.getSubnetApi(region).list().concat()) {
+         graph.addSubnet(subnet);
+      }
+      Optional<RouterApi> routerApi = api.getRouterApi(region);
+      if (routerApi.isPresent()) {
+         for (Router router : routerApi.get().list().concat()) {
+            graph.addRouter(router);
+         }
+      }
+      for (Port port : api.getPortApi(region).list().concat()) {
+         graph.addPort(port);
+      }
+      return graph;
+   }
+
+   /**
+    * Adds a router, or updates the external network of its gateway.
+    */
+   public void addRouter(Router router) {
+      checkNotNull(router, "router");
+      setGateway(router.getId(),
+            router.getExternalGatewayInfo() != null ? router.getExternalGatewayInfo().getNetworkId() : null);
+   }
+
+   /**
+    * Adds a router, or updates the external network of its gateway.
+    *
+    * @param networkId the external network of the gateway, or null if the router has none
+    */
+   public void setGateway(String routerId, @Nullable String networkId) {
+      int router = node(TopologyNode.router(checkNotNull(routerId, "routerId")));
+      Integer current = gateways.get(router);
+      if (current != null) {
+         if (networkId != null && nodes[current].getId().equals(networkId)) {
+            return;
+         }
+         gateways.remove(router);
+         externalRefs[current]--;
+         unlink(router, current);
+      }
+      if (networkId != null) {
+         int network = node(TopologyNode.network(networkId));
+         gateways.put(router, network);
+         externalRefs[network]++;
+         link(router, network);
+      }
+   }
+
+   /**
+    * Removes a router and all its links. Its ports stay in the graph.
+    */
+   public boolean removeRouter(String routerId) {
+      Integer router = index.get(TopologyNode.router(checkNotNull(routerId, "routerId")));
+      if (router == null) {
+         return false;
+      }
+      setGateway(routerId, null);
+      remove(router);
+      return true;
+   }
+
+   /**
+    * Adds a subnet, or moves it to another network.
+    */
+   public void addSubnet(Subnet subnet) {
+      checkNotNull(subnet, "subnet");
+      addSubnet(subnet.getId(), subnet.getNetworkId());
+   }
+
+   /**
+    * Adds a subnet, or moves it to another network.
+    */
+   public void addSubnet(String subnetId, String networkId) {
+      int subnet = node(TopologyNode.subnet(checkNotNull(subnetId, "subnetId")));
+      int network = node(TopologyNode.network(checkNotNull(networkId, "networkId")));
+      for (int i = 0; i < degree[subnet]; i++) {
+         int other = edges[subnet][i];
+         if (other == network) {
+            return;
+         }
+         if (nodes[other].getType() == TopologyNode.Type.NETWORK) {
+            unlink(subnet, other);
+            break;
+         }
+      }
+      link(subnet, network);
+   }
+
+   /**
+    * Removes a subnet and all its links. Its ports stay in the graph.
+    */
+   public boolean removeSubnet(String subnetId) {
+      Integer subnet = index.get(TopologyNode.subnet(checkNotNull(subnetId, "subnetId")));
+      if (subnet == null) {
+         return false;
+      }
+      remove(subnet);
+      return true;
+   }
+
+   /**
+    * Adds a port, or replaces its links. Ports whose device owner is a router ({@code network:router_interface},
+    * {@code network:router_gateway}, ...) are also linked to the router of their device id.
+    */
+   public void addPort(Port port) {
+      checkNotNull(port, "port");
+      ImmutableList.Builder<String> subnetIds = ImmutableList.builder();
+      if (port.getFixedIps() != null) {
+         for (IP ip : port.getFixedIps()) {
+            if (ip.getSubnetId() != null) {
+               subnetIds.add(ip.getSubnetId());
+            }
+         }
+      }
+      String owner = port.getDeviceOwner();
+      boolean routerPort = owner != null && port.getDeviceId() != null
+            && (owner.startsWith("network:router") || owner.equals("network:ha_router_replicated_interface"));
+      addPort(port.getId(), port.getNetworkId(), subnetIds.build(), routerPort ? port.getDeviceId() : null);
+   }
+
+   /**
+    * Adds a port, or replaces its links.
+    *
+    * @param subnetIds the subnets of the fixed IPs of the port; when empty the port is linked to its network
+    * @param routerId  the router owning the port, or null if it is not a router port
+    */
+   public void addPort(String portId, String networkId, Iterable<String> subnetIds, @Nullable String routerId) {
+      int port = node(TopologyNode.port(checkNotNull(portId, "portId")));
+      unlinkAll(port);
+      boolean linked = false;
+      for (String subnetId : subnetIds) {
+         int subnet = node(TopologyNode.subnet(subnetId));
+         if (!linked(port, subnet)) {
+            link(port, subnet);
+         }
+         linked = true;
+      }
+      if (!linked) {
+         link(port, node(TopologyNode.network(checkNotNull(networkId, "networkId"))));
+      }
+      if (routerId != null) {
+         link(port, node(TopologyNode.router(routerId)));
+      }
+   }
+
+   /**
+    * Adds the port of a router interface, as returned by {@link RouterApi#addInterfaceForSubnet}.
+    */
+   public void addInterface(String routerId, RouterInterface routerInterface) {
+      checkNotNull(routerInterface, "routerInterface");
+      checkArgument(routerInterface.getPortId() != null && routerInterface.getSubnetId() != null,
+            "router interface %s has no port or subnet", routerInterface);
+      int port = node(TopologyNode.port(routerInterface.getPortId()));
+      int subnet = node(TopologyNode.subnet(routerInterface.getSubnetId()));
+      int router = node(TopologyNode.router(checkNotNull(routerId, "routerId")));
+      unlinkAll(port);
+      link(port, subnet);
+      link(port, router);
+   }
+
+   /**
+    * Removes the port of a router interface, as returned by {@link RouterApi#removeInterfaceForSubnet}.
+    */
+   public boolean removeInterface(RouterInterface routerInterface) {
+      checkNotNull(routerInterface, "routerInterface");
+      return removePort(routerInterface.getPortId());
+   }
+
+   /**
+    * Removes a port and its links.
+    */
+   public boolean removePort(String portId) {
+      Integer port = index.get(TopologyNode.port(checkNotNull(portId, "portId")));
+      if (port == null) {
+         return false;
+      }
+      remove(port);
+      return true;
+   }
+
+   public boolean contains(TopologyNode node) {
+      return index.containsKey(node);
+   }
+
+   /**
+    * @return the number of nodes in the graph
+    */
+   public int size() {
+      return count;
+   }
+
+   /**
+    * @return the nodes linked to {@code node}
+    */
+   public Set<TopologyNode> getNeighbors(TopologyNode node) {
+      Integer from = index.get(checkNotNull(node, "node"));
+      if (from == null) {
+         return ImmutableSet.of();
+      }
+      ImmutableSet.Builder<TopologyNode> neighbors = ImmutableSet.builder();
+      for (int i = 0; i < degree[from]; i++) {
+         neighbors.add(nodes[edges[from][i]]);
+      }
+      return neighbors.build();
+   }
+
+   /**
+    * @return the networks used as gateway by at least one router
+    */
+   public Set<TopologyNode> getExternalNetworks() {
+      ImmutableSet.Builder<TopologyNode> networks = ImmutableSet.builder();
+      for (Integer network : gateways.values()) {
+         networks.add(nodes[network]);
+      }
+      return networks.build();
+   }
+
+   /**
+    * @return true if there is a path between the two nodes
+    */
+   public boolean isReachable(TopologyNode from, TopologyNode to) {
+      Integer a = index.get(checkNotNull(from, "from"));
+      Integer b = index.get(checkNotNull(to, "to"));
+      if (a == null || b == null) {
+         return false;
+      }
+      refreshComponents();
+      return find(a) == find(b);
+   }
+
+   /**
+    * @return every node reachable from {@code node}, itself included, or an empty set if it is not in the graph
+    */
+   public Set<TopologyNode> getComponent(TopologyNode node) {
+      Integer from = index.get(checkNotNull(node, "node"));
+      if (from == null) {
+         return ImmutableSet.of();
+      }
+      refreshComponents();
+      int root = find(from);
+      ImmutableSet.Builder<TopologyNode> component = ImmutableSet.builder();
+      for (int i = 0; i < size; i++) {
+         if (nodes[i] != null && find(i) == root) {
+            component.add(nodes[i]);
+         }
+      }
+      return component.build();
+   }
+
+   /**
+    * @return the number of connected components
+    */
+   public int getComponentCount() {
+      refreshComponents();
+      int components = 0;
+      for (int i = 0; i < size; i++) {
+         if (nodes[i] != null && parent[i] == i) {
+            components++;
+         }
+      }
+      return components;
+   }
+
+   /**
+    * @return a shortest path from {@code from} to {@code to}, both included, or an empty list if there is none
+    */
+   public ImmutableList<TopologyNode> getPath(TopologyNode from, TopologyNode to) {
+      Integer a = index.get(checkNotNull(from, "from"));
+      final Integer b = index.get(checkNotNull(to, "to"));
+      if (a == null || b == null || !isReachable(from, to)) {
+         return ImmutableList.of();
+      }
+      return search(a, new Target() {
+         @Override
+         public boolean matches(int node) {
+            return node == b;
+         }
+      });
+   }
+
+   /**
+    * @return a shortest path from {@code from} to any external network, both included, or an empty list if no
+    *         external network can be reached
+    */
+   public ImmutableList<TopologyNode> getPathToExternal(TopologyNode from) {
+      Integer a = index.get(checkNotNull(from, "from"));
+      if (a == null) {
+         return ImmutableList.of();
+      }
+      return search(a, new Target() {
+         @Override
+         public boolean matches(int node) {
+            return externalRefs[node] > 0;
+         }
+      });
+   }
+
+   private interface Target {
+      boolean matches(int node);
+   }
+
+   private ImmutableList<TopologyNode> search(int from, Target target) {
+      if (++generation == 0) {
+         Arrays.fill(visited, 0);
+         generation = 1;
+      }
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = from;
+      visited[from] = generation;
+      previous[from] = -1;
+      while (head < tail) {
+         int node = queue[head++];
+         if (target.matches(node)) {
+            ImmutableList.Builder<TopologyNode> reversed = ImmutableList.builder();
+            for (int hop = node; hop != -1; hop = previous[hop]) {
+               reversed.add(nodes[hop]);
+            }
+            return reversed.build().reverse();
+         }
+         int[] neighbors = edges[node];
+         for (int i = 0; i < degree[node]; i++) {
+            int next = neighbors[i];
+            if (visited[next] != generation) {
+               visited[next] = generation;
+               previous[next] = node;
+               queue[tail++] = next;
+            }
+         }
+      }
+      return ImmutableList.of();
+   }
+
+   private int node(TopologyNode node) {
+      Integer existing = index.get(node);
+      if (existing != null) {
+         return existing;
+      }
+      int id = freeCount > 0 ? free[--freeCount] : size++;
+      if (id == nodes.length) {
+         grow(nodes.length * 2);
+      }
+      nodes[id] = node;
+      edges[id] = NO_EDGES;
+      degree[id] = 0;
+      externalRefs[id] = 0;
+      parent[id] = id;
+      index.put(node, id);
+      count++;
+      return id;
+   }
+
+   private void remove(int node) {
+      unlinkAll(node);
+      index.remove(nodes[node]);
+      nodes[node] = null;
+      edges[node] = NO_EDGES;
+      if (freeCount == free.length) {
+         free = Arrays.copyOf(free, free.length * 2);
+      }
+      free[freeCount++] = node;
+      count--;
+      componentsDirty = true;
+   }
+
+   private void grow(int capacity) {
+      nodes = Arrays.copyOf(nodes, capacity);
+      edges = Arrays.copyOf(edges, capacity);
+      degree = Arrays.copyOf(degree, capacity);
+      externalRefs = Arrays.copyOf(externalRefs, capacity);
+      parent = Arrays.copyOf(parent, capacity);
+      visited = Arrays.copyOf(visited, capacity);
+      previous = Arrays.copyOf(previous, capacity);
+      queue = Arrays.copyOf(queue, capacity);
+   }
+
+   private boolean linked(int a, int b) {
+      for (int i = 0; i < degree[a]; i++) {
+         if (edges[a][i] == b) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void link(int a, int b) {
+      append(a, b);
+      append(b, a);
+      if (!componentsDirty) {
+         union(a, b);
+      }
+   }
+
+   private void append(int from, int to) {
+      if (degree[from] == edges[from].length) {
+         edges[from] = Arrays.copyOf(edges[from], Math.max(4, edges[from].length * 2));
+      }
+      edges[from][degree[from]++] = to;
+   }
+
+   private void unlink(int a, int b) {
+      detach(a, b);
+      detach(b, a);
+      componentsDirty = true;
+   }
+
+   private void unlinkAll(int node) {
+      if (degree[node] == 0) {
+         return;
+      }
+      for (int i = 0; i < degree[node]; i++) {
+         detach(edges[node][i], node);
+      }
+      degree[node] = 0;
+      componentsDirty = true;
+   }
+
+   private void detach(int from, int to) {
+      int[] neighbors = edges[from];
+      for (int i = 0; i < degree[from]; i++) {
+         if (neighbors[i] == to) {
+            neighbors[i] = neighbors[--degree[from]];
+            return;
+         }
+      }
+   }
+
+   private void refreshComponents() {
+      if (!componentsDirty) {
+         return;
+      }
+      for (int i = 0; i < size; i++) {
+         parent[i] = i;
+      }
+      for (int i = 0; i < size; i++) {
+         for (int j = 0; j < degree[i]; j++) {
+            if (edges[i][j] > i) {
+               union(i, edges[i][j]);
+            }
+         }
+      }
+      componentsDirty = false;
+   }
+
+   private int find(int node) {
+      while (parent[node] != node) {
+         parent[node] = parent[parent[node]];
+         node = parent[node];
+      }
+      return node;
+   }
+
+   private void union(int a, int b) {
+      int rootA = find(a);
+      int rootB = find(b);
+      if (rootA != rootB) {
+         if (rootA < rootB) {
+            parent[rootB] = rootA;
+         } else {
+            parent[rootA] = rootB;
+         }
+      }
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+/**
+ * A router, network, subnet or port in a {@link TopologyGraph}.
+ */
+public final class TopologyNode {
+
+   public enum Type {
+      ROUTER, NETWORK, SUBNET, PORT
+   }
+
+   private final Type type;
+   private final String id;
+
+   private TopologyNode(Type type, String id) {
+      this.type = checkNotNull(type, "type");
+      this.id = checkNotNull(id, "id");
+   }
+
+   public static TopologyNode router(String id) {
+      return new TopologyNode(Type.ROUTER, id);
+   }
+
+   public static TopologyNode network(String id) {
+      return new TopologyNode(Type.NETWORK, id);
+   }
+
+   public static TopologyNode subnet(String id) {
+      return new TopologyNode(Type.SUBNET, id);
+   }
+
+   public static TopologyNode port(String id) {
+      return new TopologyNode(Type.PORT, id);
+   }
+
+   public Type getType() {
+      return type;
+   }
+
+   public String getId() {
+      return id;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      TopologyNode that = (TopologyNode) o;
+      return type == that.type && id.equals(that.id);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(type, id);
+   }
+
+   @Override
+   public String toString() {
+      return type.name().toLowerCase() + ":" + id;
+   }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSION_CACHE_REFRESH;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.concurrent.config.ExecutorServiceModule;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the refresh of the extension cache
+ */
+@Test
+public class ExtensionCacheMockTest extends BaseNeutronApiMockTest {
+
+   public void testRefreshKeepsExtensionsOnError() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(400)));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      overrides.setProperty(EXTENSION_CACHE_REFRESH, "1");
+
+      try {
+         // the direct executor makes refreshes run in the calling thread
+         Injector injector = ContextBuilder.newBuilder("openstack-neutron")
+               .credentials("jclouds:joe", "letmein")
+               .endpoint(server.getUrl("/").toString())
+               .overrides(overrides)
+               .modules(ImmutableSet.<Module> of(new ExecutorServiceModule(MoreExecutors.newDirectExecutorService())))
+               .buildInjector();
+         NeutronApi neutronApi = injector.getInstance(NeutronApi.class);
+         ExtensionCache extensionCache = injector.getInstance(ExtensionCache.class);
+
+         assertTrue(neutronApi.getRouterApi("RegionOne").isPresent());
+         Thread.sleep(1100);
+         assertTrue(neutronApi.getRouterApi("RegionOne").isPresent());
+         assertEquals(extensionCache.getRefreshFailureCount(), 1);
+         Thread.sleep(1100);
+         assertTrue(neutronApi.getRouterApi("RegionOne").isPresent());
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertExtensions(server, uriApiVersion + "");
+         assertExtensions(server, uriApiVersion + "");
+
+         /*
+          * Check response
+          */
+         assertEquals(extensionCache.getMissCount(), 1);
+         assertEquals(extensionCache.getHitCount(), 2);
+         assertEquals(extensionCache.getRefreshCount(), 1);
+         assertEquals(extensionCache.getRefreshFailureCount(), 1);
+         assertTrue(extensionCache.getLastRefreshFailure() instanceof IllegalArgumentException);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testCachedExtensionsAreNotReloaded() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         assertTrue(neutronApi.getRouterApi("RegionOne").isPresent());
+         assertTrue(neutronApi.getFloatingIPApi("RegionOne").isPresent());
+         assertTrue(neutronApi.getFWaaSApi("RegionOne").isPresent());
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 2);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+      } finally {
+         server.shutdown();
+      }
+   }
+}
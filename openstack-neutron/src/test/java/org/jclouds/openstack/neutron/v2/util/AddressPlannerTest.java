@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+@Test(groups = "unit", testName = "AddressPlannerTest")
+public class AddressPlannerTest {
+
+   public void testSkipsReservedAndUsedAddresses() {
+      Subnet subnet = subnet("subnet-1", "net-1", "10.0.0.0/29", "10.0.0.1");
+      Port port = NeutronSnapshotTest.port("port-1", "10.0.0.3");
+      AddressPlanner planner = AddressPlanner.create(ImmutableList.of(subnet), ImmutableList.of(port));
+
+      // .0 network, .1 gateway, .3 used, .7 broadcast
+      assertEquals(planner.getFreeCount("subnet-1"), 4);
+      assertEquals(addresses(planner.allocate("subnet-1", 4)),
+            ImmutableList.of("10.0.0.2", "10.0.0.4", "10.0.0.5", "10.0.0.6"));
+      assertEquals(planner.getFreeCount("subnet-1"), 0);
+      try {
+         planner.allocate("subnet-1");
+         fail("subnet should be full");
+      } catch (IllegalStateException expected) {
+      }
+
+      assertTrue(planner.release("subnet-1", "10.0.0.5"));
+      assertFalse(planner.release("subnet-1", "10.0.0.5"));
+      assertEquals(planner.allocate("subnet-1").getIpAddress(), "10.0.0.5");
+   }
+
+   public void testAllocationPoolsAndReservations() {
+      Subnet subnet = NeutronSnapshotTest.resource(Subnet.class, subnet("subnet-1", "net-1", "10.0.0.0/24", "10.0.0.1"),
+            "allocation_pools", ImmutableSet.of(pool("10.0.0.10", "10.0.0.12"), pool("10.0.0.200", "10.0.0.201")));
+      AddressPlanner planner = AddressPlanner.create(ImmutableList.of(subnet), ImmutableList.<Port> of());
+
+      assertEquals(planner.getFreeCount("subnet-1"), 5);
+      assertFalse(planner.isFree("subnet-1", "10.0.0.13"));
+      assertTrue(planner.reserve("subnet-1", "10.0.0.11"));
+      assertFalse(planner.reserve("subnet-1", "10.0.0.11"));
+      assertEquals(addresses(planner.allocate("subnet-1", 4)),
+            ImmutableList.of("10.0.0.10", "10.0.0.12", "10.0.0.200", "10.0.0.201"));
+      assertFalse(planner.reserve("subnet-1", "10.0.0.100"));
+      assertFalse(planner.reserve("subnet-1", "192.168.0.1"));
+   }
+
+   public void testCreatePortBuilder() {
+      AddressPlanner planner = AddressPlanner.create(ImmutableList.of(
+            subnet("subnet-1", "net-1", "10.0.0.0/24", "10.0.0.1"),
+            subnet("subnet-2", "net-1", "2001:db8::/64", "2001:db8::1")), ImmutableList.<Port> of());
+
+      Port port = planner.createPortBuilder("subnet-1", "subnet-2").name("port").build();
+      assertEquals(port.getNetworkId(), "net-1");
+      assertEquals(addresses(port.getFixedIps()), ImmutableList.of("10.0.0.2", "2001:db8::2"));
+      assertTrue(port.getMacAddress().startsWith("fa:16:3e:"), port.getMacAddress());
+   }
+
+   public void testParallelAllocationHasNoCollisions() throws Exception {
+      List<Subnet> subnets = Lists.newArrayList();
+      for (int i = 0; i < 4; i++) {
+         subnets.add(subnet("subnet-" + i, "net-1", "10." + i + ".0.0/20", null));
+      }
+      final AddressPlanner planner = AddressPlanner.create(subnets, ImmutableList.<Port> of());
+
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+         List<Future<List<String>>> futures = Lists.newArrayList();
+         for (int t = 0; t < 8; t++) {
+            final String subnetId = "subnet-" + (t % 4);
+            futures.add(executor.submit(new Callable<List<String>>() {
+               @Override
+               public List<String> call() {
+                  List<String> allocated = Lists.newArrayList();
+                  for (int i = 0; i < 1000; i++) {
+                     allocated.add(planner.allocate(subnetId).getIpAddress());
+                     allocated.add(planner.allocateMac());
+                  }
+                  return allocated;
+               }
+            }));
+         }
+         Set<String> seen = Sets.newHashSet();
+         for (Future<List<String>> future : futures) {
+            for (String address : future.get()) {
+               assertTrue(seen.add(address), address);
+            }
+         }
+         assertEquals(seen.size(), 16000);
+      } finally {
+         executor.shutdownNow();
+      }
+      assertEquals(planner.getFreeCount("subnet-0"), 4094 - 2000);
+   }
+
+   private static Subnet subnet(String id, String networkId, String cidr, String gatewayIp) {
+      Subnet.CreateBuilder builder = Subnet.createBuilder(networkId, cidr);
+      if (gatewayIp != null) {
+         builder.gatewayIp(gatewayIp);
+      }
+      return NeutronSnapshotTest.resource(Subnet.class, builder.build(), "id", id);
+   }
+
+   private static AllocationPool pool(String start, String end) {
+      return AllocationPool.builder().start(start).end(end).build();
+   }
+
+   private static List<String> addresses(Iterable<IP> ips) {
+      List<String> addresses = Lists.newArrayList();
+      for (IP ip : ips) {
+         addresses.add(ip.getIpAddress());
+      }
+      return addresses;
+   }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.jclouds.openstack.neutron.v2.util.ConcurrentTasks.retryOnConflict;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "ConcurrentTasksTest")
+public class ConcurrentTasksTest {
+
+   /**
+    * Fails like the given exceptions, one per call, then returns the number of calls.
+    */
+   private static Callable<Integer> failing(final AtomicInteger calls, final RuntimeException... failures) {
+      return new Callable<Integer>() {
+         @Override
+         public Integer call() {
+            int call = calls.getAndIncrement();
+            if (call < failures.length) {
+               throw failures[call];
+            }
+            return call + 1;
+         }
+      };
+   }
+
+   private static IllegalStateException conflict() {
+      HttpResponseException cause = new HttpResponseException("conflict", null,
+            HttpResponse.builder().statusCode(409).build());
+      return new IllegalStateException(cause.getMessage(), cause);
+   }
+
+   public void testRetriesConflicts() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      assertEquals(retryOnConflict(failing(calls, conflict(), conflict()), 2, 0, TimeUnit.MILLISECONDS).call(),
+            Integer.valueOf(3));
+   }
+
+   public void testGivesUpAfterMaxRetries() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      try {
+         retryOnConflict(failing(calls, conflict(), conflict()), 1, 0, TimeUnit.MILLISECONDS).call();
+         fail("expected IllegalStateException");
+      } catch (IllegalStateException expected) {
+      }
+      assertEquals(calls.get(), 2);
+   }
+
+   public void testDoesNotRetryOtherIllegalStates() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      try {
+         retryOnConflict(failing(calls, new IllegalStateException("not a conflict")), 3, 0, TimeUnit.MILLISECONDS)
+               .call();
+         fail("expected IllegalStateException");
+      } catch (IllegalStateException expected) {
+      }
+      assertEquals(calls.get(), 1);
+   }
+}
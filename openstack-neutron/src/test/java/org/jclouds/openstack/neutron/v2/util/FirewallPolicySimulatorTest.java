@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.jclouds.openstack.neutron.v2.domain.FirewallRule;
+import org.jclouds.openstack.neutron.v2.domain.IpVersion;
+import org.jclouds.openstack.neutron.v2.util.FirewallPolicySimulator.Anomaly;
+import org.jclouds.openstack.neutron.v2.util.FirewallPolicySimulator.Decision;
+import org.jclouds.openstack.neutron.v2.util.FirewallPolicySimulator.Flow;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+@Test(groups = "unit", testName = "FirewallPolicySimulatorTest")
+public class FirewallPolicySimulatorTest {
+
+   private static FirewallRule rule(String id, String protocol, String source, String destination,
+         String destinationPort, String action) {
+      return FirewallRule.create(id, "tenant", id, null, "policy", false, protocol, IpVersion.IPV4, source,
+            destination, null, destinationPort, 0, action, true);
+   }
+
+   private static final FirewallRule SSH_ADMIN = rule("ssh-admin", "tcp", "10.0.0.0/24", null, "22", "allow");
+   private static final FirewallRule SSH_DENY = rule("ssh-deny", "tcp", null, null, "22", "deny");
+   private static final FirewallRule SSH_HOST = rule("ssh-host", "tcp", "10.0.1.5", null, "22", "allow");
+   private static final FirewallRule WEB = rule("web", "tcp", null, "192.168.1.0/24", "80:443", "allow");
+   private static final FirewallRule HTTPS = rule("https", "tcp", null, "192.168.1.10", "443", "allow");
+   private static final FirewallRule PING = rule("ping", "icmp", null, null, null, "allow");
+   private static final FirewallRule DISABLED = FirewallRule.create("disabled", "tenant", "disabled", null, "policy",
+         false, null, IpVersion.IPV4, null, null, null, null, 0, "allow", false);
+
+   private static FirewallPolicySimulator simulator() {
+      return FirewallPolicySimulator.compile(ImmutableList.of(SSH_ADMIN, DISABLED, SSH_DENY, SSH_HOST, HTTPS, WEB,
+            PING));
+   }
+
+   public void testFirstMatchDecides() {
+      FirewallPolicySimulator simulator = simulator();
+      Decision admin = simulator.evaluate(Flow.of("tcp", "10.0.0.7", 40000, "192.168.1.10", 22));
+      assertEquals(admin.getRule(), SSH_ADMIN);
+      assertTrue(admin.isAllowed());
+
+      Decision other = simulator.evaluate(Flow.of("TCP", "10.0.1.7", 40000, "192.168.1.10", 22));
+      assertEquals(other.getRule(), SSH_DENY);
+      assertFalse(other.isAllowed());
+
+      assertEquals(simulator.evaluate(Flow.of("tcp", "10.9.9.9", 40000, "192.168.1.10", 443)).getRule(), HTTPS);
+      assertEquals(simulator.evaluate(Flow.of("tcp", "10.9.9.9", 40000, "192.168.1.11", 443)).getRule(), WEB);
+      assertEquals(simulator.evaluate(Flow.of("icmp", "10.9.9.9", 0, "172.16.0.1", 0)).getRule(), PING);
+      assertEquals(simulator.getRules().size(), 6);
+   }
+
+   public void testImplicitDeny() {
+      Decision decision = simulator().evaluate(Flow.of("udp", "10.0.0.7", 40000, "192.168.1.10", 53));
+      assertNull(decision.getRule());
+      assertEquals(decision.getAction(), FirewallPolicySimulator.DENY);
+      assertFalse(decision.isAllowed());
+   }
+
+   public void testBatch() {
+      List<Decision> decisions = simulator().evaluate(ImmutableList.of(
+            Flow.of("tcp", "10.0.0.7", 40000, "192.168.1.10", 22),
+            Flow.of("udp", "10.0.0.7", 40000, "192.168.1.10", 22)));
+      assertEquals(decisions.size(), 2);
+      assertTrue(decisions.get(0).isAllowed());
+      assertFalse(decisions.get(1).isAllowed());
+   }
+
+   public void testAnomalies() {
+      List<Anomaly> anomalies = simulator().findAnomalies();
+      assertEquals(anomalies.size(), 2);
+      assertEquals(anomalies.get(0).getType(), Anomaly.Type.SHADOWED);
+      assertEquals(anomalies.get(0).getRule(), SSH_HOST);
+      assertEquals(anomalies.get(0).getCoveredBy(), SSH_DENY);
+      assertEquals(anomalies.get(1).getType(), Anomaly.Type.REDUNDANT);
+      assertEquals(anomalies.get(1).getRule(), HTTPS);
+      assertEquals(anomalies.get(1).getCoveredBy(), WEB);
+   }
+
+   public void testMatchesLinearScan() {
+      Random random = new Random(7);
+      String[] protocols = { "tcp", "udp", "icmp", null };
+      List<FirewallRule> rules = Lists.newArrayList();
+      for (int i = 0; i < 2000; i++) {
+         String protocol = protocols[random.nextInt(protocols.length)];
+         String port = null;
+         if (("tcp".equals(protocol) || "udp".equals(protocol)) && random.nextBoolean()) {
+            int min = random.nextInt(1024);
+            port = min + ":" + (min + random.nextInt(64));
+         }
+         rules.add(rule("rule-" + i, protocol,
+               random.nextBoolean() ? "10." + random.nextInt(4) + ".0.0/" + (14 + random.nextInt(11)) : null,
+               random.nextInt(3) == 0 ? "10.0." + random.nextInt(4) + "." + random.nextInt(4) : null, port,
+               random.nextBoolean() ? "allow" : "deny"));
+      }
+      FirewallPolicySimulator simulator = FirewallPolicySimulator.compile(rules);
+      for (int i = 0; i < 5000; i++) {
+         String protocol = protocols[random.nextInt(protocols.length - 1)];
+         String source = "10." + random.nextInt(4) + "." + random.nextInt(4) + "." + random.nextInt(4);
+         String destination = "10.0." + random.nextInt(4) + "." + random.nextInt(4);
+         int port = random.nextInt(1100);
+         FirewallRule expected = null;
+         for (FirewallRule rule : rules) {
+            if (matches(rule, protocol, source, destination, port)) {
+               expected = rule;
+               break;
+            }
+         }
+         assertEquals(simulator.evaluate(Flow.of(protocol, source, 40000, destination, port)).getRule(), expected);
+      }
+   }
+
+   private static boolean matches(FirewallRule rule, String protocol, String source, String destination, int port) {
+      if (rule.getProtocol() != null && !rule.getProtocol().equals(protocol)) {
+         return false;
+      }
+      if (rule.getSourceIpAddress() != null && !Cidr.parse(rule.getSourceIpAddress()).contains(source)) {
+         return false;
+      }
+      if (rule.getDestinationIpAddress() != null && !Cidr.parse(rule.getDestinationIpAddress()).contains(destination)) {
+         return false;
+      }
+      if (rule.getDestinationPort() != null) {
+         String[] range = rule.getDestinationPort().split(":");
+         return Integer.parseInt(range[0]) <= port && port <= Integer.parseInt(range[1]);
+      }
+      return true;
+   }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests FloatingIPPool allocation, refill and release
+ */
+@Test
+public class FloatingIPPoolMockTest extends BaseNeutronApiMockTest {
+
+   private static final String NETWORK = "376da547-b977-4cfe-9cba-275c80debf57";
+
+   public void testStartAndAllocate() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody(stringFromResource("/floatingip_update_dissociate_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_update_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody(stringFromResource("/floatingip_update_dissociate_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FloatingIPPool pool = FloatingIPPool.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .network(NETWORK, 2)
+               .adoptExisting()
+               .build();
+
+         pool.start();
+         assertEquals(pool.getAvailable(NETWORK), 2);
+
+         FloatingIP floatingIP = pool.allocate(NETWORK, "fc861431-0e6c-4842-a0ed-e2363f9bc3a8");
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 6);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/floatingips",
+               "/floatingip_pool_create_request.json");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/floatingips/61cea855-49cb-4846-997d-801b70c71bdd",
+               "/floatingip_update_request.json");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/floatingips",
+               "/floatingip_pool_create_request.json");
+
+         /*
+          * Check response
+          */
+         assertEquals(floatingIP.getPortId(), "fc861431-0e6c-4842-a0ed-e2363f9bc3a8");
+         assertEquals(pool.getAvailable(NETWORK), 2);
+         assertEquals(pool.getPending(NETWORK), 0);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testStartLeavesExistingIPs() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody(stringFromResource("/floatingip_update_dissociate_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_get_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FloatingIPPool pool = FloatingIPPool.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .network(NETWORK, 1)
+               .build();
+
+         // the unassociated floating IPs of the tenant are neither listed nor handed out
+         pool.start();
+         assertEquals(pool.getAvailable(NETWORK), 1);
+         assertEquals(pool.drain(), 1);
+
+         // the pool no longer owns the floating IP it deleted
+         FloatingIP deleted = neutronApi.getFloatingIPApi("RegionOne").get()
+               .get("2f245a7b-796b-4f26-9cf9-9e82d248fda7");
+         try {
+            pool.release(deleted);
+            fail("only the floating IPs of the pool can be released");
+         } catch (IllegalArgumentException expected) {
+         }
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 5);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/floatingips",
+               "/floatingip_pool_create_request.json");
+         assertRequest(server.takeRequest(), "DELETE",
+               uriApiVersion + "/floatingips/2f245a7b-796b-4f26-9cf9-9e82d248fda7");
+         assertRequest(server.takeRequest(), "GET",
+               uriApiVersion + "/floatingips/2f245a7b-796b-4f26-9cf9-9e82d248fda7");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testAllocateSkipsStaleAndFallsBackToCreate() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(404)));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/floatingip_create_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody(stringFromResource("/floatingip_update_dissociate_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FloatingIPPool pool = FloatingIPPool.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .network(NETWORK, 1)
+               .adoptExisting()
+               .build();
+
+         pool.start();
+         FloatingIP floatingIP = pool.allocate(NETWORK, "ce705c24-c1ef-408a-bda3-7bbd946164ab");
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 6);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+         assertRequest(server.takeRequest(), "PUT",
+               uriApiVersion + "/floatingips/61cea855-49cb-4846-997d-801b70c71bdd");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/floatingips", "/floatingip_create_request.json");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/floatingips",
+               "/floatingip_pool_create_request.json");
+
+         /*
+          * Check response
+          */
+         assertEquals(floatingIP.getPortId(), "ce705c24-c1ef-408a-bda3-7bbd946164ab");
+         assertEquals(pool.getAvailable(NETWORK), 1);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testAllocateConflictKeepsReservedIP() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(409)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FloatingIPPool pool = FloatingIPPool.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .network(NETWORK, 1)
+               .adoptExisting()
+               .build();
+
+         pool.start();
+         try {
+            pool.allocate(NETWORK, "fc861431-0e6c-4842-a0ed-e2363f9bc3a8");
+            fail("a conflict should be rethrown");
+         } catch (IllegalStateException expected) {
+         }
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/floatingips/61cea855-49cb-4846-997d-801b70c71bdd",
+               "/floatingip_update_request.json");
+
+         /*
+          * Check response
+          */
+         assertEquals(pool.getAvailable(NETWORK), 1);
+         assertEquals(pool.getPending(NETWORK), 0);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testReleaseReturnsToReserve() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_update_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(400)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/floatingip_update_dissociate_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FloatingIPPool pool = FloatingIPPool.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .network(NETWORK, 1)
+               .adoptExisting()
+               .build();
+
+         pool.start();
+         FloatingIP floatingIP = pool.allocate(NETWORK, "fc861431-0e6c-4842-a0ed-e2363f9bc3a8");
+         assertEquals(pool.getAvailable(NETWORK), 0);
+         assertEquals(pool.getRefillFailureCount(), 1);
+         assertTrue(pool.getLastRefillFailure() instanceof IllegalArgumentException);
+
+         assertTrue(pool.release(floatingIP));
+         assertEquals(pool.getAvailable(NETWORK), 1);
+         assertFalse(pool.release(floatingIP));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 7);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/floatingips/61cea855-49cb-4846-997d-801b70c71bdd",
+               "/floatingip_update_request.json");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/floatingips",
+               "/floatingip_pool_create_request.json");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/floatingips/2f245a7b-796b-4f26-9cf9-9e82d248fda7",
+               "/floatingip_update_dissociate_request.json");
+         assertRequest(server.takeRequest(), "DELETE",
+               uriApiVersion + "/floatingips/2f245a7b-796b-4f26-9cf9-9e82d248fda7");
+      } finally {
+         server.shutdown();
+      }
+   }
+}
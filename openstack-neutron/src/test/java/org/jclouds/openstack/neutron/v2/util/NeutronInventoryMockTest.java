@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests that NeutronInventory views return what the stored resources did
+ */
+@Test
+public class NeutronInventoryMockTest extends BaseNeutronApiMockTest {
+
+   public void testLoad() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      for (int i = 0; i < 2; i++) {
+         server.enqueue(addCommonHeaders(
+               new MockResponse().setResponseCode(200).setBody(stringFromResource("/network_list_response.json"))));
+         server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+               .setBody(stringFromResource("/teardown_subnet_list_response.json"))));
+         server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+               .setBody(stringFromResource("/teardown_port_list_response.json"))));
+      }
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         NeutronInventory inventory = NeutronInventory.load(neutronApi, "RegionOne");
+         List<Network> networks = neutronApi.getNetworkApi("RegionOne").list().concat().toList();
+         List<Subnet> subnets = neutronApi.getSubnetApi("RegionOne").list().concat().toList();
+         List<Port> ports = neutronApi.getPortApi("RegionOne").list().concat().toList();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         for (int i = 0; i < 2; i++) {
+            assertRequest(server.takeRequest(), "GET", uriApiVersion + "/networks");
+            assertRequest(server.takeRequest(), "GET", uriApiVersion + "/subnets");
+            assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         }
+
+         /*
+          * Check response
+          */
+         assertEquals(inventory.getNetworks().size(), networks.size());
+         for (Network network : networks) {
+            assertSameGetters(inventory.getNetwork(network.getId()), network);
+         }
+         assertEquals(inventory.getSubnets().size(), subnets.size());
+         for (Subnet subnet : subnets) {
+            assertSameGetters(inventory.getSubnet(subnet.getId()), subnet);
+         }
+         assertEquals(inventory.getPorts().size(), ports.size());
+         for (Port port : ports) {
+            assertSameGetters(inventory.getPort(port.getId()), port);
+         }
+         assertNull(inventory.getPort("unknown"));
+
+         // adding a stored port again replaces it instead of adding a row
+         inventory.addPorts(ports);
+         assertEquals(inventory.getPorts().size(), ports.size());
+         assertSameGetters(inventory.getPorts().get(0), ports.get(0));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static void assertSameGetters(Object view, Object resource) throws Exception {
+      assertNotNull(view);
+      for (Method getter : view.getClass().getDeclaredMethods()) {
+         if (getter.getName().startsWith("get") && getter.getParameterTypes().length == 0) {
+            assertEquals(getter.invoke(view), resource.getClass().getMethod(getter.getName()).invoke(resource),
+                  getter.getName());
+         }
+      }
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+import org.jclouds.openstack.neutron.v2.domain.VIFType;
+import org.jclouds.openstack.neutron.v2.domain.VNICType;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "NeutronInventoryTest")
+public class NeutronInventoryTest {
+
+   public void testMacRoundTrips() {
+      assertEquals(NeutronInventory.unpackMac(NeutronInventory.packMac("fa:16:3e:a6:50:c1")), "fa:16:3e:a6:50:c1");
+      assertEquals(NeutronInventory.unpackMac(NeutronInventory.packMac("FF:FF:FF:FF:FF:FF")), "ff:ff:ff:ff:ff:ff");
+      assertNull(NeutronInventory.unpackMac(NeutronInventory.packMac(null)));
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testInvalidMac() {
+      NeutronInventory.packMac("fa:16:3e:a6:50");
+   }
+
+   public void testAddressesRoundTrip() {
+      for (String address : new String[] { "10.0.0.5", "0.0.0.0", "255.255.255.255", "2001:db8::1", "::",
+            "fe80::f816:3eff:fea6:50c1" }) {
+         byte[] bytes = NeutronInventory.toAddress(address);
+         assertEquals(NeutronInventory.unpackAddress(NeutronInventory.addressHigh(bytes),
+               NeutronInventory.addressLow(bytes)), address);
+      }
+      assertNull(NeutronInventory.unpackAddress(NeutronInventory.addressHigh(null), NeutronInventory.addressLow(null)));
+   }
+
+   public void testPacking() {
+      assertNull(NeutronInventory.unpackBoolean(NeutronInventory.packBoolean(null)));
+      assertEquals(NeutronInventory.unpackBoolean(NeutronInventory.packBoolean(true)), Boolean.TRUE);
+      assertEquals(NeutronInventory.unpackBoolean(NeutronInventory.packBoolean(false)), Boolean.FALSE);
+      assertNull(NeutronInventory.unpackInteger(NeutronInventory.packInteger(null)));
+      assertEquals(NeutronInventory.unpackInteger(NeutronInventory.packInteger(-7)), Integer.valueOf(-7));
+   }
+
+   public void testPortFlagsKeepEveryVifType() {
+      NetworkStatus status = NeutronInventory.STATUSES[NeutronInventory.STATUSES.length - 1];
+      VNICType vnicType = NeutronInventory.VNIC_TYPES[NeutronInventory.VNIC_TYPES.length - 1];
+      for (VIFType vifType : NeutronInventory.VIF_TYPES) {
+         int flags = NeutronInventory.packEnum(status) << NeutronInventory.Ports.STATUS
+               | NeutronInventory.packEnum(vifType) << NeutronInventory.Ports.VIF_TYPE
+               | NeutronInventory.packEnum(vnicType) << NeutronInventory.Ports.VNIC_TYPE;
+         assertEquals(NeutronInventory.unpackEnum(NeutronInventory.STATUSES,
+               NeutronInventory.field(flags, NeutronInventory.Ports.STATUS, NeutronInventory.STATUS_BITS)), status);
+         assertEquals(NeutronInventory.unpackEnum(NeutronInventory.VIF_TYPES,
+               NeutronInventory.field(flags, NeutronInventory.Ports.VIF_TYPE, NeutronInventory.VIF_TYPE_BITS)),
+               vifType);
+         assertEquals(NeutronInventory.unpackEnum(NeutronInventory.VNIC_TYPES,
+               NeutronInventory.field(flags, NeutronInventory.Ports.VNIC_TYPE, NeutronInventory.VNIC_TYPE_BITS)),
+               vnicType);
+      }
+   }
+}
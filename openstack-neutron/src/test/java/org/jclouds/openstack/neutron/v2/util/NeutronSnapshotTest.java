@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.domain.AddressPair;
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.ExternalGatewayInfo;
+import org.jclouds.openstack.neutron.v2.domain.ExtraDhcpOption;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.HostRoute;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.NetworkSegment;
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+import org.jclouds.openstack.neutron.v2.domain.NetworkType;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.domain.VIFType;
+import org.jclouds.openstack.neutron.v2.domain.VNICType;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+@Test(groups = "unit", testName = "NeutronSnapshotTest")
+public class NeutronSnapshotTest {
+
+   /**
+    * Rebuilds a resource through its deserialization constructor, replacing some properties. Builders cannot set ids
+    * and return subclasses, which do not equal the resources read from a snapshot.
+    */
+   static <T> T resource(Class<T> type, Object source, Object... properties) {
+      SnapshotFormat.Schema schema = SnapshotFormat.schema(type);
+      Object[] values = new Object[schema.properties.size()];
+      for (int i = 0; i < values.length; i++) {
+         values[i] = schema.get(source, i);
+      }
+      for (int i = 0; i < properties.length; i += 2) {
+         values[schema.position((String) properties[i])] = properties[i + 1];
+      }
+      return type.cast(schema.create(values));
+   }
+
+   static Port port(String id, String address) {
+      return resource(Port.class, Port.createBuilder("net-1").name("port-" + id).macAddress("fa:16:3e:00:00:01")
+            .fixedIps(ImmutableSet.of(IP.builder().ipAddress(address).subnetId("subnet-1").build()))
+            .securityGroups(ImmutableSet.of("default", "web")).build(), "id", id, "status", NetworkStatus.ACTIVE);
+   }
+
+   private NeutronSnapshotWriter writer() {
+      Port full = resource(Port.class, Port.createBuilder("net-1").name("full").adminStateUp(true)
+            .macAddress("fa:16:3e:00:00:02").deviceId("vm-1").deviceOwner("compute:nova").tenantId("tenant")
+            .fixedIps(ImmutableSet.of(IP.builder().ipAddress("10.0.0.2").subnetId("subnet-1").build(),
+                  IP.builder().ipAddress("2001:db8::2").subnetId("subnet-2").build()))
+            .allowedAddressPairs(ImmutableSet.of(AddressPair.builder("fa:16:3e:00:00:03", "10.0.0.3").build()))
+            .extraDhcpOptions(ImmutableSet.of(ExtraDhcpOption.builder().optionName("bootfile-name")
+                  .optionValue("pxelinux.0").build()))
+            .vnicType(VNICType.NORMAL).hostId("compute-1").portSecurity(true).qosRxtxFactor(2)
+            .profile(ImmutableMap.<String, Object> of("pci_slot", "0000:0a:00.1", "physical_network", "physnet1"))
+            .build(), "id", "port-full", "status", NetworkStatus.DOWN, "binding:vif_type", VIFType.OVS,
+            "binding:vif_details", ImmutableMap.<String, Object> of("port_filter", true, "ratio", 0.5, "ports",
+                  ImmutableList.of("a", "b")));
+      Network network = resource(Network.class, Network.createBuilder("net-1").adminStateUp(true).shared(false)
+            .networkType(NetworkType.VLAN).physicalNetworkName("physnet1").segmentationId(100).external(false)
+            .segments(ImmutableSet.of(NetworkSegment.builder().networkType(NetworkType.VXLAN).segmentationId(7)
+                  .build())).build(), "id", "net-1", "subnets", ImmutableSet.of("subnet-1", "subnet-2"));
+      Subnet subnet = resource(Subnet.class, Subnet.createBuilder("net-1", "10.0.0.0/24").name("subnet")
+            .ipVersion(4).gatewayIp("10.0.0.1").enableDhcp(true)
+            .allocationPools(ImmutableSet.of(AllocationPool.builder().start("10.0.0.2").end("10.0.0.254").build()))
+            .hostRoutes(ImmutableSet.of(HostRoute.builder().destinationCidr("0.0.0.0/0").nextHop("10.0.0.1")
+                  .build())).build(), "id", "subnet-1");
+      Router router = resource(Router.class, Router.createBuilder().name("router").adminStateUp(true)
+            .externalGatewayInfo(ExternalGatewayInfo.builder().networkId("ext").enableSnat(true).build()).build(),
+            "id", "router-1", "status", NetworkStatus.ACTIVE);
+      FloatingIP floatingIP = resource(FloatingIP.class, FloatingIP.createBuilder("ext").portId("port-full")
+            .fixedIpAddress("10.0.0.2").build(), "id", "fip-1", "floating_ip_address", "172.24.4.10");
+      Rule rule = resource(Rule.class, Rule.createBuilder(RuleDirection.INGRESS, "sg-1").protocol(RuleProtocol.TCP)
+            .portRangeMin(22).portRangeMax(22).remoteIpPrefix("0.0.0.0/0").build(), "id", "rule-1");
+      SecurityGroup securityGroup = resource(SecurityGroup.class, SecurityGroup.createBuilder().name("sg")
+            .description("ssh").build(), "id", "sg-1", "security_group_rules", ImmutableList.of(rule));
+
+      return new NeutronSnapshotWriter()
+            .addPorts(ImmutableList.of(port("port-b", "10.0.0.5"), full, port("port-a", "10.0.0.4")))
+            .addNetworks(ImmutableList.of(network))
+            .addSubnets(ImmutableList.of(subnet))
+            .addRouters(ImmutableList.of(router))
+            .addFloatingIPs(ImmutableList.of(floatingIP))
+            .addSecurityGroups(ImmutableList.of(securityGroup))
+            .addRules(ImmutableList.of(rule));
+   }
+
+   public void testRoundTrip() {
+      NeutronSnapshotWriter writer = writer();
+      NeutronSnapshot snapshot = NeutronSnapshot.read(ByteBuffer.wrap(writer.toByteArray()));
+
+      assertEquals(snapshot.getVersion(), SnapshotFormat.VERSION);
+      assertEquals(snapshot.getPorts().size(), 3);
+      assertEquals(snapshot.getPorts().get(0), port("port-b", "10.0.0.5"));
+      Port full = snapshot.getPort("port-full");
+      assertEquals(full, snapshot.getPorts().get(1));
+      assertEquals(full.getVifDetails().get("ratio"), 0.5);
+      assertEquals(full.getFixedIps().size(), 2);
+      assertEquals(full.getStatus(), NetworkStatus.DOWN);
+      assertEquals(snapshot.getPort("port-a"), port("port-a", "10.0.0.4"));
+      assertNull(snapshot.getPort("port-c"));
+
+      assertEquals(snapshot.getNetwork("net-1").getSegments().iterator().next().getSegmentationId(),
+            Integer.valueOf(7));
+      assertEquals(snapshot.getSubnet("subnet-1").getHostRoutes().size(), 1);
+      assertEquals(snapshot.getRouter("router-1").getExternalGatewayInfo().getNetworkId(), "ext");
+      assertEquals(snapshot.getFloatingIP("fip-1").getFloatingIpAddress(), "172.24.4.10");
+      assertEquals(snapshot.getSecurityGroup("sg-1").getRules(), ImmutableList.of(snapshot.getRule("rule-1")));
+      assertEquals(snapshot.getRule("rule-1").getPortRangeMin(), Integer.valueOf(22));
+   }
+
+   public void testEqualsOriginal() throws Exception {
+      File file = File.createTempFile("neutron", ".snapshot");
+      try {
+         List<Port> ports = ImmutableList.of(port("port-1", "10.0.0.1"), port("port-2", "10.0.0.2"));
+         new NeutronSnapshotWriter().addPorts(ports).writeTo(file);
+         NeutronSnapshot snapshot = NeutronSnapshot.open(file);
+         assertEquals(snapshot.getPorts(), ports);
+         assertEquals(snapshot.getNetworks(), ImmutableList.of());
+      } finally {
+         file.delete();
+      }
+   }
+
+   public void testRejectsOtherFiles() {
+      try {
+         NeutronSnapshot.read(ByteBuffer.wrap(new byte[] { 0x7b, 0x7d, 0, 0, 0, 0, 0, 0 }));
+         fail("expected IllegalArgumentException");
+      } catch (IllegalArgumentException e) {
+         assertEquals(e.getMessage(), "not a Neutron snapshot");
+      }
+   }
+}
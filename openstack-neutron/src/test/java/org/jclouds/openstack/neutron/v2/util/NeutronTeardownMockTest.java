@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests NeutronTeardown ordering and conflict handling
+ */
+@Test
+public class NeutronTeardownMockTest extends BaseNeutronApiMockTest {
+
+   private static final String NETWORK = "6aeaf34a-c482-4bd3-9dc3-7faf36412f12";
+   private static final String SUBNET = "a2f1f29d-571b-4533-907f-5803ab96ead1";
+   private static final String PORT = "ebe69f1e-bc26-4db5-bed0-c0afb4afe3db";
+   private static final String ROUTER = "8604a0de-7f6b-409a-a47c-a1cc7bc77b2e";
+   private static final String EXTERNAL = "8ca37218-28ff-41cb-9b10-039601ea7e6b";
+   private static final String FLOATING_IP = "2f245a7b-796b-4f26-9cf9-9e82d248fda7";
+
+   private void enqueueInventory(MockWebServer server) {
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/teardown_router_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/teardown_port_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/teardown_subnet_list_response.json"))));
+   }
+
+   private NeutronTeardown teardown(NeutronApi neutronApi, int maxRetries) {
+      return NeutronTeardown.builder(neutronApi, "RegionOne")
+            .executor(MoreExecutors.newDirectExecutorService())
+            .maxConcurrency(1)
+            .maxRetries(maxRetries)
+            .retryDelay(0, TimeUnit.MILLISECONDS)
+            .build();
+   }
+
+   public void testPlan() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      enqueueInventory(server);
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+
+         TeardownPlan plan = teardown(neutronApi, 0).plan(ImmutableSet.of(NETWORK));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 5);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/routers");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/subnets");
+
+         /*
+          * Check response: the DHCP port and the other network are left alone
+          */
+         assertEquals(plan.getPorts(), ImmutableList.of(PORT));
+         assertEquals(plan.getRouterInterfaces().size(), 1);
+         assertEquals(plan.getRouterInterfaces().get(0).getRouterId(), ROUTER);
+         assertEquals(plan.getRouterInterfaces().get(0).getSubnetId(), SUBNET);
+         assertEquals(plan.getRouters(), ImmutableList.of(ROUTER));
+         assertEquals(plan.getSubnets(), ImmutableList.of(SUBNET));
+         assertEquals(plan.getNetworks(), ImmutableList.of(NETWORK));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testTeardownRetriesConflicts() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      enqueueInventory(server);
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/router_add_interface_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(409)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+
+         TeardownResult result = teardown(neutronApi, 1).teardown(ImmutableSet.of(NETWORK));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 11);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/routers");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/subnets");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/ports/" + PORT);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/routers/" + ROUTER + "/remove_router_interface",
+               "/router_remove_interface_subnet_request.json");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/routers/" + ROUTER);
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/subnets/" + SUBNET);
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/subnets/" + SUBNET);
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/networks/" + NETWORK);
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isComplete());
+         assertEquals(result.getRemoved(),
+               ImmutableSet.of(PORT, ROUTER + "/" + SUBNET, ROUTER, SUBNET, NETWORK));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testExternalNetworkClearsGatewaysAndFloatingIPs() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/teardown_router_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/teardown_external_port_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/teardown_subnet_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/router_update_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+
+         // the router keeps its interface on another network, so only its gateway is cleared
+         TeardownResult result = teardown(neutronApi, 0).teardown(ImmutableSet.of(EXTERNAL));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 8);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/routers");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/subnets");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/floatingips/" + FLOATING_IP);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/routers/" + ROUTER,
+               "/router_clear_gateway_request.json");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/networks/" + EXTERNAL);
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isComplete());
+         assertEquals(result.getRemoved(), ImmutableSet.of(FLOATING_IP, ROUTER + "/gateway", EXTERNAL));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testFailedLevelSkipsTheRest() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      enqueueInventory(server);
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(409)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+
+         TeardownResult result = teardown(neutronApi, 0).teardown(ImmutableSet.of(NETWORK));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 6);
+
+         /*
+          * Check response
+          */
+         assertFalse(result.isComplete());
+         assertTrue(result.getFailures().get(PORT) instanceof IllegalStateException);
+         assertEquals(result.getSkipped(), ImmutableSet.of(ROUTER + "/" + SUBNET, ROUTER, SUBNET, NETWORK));
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests NeutronWatcher diffing and poll coalescing
+ */
+@Test
+public class NeutronWatcherMockTest extends BaseNeutronApiMockTest {
+
+   public void testChangesBetweenPolls() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/floatingip_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/watcher_floatingip_list_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         NeutronWatcher watcher = NeutronWatcher.builder(neutronApi, "RegionOne").build();
+         final List<ChangeEvent<FloatingIP>> events = Lists.newArrayList();
+         watcher.subscribeFloatingIPs(new ChangeListener<FloatingIP>() {
+            @Override
+            public void onChange(ChangeEvent<FloatingIP> event) {
+               events.add(event);
+            }
+         });
+
+         watcher.poll();
+         assertEquals(types(events), ImmutableList.of(ChangeEvent.Type.ADDED, ChangeEvent.Type.ADDED));
+         events.clear();
+         watcher.poll();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+
+         /*
+          * Check response
+          */
+         assertEquals(types(events),
+               ImmutableList.of(ChangeEvent.Type.CHANGED, ChangeEvent.Type.ADDED, ChangeEvent.Type.REMOVED));
+         assertEquals(events.get(0).getId(), "61cea855-49cb-4846-997d-801b70c71bdd");
+         assertNull(events.get(0).getPrevious().getPortId());
+         assertEquals(events.get(0).getCurrent().getPortId(), "fc861431-0e6c-4842-a0ed-e2363f9bc3a8");
+         assertEquals(events.get(1).getId(), "a5e3a3b0-8f1c-4a4e-9d3e-6f0c9e1b7d42");
+         assertEquals(events.get(2).getId(), "2f245a7b-796b-4f26-9cf9-9e82d248fda7");
+         assertNull(events.get(2).getCurrent());
+         assertEquals(watcher.getPollFailureCount(), 0);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testSubscribersShareOnePoll() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         NeutronWatcher watcher = NeutronWatcher.builder(neutronApi, "RegionOne").build();
+         final List<String> first = Lists.newArrayList();
+         final List<String> second = Lists.newArrayList();
+         watcher.subscribePorts(new ChangeListener<Port>() {
+            @Override
+            public void onChange(ChangeEvent<Port> event) {
+               first.add(event.getId());
+            }
+         });
+         watcher.subscribePorts(new ChangeListener<Port>() {
+            @Override
+            public void onChange(ChangeEvent<Port> event) {
+               throw new IllegalStateException("listener failure");
+            }
+         });
+
+         watcher.poll();
+
+         // a late subscriber is brought up to date from the last poll without a new request
+         watcher.subscribePorts(new ChangeListener<Port>() {
+            @Override
+            public void onChange(ChangeEvent<Port> event) {
+               second.add(event.getId());
+            }
+         });
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 2);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+
+         /*
+          * Check response
+          */
+         assertEquals(first.size(), 12);
+         assertEquals(second, first);
+         assertEquals(watcher.getListenerFailureCount(), 12);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static List<ChangeEvent.Type> types(List<? extends ChangeEvent<?>> events) {
+      List<ChangeEvent.Type> types = Lists.newArrayList();
+      for (ChangeEvent<?> event : events) {
+         types.add(event.getType());
+      }
+      return types;
+   }
+}
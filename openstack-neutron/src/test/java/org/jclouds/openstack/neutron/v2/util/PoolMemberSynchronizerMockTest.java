@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Member;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests PoolMemberSynchronizer diffing, ordered drain and failure reporting
+ */
+@Test
+public class PoolMemberSynchronizerMockTest extends BaseNeutronApiMockTest {
+
+   private static final String POOL = "72741b06-df4d-4715-b142-276b6bce75ab";
+
+   private static final List<Member.CreateMember> DESIRED = ImmutableList.of(
+         Member.createBuilder(POOL, "10.0.0.5", 80).weight(1).build(),
+         Member.createBuilder(POOL, "10.0.0.6", 80).weight(5).build(),
+         Member.createBuilder(POOL, "10.0.0.9", 80).weight(1).build());
+
+   public void testSync() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/extension_list_with_lbaas_v1_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/lbaas/v1/member_sync_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody(stringFromResource("/lbaas/v1/member_create_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/lbaas/v1/member_update_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/lbaas/v1/member_update_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         final List<String> progress = Lists.newArrayList();
+         final Map<MemberChange.Type, Long> finished = Maps.newEnumMap(MemberChange.Type.class);
+         PoolMemberSynchronizer synchronizer = PoolMemberSynchronizer.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .drainDelay(200, TimeUnit.MILLISECONDS)
+               .listener(new PoolMemberSynchronizer.Listener() {
+                  @Override
+                  public void onChange(MemberChange change, Throwable failure, int done, int total) {
+                     progress.add(change.getType() + " " + done + "/" + total);
+                     finished.put(change.getType(), System.nanoTime());
+                  }
+               })
+               .build();
+
+         MemberSyncResult result = synchronizer.sync(POOL, DESIRED);
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 7);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/lb/members",
+               "/lbaas/v1/member_sync_create_request.json");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/lb/members/396f12f8-521e-4b91-8e21-2e003500433a",
+               "/lbaas/v1/member_sync_update_request.json");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/lb/members/701b531b-111a-4f21-ad85-4795b7b12af6",
+               "/lbaas/v1/member_sync_drain_request.json");
+         assertRequest(server.takeRequest(), "DELETE",
+               uriApiVersion + "/lb/members/701b531b-111a-4f21-ad85-4795b7b12af6");
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isSuccess());
+         assertEquals(result.getDiff().getToCreate().size(), 1);
+         assertEquals(result.getDiff().getToUpdate().size(), 1);
+         assertEquals(result.getDiff().getToDelete().size(), 1);
+         assertEquals(result.getCompleted().size(), 4);
+         assertEquals(progress, ImmutableList.of("CREATE 1/4", "UPDATE 2/4", "DRAIN 3/4", "DELETE 4/4"));
+         // the drained member is deleted after the drain delay
+         assertTrue(finished.get(MemberChange.Type.DELETE) - finished.get(MemberChange.Type.DRAIN)
+               >= TimeUnit.MILLISECONDS.toNanos(200));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testFailedDrainSkipsDelete() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/extension_list_with_lbaas_v1_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/lbaas/v1/member_sync_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(409)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         PoolMemberSynchronizer synchronizer = PoolMemberSynchronizer.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .build();
+
+         MemberSyncResult result = synchronizer.sync(POOL, ImmutableList.of(DESIRED.get(0),
+               Member.createBuilder(POOL, "10.0.0.6", 80).weight(1).build()));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/lb/members/701b531b-111a-4f21-ad85-4795b7b12af6",
+               "/lbaas/v1/member_sync_drain_request.json");
+
+         /*
+          * Check response
+          */
+         assertFalse(result.isSuccess());
+         assertTrue(result.getCompleted().isEmpty());
+         MemberChange failed = result.getFailures().keySet().iterator().next();
+         assertEquals(failed.getType(), MemberChange.Type.DRAIN);
+         assertEquals(failed.getMemberId(), "701b531b-111a-4f21-ad85-4795b7b12af6");
+         assertTrue(result.getFailures().get(failed) instanceof IllegalStateException);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testDryRun() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/extension_list_with_lbaas_v1_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/lbaas/v1/member_sync_list_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         PoolMemberSynchronizer synchronizer = PoolMemberSynchronizer.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .dryRun(true)
+               .build();
+
+         MemberSyncResult result = synchronizer.sync(POOL, DESIRED);
+
+         assertEquals(server.getRequestCount(), 3);
+         assertTrue(result.isDryRun());
+         assertEquals(result.getDiff().getToCreate().get(0).getAddress(), "10.0.0.9");
+         assertNull(result.getDiff().getToCreate().get(0).getMemberId());
+         assertEquals(result.getDiff().getToUpdate().get(0).getMemberId(), "396f12f8-521e-4b91-8e21-2e003500433a");
+         assertEquals(result.getDiff().getToDelete().get(0).getMemberId(), "701b531b-111a-4f21-ad85-4795b7b12af6");
+      } finally {
+         server.shutdown();
+      }
+   }
+}
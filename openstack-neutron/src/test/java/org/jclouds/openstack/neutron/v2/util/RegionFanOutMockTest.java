@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests RegionFanOut partial results
+ */
+@Test
+public class RegionFanOutMockTest extends BaseNeutronApiMockTest {
+
+   public void testPartialResults() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response.json"))));
+      ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+
+      try {
+         final NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         RegionFanOut fanOut = RegionFanOut.builder(neutronApi)
+               .executor(executor)
+               .regions(ImmutableSet.of("RegionOne", "Broken", "Slow"))
+               .timeout(1, TimeUnit.SECONDS)
+               .build();
+
+         RegionResults<List<Port>> results = fanOut.run(new Function<String, List<Port>>() {
+            @Override
+            public List<Port> apply(String region) {
+               if (region.equals("Broken")) {
+                  throw new IllegalStateException("region is down");
+               }
+               if (region.equals("Slow")) {
+                  Uninterruptibles.sleepUninterruptibly(10, TimeUnit.SECONDS);
+               }
+               return neutronApi.getPortApi(region).list().concat().toList();
+            }
+         });
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 2);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+
+         /*
+          * Check response
+          */
+         assertFalse(results.isComplete());
+         assertEquals(results.getValues().keySet(), ImmutableSet.of("RegionOne"));
+         assertEquals(results.getFailures().keySet(), ImmutableSet.of("Broken"));
+         assertTrue(results.getFailures().get("Broken") instanceof IllegalStateException);
+         assertEquals(results.getTimedOut(), ImmutableSet.of("Slow"));
+
+         List<RegionTagged<Port>> ports = RegionResults.merge(results);
+         assertEquals(ports.size(), results.getValues().get("RegionOne").size());
+         assertEquals(ports.get(0).getRegion(), "RegionOne");
+      } finally {
+         executor.shutdownNow();
+         server.shutdown();
+      }
+   }
+
+   public void testConfiguredRegions() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         RegionFanOut fanOut = RegionFanOut.builder(neutronApi)
+               .executor(MoreExecutors.newDirectExecutorService())
+               .build();
+
+         RegionResults<String> results = fanOut.run(new Function<String, String>() {
+            @Override
+            public String apply(String region) {
+               return region.toLowerCase();
+            }
+         });
+
+         assertTrue(results.isComplete());
+         assertEquals(results.getValues().keySet(), neutronApi.getConfiguredRegions());
+         assertEquals(results.getValues().get("RegionOne"), "regionone");
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+
+import org.jclouds.rest.ResourceNotFoundException;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+@Test(groups = "unit", testName = "RequestCoalescerTest")
+public class RequestCoalescerTest {
+
+   interface ThingApi {
+      @GET
+      String get(String id);
+
+      @DELETE
+      boolean delete(String id);
+   }
+
+   static class CountingThingApi implements ThingApi {
+      final AtomicInteger gets = new AtomicInteger();
+      final AtomicInteger deletes = new AtomicInteger();
+      final CountDownLatch release = new CountDownLatch(1);
+      volatile boolean blocking;
+
+      @Override
+      public String get(String id) {
+         gets.incrementAndGet();
+         if (blocking) {
+            try {
+               release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+         if (id.equals("missing")) {
+            throw new ResourceNotFoundException(id);
+         }
+         return id.equals("null") ? null : "thing-" + id;
+      }
+
+      @Override
+      public boolean delete(String id) {
+         deletes.incrementAndGet();
+         return true;
+      }
+   }
+
+   public void testConcurrentGetsShareOneRequest() throws Exception {
+      final CountingThingApi delegate = new CountingThingApi();
+      delegate.blocking = true;
+      RequestCoalescer coalescer = RequestCoalescer.builder().build();
+      final ThingApi api = coalescer.wrap(ThingApi.class, delegate);
+
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+         List<Future<String>> futures = Lists.newArrayList();
+         for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+               @Override
+               public String call() {
+                  return api.get("1");
+               }
+            }));
+         }
+         // wait until the seven followers queue behind the first request
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (coalescer.getCoalescedCount() < 7 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+         }
+         delegate.release.countDown();
+         for (Future<String> future : futures) {
+            assertEquals(future.get(), "thing-1");
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+      assertEquals(delegate.gets.get(), 1);
+      assertEquals(coalescer.getRequestCount(), 1);
+      assertEquals(coalescer.getCoalescedCount(), 7);
+
+      // nothing in flight and no time to live: the next read is a new request
+      delegate.blocking = false;
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(delegate.gets.get(), 2);
+   }
+
+   public void testWritesAreNotCoalesced() {
+      CountingThingApi delegate = new CountingThingApi();
+      ThingApi api = RequestCoalescer.builder().timeToLive(1, TimeUnit.MINUTES).build().wrap(ThingApi.class, delegate);
+
+      assertTrue(api.delete("1"));
+      assertTrue(api.delete("1"));
+      assertEquals(delegate.deletes.get(), 2);
+   }
+
+   public void testWritesDropTheReadsOfTheirApi() {
+      CountingThingApi delegate = new CountingThingApi();
+      CountingThingApi otherDelegate = new CountingThingApi();
+      RequestCoalescer coalescer = RequestCoalescer.builder().timeToLive(1, TimeUnit.MINUTES).build();
+      ThingApi api = coalescer.wrap(ThingApi.class, delegate);
+      ThingApi other = coalescer.wrap(ThingApi.class, otherDelegate);
+
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(other.get("1"), "thing-1");
+      assertTrue(api.delete("1"));
+
+      // the write is seen at once through the same api, the other api keeps its responses
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(other.get("1"), "thing-1");
+      assertEquals(delegate.gets.get(), 2);
+      assertEquals(otherDelegate.gets.get(), 1);
+      assertEquals(coalescer.getCacheHitCount(), 1);
+   }
+
+   public void testTimeToLiveCachesValuesAndNulls() {
+      CountingThingApi delegate = new CountingThingApi();
+      RequestCoalescer coalescer = RequestCoalescer.builder().timeToLive(1, TimeUnit.MINUTES).build();
+      ThingApi api = coalescer.wrap(ThingApi.class, delegate);
+
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(api.get("2"), "thing-2");
+      assertNull(api.get("null"));
+      assertNull(api.get("null"));
+      assertEquals(delegate.gets.get(), 3);
+      assertEquals(coalescer.getCacheHitCount(), 2);
+
+      coalescer.invalidateAll();
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(delegate.gets.get(), 4);
+   }
+
+   public void testInvalidateAllDiscardsReadsInFlight() throws Exception {
+      final CountingThingApi delegate = new CountingThingApi();
+      delegate.blocking = true;
+      RequestCoalescer coalescer = RequestCoalescer.builder().timeToLive(1, TimeUnit.MINUTES).build();
+      final ThingApi api = coalescer.wrap(ThingApi.class, delegate);
+
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         Future<String> stale = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+               return api.get("1");
+            }
+         });
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (delegate.gets.get() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+         }
+         coalescer.invalidateAll();
+         delegate.blocking = false;
+         delegate.release.countDown();
+         assertEquals(stale.get(), "thing-1");
+      } finally {
+         executor.shutdownNow();
+      }
+
+      // the response that was in flight during the invalidation is not served from the cache
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(delegate.gets.get(), 2);
+      assertEquals(api.get("1"), "thing-1");
+      assertEquals(delegate.gets.get(), 2);
+   }
+
+   public void testExceptionsAreRethrownAndNotCached() {
+      CountingThingApi delegate = new CountingThingApi();
+      ThingApi api = RequestCoalescer.builder().timeToLive(1, TimeUnit.MINUTES).build().wrap(ThingApi.class, delegate);
+
+      for (int i = 0; i < 2; i++) {
+         try {
+            api.get("missing");
+            fail("expected ResourceNotFoundException");
+         } catch (ResourceNotFoundException expected) {
+         }
+      }
+      assertEquals(delegate.gets.get(), 2);
+   }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+@Test(groups = "unit", testName = "RuleDiffTest")
+public class RuleDiffTest {
+
+   public void testUnrecognizedProtocolsAreLeftAlone() {
+      Rule ssh = Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.TCP).portRangeMin(22)
+            .portRangeMax(22).build();
+      // two distinct rules Neutron knows, such as gre and sctp, both read as unrecognized
+      Rule gre = Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.UNRECOGNIZED).build();
+      Rule sctp = Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.UNRECOGNIZED).build();
+      List<Rule> live = ImmutableList.of(ssh, gre, sctp);
+
+      RuleDiff diff = RuleDiff.compute(ImmutableMap.of("a", ImmutableList.of(ssh)), live);
+
+      assertTrue(diff.isEmpty());
+      assertEquals(diff.getUnchanged(), 1);
+      assertEquals(diff.getIgnored(), ImmutableList.of(gre, sctp));
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testUnrecognizedDesiredProtocolIsRejected() {
+      Rule gre = Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.UNRECOGNIZED).build();
+      RuleDiff.compute(ImmutableMap.of("a", ImmutableList.of(gre)), ImmutableList.<Rule> of());
+   }
+}
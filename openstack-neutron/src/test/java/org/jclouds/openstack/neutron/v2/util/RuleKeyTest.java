@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "RuleKeyTest")
+public class RuleKeyTest {
+
+   public void testEquivalentRulesHaveTheSameKey() {
+      Rule implicit = Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.TCP).portRangeMin(22)
+            .portRangeMax(22).build();
+      Rule explicit = Rule.createBuilder(RuleDirection.INGRESS, "b").ethertype(RuleEthertype.IPV4)
+            .protocol(RuleProtocol.TCP).portRangeMin(22).portRangeMax(22).remoteIpPrefix("0.0.0.0/0").build();
+      assertEquals(RuleKey.of(implicit), RuleKey.of(explicit));
+   }
+
+   public void testPortsAreIgnoredWithoutProtocol() {
+      Rule rule = Rule.createBuilder(RuleDirection.EGRESS, "a").portRangeMin(80).portRangeMax(80).build();
+      assertNull(RuleKey.of(rule).getPortRangeMin());
+      assertEquals(RuleKey.of(rule), RuleKey.of(Rule.createBuilder(RuleDirection.EGRESS, "a").build()));
+   }
+
+   public void testHostPrefixIsNormalized() {
+      Rule host = Rule.createBuilder(RuleDirection.INGRESS, "a").remoteIpPrefix("10.0.0.1").build();
+      assertEquals(RuleKey.of(host).getRemoteIpPrefix(), "10.0.0.1/32");
+   }
+
+   public void testHostBitsAreCleared() {
+      Rule network = Rule.createBuilder(RuleDirection.INGRESS, "a").remoteIpPrefix("10.0.0.0/24").build();
+      Rule host = Rule.createBuilder(RuleDirection.INGRESS, "a").remoteIpPrefix("10.0.0.1/24").build();
+      assertEquals(RuleKey.of(host), RuleKey.of(network));
+      assertEquals(RuleKey.of(Rule.createBuilder(RuleDirection.INGRESS, "a").ethertype(RuleEthertype.IPV6)
+            .remoteIpPrefix("2001:DB8::1/64").build()).getRemoteIpPrefix(), "2001:db8::/64");
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testUnrecognizedProtocolHasNoKey() {
+      RuleKey.of(Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.UNRECOGNIZED).build());
+   }
+
+   public void testDirectionMatters() {
+      assertNotEquals(RuleKey.of(Rule.createBuilder(RuleDirection.INGRESS, "a").build()),
+            RuleKey.of(Rule.createBuilder(RuleDirection.EGRESS, "a").build()));
+   }
+
+   public void testToCreateRuleRoundTrips() {
+      Rule rule = Rule.createBuilder(RuleDirection.INGRESS, "a").protocol(RuleProtocol.UDP).portRangeMin(53)
+            .portRangeMax(53).remoteIpPrefix("192.168.0.0/16").build();
+      Rule.CreateRule created = RuleKey.of(rule).toCreateRule("b");
+      assertEquals(created.getSecurityGroupId(), "b");
+      assertEquals(RuleKey.of(created), RuleKey.of(rule));
+   }
+}
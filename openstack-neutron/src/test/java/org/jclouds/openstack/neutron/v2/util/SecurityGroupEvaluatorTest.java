@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Random;
+
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+@Test(groups = "unit", testName = "SecurityGroupEvaluatorTest")
+public class SecurityGroupEvaluatorTest {
+
+   private static final String WEB = "web";
+   private static final String DB = "db";
+
+   private static final RuleProtocol[] PROTOCOLS = { RuleProtocol.TCP, RuleProtocol.UDP, RuleProtocol.ICMP, null };
+
+   static Port port(String address, String... securityGroups) {
+      return portOn("net", address, securityGroups);
+   }
+
+   static Port portOn(String networkId, String address, String... securityGroups) {
+      return Port.createBuilder(networkId).fixedIps(ImmutableSet.of(IP.builder().ipAddress(address).build()))
+            .securityGroups(ImmutableSet.copyOf(securityGroups)).build();
+   }
+
+   private SecurityGroupEvaluator evaluator() {
+      return SecurityGroupEvaluator.compile(ImmutableList.<Rule> of(
+            Rule.createBuilder(RuleDirection.EGRESS, WEB).build(),
+            Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.TCP).portRangeMin(80)
+                  .portRangeMax(80).remoteIpPrefix("0.0.0.0/0").build(),
+            Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.TCP).portRangeMin(81)
+                  .portRangeMax(90).remoteIpPrefix("0.0.0.0/0").build(),
+            Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.TCP).portRangeMin(22)
+                  .portRangeMax(22).remoteIpPrefix("10.1.0.0/16").build(),
+            Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.ICMP).portRangeMin(8)
+                  .remoteIpPrefix("10.0.0.0/8").build(),
+            Rule.createBuilder(RuleDirection.EGRESS, DB).ethertype(RuleEthertype.IPV4).build(),
+            Rule.createBuilder(RuleDirection.INGRESS, DB).protocol(RuleProtocol.TCP).portRangeMin(5432)
+                  .portRangeMax(5432).remoteGroupId(WEB).build(),
+            Rule.createBuilder(RuleDirection.INGRESS, DB).ethertype(RuleEthertype.IPV6)
+                  .remoteIpPrefix("2001:db8::/32").build()),
+            ImmutableList.<Port> of(port("10.1.0.5", WEB), port("10.2.0.7", DB), port("10.3.0.9")));
+   }
+
+   public void testAnyRemote() {
+      SecurityGroupEvaluator evaluator = evaluator();
+      assertTrue(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.TCP, 80, "203.0.113.1"));
+      assertTrue(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.TCP, 85, "203.0.113.1"));
+      assertFalse(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.TCP, 91, "203.0.113.1"));
+      assertFalse(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.UDP, 80, "203.0.113.1"));
+      assertTrue(evaluator.allows(WEB, RuleDirection.EGRESS, RuleProtocol.UDP, 53, "203.0.113.1"));
+      assertEquals(evaluator.getRuleCount(), 8);
+   }
+
+   public void testRemotePrefix() {
+      SecurityGroupEvaluator evaluator = evaluator();
+      assertTrue(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.TCP, 22, "10.1.200.3"));
+      assertFalse(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.TCP, 22, "10.2.0.1"));
+      assertTrue(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.ICMP, 8, "10.2.0.1"));
+      assertFalse(evaluator.allows(WEB, RuleDirection.INGRESS, RuleProtocol.ICMP, 0, "10.2.0.1"));
+      assertTrue(evaluator.allows(DB, RuleDirection.INGRESS, RuleProtocol.UDP, 9, "2001:db8::1"));
+      assertFalse(evaluator.allows(DB, RuleDirection.EGRESS, RuleProtocol.UDP, 9, "2001:db8::1"));
+   }
+
+   public void testRemoteGroup() {
+      SecurityGroupEvaluator evaluator = evaluator();
+      assertTrue(evaluator.allows(DB, RuleDirection.INGRESS, RuleProtocol.TCP, 5432, "10.1.0.5"));
+      assertFalse(evaluator.allows(DB, RuleDirection.INGRESS, RuleProtocol.TCP, 5432, "10.3.0.9"));
+      assertFalse(evaluator.allows(DB, RuleDirection.INGRESS, RuleProtocol.TCP, 5433, "10.1.0.5"));
+      assertFalse(evaluator.allows("unknown", RuleDirection.EGRESS, RuleProtocol.TCP, 1, "10.1.0.5"));
+   }
+
+   public void testTrafficBetweenPorts() {
+      SecurityGroupEvaluator evaluator = evaluator();
+      assertTrue(evaluator.allowsTraffic("10.1.0.5", "10.2.0.7", RuleProtocol.TCP, 5432));
+      assertFalse(evaluator.allowsTraffic("10.2.0.7", "10.1.0.5", RuleProtocol.TCP, 5432));
+      // a port without security groups drops everything, an unknown address is not filtered
+      assertFalse(evaluator.allowsTraffic("10.3.0.9", "203.0.113.1", RuleProtocol.TCP, 443));
+      assertTrue(evaluator.allowsTraffic("203.0.113.1", "10.1.0.5", RuleProtocol.TCP, 80));
+      assertEquals(evaluator.getSecurityGroups("10.1.0.5"), ImmutableSet.of(WEB));
+   }
+
+   public void testOverlappingNetworks() {
+      // the same address on two tenant networks
+      SecurityGroupEvaluator evaluator = SecurityGroupEvaluator.compile(ImmutableList.<Rule> of(
+            Rule.createBuilder(RuleDirection.EGRESS, WEB).build(),
+            Rule.createBuilder(RuleDirection.EGRESS, DB).build(),
+            Rule.createBuilder(RuleDirection.INGRESS, DB).protocol(RuleProtocol.TCP).portRangeMin(5432)
+                  .portRangeMax(5432).remoteGroupId(WEB).build()),
+            ImmutableList.<Port> of(portOn("net-a", "10.0.0.5", WEB), portOn("net-b", "10.0.0.5", DB),
+                  portOn("net-b", "10.0.0.7", DB)));
+
+      assertEquals(evaluator.getSecurityGroups("net-a", "10.0.0.5"), ImmutableSet.of(WEB));
+      assertEquals(evaluator.getSecurityGroups("net-b", "10.0.0.5"), ImmutableSet.of(DB));
+      assertEquals(evaluator.getSecurityGroups("10.0.0.5"), ImmutableSet.of(WEB, DB));
+      assertTrue(evaluator.allowsTraffic("net-a", "10.0.0.5", "net-b", "10.0.0.7", RuleProtocol.TCP, 5432));
+      assertFalse(evaluator.allowsTraffic("net-b", "10.0.0.5", "net-b", "10.0.0.7", RuleProtocol.TCP, 5432));
+      assertTrue(evaluator.allows(ImmutableSet.of(DB), RuleDirection.INGRESS, RuleProtocol.TCP, 5432, "net-a",
+            "10.0.0.5"));
+      assertFalse(evaluator.allows(ImmutableSet.of(DB), RuleDirection.INGRESS, RuleProtocol.TCP, 5432, "net-b",
+            "10.0.0.5"));
+      try {
+         evaluator.allowsTraffic("10.0.0.5", "10.0.0.7", RuleProtocol.TCP, 5432);
+         fail("the source address is ambiguous");
+      } catch (IllegalArgumentException expected) {
+      }
+   }
+
+   public void testMatchesScanOfRandomRules() {
+      Random random = new Random(42);
+      List<Rule> rules = Lists.newArrayList();
+      for (int i = 0; i < 2000; i++) {
+         RuleDirection direction = random.nextBoolean() ? RuleDirection.INGRESS : RuleDirection.EGRESS;
+         Rule.CreateBuilder builder = Rule.createBuilder(direction, "group-" + random.nextInt(20));
+         RuleProtocol protocol = PROTOCOLS[random.nextInt(PROTOCOLS.length)];
+         if (protocol != null) {
+            int min = random.nextInt(protocol == RuleProtocol.ICMP ? 256 : 60000);
+            builder.protocol(protocol).portRangeMin(min).portRangeMax(min + random.nextInt(100));
+         }
+         switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+               builder.remoteIpPrefix(address(random) + "/" + (16 + random.nextInt(17)));
+               break;
+            case 2:
+               builder.remoteGroupId("group-" + random.nextInt(20));
+               break;
+            default:
+               break;
+         }
+         rules.add(builder.build());
+      }
+      List<Port> ports = Lists.newArrayList();
+      List<String> addresses = Lists.newArrayList();
+      for (int i = 0; i < 500; i++) {
+         String address = address(random);
+         addresses.add(address);
+         ports.add(port(address, "group-" + random.nextInt(20)));
+      }
+      SecurityGroupEvaluator evaluator = SecurityGroupEvaluator.compile(rules, ports);
+      SecurityGroupEvaluator membership = SecurityGroupEvaluator.compile(ImmutableList.<Rule> of(), ports);
+
+      for (int i = 0; i < 5000; i++) {
+         String group = "group-" + random.nextInt(20);
+         RuleDirection direction = random.nextBoolean() ? RuleDirection.INGRESS : RuleDirection.EGRESS;
+         RuleProtocol protocol = PROTOCOLS[random.nextInt(PROTOCOLS.length - 1)];
+         int port = random.nextInt(protocol == RuleProtocol.ICMP ? 256 : 65536);
+         String remote = random.nextBoolean() ? addresses.get(random.nextInt(addresses.size())) : address(random);
+         assertEquals(evaluator.allows(group, direction, protocol, port, remote),
+               scan(rules, membership, group, direction, protocol, port, remote), "query " + i);
+      }
+   }
+
+   public void testPortRangesMerge() {
+      SecurityGroupEvaluator.PortRanges ranges = new SecurityGroupEvaluator.PortRanges.Builder()
+            .add(10, 20).add(21, 30).add(15, 16).add(40, 40).build();
+      assertEquals(ranges.size(), 2);
+      assertTrue(ranges.contains(10));
+      assertTrue(ranges.contains(30));
+      assertFalse(ranges.contains(31));
+      assertTrue(ranges.contains(40));
+      assertFalse(ranges.contains(9));
+   }
+
+   private static String address(Random random) {
+      return "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+   }
+
+   /**
+    * Answers a query the slow way, by looking at every rule.
+    */
+   private static boolean scan(List<Rule> rules, SecurityGroupEvaluator membership, String group,
+         RuleDirection direction, RuleProtocol protocol, int port, String remote) {
+      for (Rule rule : rules) {
+         if (!rule.getSecurityGroupId().equals(group) || rule.getDirection() != direction) {
+            continue;
+         }
+         if (rule.getProtocol() != null) {
+            if (rule.getProtocol() != protocol) {
+               continue;
+            }
+            int max = protocol == RuleProtocol.ICMP ? rule.getPortRangeMin() : rule.getPortRangeMax();
+            if (port < rule.getPortRangeMin() || port > max) {
+               continue;
+            }
+         }
+         if (rule.getRemoteIpPrefix() != null && !Cidr.parse(rule.getRemoteIpPrefix()).contains(remote)) {
+            continue;
+         }
+         if (rule.getRemoteGroupId() != null
+               && !membership.getSecurityGroups(remote).contains(rule.getRemoteGroupId())) {
+            continue;
+         }
+         return true;
+      }
+      return false;
+   }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests SecurityGroupReconciler diffing and the calls it makes
+ */
+@Test
+public class SecurityGroupReconcilerMockTest extends BaseNeutronApiMockTest {
+
+   private static final String GROUP = "85cc3048-abc3-43cc-89b3-377341426ac5";
+
+   private static Map<String, List<Rule>> desired() {
+      return ImmutableMap.<String, List<Rule>> of(GROUP, ImmutableList.<Rule> of(
+            Rule.createBuilder(RuleDirection.EGRESS, GROUP).ethertype(RuleEthertype.IPV4).build(),
+            Rule.createBuilder(RuleDirection.INGRESS, GROUP).ethertype(RuleEthertype.IPV4).remoteGroupId(GROUP).build(),
+            Rule.createBuilder(RuleDirection.INGRESS, GROUP).protocol(RuleProtocol.TCP).portRangeMin(22)
+                  .portRangeMax(22).remoteIpPrefix("0.0.0.0/0").build()));
+   }
+
+   public void testReconcile() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/security_group_rule_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/security_group_rule_create_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         SecurityGroupReconciler reconciler = SecurityGroupReconciler.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .maxConcurrency(1)
+               .build();
+
+         ReconcileResult result = reconciler.reconcile(desired());
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 5);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/security-group-rules");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/security-group-rules",
+               "/security_group_rule_reconcile_create_request.json");
+         assertRequest(server.takeRequest(), "DELETE",
+               uriApiVersion + "/security-group-rules/3c0e45ff-adaf-4124-b083-bf390e5482ff");
+         assertRequest(server.takeRequest(), "DELETE",
+               uriApiVersion + "/security-group-rules/c0b09f00-1d49-4e64-a0a7-8a186d928138");
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isComplete());
+         assertEquals(result.getDiff().getUnchanged(), 2);
+         assertEquals(result.getCreated().size(), 1);
+         assertEquals(result.getDeleted(), ImmutableSet.of("3c0e45ff-adaf-4124-b083-bf390e5482ff",
+               "c0b09f00-1d49-4e64-a0a7-8a186d928138"));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testDryRun() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(200).setBody(stringFromResource("/security_group_rule_list_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         SecurityGroupReconciler reconciler = SecurityGroupReconciler.builder(neutronApi, "RegionOne")
+               .executor(MoreExecutors.newDirectExecutorService())
+               .dryRun(true)
+               .build();
+
+         ReconcileResult result = reconciler.reconcile(desired());
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 2);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/security-group-rules");
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isDryRun());
+         assertFalse(result.isComplete());
+         assertEquals(result.getDiff().getToCreate().size(), 1);
+         assertEquals(result.getDiff().getToCreate().get(0).getPortRangeMin(), Integer.valueOf(22));
+         assertEquals(result.getDiff().getToDelete().size(), 2);
+         assertTrue(result.getCreated().isEmpty());
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.network;
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.port;
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.router;
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.subnet;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests TopologyGraph loading from routers, subnets and ports
+ */
+@Test
+public class TopologyGraphMockTest extends BaseNeutronApiMockTest {
+
+   private static final String EXTERNAL = "3c5bcddd-6af9-4e6b-9c3e-c153e521cab8";
+   private static final String ROUTER = "a9254bdb-2613-4a13-ac4c-adc581fba50d";
+
+   public void testLoad() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/topology_subnet_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/topology_router_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/topology_port_list_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         TopologyGraph graph = TopologyGraph.load(neutronApi, "RegionOne");
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 5);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/subnets");
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/routers");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+
+         /*
+          * Check response
+          */
+         assertEquals(graph.size(), 14);
+         assertEquals(graph.getComponentCount(), 2);
+         assertEquals(graph.getPathToExternal(subnet("2a0f59e4-5e3c-4e45-8c07-35a1bbc5b0e1")), ImmutableList.of(
+               subnet("2a0f59e4-5e3c-4e45-8c07-35a1bbc5b0e1"), port("41bd6d8c-1f5a-4f3e-b0c1-8e2f3a4b5c6d"),
+               router(ROUTER), network(EXTERNAL)));
+         assertTrue(graph.isReachable(port("74e09abf-4c8d-4c6b-a3f4-b15c6d7e8f90"),
+               subnet("5d3a1f0e-7b1c-4c0c-9b3e-2d1c8f6e4a7b")));
+         assertFalse(graph.isReachable(port("85f1abc0-5d9e-4d7c-b4a5-c26d7e8f9a01"), network(EXTERNAL)));
+         assertTrue(graph.getNeighbors(router(ROUTER)).contains(port("63df8fae-3b7c-4b5a-92e3-a04b5c6d7e8f")));
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.util;
+
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.network;
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.port;
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.router;
+import static org.jclouds.openstack.neutron.v2.util.TopologyNode.subnet;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+@Test(groups = "unit", testName = "TopologyGraphTest")
+public class TopologyGraphTest {
+
+   /**
+    * Two tenant subnets behind router r1, which has a gateway on the external network, and an isolated subnet.
+    */
+   private TopologyGraph graph() {
+      TopologyGraph graph = new TopologyGraph();
+      graph.addSubnet("ext-subnet", "ext");
+      graph.addSubnet("a", "net-a");
+      graph.addSubnet("b", "net-b");
+      graph.addSubnet("c", "net-c");
+      graph.setGateway("r1", "ext");
+      graph.addPort("r1-a", "net-a", ImmutableList.of("a"), "r1");
+      graph.addPort("r1-b", "net-b", ImmutableList.of("b"), "r1");
+      graph.addPort("vm-a", "net-a", ImmutableList.of("a"), null);
+      graph.addPort("vm-c", "net-c", ImmutableList.of("c"), null);
+      return graph;
+   }
+
+   public void testPaths() {
+      TopologyGraph graph = graph();
+      assertEquals(graph.getPathToExternal(port("vm-a")),
+            ImmutableList.of(port("vm-a"), subnet("a"), port("r1-a"), router("r1"), network("ext")));
+      assertEquals(graph.getPath(subnet("a"), subnet("b")),
+            ImmutableList.of(subnet("a"), port("r1-a"), router("r1"), port("r1-b"), subnet("b")));
+      assertEquals(graph.getPathToExternal(subnet("c")), ImmutableList.of());
+      assertEquals(graph.getPath(subnet("a"), subnet("c")), ImmutableList.of());
+      assertEquals(graph.getPath(subnet("a"), subnet("unknown")), ImmutableList.of());
+      assertEquals(graph.getExternalNetworks(), ImmutableSet.of(network("ext")));
+   }
+
+   public void testComponents() {
+      TopologyGraph graph = graph();
+      assertEquals(graph.getComponentCount(), 2);
+      assertTrue(graph.isReachable(port("vm-a"), subnet("b")));
+      assertFalse(graph.isReachable(port("vm-c"), network("ext")));
+      assertEquals(graph.getComponent(port("vm-c")), ImmutableSet.of(port("vm-c"), subnet("c"), network("net-c")));
+   }
+
+   public void testIncrementalUpdates() {
+      TopologyGraph graph = graph();
+      assertFalse(graph.isReachable(subnet("c"), network("ext")));
+
+      graph.addPort("r1-c", "net-c", ImmutableList.of("c"), "r1");
+      assertEquals(graph.getComponentCount(), 1);
+      assertEquals(graph.getPathToExternal(port("vm-c")).size(), 5);
+
+      assertTrue(graph.removePort("r1-c"));
+      assertFalse(graph.isReachable(subnet("c"), network("ext")));
+      assertEquals(graph.getComponentCount(), 2);
+
+      // replacing a port moves its links
+      graph.addPort("vm-a", "net-c", ImmutableList.of("c"), null);
+      assertEquals(graph.getNeighbors(port("vm-a")), ImmutableSet.of(subnet("c")));
+
+      graph.setGateway("r1", null);
+      assertEquals(graph.getPathToExternal(subnet("a")), ImmutableList.of());
+      assertTrue(graph.getExternalNetworks().isEmpty());
+
+      assertTrue(graph.removeRouter("r1"));
+      assertFalse(graph.isReachable(subnet("a"), subnet("b")));
+      assertFalse(graph.removeRouter("r1"));
+      assertFalse(graph.contains(router("r1")));
+   }
+
+   public void testMoveSubnet() {
+      TopologyGraph graph = graph();
+      graph.addSubnet("c", "net-a");
+      assertTrue(graph.isReachable(port("vm-c"), network("ext")));
+      assertEquals(graph.getNeighbors(subnet("c")), ImmutableSet.of(network("net-a"), port("vm-c")));
+   }
+
+   public void testPathToExternalMatchesReachability() {
+      Random random = new Random(42);
+      TopologyGraph graph = new TopologyGraph();
+      for (int i = 0; i < 400; i++) {
+         graph.addSubnet("subnet-" + i, "net-" + i);
+      }
+      for (int i = 0; i < 200; i++) {
+         graph.setGateway("router-" + i, random.nextInt(10) < 7 ? "ext-" + random.nextInt(3) : null);
+         graph.addPort("port-" + 2 * i, "net-" + 2 * i, ImmutableList.of("subnet-" + 2 * i), "router-" + i);
+         // every other router also links one of its networks to a random one
+         if (random.nextBoolean()) {
+            int subnet = random.nextInt(400);
+            graph.addPort("port-" + (2 * i + 1), "net-" + subnet, ImmutableList.of("subnet-" + subnet), "router-" + i);
+         }
+      }
+      for (int i = 0; i < 1000; i++) {
+         int subnet = random.nextInt(400);
+         graph.addPort("vm-" + i, "net-" + subnet, ImmutableList.of("subnet-" + subnet), null);
+      }
+
+      for (int i = 0; i < 1000; i++) {
+         TopologyNode vm = port("vm-" + i);
+         boolean any = false;
+         for (int e = 0; e < 3; e++) {
+            any |= graph.isReachable(vm, network("ext-" + e));
+         }
+         assertEquals(!graph.getPathToExternal(vm).isEmpty(), any, vm.toString());
+      }
+   }
+}